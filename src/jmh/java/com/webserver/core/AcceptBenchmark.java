@@ -0,0 +1,156 @@
+package com.webserver.core;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A storm of short connections: each operation connects, sends one request with Connection: close
+ * and reads the response, as clients without keep-alive do.
+ *
+ * The sampled times give the tail latency of the connection setup under contention on the accept
+ * loops, and their count the connections per second. The client resets the connection once the
+ * response is read, so the benchmark does not run out of ports with sockets in TIME_WAIT.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AcceptBenchmark {
+
+	private static final byte[] BODY = "ok\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	@Param({"blocking", "nio"})
+	public String engine;
+
+	@Param({"1", "4"})
+	public int acceptors;
+
+	private Path webroot;
+
+	private WebServer server;
+
+	private InetSocketAddress address;
+
+	private byte[] request;
+
+	@Setup
+	public void setup() throws IOException, HttpConfigurationException, InterruptedException {
+		webroot = Files.createTempDirectory("webroot");
+		Files.write(webroot.resolve("index.html"), BODY);
+
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"port=" + port + "\n" +
+				"engine=" + engine + "\n" +
+				"acceptors=" + acceptors + "\n" +
+				"access_log=\n" +
+				"cache_size=1048576\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+
+		server = new WebServer();
+		Thread thread = new Thread(server::start, "acceptor-0");
+		thread.setDaemon(true);
+		thread.start();
+
+		address = new InetSocketAddress("127.0.0.1", port);
+		request = ("GET /index.html HTTP/1.1\r\n" +
+				"Host: 127.0.0.1:" + port + "\r\n" +
+				"Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		// Wait for the listening sockets
+		for (int i = 0; i < 100; i++) {
+			try {
+				connect();
+				return;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("The server did not start on " + address);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		server.stop();
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public int connect() throws IOException {
+		try (Socket socket = new Socket()) {
+			socket.setSoLinger(true, 0);
+			socket.setTcpNoDelay(true);
+			socket.connect(address, 1000);
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			out.write(request);
+			out.flush();
+			return readResponse(socket.getInputStream());
+		}
+	}
+
+	/**
+	 * Read the head and the body of the response.
+	 * @return the number of bytes read
+	 */
+	private static int readResponse(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		int length = 0;
+		int headEnd = -1;
+		while (headEnd < 0) {
+			int n = in.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				throw new IOException("Connection closed before the end of the head");
+			}
+			length += n;
+			for (int i = 3; i < length; i++) {
+				if (buffer[i - 3] == '\r' && buffer[i - 2] == '\n' && buffer[i - 1] == '\r' && buffer[i] == '\n') {
+					headEnd = i + 1;
+					break;
+				}
+			}
+		}
+		while (length < headEnd + BODY.length) {
+			int n = in.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				throw new IOException("Connection closed before the end of the body");
+			}
+			length += n;
+		}
+		return length;
+	}
+}
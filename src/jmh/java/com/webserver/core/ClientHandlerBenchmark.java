@@ -0,0 +1,110 @@
+package com.webserver.core;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.exceptions.HttpParsingException;
+import com.webserver.http.HttpParser;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The handling of a GET of a static file, from the request to the response ready to be written.
+ *
+ * The webroot is created in memory (/dev/shm when available) so the file system calls do not wait
+ * for a disk. The configuration of the server is static, so each set of parameters runs in its own fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientHandlerBenchmark {
+
+	/**
+	 * A compressible page, served gzip encoded, and an image, served as is.
+	 */
+	@Param({"/index.html", "/image.png"})
+	public String target;
+
+	/**
+	 * With the content cache, and without: the body is then a region of the file.
+	 */
+	@Param({"67108864", "0"})
+	public long cacheSize;
+
+	private Path webroot;
+
+	private HttpRequest request;
+
+	@Setup
+	public void setup() throws IOException, HttpConfigurationException, HttpParsingException {
+		Path shm = Paths.get("/dev/shm");
+		webroot = Files.isDirectory(shm) && Files.isWritable(shm)
+				? Files.createTempDirectory(shm, "webroot")
+				: Files.createTempDirectory("webroot");
+
+		StringBuilder page = new StringBuilder("<!DOCTYPE html>\n<html lang=\"en\">\n<body>\n");
+		for (int i = 0; i < 200; i++) {
+			page.append("<p>Paragraph ").append(i).append(" of the page served by the benchmark.</p>\n");
+		}
+		page.append("</body>\n</html>\n");
+		Files.write(webroot.resolve("index.html"), page.toString().getBytes(StandardCharsets.UTF_8));
+		byte[] image = new byte[48 * 1024];
+		new Random(42).nextBytes(image);
+		Files.write(webroot.resolve("image.png"), image);
+
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"cache_size=" + cacheSize + "\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+
+		request = HttpParser.parseHttpRequest(new ByteArrayInputStream(("GET " + target + " HTTP/1.1\r\n" +
+				"Host: localhost:8080\r\n" +
+				"Connection: keep-alive\r\n" +
+				"User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/98.0.4758.102 Safari/537.36\r\n" +
+				"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8\r\n" +
+				"Accept-Encoding: gzip, deflate, br\r\n" +
+				"Accept-Language: en-US,en;q=0.9\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public HttpResponse handleGET() throws IOException {
+		HttpResponse response = ClientHandler.handleRequest(request);
+		// A file compressed on the fly is opened by the handler, release it as writing the response would
+		if (response.getChannelBody() != null) {
+			response.getChannelBody().close();
+		}
+		return response;
+	}
+}
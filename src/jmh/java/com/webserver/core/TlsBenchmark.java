@@ -0,0 +1,281 @@
+package com.webserver.core;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The HTTPS listener of a running server, with a self-signed certificate made by the keytool of the JDK.
+ *
+ * {@link #handshake}: each operation connects, completes a handshake, sends one request with
+ * Connection: close and reads the response. With resumption, the client offers the session of its
+ * previous connection (a TLS 1.3 ticket), without it the session is invalidated once used, so each
+ * handshake is a full one. The count of operations gives the handshakes per second.
+ *
+ * {@link #bulk}: each thread downloads a 1 MiB file over a kept-alive connection, over TLS and in
+ * plaintext, where the file is sent by the kernel. The count of operations gives the MiB per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TlsBenchmark {
+
+	private static final String PASSWORD = "changeit";
+
+	private static final byte[] BODY = "ok\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	private static final int LARGE_SIZE = 1024 * 1024;
+
+	@State(Scope.Benchmark)
+	public static class Server {
+
+		@Param({"blocking", "nio"})
+		public String engine;
+
+		private Path webroot;
+
+		private WebServer server;
+
+		private InetSocketAddress address;
+
+		private InetSocketAddress secureAddress;
+
+		@Setup
+		public void setup() throws IOException, HttpConfigurationException, InterruptedException {
+			webroot = Files.createTempDirectory("webroot");
+			Files.write(webroot.resolve("index.html"), BODY);
+			byte[] large = new byte[LARGE_SIZE];
+			new Random(42).nextBytes(large);
+			Files.write(webroot.resolve("large.bin"), large);
+
+			Path keystore = webroot.resolve("keystore.p12");
+			String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+			Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+					"-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore", keystore.toString(),
+					"-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+			if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+				throw new IOException("keytool failed to create " + keystore);
+			}
+
+			int port = freePort();
+			int httpsPort = freePort();
+			// The handshakes keep the threads busy: the connections are measured, not shed
+			Path properties = webroot.resolve("webserver.properties");
+			Files.write(properties, ("webroot=" + webroot + "\n" +
+					"port=" + port + "\n" +
+					"https_port=" + httpsPort + "\n" +
+					"keystore=" + keystore + "\n" +
+					"keystore_password=" + PASSWORD + "\n" +
+					"engine=" + engine + "\n" +
+					"http2=false\n" +
+					"queue_delay_target=0\n" +
+					"access_log=\n").getBytes(StandardCharsets.ISO_8859_1));
+			ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+
+			server = new WebServer();
+			Thread thread = new Thread(server::start, "acceptor-0");
+			thread.setDaemon(true);
+			thread.start();
+
+			address = new InetSocketAddress("127.0.0.1", port);
+			secureAddress = new InetSocketAddress("127.0.0.1", httpsPort);
+			// Wait for the listening sockets, the HTTPS one opens once the TLS context is loaded
+			for (int i = 0; i < 200; i++) {
+				try (Socket socket = new Socket()) {
+					socket.connect(secureAddress, 1000);
+					return;
+				} catch (IOException e) {
+					Thread.sleep(50);
+				}
+			}
+			throw new IOException("The server did not start on " + secureAddress);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			server.stop();
+			try (Stream<Path> paths = Files.walk(webroot)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+
+		private static int freePort() throws IOException {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				return socket.getLocalPort();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Handshake {
+
+		@Param({"true", "false"})
+		public boolean resumption;
+
+		private SSLContext clientContext;
+
+		private byte[] request;
+
+		@Setup
+		public void setup() throws GeneralSecurityException {
+			clientContext = clientContext();
+			request = ("GET /index.html HTTP/1.1\r\n" +
+					"Host: localhost\r\n" +
+					"Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Bulk {
+
+		@Param({"true", "false"})
+		public boolean secure;
+
+		private Socket socket;
+
+		private InputStream in;
+
+		private OutputStream out;
+
+		private byte[] request;
+
+		private final byte[] buffer = new byte[64 * 1024];
+
+		@Setup(Level.Trial)
+		public void setup(Server server) throws IOException, GeneralSecurityException {
+			if (secure) {
+				socket = clientContext().getSocketFactory().createSocket();
+			} else {
+				socket = new Socket();
+			}
+			socket.setTcpNoDelay(true);
+			socket.connect(secure ? server.secureAddress : server.address, 1000);
+			socket.setSoTimeout(5000);
+			in = socket.getInputStream();
+			out = socket.getOutputStream();
+			request = ("GET /large.bin HTTP/1.1\r\n" +
+					"Host: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			socket.close();
+		}
+	}
+
+	@Benchmark
+	public int handshake(Server server, Handshake state) throws IOException {
+		try (SSLSocket socket = (SSLSocket) state.clientContext.getSocketFactory().createSocket()) {
+			socket.setTcpNoDelay(true);
+			socket.connect(server.secureAddress, 1000);
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			out.write(state.request);
+			out.flush();
+			int length = readResponse(socket.getInputStream(), new byte[1024], BODY.length);
+			if (!state.resumption) {
+				socket.getSession().invalidate();
+			}
+			return length;
+		}
+	}
+
+	@Benchmark
+	public int bulk(Bulk state) throws IOException {
+		state.out.write(state.request);
+		state.out.flush();
+		return readResponse(state.in, state.buffer, LARGE_SIZE);
+	}
+
+	/**
+	 * Read the head and the body of the response, nothing follows it on the connection.
+	 * @return the number of bytes read
+	 */
+	private static int readResponse(InputStream in, byte[] buffer, int bodyLength) throws IOException {
+		int length = 0;
+		int headEnd = -1;
+		while (headEnd < 0) {
+			int n = in.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				throw new IOException("Connection closed before the end of the head");
+			}
+			length += n;
+			for (int i = 3; i < length; i++) {
+				if (buffer[i - 3] == '\r' && buffer[i - 2] == '\n' && buffer[i - 1] == '\r' && buffer[i] == '\n') {
+					headEnd = i + 1;
+					break;
+				}
+			}
+		}
+		int total = headEnd + bodyLength;
+		int read = length;
+		while (read < total) {
+			int n = in.read(buffer, 0, Math.min(buffer.length, total - read));
+			if (n < 0) {
+				throw new IOException("Connection closed before the end of the body");
+			}
+			read += n;
+		}
+		return read;
+	}
+
+	/**
+	 * The certificate is self-signed: the client trusts any.
+	 */
+	private static SSLContext clientContext() throws GeneralSecurityException {
+		TrustManager trustAll = new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		};
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, new TrustManager[] {trustAll}, null);
+		return context;
+	}
+}
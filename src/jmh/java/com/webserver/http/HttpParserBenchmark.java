@@ -0,0 +1,89 @@
+package com.webserver.http;
+
+import com.webserver.exceptions.HttpParsingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parsing of a request head, from a fresh parser as {@link HttpParser#parseHttpRequest} does,
+ * and from the parser and the buffer a connection keeps between its requests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpParserBenchmark {
+
+	/**
+	 * The headers sent by a browser navigating to a page, and by a command line client.
+	 */
+	static final String BROWSER_REQUEST = "GET /index.html?k1=v1 HTTP/1.1\r\n" +
+			"Host: localhost:8080\r\n" +
+			"Connection: keep-alive\r\n" +
+			"Cache-Control: max-age=0\r\n" +
+			"sec-ch-ua: \" Not A;Brand\";v=\"99\", \"Chromium\";v=\"98\", \"Google Chrome\";v=\"98\"\r\n" +
+			"sec-ch-ua-mobile: ?0\r\n" +
+			"sec-ch-ua-platform: \"Windows\"\r\n" +
+			"Upgrade-Insecure-Requests: 1\r\n" +
+			"User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/98.0.4758.102 Safari/537.36\r\n" +
+			"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.9\r\n" +
+			"Sec-Fetch-Site: cross-site\r\n" +
+			"Sec-Fetch-Mode: navigate\r\n" +
+			"Sec-Fetch-User: ?1\r\n" +
+			"Sec-Fetch-Dest: document\r\n" +
+			"Accept-Encoding: gzip, deflate, br\r\n" +
+			"Accept-Language: en-US,en;q=0.9\r\n" +
+			"If-None-Match: \"5f3a-61c8e2a0\"\r\n" +
+			"If-Modified-Since: Sat, 26 Feb 2022 10:12:48 GMT\r\n\r\n";
+
+	static final String CURL_REQUEST = "GET /index.html HTTP/1.1\r\n" +
+			"Host: localhost:8080\r\n" +
+			"User-Agent: curl/7.81.0\r\n" +
+			"Accept: */*\r\n\r\n";
+
+	@Param({"browser", "curl"})
+	public String headers;
+
+	private byte[] bytes;
+
+	private HttpParser parser;
+
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() {
+		bytes = ("browser".equals(headers) ? BROWSER_REQUEST : CURL_REQUEST).getBytes(StandardCharsets.ISO_8859_1);
+		parser = new HttpParser(true);
+		buffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+	}
+
+	@Benchmark
+	public HttpRequest parseHttpRequest() throws HttpParsingException, IOException {
+		return HttpParser.parseHttpRequest(new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public HttpRequest parseReused() throws HttpParsingException {
+		buffer.clear();
+		buffer.put(bytes);
+		buffer.flip();
+		return parser.parse(buffer);
+	}
+}
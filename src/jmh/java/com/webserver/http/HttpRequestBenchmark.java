@@ -0,0 +1,65 @@
+package com.webserver.http;
+
+import com.webserver.exceptions.HttpParsingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The accessors called by the handlers on every request: the method lookup and the header fields
+ * read to serve a static file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpRequestBenchmark {
+
+	/**
+	 * The headers looked up by a GET, present or not in the request.
+	 */
+	private static final HttpHeaderName[] LOOKED_UP_HEADERS = {
+			HttpHeaderName.CONNECTION, HttpHeaderName.ACCEPT_ENCODING, HttpHeaderName.IF_NONE_MATCH,
+			HttpHeaderName.IF_MODIFIED_SINCE, HttpHeaderName.RANGE, HttpHeaderName.IF_RANGE
+	};
+
+	@Param({"GET", "HEAD"})
+	public String method;
+
+	private HttpRequest request;
+
+	@Setup
+	public void setup() throws HttpParsingException, IOException {
+		request = HttpParser.parseHttpRequest(new ByteArrayInputStream(
+				HttpParserBenchmark.BROWSER_REQUEST.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	@Benchmark
+	public HttpMethod setMethod() throws HttpParsingException {
+		request.setMethod(method);
+		return request.getMethod();
+	}
+
+	@Benchmark
+	public void lookupHeaders(Blackhole blackhole) {
+		for (HttpHeaderName name : LOOKED_UP_HEADERS) {
+			blackhole.consume(request.getHeader(name));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.webserver.http;
+
+import com.webserver.exceptions.HttpExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The encoding of a response with an in-memory body, as served from the content cache, to the
+ * buffered stream of a connection. The stream discards the bytes, so only the server side is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpResponseBenchmark {
+
+	/**
+	 * The size of the buffer of the socket stream in the blocking engine.
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	@Param({"1024", "1048576"})
+	public int bodySize;
+
+	private ByteBuffer content;
+
+	private OutputStream outputStream;
+
+	@Setup
+	public void setup() {
+		byte[] bytes = new byte[bodySize];
+		Arrays.fill(bytes, (byte) 'a');
+		content = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		outputStream = new BufferedOutputStream(new DiscardingOutputStream(), OUTPUT_BUFFER_SIZE);
+	}
+
+	@Benchmark
+	public long respond() throws HttpExecutionException, IOException {
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_OK);
+		response.setHttpVersion("HTTP/1.1");
+		response.setKeepAlive(true);
+		response.setHeader("Connection", "keep-alive");
+		response.setHeader("Keep-Alive", "timeout=5");
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("ETag", "\"5f3a-61c8e2a0\"");
+		response.setHeader("Last-Modified", "Sat, 26 Feb 2022 10:12:48 GMT");
+		response.setContentType("text/html");
+		response.setBody(content.duplicate());
+		response.respond(outputStream);
+		outputStream.flush();
+		return response.getBytesWritten();
+	}
+
+	/**
+	 * Counts the bytes instead of sending them, the count keeps the writes from being eliminated.
+	 */
+	private static class DiscardingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.webserver.http;
+
+import com.webserver.exceptions.HttpExecutionException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The system calls of a response written to a socket by the blocking engine, through a buffered
+ * stream as before and through a {@link GatheringOutputStream}.
+ *
+ * The socket is replaced by a channel counting its write calls, each one a write or writev system
+ * call on a real socket. The system calls per response are the writes counter over the responses one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseWriteBenchmark {
+
+	/**
+	 * The size of the buffer of the socket stream in the blocking engine.
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	@Param({"1024", "16384", "131072"})
+	public int bodySize;
+
+	private ByteBuffer content;
+
+	private CountingChannel channel;
+
+	private OutputStream bufferedStream;
+
+	private OutputStream gatheringStream;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class SystemCalls {
+
+		public long writes;
+
+		public long responses;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			writes = 0;
+			responses = 0;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		byte[] bytes = new byte[bodySize];
+		Arrays.fill(bytes, (byte) 'a');
+		content = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		channel = new CountingChannel();
+		bufferedStream = new BufferedOutputStream(Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE);
+		gatheringStream = new GatheringOutputStream(channel, OUTPUT_BUFFER_SIZE);
+	}
+
+	@Benchmark
+	public long buffered(SystemCalls systemCalls) throws HttpExecutionException, IOException {
+		return respond(bufferedStream, systemCalls);
+	}
+
+	@Benchmark
+	public long gathering(SystemCalls systemCalls) throws HttpExecutionException, IOException {
+		return respond(gatheringStream, systemCalls);
+	}
+
+	private long respond(OutputStream outputStream, SystemCalls systemCalls)
+			throws HttpExecutionException, IOException {
+		channel.writes = 0;
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_OK);
+		response.setKeepAlive(true);
+		response.setHeader("Connection", "keep-alive");
+		response.setHeader("Keep-Alive", "timeout=5");
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("ETag", "\"5f3a-61c8e2a0\"");
+		response.setContentType("text/html");
+		response.setBody(content.duplicate());
+		response.respond(outputStream, channel);
+		outputStream.flush();
+		systemCalls.writes += channel.writes;
+		systemCalls.responses++;
+		return response.getBytesWritten();
+	}
+
+	/**
+	 * Accepts all the bytes at once, as a socket with room in its send buffer.
+	 */
+	private static class CountingChannel implements GatheringByteChannel {
+
+		private long writes;
+
+		@Override
+		public int write(ByteBuffer src) {
+			writes++;
+			int n = src.remaining();
+			src.position(src.limit());
+			return n;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			writes++;
+			long n = 0;
+			for (int i = offset; i < offset + length; i++) {
+				n += srcs[i].remaining();
+				srcs[i].position(srcs[i].limit());
+			}
+			return n;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.webserver.router;
+
+import com.webserver.http.HttpMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dispatch of a request among a growing number of routes: an exact route, a prefix route and the
+ * static files of the / prefix. The time should not grow with the number of routes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int routes;
+
+	private Router router;
+
+	private String exactPath;
+
+	private String prefixPath;
+
+	@Setup
+	public void setup() {
+		Handler handler = (request, response) -> {
+		};
+		Router.Builder builder = Router.builder();
+		for (int i = 0; i < routes; i++) {
+			builder.prefix("/service" + i, handler);
+			builder.exact("/service" + i + "/health", handler, HttpMethod.GET);
+		}
+		builder.prefix("/", handler, HttpMethod.GET);
+		router = builder.build();
+		exactPath = "/service" + routes / 2 + "/health";
+		prefixPath = "/service" + routes / 2 + "/orders/42";
+	}
+
+	@Benchmark
+	public Handler exact() {
+		return router.route(HttpMethod.GET, exactPath);
+	}
+
+	@Benchmark
+	public Handler prefix() {
+		return router.route(HttpMethod.POST, prefixPath);
+	}
+
+	@Benchmark
+	public Handler staticFile() {
+		return router.route(HttpMethod.GET, "/images/logo.png");
+	}
+}
@@ -0,0 +1,174 @@
+package com.webserver.buffer;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.http.HttpParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a pool of direct buffers of one size, shared by the connections for their I/O.
+ *
+ * A direct buffer is written to a socket as is, where a heap buffer is first copied into a temporary
+ * direct buffer by the JDK, but it is expensive to allocate and only freed by the garbage collector.
+ * The buffers are therefore acquired when a connection has bytes to hold and released to the pool
+ * as soon as it has none, so the idle connections hold no buffer and the busy ones reuse the same
+ * few. At most a bounded number of buffers is kept, the others are left to the garbage collector.
+ *
+ * With leak detection, the stack of each acquisition is recorded until the buffer is released, and a
+ * buffer released twice or not acquired from the pool fails the release.
+ */
+public class BufferPool {
+
+	private final static Logger LOGGER = LogManager.getLogger(BufferPool.class);
+
+	private static BufferPool bufferPool;
+
+	private final int bufferSize;
+
+	/**
+	 * The maximum number of released buffers kept for reuse. 0 disables the pool, heap buffers are
+	 * then allocated.
+	 */
+	private final int maxPooled;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The number of buffers in the pool, bounding it without the linear size() of the queue.
+	 */
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	private final AtomicInteger inUse = new AtomicInteger();
+
+	private final LongAdder allocations = new LongAdder();
+
+	/**
+	 * The stack of the acquisition of each buffer in use, null without leak detection.
+	 * A buffer is compared by identity, not by content.
+	 */
+	private final Map<ByteBuffer, Throwable> acquisitions;
+
+	/**
+	 * @param bufferSize the capacity of the buffers
+	 * @param maxPooled the maximum number of released buffers kept, 0 to disable the pool
+	 * @param leakDetection whether the acquisitions are tracked until their release
+	 */
+	public BufferPool(int bufferSize, int maxPooled, boolean leakDetection) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.acquisitions = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+	}
+
+	/**
+	 * The pool of the buffers of {@link HttpParser#BUFFER_SIZE} bytes, which hold any accepted line.
+	 */
+	public static synchronized BufferPool getInstance() {
+		if (bufferPool == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			bufferPool = new BufferPool(HttpParser.BUFFER_SIZE, configuration.getBufferPoolSize(),
+					configuration.isBufferLeakDetection());
+		}
+		return bufferPool;
+	}
+
+	/**
+	 * @return a cleared buffer, to be given back with {@link #release(ByteBuffer)}
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		if (buffer != null) {
+			pooled.decrementAndGet();
+		} else {
+			buffer = maxPooled > 0 ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+			allocations.increment();
+		}
+		inUse.incrementAndGet();
+		if (acquisitions != null) {
+			acquisitions.put(buffer, new Throwable("Buffer acquired by " + Thread.currentThread().getName()));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Give back a buffer, which must not be used anymore.
+	 * @param buffer
+	 * @throws IllegalArgumentException if the buffer is not of the size of the pool
+	 * @throws IllegalStateException with leak detection, if the buffer is not in use
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() != bufferSize) {
+			throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes released to a pool of "
+					+ bufferSize + " bytes buffers");
+		}
+		if (acquisitions != null && acquisitions.remove(buffer) == null) {
+			throw new IllegalStateException("Buffer released twice or not acquired from the pool");
+		}
+		inUse.decrementAndGet();
+		if (pooled.incrementAndGet() <= maxPooled) {
+			buffer.clear();
+			pool.offer(buffer);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the stacks of the acquisitions of the buffers not released yet, empty without leak detection
+	 */
+	public List<Throwable> getLeaks() {
+		if (acquisitions == null) {
+			return Collections.emptyList();
+		}
+		synchronized (acquisitions) {
+			return new ArrayList<>(acquisitions.values());
+		}
+	}
+
+	/**
+	 * Log the buffers not released yet, e.g. once the server is stopped.
+	 * @return the number of buffers not released
+	 */
+	public int checkLeaks() {
+		List<Throwable> leaks = getLeaks();
+		for (Throwable leak : leaks) {
+			LOGGER.error("Buffer never released", leak);
+		}
+		return leaks.size();
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return the number of buffers acquired and not released
+	 */
+	public int getInUse() {
+		return inUse.get();
+	}
+
+	/**
+	 * @return the number of released buffers kept for reuse
+	 */
+	public int getPooled() {
+		return pooled.get();
+	}
+
+	/**
+	 * @return the number of buffers allocated, because the pool was empty
+	 */
+	public long getAllocations() {
+		return allocations.sum();
+	}
+}
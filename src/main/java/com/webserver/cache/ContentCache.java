@@ -0,0 +1,309 @@
+package com.webserver.cache;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.http.ContentCoding;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a bounded in-memory cache of static file contents, keyed by resolved path.
+ *
+ * Entries are evicted in least recently used order once the byte budget is exceeded, and are
+ * validated against the size and the modification time of the file on every lookup, so a file
+ * changed on disk is reloaded. The contents are kept in heap or, optionally, in direct buffers.
+ * The compressed variants of a content are cached along with it and die with its file version.
+ */
+public class ContentCache {
+
+	private final static Logger LOGGER = LogManager.getLogger(ContentCache.class);
+
+	private static ContentCache contentCache;
+
+	/**
+	 * The maximum number of bytes of file content held in the cache. 0 disables the cache.
+	 */
+	private final long capacity;
+
+	/**
+	 * Files larger than this are never cached.
+	 */
+	private final long maxFileSize;
+
+	/**
+	 * Whether the contents are stored in direct buffers, outside the heap.
+	 */
+	private final boolean offHeap;
+
+	/**
+	 * The entries in access order, the eldest is evicted first. Guarded by this.
+	 */
+	private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The number of bytes of the cached contents. Guarded by this.
+	 */
+	private long size;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public ContentCache(long capacity, long maxFileSize, boolean offHeap) {
+		this.capacity = capacity;
+		this.maxFileSize = Math.min(maxFileSize, capacity);
+		this.offHeap = offHeap;
+	}
+
+	public static synchronized ContentCache getInstance() {
+		if (contentCache == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			contentCache = new ContentCache(configuration.getCacheSize(), configuration.getCacheMaxFileSize(),
+					configuration.isCacheOffHeap());
+		}
+		return contentCache;
+	}
+
+	/**
+	 * Look up the content of a file, loading it on a miss.
+	 * @param path the resolved path of the file
+	 * @return the entry, or null if the file is too large to be cached
+	 * @throws FileNotFoundException if the path is not a regular file
+	 * @throws IOException
+	 */
+	public Entry get(Path path) throws IOException {
+		return get(path, readAttributes(path));
+	}
+
+	/**
+	 * Look up the content of a file whose attributes were just read, loading it on a miss.
+	 * @param path the resolved path of the file
+	 * @param attributes the current attributes of the file, to validate the entry
+	 * @return the entry, or null if the file is too large to be cached
+	 * @throws IOException
+	 */
+	public Entry get(Path path, BasicFileAttributes attributes) throws IOException {
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		synchronized (this) {
+			Entry entry = entries.get(path);
+			if (entry != null) {
+				if (entry.length == length && entry.lastModified == lastModified) {
+					hits.increment();
+					return entry;
+				}
+				// Stale: the file changed since it was loaded
+				remove(path);
+			}
+		}
+		misses.increment();
+		if (length > maxFileSize) {
+			return null;
+		}
+
+		Entry entry = new Entry(path, load(path, length), lastModified);
+		synchronized (this) {
+			Entry previous = entries.put(path, entry);
+			if (previous != null) {
+				size -= previous.weight;
+			}
+			size += entry.weight;
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Look up the encoded variant of a cached content, encoding it on the first request, so a file
+	 * version is compressed once. The variant is charged to the byte budget of the cache.
+	 * @param entry
+	 * @param coding
+	 * @param level the compression level
+	 * @return the encoded content
+	 * @throws IOException
+	 */
+	public ByteBuffer getVariant(Entry entry, ContentCoding coding, int level) throws IOException {
+		ByteBuffer variant;
+		synchronized (this) {
+			variant = entry.variants[coding.ordinal()];
+		}
+		if (variant != null) {
+			return variant.duplicate();
+		}
+
+		variant = coding.encode(entry.content, level);
+		synchronized (this) {
+			if (entry.variants[coding.ordinal()] == null && entries.get(entry.path) == entry) {
+				entry.variants[coding.ordinal()] = variant;
+				entry.weight += variant.remaining();
+				size += variant.remaining();
+				evict();
+			}
+		}
+		return variant.duplicate();
+	}
+
+	/**
+	 * Drop the entry of a file the server just replaced. The entries are validated by size and
+	 * modification time, which a write within the same millisecond and of the same size would not change.
+	 * @param path the resolved path of the file
+	 */
+	public synchronized void invalidate(Path path) {
+		remove(path);
+	}
+
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ContentCache[entries=%d, size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+				getEntryCount(), getSize(), capacity, getHits(), getMisses(), getEvictions());
+	}
+
+	private void remove(Path path) {
+		Entry entry = entries.remove(path);
+		if (entry != null) {
+			size -= entry.weight;
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries until the cache fits its budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+		while (size > capacity && iterator.hasNext()) {
+			Entry eldest = iterator.next().getValue();
+			iterator.remove();
+			size -= eldest.weight;
+			evictions.increment();
+			LOGGER.debug("Evicted {}", eldest.path);
+		}
+	}
+
+	/**
+	 * Read the attributes of a file with a single stat.
+	 * @param path
+	 * @return the attributes of the file
+	 * @throws FileNotFoundException if the path is not a regular file
+	 * @throws IOException
+	 */
+	public static BasicFileAttributes readAttributes(Path path) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(path + " (No such file)");
+		}
+		if (!attributes.isRegularFile()) {
+			throw new FileNotFoundException(path + " (Not a file)");
+		}
+		return attributes;
+	}
+
+	private ByteBuffer load(Path path, long length) throws IOException {
+		ByteBuffer content = offHeap ? ByteBuffer.allocateDirect((int) length) : ByteBuffer.allocate((int) length);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (content.hasRemaining()) {
+				if (channel.read(content) < 0) {
+					break;
+				}
+			}
+		}
+		content.flip();
+		return content;
+	}
+
+	/**
+	 * The cached content of one file version.
+	 */
+	public static class Entry {
+
+		private final Path path;
+
+		private final ByteBuffer content;
+
+		private final long length;
+
+		private final long lastModified;
+
+		/**
+		 * The encoded variants of the content, indexed by content coding. Guarded by the cache.
+		 */
+		private final ByteBuffer[] variants = new ByteBuffer[ContentCoding.values().length];
+
+		/**
+		 * The number of bytes charged to the cache: the content and its variants. Guarded by the cache.
+		 */
+		private long weight;
+
+		Entry(Path path, ByteBuffer content, long lastModified) {
+			this.path = path;
+			this.content = content;
+			this.length = content.remaining();
+			this.lastModified = lastModified;
+			this.weight = length;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * The view shares the cached bytes, which must not be modified.
+		 * @return a view of the content with its own position, safe to consume
+		 */
+		public ByteBuffer getContent() {
+			return content.duplicate();
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.webserver.config;
+
+/**
+ * What a request thread does when the ring buffer of the access log is full.
+ *
+ * DROP:  the record is discarded and counted, the request never waits for the disk.
+ * BLOCK: the thread waits for the writer to free a slot, no record is lost.
+ */
+public enum AccessLogPolicy {
+	DROP, BLOCK
+}
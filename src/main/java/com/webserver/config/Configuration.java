@@ -26,6 +26,242 @@ public class Configuration {
 	 */
 	private int timeout;
 
+	/**
+	 * The granularity of the idle timeout: idle connections are closed at most this late.
+	 * Unit: millisecond
+	 */
+	private long timeoutGranularity = 1000;
+
+	/**
+	 * The connection engine, blocking thread-per-connection or non-blocking selector event loops.
+	 */
+	private Engine engine = Engine.BLOCKING;
+
+	/**
+	 * The executor running the client handlers of the blocking engine.
+	 */
+	private ExecutorType executorType = ExecutorType.FIXED;
+
+	/**
+	 * The number of selector event loops of the NIO engine. 0 means one per available processor.
+	 */
+	private int ioThreads;
+
+	/**
+	 * The byte budget of the in-memory static content cache. 0 disables the cache.
+	 */
+	private long cacheSize;
+
+	/**
+	 * Files larger than this number of bytes are not cached.
+	 */
+	private long cacheMaxFileSize;
+
+	/**
+	 * Whether the cached contents are stored in direct buffers, outside the heap.
+	 */
+	private boolean cacheOffHeap;
+
+	/**
+	 * Whether compressible responses are gzip or deflate encoded for the clients accepting it.
+	 */
+	private boolean compression = true;
+
+	/**
+	 * Bodies smaller than this number of bytes are not compressed.
+	 */
+	private long compressionMinSize = 1024;
+
+	/**
+	 * The compression level, 1 (fastest) to 9 (smallest).
+	 */
+	private int compressionLevel = 6;
+
+	/**
+	 * The largest chunk of a response body of unknown length sent with the chunked transfer coding.
+	 * Each chunk is flushed to the client as soon as it is produced.
+	 */
+	private int chunkSize = 8192;
+
+	/**
+	 * The reserved path of the status page reporting the metrics of the server. Empty to disable it.
+	 */
+	private String statusPath = "/server-status";
+
+	/**
+	 * The file the access log is appended to. Empty to disable it.
+	 */
+	private String accessLog = "access.log";
+
+	/**
+	 * The format of the access log records: common, combined or a pattern of % directives.
+	 */
+	private String accessLogFormat = "combined";
+
+	/**
+	 * The number of records the access log holds before they are written.
+	 */
+	private int accessLogBufferSize = 16384;
+
+	private AccessLogPolicy accessLogPolicy = AccessLogPolicy.DROP;
+
+	/**
+	 * Whether Nagle's algorithm is disabled on the connections, so small responses are sent at once.
+	 */
+	private boolean tcpNoDelay = true;
+
+	/**
+	 * The size of the socket send buffer, in bytes. 0 keeps the default of the system.
+	 */
+	private int sendBufferSize;
+
+	/**
+	 * The size of the socket receive buffer, in bytes. 0 keeps the default of the system.
+	 */
+	private int receiveBufferSize;
+
+	/**
+	 * The time a close waits for the unsent data, in seconds. -1 disables the linger, the data is sent
+	 * in the background.
+	 */
+	private int soLinger = -1;
+
+	/**
+	 * The maximum number of connections waiting to be accepted.
+	 */
+	private int backlog = 128;
+
+	/**
+	 * The number of acceptor threads, each with its own listening socket (SO_REUSEPORT) and workers.
+	 */
+	private int acceptors = 1;
+
+	/**
+	 * The maximum number of accepted connections waiting for a thread of the blocking engine.
+	 */
+	private int maxQueueSize = 1024;
+
+	/**
+	 * The target of the queue delay in milliseconds, 0 to disable the delay based admission.
+	 */
+	private long queueDelayTarget = 5;
+
+	/**
+	 * The interval in milliseconds the queue delay must stay above the target to shed connections.
+	 */
+	private long queueDelayInterval = 100;
+
+	/**
+	 * The seconds of the Retry-After header of the 503 responses to the shed connections.
+	 */
+	private int retryAfter = 1;
+
+	/**
+	 * Whether the blocking engine speaks HTTP/2 over cleartext (h2c), by prior knowledge or upgrade.
+	 */
+	private boolean http2 = true;
+
+	/**
+	 * The number of concurrent streams an HTTP/2 client may open on a connection.
+	 */
+	private int http2MaxConcurrentStreams = 100;
+
+	/**
+	 * The port of the HTTPS listener, 0 to disable it.
+	 */
+	private int httpsPort = 0;
+
+	/**
+	 * The keystore holding the private key and the certificate chain of the server.
+	 */
+	private String keystore = "";
+
+	private String keystorePassword = "";
+
+	private String keystoreType = "PKCS12";
+
+	/**
+	 * The enabled TLS protocols, comma separated.
+	 */
+	private String tlsProtocols = "TLSv1.3,TLSv1.2";
+
+	/**
+	 * The enabled cipher suites, comma separated, empty for the defaults of the JDK.
+	 */
+	private String tlsCiphers = "";
+
+	/**
+	 * The number of TLS sessions kept for resumption, 0 for no limit.
+	 */
+	private int tlsSessionCacheSize = 10000;
+
+	/**
+	 * The lifetime of a TLS session in seconds.
+	 */
+	private int tlsSessionTimeout = 86400;
+
+	/**
+	 * The maximum number of released I/O buffers kept for reuse. 0 disables the pool.
+	 */
+	private int bufferPoolSize = 1024;
+
+	/**
+	 * Whether the acquisitions of the pooled buffers are tracked until their release, to report leaks.
+	 */
+	private boolean bufferLeakDetection;
+
+	/**
+	 * The largest request body accepted, in bytes. A larger one is refused with 413.
+	 */
+	private long maxBodySize = 104857600;
+
+	/**
+	 * The size from which a request body is moved from memory to a temporary file, in bytes.
+	 */
+	private int bodySpillThreshold = 65536;
+
+	/**
+	 * Whether PUT requests write their body to the webroot.
+	 */
+	private boolean uploads;
+
+	/**
+	 * The requests forwarded to the upstream servers, as a comma separated list of
+	 * path-prefix=host:port. Empty to disable the reverse proxy.
+	 */
+	private String proxyRoutes = "";
+
+	/**
+	 * The maximum number of connections to each upstream server, idle or in use.
+	 */
+	private int proxyMaxConnections = 32;
+
+	/**
+	 * The timeout to connect to an upstream server or wait for one of its connections, in milliseconds.
+	 */
+	private int proxyConnectTimeout = 1000;
+
+	/**
+	 * The timeout of a read from an upstream server, in milliseconds.
+	 */
+	private int proxyReadTimeout = 30000;
+
+	/**
+	 * The number of consecutive failures after which an upstream server is marked down, 0 to never.
+	 */
+	private int proxyMaxFails = 3;
+
+	/**
+	 * The time an upstream server marked down is not tried, in seconds.
+	 */
+	private int proxyFailTimeout = 10;
+
+	/**
+	 * The custom handlers mounted on path prefixes, as comma separated path-prefix=class pairs. Each class
+	 * implements com.webserver.router.Handler and has a public constructor without parameter.
+	 */
+	private String handlers = "";
+
 	public Configuration(int port, int maxThreadNum, String webroot, int timeout) {
 		this.port = port;
 		this.maxThreadNum = maxThreadNum;
@@ -64,4 +300,388 @@ public class Configuration {
 	public void setTimeout(int timeout) {
 		this.timeout = timeout;
 	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public int getIoThreads() {
+		return ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	public ExecutorType getExecutorType() {
+		return executorType;
+	}
+
+	public void setExecutorType(ExecutorType executorType) {
+		this.executorType = executorType;
+	}
+
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public long getCacheMaxFileSize() {
+		return cacheMaxFileSize;
+	}
+
+	public void setCacheMaxFileSize(long cacheMaxFileSize) {
+		this.cacheMaxFileSize = cacheMaxFileSize;
+	}
+
+	public boolean isCacheOffHeap() {
+		return cacheOffHeap;
+	}
+
+	public void setCacheOffHeap(boolean cacheOffHeap) {
+		this.cacheOffHeap = cacheOffHeap;
+	}
+
+	public boolean isCompression() {
+		return compression;
+	}
+
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	public long getCompressionMinSize() {
+		return compressionMinSize;
+	}
+
+	public void setCompressionMinSize(long compressionMinSize) {
+		this.compressionMinSize = compressionMinSize;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public long getTimeoutGranularity() {
+		return timeoutGranularity;
+	}
+
+	public void setTimeoutGranularity(long timeoutGranularity) {
+		this.timeoutGranularity = timeoutGranularity;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public String getStatusPath() {
+		return statusPath;
+	}
+
+	public void setStatusPath(String statusPath) {
+		this.statusPath = statusPath;
+	}
+
+	public String getAccessLog() {
+		return accessLog;
+	}
+
+	public void setAccessLog(String accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	public String getAccessLogFormat() {
+		return accessLogFormat;
+	}
+
+	public void setAccessLogFormat(String accessLogFormat) {
+		this.accessLogFormat = accessLogFormat;
+	}
+
+	public int getAccessLogBufferSize() {
+		return accessLogBufferSize;
+	}
+
+	public void setAccessLogBufferSize(int accessLogBufferSize) {
+		this.accessLogBufferSize = accessLogBufferSize;
+	}
+
+	public AccessLogPolicy getAccessLogPolicy() {
+		return accessLogPolicy;
+	}
+
+	public void setAccessLogPolicy(AccessLogPolicy accessLogPolicy) {
+		this.accessLogPolicy = accessLogPolicy;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public int getSoLinger() {
+		return soLinger;
+	}
+
+	public void setSoLinger(int soLinger) {
+		this.soLinger = soLinger;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	public int getAcceptors() {
+		return acceptors;
+	}
+
+	public void setAcceptors(int acceptors) {
+		this.acceptors = acceptors;
+	}
+
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	public void setMaxQueueSize(int maxQueueSize) {
+		this.maxQueueSize = maxQueueSize;
+	}
+
+	public long getQueueDelayTarget() {
+		return queueDelayTarget;
+	}
+
+	public void setQueueDelayTarget(long queueDelayTarget) {
+		this.queueDelayTarget = queueDelayTarget;
+	}
+
+	public long getQueueDelayInterval() {
+		return queueDelayInterval;
+	}
+
+	public void setQueueDelayInterval(long queueDelayInterval) {
+		this.queueDelayInterval = queueDelayInterval;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public boolean isHttp2() {
+		return http2;
+	}
+
+	public void setHttp2(boolean http2) {
+		this.http2 = http2;
+	}
+
+	public int getHttp2MaxConcurrentStreams() {
+		return http2MaxConcurrentStreams;
+	}
+
+	public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+		this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+	}
+
+	public int getHttpsPort() {
+		return httpsPort;
+	}
+
+	public void setHttpsPort(int httpsPort) {
+		this.httpsPort = httpsPort;
+	}
+
+	public String getKeystore() {
+		return keystore;
+	}
+
+	public void setKeystore(String keystore) {
+		this.keystore = keystore;
+	}
+
+	public String getKeystorePassword() {
+		return keystorePassword;
+	}
+
+	public void setKeystorePassword(String keystorePassword) {
+		this.keystorePassword = keystorePassword;
+	}
+
+	public String getKeystoreType() {
+		return keystoreType;
+	}
+
+	public void setKeystoreType(String keystoreType) {
+		this.keystoreType = keystoreType;
+	}
+
+	public String getTlsProtocols() {
+		return tlsProtocols;
+	}
+
+	public void setTlsProtocols(String tlsProtocols) {
+		this.tlsProtocols = tlsProtocols;
+	}
+
+	public String getTlsCiphers() {
+		return tlsCiphers;
+	}
+
+	public void setTlsCiphers(String tlsCiphers) {
+		this.tlsCiphers = tlsCiphers;
+	}
+
+	public int getTlsSessionCacheSize() {
+		return tlsSessionCacheSize;
+	}
+
+	public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+		this.tlsSessionCacheSize = tlsSessionCacheSize;
+	}
+
+	public int getTlsSessionTimeout() {
+		return tlsSessionTimeout;
+	}
+
+	public void setTlsSessionTimeout(int tlsSessionTimeout) {
+		this.tlsSessionTimeout = tlsSessionTimeout;
+	}
+
+	public int getBufferPoolSize() {
+		return bufferPoolSize;
+	}
+
+	public void setBufferPoolSize(int bufferPoolSize) {
+		this.bufferPoolSize = bufferPoolSize;
+	}
+
+	public boolean isBufferLeakDetection() {
+		return bufferLeakDetection;
+	}
+
+	public void setBufferLeakDetection(boolean bufferLeakDetection) {
+		this.bufferLeakDetection = bufferLeakDetection;
+	}
+
+	public long getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	public void setMaxBodySize(long maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
+	public int getBodySpillThreshold() {
+		return bodySpillThreshold;
+	}
+
+	public void setBodySpillThreshold(int bodySpillThreshold) {
+		this.bodySpillThreshold = bodySpillThreshold;
+	}
+
+	public boolean isUploads() {
+		return uploads;
+	}
+
+	public void setUploads(boolean uploads) {
+		this.uploads = uploads;
+	}
+
+	public String getProxyRoutes() {
+		return proxyRoutes;
+	}
+
+	public void setProxyRoutes(String proxyRoutes) {
+		this.proxyRoutes = proxyRoutes;
+	}
+
+	public int getProxyMaxConnections() {
+		return proxyMaxConnections;
+	}
+
+	public void setProxyMaxConnections(int proxyMaxConnections) {
+		this.proxyMaxConnections = proxyMaxConnections;
+	}
+
+	public int getProxyConnectTimeout() {
+		return proxyConnectTimeout;
+	}
+
+	public void setProxyConnectTimeout(int proxyConnectTimeout) {
+		this.proxyConnectTimeout = proxyConnectTimeout;
+	}
+
+	public int getProxyReadTimeout() {
+		return proxyReadTimeout;
+	}
+
+	public void setProxyReadTimeout(int proxyReadTimeout) {
+		this.proxyReadTimeout = proxyReadTimeout;
+	}
+
+	public int getProxyMaxFails() {
+		return proxyMaxFails;
+	}
+
+	public void setProxyMaxFails(int proxyMaxFails) {
+		this.proxyMaxFails = proxyMaxFails;
+	}
+
+	public int getProxyFailTimeout() {
+		return proxyFailTimeout;
+	}
+
+	public void setProxyFailTimeout(int proxyFailTimeout) {
+		this.proxyFailTimeout = proxyFailTimeout;
+	}
+
+	public String getHandlers() {
+		return handlers;
+	}
+
+	public void setHandlers(String handlers) {
+		this.handlers = handlers;
+	}
 }
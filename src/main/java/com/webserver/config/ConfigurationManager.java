@@ -44,6 +44,68 @@ public class ConfigurationManager {
 		String webroot = properties.getProperty("webroot", "WebContent");
 		int timeout = Integer.parseInt(properties.getProperty("timeout", "5"));
 		configuration = new Configuration(port, maxThreadNum, webroot, timeout);
+		configuration.setTimeoutGranularity(Long.parseLong(properties.getProperty("timeout_granularity", "1000")));
+		try {
+			configuration.setEngine(Engine.valueOf(properties.getProperty("engine", "blocking").trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			throw new HttpConfigurationException("Unknown engine " + properties.getProperty("engine"), e);
+		}
+		try {
+			configuration.setExecutorType(ExecutorType.valueOf(properties.getProperty("executor", "fixed").trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			throw new HttpConfigurationException("Unknown executor " + properties.getProperty("executor"), e);
+		}
+		configuration.setIoThreads(Integer.parseInt(properties.getProperty("io_threads", "0")));
+		configuration.setCacheSize(Long.parseLong(properties.getProperty("cache_size", "67108864")));
+		configuration.setCacheMaxFileSize(Long.parseLong(properties.getProperty("cache_max_file_size", "1048576")));
+		configuration.setCacheOffHeap(Boolean.parseBoolean(properties.getProperty("cache_off_heap", "false")));
+		configuration.setCompression(Boolean.parseBoolean(properties.getProperty("compression", "true")));
+		configuration.setCompressionMinSize(Long.parseLong(properties.getProperty("compression_min_size", "1024")));
+		configuration.setCompressionLevel(Integer.parseInt(properties.getProperty("compression_level", "6")));
+		configuration.setChunkSize(Integer.parseInt(properties.getProperty("chunk_size", "8192")));
+		configuration.setStatusPath(properties.getProperty("status_path", "/server-status").trim());
+		configuration.setAccessLog(properties.getProperty("access_log", "access.log").trim());
+		configuration.setAccessLogFormat(properties.getProperty("access_log_format", "combined").trim());
+		configuration.setAccessLogBufferSize(Integer.parseInt(properties.getProperty("access_log_buffer_size", "16384")));
+		try {
+			configuration.setAccessLogPolicy(
+					AccessLogPolicy.valueOf(properties.getProperty("access_log_policy", "drop").trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			throw new HttpConfigurationException("Unknown access log policy " + properties.getProperty("access_log_policy"), e);
+		}
+		configuration.setTcpNoDelay(Boolean.parseBoolean(properties.getProperty("tcp_no_delay", "true")));
+		configuration.setSendBufferSize(Integer.parseInt(properties.getProperty("so_sndbuf", "0")));
+		configuration.setReceiveBufferSize(Integer.parseInt(properties.getProperty("so_rcvbuf", "0")));
+		configuration.setSoLinger(Integer.parseInt(properties.getProperty("so_linger", "-1")));
+		configuration.setBacklog(Integer.parseInt(properties.getProperty("backlog", "128")));
+		configuration.setAcceptors(Math.max(1, Integer.parseInt(properties.getProperty("acceptors", "1"))));
+		configuration.setMaxQueueSize(Math.max(1, Integer.parseInt(properties.getProperty("max_queue_size", "1024"))));
+		configuration.setQueueDelayTarget(Long.parseLong(properties.getProperty("queue_delay_target", "5")));
+		configuration.setQueueDelayInterval(Math.max(1, Long.parseLong(properties.getProperty("queue_delay_interval", "100"))));
+		configuration.setRetryAfter(Integer.parseInt(properties.getProperty("retry_after", "1")));
+		configuration.setHttp2(Boolean.parseBoolean(properties.getProperty("http2", "true")));
+		configuration.setHttp2MaxConcurrentStreams(
+				Math.max(1, Integer.parseInt(properties.getProperty("http2_max_concurrent_streams", "100"))));
+		configuration.setHttpsPort(Integer.parseInt(properties.getProperty("https_port", "0")));
+		configuration.setKeystore(properties.getProperty("keystore", "").trim());
+		configuration.setKeystorePassword(properties.getProperty("keystore_password", ""));
+		configuration.setKeystoreType(properties.getProperty("keystore_type", "PKCS12").trim());
+		configuration.setTlsProtocols(properties.getProperty("tls_protocols", "TLSv1.3,TLSv1.2"));
+		configuration.setTlsCiphers(properties.getProperty("tls_ciphers", ""));
+		configuration.setTlsSessionCacheSize(Math.max(0, Integer.parseInt(properties.getProperty("tls_session_cache_size", "10000"))));
+		configuration.setTlsSessionTimeout(Math.max(0, Integer.parseInt(properties.getProperty("tls_session_timeout", "86400"))));
+		configuration.setBufferPoolSize(Math.max(0, Integer.parseInt(properties.getProperty("buffer_pool_size", "1024"))));
+		configuration.setBufferLeakDetection(Boolean.parseBoolean(properties.getProperty("buffer_leak_detection", "false")));
+		configuration.setMaxBodySize(Math.max(0, Long.parseLong(properties.getProperty("max_body_size", "104857600"))));
+		configuration.setBodySpillThreshold(Math.max(0, Integer.parseInt(properties.getProperty("body_spill_threshold", "65536"))));
+		configuration.setUploads(Boolean.parseBoolean(properties.getProperty("uploads", "false")));
+		configuration.setProxyRoutes(properties.getProperty("proxy_routes", "").trim());
+		configuration.setProxyMaxConnections(Math.max(1, Integer.parseInt(properties.getProperty("proxy_max_connections", "32"))));
+		configuration.setProxyConnectTimeout(Math.max(1, Integer.parseInt(properties.getProperty("proxy_connect_timeout", "1000"))));
+		configuration.setProxyReadTimeout(Math.max(0, Integer.parseInt(properties.getProperty("proxy_read_timeout", "30000"))));
+		configuration.setProxyMaxFails(Math.max(0, Integer.parseInt(properties.getProperty("proxy_max_fails", "3"))));
+		configuration.setProxyFailTimeout(Math.max(0, Integer.parseInt(properties.getProperty("proxy_fail_timeout", "10"))));
+		configuration.setHandlers(properties.getProperty("handlers", "").trim());
 	}
 
 	public Configuration getConfiguration() throws HttpConfigurationException {
@@ -0,0 +1,11 @@
+package com.webserver.config;
+
+/**
+ * The connection engine used by the webserver.
+ *
+ * BLOCKING: one pooled thread per connection, reading and writing through blocking socket streams.
+ * NIO:      a few selector event loops (one per core by default) multiplexing all connections.
+ */
+public enum Engine {
+	BLOCKING, NIO
+}
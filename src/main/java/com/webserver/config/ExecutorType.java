@@ -0,0 +1,11 @@
+package com.webserver.config;
+
+/**
+ * The executor running the client handlers of the blocking engine.
+ *
+ * FIXED:   a fixed pool of max_thread_num platform threads.
+ * VIRTUAL: one virtual thread per connection, requires Java 21 or later.
+ */
+public enum ExecutorType {
+	FIXED, VIRTUAL
+}
@@ -0,0 +1,152 @@
+package com.webserver.core;
+
+import com.webserver.config.Configuration;
+import com.webserver.http.HttpResponse;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.metrics.ServerMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the admission control of a thread pool of the blocking engine, shedding the
+ * connections the pool cannot serve in time instead of letting them wait until the clients give up.
+ *
+ * A connection is refused at once when the bounded queue of the pool is full. Below that bound, the
+ * time the connections wait for a thread is controlled as CoDel (RFC 8289) controls the sojourn time
+ * of packets: if even the connection that waited the least during an interval waited longer than the
+ * target, the queue is standing and the pool is overloaded. The connections that waited longer than
+ * the target are then shed, otherwise only the ones that waited longer than a whole interval.
+ *
+ * A shed connection is answered a pre-encoded 503 (Service Unavailable) with a Retry-After header
+ * (RFC 7231 section 7.1.3). The Date header is left out, which is allowed for a 5xx response
+ * (RFC 7231 section 7.1.1.2).
+ */
+public class AdmissionController {
+
+	private final static Logger LOGGER = LogManager.getLogger(AdmissionController.class);
+
+	private static final ServerMetrics METRICS = ServerMetrics.getInstance();
+
+	private static final int MAX_DRAIN_READS = 16;
+
+	/**
+	 * The buffer the bytes already sent by a shed client are read into and discarded.
+	 */
+	private static final ThreadLocal<ByteBuffer> DRAIN_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4096));
+
+	/**
+	 * The target of the queue delay in nanoseconds, 0 if only the bound of the queue is enforced.
+	 */
+	private final long target;
+
+	private final long interval;
+
+	/**
+	 * The response to the shed connections, read-only and duplicated for each one.
+	 */
+	private final ByteBuffer serviceUnavailable;
+
+	/**
+	 * The end of the current interval and the least delay of the connections dequeued during it.
+	 * Guarded by this.
+	 */
+	private long intervalEnd;
+	private long minDelay = Long.MAX_VALUE;
+	private boolean overloaded;
+
+	public AdmissionController(Configuration configuration) {
+		target = TimeUnit.MILLISECONDS.toNanos(configuration.getQueueDelayTarget());
+		interval = TimeUnit.MILLISECONDS.toNanos(configuration.getQueueDelayInterval());
+		intervalEnd = System.nanoTime() + interval;
+		HttpStatusCode statusCode = HttpStatusCode.SC_SERVICE_UNAVAILABLE;
+		byte[] response = ("HTTP/1.1 " + statusCode.code + " " + statusCode.message + "\r\n" +
+				"Server: " + HttpResponse.SERVER + "\r\n" +
+				"Retry-After: " + configuration.getRetryAfter() + "\r\n" +
+				"Content-Length: 0\r\n" +
+				"Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(response.length).put(response);
+		buffer.flip();
+		serviceUnavailable = buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Called when a connection leaves the queue for a thread.
+	 * @param acceptTime the System.nanoTime() the connection was accepted at
+	 * @return true if the connection is served, false if it must be shed
+	 */
+	public boolean admit(long acceptTime) {
+		long now = System.nanoTime();
+		long delay = now - acceptTime;
+		METRICS.recordQueue(delay);
+		if (target == 0) {
+			return true;
+		}
+		synchronized (this) {
+			if (now - intervalEnd >= 0) {
+				// Without any connection dequeued during the interval, the queue was empty
+				overloaded = minDelay != Long.MAX_VALUE && minDelay > target;
+				minDelay = Long.MAX_VALUE;
+				intervalEnd = now + interval;
+			}
+			if (delay < minDelay) {
+				minDelay = delay;
+			}
+			return delay <= (overloaded ? target : interval);
+		}
+	}
+
+	/**
+	 * Answer a connection 503 and close it. Called by the acceptors, so it never blocks: the bytes the
+	 * client already sent are read first, so closing the socket does not reset the connection before
+	 * the client reads the response.
+	 * @param channel a connection not served by a handler
+	 */
+	public void shed(SocketChannel channel) {
+		shed(channel, false);
+	}
+
+	/**
+	 * @param channel a connection not served by a handler
+	 * @param secure true if the connection was accepted by the HTTPS listener: it is closed without a
+	 *               response, which would cost the handshake the shedding saves
+	 */
+	public void shed(SocketChannel channel, boolean secure) {
+		METRICS.connectionShed();
+		if (secure) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+			return;
+		}
+		try {
+			channel.configureBlocking(false);
+			ByteBuffer drain = DRAIN_BUFFER.get();
+			for (int i = 0; i < MAX_DRAIN_READS; i++) {
+				drain.clear();
+				if (channel.read(drain) <= 0) {
+					break;
+				}
+			}
+			int written = channel.write(serviceUnavailable.duplicate());
+			METRICS.recordResponse(HttpStatusCode.SC_SERVICE_UNAVAILABLE);
+			METRICS.recordBytesSent(written);
+			channel.shutdownOutput();
+		} catch (IOException e) {
+			LOGGER.debug("Error shedding a connection: {}", e.getMessage());
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+	}
+}
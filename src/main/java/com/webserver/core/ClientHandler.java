@@ -1,19 +1,42 @@
 package com.webserver.core;
 
+import com.webserver.buffer.BufferPool;
+import com.webserver.cache.ContentCache;
 import com.webserver.config.ConfigurationManager;
 import com.webserver.exceptions.HttpExecutionException;
 import com.webserver.exceptions.HttpParsingException;
 import com.webserver.http.*;
+import com.webserver.http2.Http2FrameReader;
+import com.webserver.http2.Http2Settings;
+import com.webserver.log.AccessLog;
+import com.webserver.metrics.ServerMetrics;
+import com.webserver.router.Handler;
+import com.webserver.router.Router;
+import com.webserver.tls.TlsChannel;
+import com.webserver.tls.TlsContext;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This class handles the requests from one socket.
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, IdleTimer.Expirable {
 
 	private final static Logger LOGGER = LogManager.getLogger(ClientHandler.class);
 
@@ -23,21 +46,114 @@ public class ClientHandler implements Runnable {
 	private final Socket socket;
 
 	/**
-	 * The last request timestamp of the client. To determine if the client expired and should be cleaned up.
-	 * Unit: millisecond
+	 * The idle timeout of the connection, restarted after each response.
+	 * To determine if the client expired and should be cleaned up.
 	 */
-	private long lastRequestTimestamp;
+	private final IdleTimer.Timeout idleTimeout;
+
+	/**
+	 * The admission control of the pool the connection waits in.
+	 */
+	private final AdmissionController admission;
+
+	/**
+	 * The TLS configuration of the HTTPS listener the connection was accepted by, otherwise null.
+	 */
+	private final TlsContext tls;
+
+	/**
+	 * The time the connection was accepted, to measure its wait for a thread.
+	 */
+	private final long acceptTime = System.nanoTime();
+
+	/**
+	 * The read buffer of the connection. It lives as long as the socket, so the bytes of pipelined
+	 * requests read ahead are kept for the next iteration.
+	 */
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+
+	/**
+	 * The parser of the connection, filling the same request for each request.
+	 */
+	private final HttpParser parser = new HttpParser(true, MAX_BODY_SIZE, BODY_SPILL_THRESHOLD);
+
+	/**
+	 * The response of the connection, reset for each request.
+	 */
+	private final HttpResponse response = new HttpResponse();
+
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	private static final BufferPool BUFFER_POOL = BufferPool.getInstance();
+
+	private static final Path WEBROOT = Paths.get(
+			ConfigurationManager.getInstance().getConfiguration().getWebroot()).toAbsolutePath().normalize();
+
+	private static final ContentCache CONTENT_CACHE = ContentCache.getInstance();
+
+	private static final ServerMetrics METRICS = ServerMetrics.getInstance();
+
+	/**
+	 * The access log, null if it is disabled.
+	 */
+	private static final AccessLog ACCESS_LOG = AccessLog.getInstance();
+
+	/**
+	 * The routes of the server, compiled once.
+	 */
+	private static final Router ROUTER = Routes.getInstance();
+
+	private static final boolean COMPRESSION = ConfigurationManager.getInstance().getConfiguration().isCompression();
+
+	private static final long COMPRESSION_MIN_SIZE =
+			ConfigurationManager.getInstance().getConfiguration().getCompressionMinSize();
+
+	private static final int COMPRESSION_LEVEL = ConfigurationManager.getInstance().getConfiguration().getCompressionLevel();
+
+	private static final int CHUNK_SIZE = ConfigurationManager.getInstance().getConfiguration().getChunkSize();
+
+	private static final boolean HTTP2 = ConfigurationManager.getInstance().getConfiguration().isHttp2();
+
+	private static final long MAX_BODY_SIZE = ConfigurationManager.getInstance().getConfiguration().getMaxBodySize();
+
+	private static final int BODY_SPILL_THRESHOLD =
+			ConfigurationManager.getInstance().getConfiguration().getBodySpillThreshold();
 
 	private static final String TIMEOUT = String.format("timeout=%d",
 			ConfigurationManager.getInstance().getConfiguration().getTimeout());
 
-	public ClientHandler(Socket socket) {
+	public ClientHandler(Socket socket, IdleTimer idleTimer, AdmissionController admission) {
+		this(socket, idleTimer, admission, null);
+	}
+
+	/**
+	 * @param socket
+	 * @param idleTimer
+	 * @param admission
+	 * @param tls the TLS configuration if the socket was accepted by the HTTPS listener, otherwise null
+	 */
+	public ClientHandler(Socket socket, IdleTimer idleTimer, AdmissionController admission, TlsContext tls) {
 		this.socket = socket;
-		lastRequestTimestamp = System.currentTimeMillis();
+		this.admission = admission;
+		this.tls = tls;
+		readBuffer.flip();
+		idleTimeout = idleTimer.schedule(this);
+	}
+
+	/**
+	 * Answer the connection 503 instead of serving it, when the pool is overloaded.
+	 */
+	public void shed() {
+		idleTimeout.cancel();
+		admission.shed(socket.getChannel(), tls != null);
 	}
 
-	public long getLastRequestTimestamp() {
-		return lastRequestTimestamp;
+	/**
+	 * Called by the idle timer: the blocked read fails and the handler thread ends.
+	 */
+	@Override
+	public void expire() {
+		closeSocket();
 	}
 
 	public void closeSocket() {
@@ -61,50 +177,137 @@ public class ClientHandler implements Runnable {
 
 	@Override
 	public void run() {
-		// Obtain the input and output stream of the socket
+		if (!admission.admit(acceptTime)) {
+			shed();
+			return;
+		}
+
+		// Obtain the input and output stream of the socket. With TLS, the handshake is done by the first read
 		InputStream inputStream = null;
 		OutputStream outputStream = null;
+		TlsChannel tlsChannel = null;
+		// The output buffer is pooled: the channels write a direct buffer without copying it
+		ByteBuffer outputBuffer = null;
+		// The channel large bodies are transferred to, the files are copied through the stream with TLS
+		WritableByteChannel channel = null;
 		try {
-			inputStream = socket.getInputStream();
-			outputStream = socket.getOutputStream();
+			if (tls != null) {
+				tlsChannel = new TlsChannel(socket.getChannel(), tls.createEngine());
+				inputStream = tlsChannel.getInputStream();
+				outputBuffer = BUFFER_POOL.acquire();
+				outputStream = new GatheringOutputStream(tlsChannel, outputBuffer);
+			} else {
+				inputStream = socket.getInputStream();
+				if (socket.getChannel() != null) {
+					outputBuffer = BUFFER_POOL.acquire();
+					outputStream = new GatheringOutputStream(socket.getChannel(), outputBuffer);
+				} else {
+					outputStream = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+				}
+				channel = socket.getChannel();
+			}
 		} catch (IOException e) {
 			LOGGER.error(e.getMessage());
 			return;
 		}
 
+		METRICS.connectionOpened();
+
+		// RFC-7540: a client that knows that a server supports HTTP/2 starts with the connection preface
+		Http2Connection http2 = null;
+		if (HTTP2) {
+			try {
+				if (Http2FrameReader.readPreface(inputStream, readBuffer)) {
+					http2 = new Http2Connection(socket, inputStream, readBuffer, outputStream, idleTimeout, null, null);
+				}
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				closeSocket();
+			}
+		}
+
 		// To support keep-alive, process the requests from the client in a loop,
 		// until the socket is closed due to timeout
-		while (!Thread.currentThread().isInterrupted() && !socket.isClosed()) {
-			HttpResponse response = null;
+		while (http2 == null && !Thread.currentThread().isInterrupted() && !socket.isClosed()) {
+			HttpRequest request = null;
+			long handleStartTime = 0;
 			try {
 
 				LOGGER.debug("Before handle request");
-				HttpRequest request = HttpParser.parseHttpRequest(inputStream);
+				request = parser.parse(readBuffer);
+				if (request == null) {
+					// No pipelined request left in the buffer: send the pending responses before blocking
+					outputStream.flush();
+					boolean idle = parser.isIdle();
+					if (idle) {
+						METRICS.connectionIdle();
+					}
+					try {
+						// The 100 Continue asked by the client is sent before the body is read
+						request = parser.read(inputStream, readBuffer, outputStream);
+					} finally {
+						if (idle) {
+							METRICS.connectionBusy();
+						}
+					}
+				}
 				LOGGER.debug("After handle request");
-				lastRequestTimestamp = System.currentTimeMillis();
-				response = handleRequest(request);
+				request.setRemoteAddress(socket.getInetAddress());
+				handleStartTime = System.nanoTime();
+				METRICS.recordParse(handleStartTime - parser.getStartTime());
+				// RFC-7540: the h2c upgrade is only for cleartext, HTTP/2 over TLS is negotiated by ALPN
+				Http2Settings clientSettings = HTTP2 && tls == null ? Http2Connection.upgradeSettings(request) : null;
+				if (clientSettings != null) {
+					// RFC-7540: the response to the upgraded request is sent on the stream 1
+					Http2Connection.switchProtocols(outputStream);
+					http2 = new Http2Connection(socket, inputStream, readBuffer, outputStream, idleTimeout, request,
+							clientSettings);
+					break;
+				}
+				// A long response must not be cut by the timeout, the connection is only idle between requests
+				idleTimeout.suspend();
+				handleRequest(request, response);
 			} catch (FileNotFoundException e) {
 
 				LOGGER.error(e.getMessage());
-				response = new HttpResponse(HttpStatusCode.SC_NOT_FOUND);
+				response.reset();
+				response.setStatusCode(HttpStatusCode.SC_NOT_FOUND);
 			} catch (HttpParsingException e) {
 
 				LOGGER.error(e.getMessage());
-				response = new HttpResponse(e.getCode());
-			} catch (IOException e) { // thrown by readLine() due to the socket closed by the cleaner
+				response.reset();
+				response.setStatusCode(e.getCode());
+			} catch (IOException | HttpExecutionException e) { // thrown by read() or the 101 due to the socket closed
 
 				LOGGER.error("Thread interrupted: " + e.getMessage());
 				break;
 			}
 
+			long writeStartTime = System.nanoTime();
+			if (handleStartTime != 0) {
+				METRICS.recordHandle(writeStartTime - handleStartTime);
+			}
 			try {
-				response.respond(outputStream);
+				response.respond(outputStream, channel);
 			} catch (HttpExecutionException e) {
 
-				HttpResponse httpResponse = new HttpResponse(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
-				httpResponse.respond(outputStream);
+				METRICS.recordBytesSent(response.getBytesWritten());
+				// The connection is closed after the error, the response may have been cut
+				response.reset();
+				response.setStatusCode(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+				response.respond(outputStream);
 				LOGGER.error(e.getMessage());
 			}
+			long writeEndTime = System.nanoTime();
+			METRICS.recordWrite(writeEndTime - writeStartTime);
+			METRICS.recordResponse(response.getStatusCode());
+			METRICS.recordBytesSent(response.getBytesWritten());
+			if (ACCESS_LOG != null) {
+				ACCESS_LOG.log(socket.getInetAddress(), request, response.getCode(), response.getBytesWritten(),
+						writeEndTime - (handleStartTime != 0 ? parser.getStartTime() : writeStartTime));
+			}
+
+			idleTimeout.touch();
 
 			// If not keep alive, break and close the socket
 			if (!response.isKeepAlive()) {
@@ -112,35 +315,119 @@ public class ClientHandler implements Runnable {
 			}
 		}
 
+		if (http2 != null && !socket.isClosed()) {
+			http2.run();
+		}
+
+		try {
+			outputStream.flush();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+		if (tlsChannel != null && !socket.isClosed()) {
+			tlsChannel.closeOutbound();
+		}
+		if (outputBuffer != null) {
+			BUFFER_POOL.release(outputBuffer);
+		}
+		// Delete the temporary file of a body cut by the end of the connection
+		parser.reset();
+		idleTimeout.cancel();
 		closeSocket();
+		METRICS.connectionClosed();
 	}
 
 	/**
 	 * @param request
-	 * @return response
+	 * @return a new response
 	 * @throws FileNotFoundException
 	 */
-	private HttpResponse handleRequest(HttpRequest request) throws FileNotFoundException {
+	static HttpResponse handleRequest(HttpRequest request) throws FileNotFoundException {
 		HttpResponse response = new HttpResponse();
+		handleRequest(request, response);
+		return response;
+	}
+
+	/**
+	 * Shared by the blocking and the NIO engine, which reuse the response of the connection.
+	 * @param request
+	 * @param response reset, then filled
+	 * @throws FileNotFoundException
+	 */
+	static void handleRequest(HttpRequest request, HttpResponse response) throws FileNotFoundException {
+		response.reset();
+		try {
+			serve(request, response);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+			response.reset();
+			response.setStatusCode(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+			response.setContentLength(0);
+		} catch (RuntimeException e) {
+			// A failing handler must not end the thread of the connection nor the event loop of the NIO engine
+			LOGGER.error("Error handling " + request.getRequestTarget(), e);
+			response.reset();
+			response.setStatusCode(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+			response.setContentLength(0);
+		} finally {
+			// The body is consumed by the handler, its temporary file is deleted at once
+			if (request.getBody() != null) {
+				request.getBody().close();
+			}
+		}
+	}
 
+	/**
+	 * Dispatch the request to the handler of its route.
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private static void serve(HttpRequest request, HttpResponse response) throws IOException {
 		if (request.getKeepAlive()) {
 			response.setKeepAlive(true);
-			response.setHeader("Connection", "keep-alive");
-			response.setHeader("Keep-Alive", TIMEOUT);
+			response.setHeader(HttpHeaderName.CONNECTION, "keep-alive");
+			response.setHeader(HttpHeaderName.KEEP_ALIVE, TIMEOUT);
+		}
+		if ("HTTP/1.1".equals(request.getHttpVersion())) {
+			response.setChunkSize(CHUNK_SIZE);
 		}
 
-		// Generate response according to the request method
-		// Currently support GET and HEAD
-		switch (request.getMethod()) {
-			case GET:
-				handleGET(request, response);
-				break;
-			case HEAD:
-				handleHEAD(request, response);
-				break;
+		Handler handler = ROUTER.route(request.getMethod(), request.getRequestTarget());
+		if (handler == null) {
+			throw new FileNotFoundException(request.getRequestTarget() + " (No route)");
 		}
+		handler.handle(request, response);
+	}
 
-		return response;
+	/**
+	 * Report the metrics of the server, as JSON or, if asked with ?format=prometheus or an Accept
+	 * header preferring text/plain, in the Prometheus text format.
+	 * @param request
+	 * @param response
+	 */
+	static void handleStatus(HttpRequest request, HttpResponse response) {
+		String accept = request.getHeader(HttpHeaderName.ACCEPT);
+		boolean prometheus = "prometheus".equals(request.getQueries().get("format"))
+				|| (accept != null && accept.startsWith("text/plain"));
+		String body;
+		if (prometheus) {
+			body = METRICS.toPrometheus();
+			response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+		} else {
+			body = METRICS.toJson();
+			response.setContentType("application/json");
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		if (request.getMethod() == HttpMethod.HEAD) {
+			response.setContentLength(bytes.length);
+		} else {
+			response.setBody(ByteBuffer.wrap(bytes));
+		}
+		response.setHeader(HttpHeaderName.CACHE_CONTROL, "no-store");
+		response.setStatusCode(HttpStatusCode.SC_OK);
 	}
 
 	/**
@@ -154,16 +441,9 @@ public class ClientHandler implements Runnable {
 	 * @param response
 	 * @throws FileNotFoundException
 	 */
-	private void handleGET(HttpRequest request, HttpResponse response) throws FileNotFoundException {
-		LOGGER.info("enter handle get");
-		File file = new File(ConfigurationManager.getInstance().getConfiguration().getWebroot()
-				+ request.getRequestTarget());
-		FileInputStream fileInputStream = new FileInputStream(file);
-
-		response.setBody(fileInputStream);
-		response.setContentLength((int) file.length());
-		response.setStatusCode(HttpStatusCode.SC_OK);
-		response.setContentType("text/html");
+	static void handleGET(HttpRequest request, HttpResponse response) throws FileNotFoundException {
+		LOGGER.debug("enter handle get");
+		serveFile(request, response, false);
 	}
 
 	/**
@@ -174,13 +454,369 @@ public class ClientHandler implements Runnable {
 	 *    to the information sent in response to a GET request.
 	 * @param request
 	 * @param response
+	 * @throws FileNotFoundException
+	 */
+	static void handleHEAD(HttpRequest request, HttpResponse response) throws FileNotFoundException {
+		LOGGER.debug("enter handle head");
+		serveFile(request, response, true);
+	}
+
+	/**
+	 * Select the representation of the file a GET would send, with the same content coding, and set it
+	 * as the body of the response or, for a HEAD, only its header fields.
+	 * RFC-7233: a server MUST ignore a Range header field received with a request method other than GET.
+	 * @param request
+	 * @param response
+	 * @param head true to describe the representation without sending it
+	 * @throws FileNotFoundException
 	 */
-	private void handleHEAD(HttpRequest request, HttpResponse response) {
-		LOGGER.info("enter handle head");
-		File file = new File(ConfigurationManager.getInstance().getConfiguration().getWebroot()
-				+ request.getRequestTarget());
-		response.setContentLength((int) file.length());
+	private static void serveFile(HttpRequest request, HttpResponse response, boolean head) throws FileNotFoundException {
+		Path path = resolve(request);
+		BasicFileAttributes attributes = readAttributes(path);
+		String contentType = MimeTypes.forFileName(path.getFileName().toString());
+		ContentCoding coding = negotiateCoding(request, response, contentType);
+		if (coding != null && attributes.size() < COMPRESSION_MIN_SIZE) {
+			coding = null;
+		}
+		if (handleConditional(request, response, attributes, coding)) {
+			return;
+		}
+		response.setHeader(HttpHeaderName.ACCEPT_RANGES, "bytes");
+		List<ByteRange> ranges = head ? null : selectRanges(request, attributes);
+		if (ranges != null) {
+			handleRanges(path, attributes, contentType, ranges, response);
+			return;
+		}
+
+		// Hot small files are served from memory, the others are transferred from the disk
+		ContentCache.Entry entry = null;
+		if (CONTENT_CACHE.isEnabled()) {
+			try {
+				entry = CONTENT_CACHE.get(path, attributes);
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+		if (entry != null) {
+			ByteBuffer variant = null;
+			if (coding != null) {
+				try {
+					variant = CONTENT_CACHE.getVariant(entry, coding, COMPRESSION_LEVEL);
+				} catch (IOException e) {
+					LOGGER.error(e.getMessage());
+				}
+			}
+			// An encoding that does not shrink the content is not worth decoding
+			if (variant != null && variant.remaining() < entry.getLength()) {
+				response.setHeader(HttpHeaderName.CONTENT_ENCODING, coding.token);
+				if (head) {
+					response.setContentLength(variant.remaining());
+				} else {
+					response.setBody(variant);
+				}
+			} else {
+				response.setHeader(HttpHeaderName.ETAG, entityTag(attributes, null));
+				if (head) {
+					response.setContentLength(entry.getLength());
+				} else {
+					response.setBody(entry.getContent());
+				}
+			}
+		} else {
+			File file = path.toFile();
+			if (coding != null) {
+				// Too large to be cached: compressed while it is sent, its length is unknown, so it is chunked
+				response.setHeader(HttpHeaderName.CONTENT_ENCODING, coding.token);
+				if (!head) {
+					FileChannel channel;
+					try {
+						channel = FileChannel.open(path, StandardOpenOption.READ);
+					} catch (IOException e) {
+						throw new FileNotFoundException(file.getPath() + " (" + e.getMessage() + ")");
+					}
+					response.setBody(new DeflatingChannel(channel, coding, COMPRESSION_LEVEL), -1);
+				}
+			} else if (head) {
+				response.setContentLength(attributes.size());
+			} else {
+				response.setBody(new FileRegion(file, 0, attributes.size()));
+			}
+		}
 		response.setStatusCode(HttpStatusCode.SC_OK);
-		response.setContentType("text/html");
+		response.setContentType(contentType);
+	}
+
+	/**
+	 * RFC-7231
+	 * The PUT method requests that the state of the target resource be
+	 *    created or replaced with the state defined by the representation
+	 *    enclosed in the request message payload.
+	 * The body is written next to the target through a FileChannel, a spilled body is transferred from
+	 * its temporary file by the kernel, then the new file is moved over the target: a concurrent GET
+	 * reads the previous or the new content, never a partial one.
+	 * @param request
+	 * @param response
+	 * @throws FileNotFoundException if the target escapes the webroot
+	 */
+	static void handlePUT(HttpRequest request, HttpResponse response) throws FileNotFoundException {
+		LOGGER.debug("enter handle put");
+		Path path = resolve(request);
+		Path parent = path.getParent();
+		// RFC-7231: 409 Conflict, the target cannot be a file as it is a directory or its parent is missing
+		if (parent == null || Files.isDirectory(path) || !Files.isDirectory(parent)) {
+			response.setStatusCode(HttpStatusCode.SC_CONFLICT);
+			response.setContentLength(0);
+			return;
+		}
+		boolean created = !Files.exists(path);
+		Path temporary = null;
+		try {
+			// Not a createTempFile, whose owner-only permissions the uploaded file would keep
+			temporary = parent.resolve(".upload-" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE)) {
+				RequestBody body = request.getBody();
+				if (body != null) {
+					body.transferTo(channel);
+				}
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException ignored) {
+				}
+			}
+			response.setStatusCode(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+			response.setContentLength(0);
+			return;
+		}
+		CONTENT_CACHE.invalidate(path);
+		if (created) {
+			response.setStatusCode(HttpStatusCode.SC_CREATED);
+			response.setHeader(HttpHeaderName.LOCATION, request.getRequestTarget());
+			response.setContentLength(0);
+		} else {
+			response.setStatusCode(HttpStatusCode.SC_NO_CONTENT);
+		}
+	}
+
+	/**
+	 * RFC-7232
+	 * Set the validators of the file and evaluate the preconditions of the request.
+	 * If-None-Match takes precedence, If-Modified-Since is only evaluated without it.
+	 * @param request
+	 * @param response
+	 * @param attributes
+	 * @param coding the coding of the representation that would be sent, or null for identity
+	 * @return true if the response is a 304 Not Modified, sent without opening the file
+	 */
+	private static boolean handleConditional(HttpRequest request, HttpResponse response,
+											 BasicFileAttributes attributes, ContentCoding coding) {
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		response.setHeader(HttpHeaderName.ETAG, entityTag(attributes, coding));
+		response.setHeader(HttpHeaderName.LAST_MODIFIED, HttpDate.format(lastModified));
+
+		boolean notModified;
+		String ifNoneMatch = request.getHeader(HttpHeaderName.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			notModified = matchesEntityTag(ifNoneMatch, attributes);
+		} else {
+			long ifModifiedSince = HttpDate.parse(request.getHeader(HttpHeaderName.IF_MODIFIED_SINCE));
+			// HTTP dates have a resolution of one second
+			notModified = ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+		if (notModified) {
+			response.setStatusCode(HttpStatusCode.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	/**
+	 * RFC-7233
+	 * Evaluate the Range of the request. It is ignored when an If-Range validator does not match
+	 * the current version of the file, so the client gets the whole new representation.
+	 * @param request
+	 * @param attributes
+	 * @return the ranges to send, an empty list if none is satisfiable, or null to send the whole file
+	 */
+	private static List<ByteRange> selectRanges(HttpRequest request, BasicFileAttributes attributes) {
+		String range = request.getHeader(HttpHeaderName.RANGE);
+		if (range == null) {
+			return null;
+		}
+		String ifRange = request.getHeader(HttpHeaderName.IF_RANGE);
+		if (ifRange != null) {
+			ifRange = ifRange.trim();
+			boolean matches;
+			if (ifRange.startsWith("\"")) {
+				// Strong comparison, ranges are taken from the identity representation
+				matches = ifRange.equals(entityTag(attributes, null));
+			} else {
+				long date = HttpDate.parse(ifRange);
+				matches = date >= 0 && date / 1000 == attributes.lastModifiedTime().toMillis() / 1000;
+			}
+			if (!matches) {
+				return null;
+			}
+		}
+		return ByteRange.parse(range, attributes.size());
+	}
+
+	/**
+	 * RFC-7233
+	 * Send the ranges of the file: a single range as the body of a 206 Partial Content,
+	 * several ranges as the parts of a multipart/byteranges body. Ranges are never content coded.
+	 * @param path
+	 * @param attributes
+	 * @param contentType
+	 * @param ranges
+	 * @param response
+	 * @throws FileNotFoundException
+	 */
+	private static void handleRanges(Path path, BasicFileAttributes attributes, String contentType,
+									 List<ByteRange> ranges, HttpResponse response) throws FileNotFoundException {
+		long size = attributes.size();
+		if (ranges.isEmpty()) {
+			response.setStatusCode(HttpStatusCode.SC_RANGE_NOT_SATISFIABLE);
+			response.setHeader(HttpHeaderName.CONTENT_RANGE, "bytes */" + size);
+			response.setContentLength(0);
+			return;
+		}
+		response.setHeader(HttpHeaderName.ETAG, entityTag(attributes, null));
+
+		ContentCache.Entry entry = null;
+		if (CONTENT_CACHE.isEnabled()) {
+			try {
+				entry = CONTENT_CACHE.get(path, attributes);
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+		if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			if (entry != null) {
+				ByteBuffer content = entry.getContent();
+				content.position(content.position() + (int) range.first);
+				content.limit(content.position() + (int) range.length());
+				response.setBody(content);
+			} else {
+				response.setBody(new FileRegion(path.toFile(), range.first, range.length()));
+			}
+			response.setHeader(HttpHeaderName.CONTENT_RANGE, range.toContentRange(size));
+			response.setContentType(contentType);
+		} else {
+			FileChannel channel = null;
+			if (entry == null) {
+				try {
+					channel = FileChannel.open(path, StandardOpenOption.READ);
+				} catch (IOException e) {
+					throw new FileNotFoundException(path + " (" + e.getMessage() + ")");
+				}
+			}
+			String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+			ByteRangesChannel body = new ByteRangesChannel(channel, entry == null ? null : entry.getContent(),
+					ranges, contentType, size, boundary);
+			response.setBody(body, body.length());
+			response.setContentType("multipart/byteranges; boundary=" + boundary);
+		}
+		response.setStatusCode(HttpStatusCode.SC_PARTIAL_CONTENT);
+	}
+
+	/**
+	 * A strong entity tag derived from the size and the modification time of the file.
+	 * Each content coding is a different representation, so it gets its own tag.
+	 * @param attributes
+	 * @param coding
+	 * @return the quoted entity tag
+	 */
+	private static String entityTag(BasicFileAttributes attributes, ContentCoding coding) {
+		String tag = Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis());
+		return coding == null ? "\"" + tag + "\"" : "\"" + tag + "-" + coding.token + "\"";
+	}
+
+	/**
+	 * RFC-7232
+	 *          If-None-Match = "*" / 1#entity-tag
+	 *          entity-tag    = [ weak ] opaque-tag
+	 * If-None-Match uses the weak comparison, a tag of any coding of the current file version matches.
+	 * @param ifNoneMatch
+	 * @param attributes
+	 * @return true if one of the tags matches the current version of the file
+	 */
+	private static boolean matchesEntityTag(String ifNoneMatch, BasicFileAttributes attributes) {
+		String current = entityTag(attributes, null);
+		String prefix = current.substring(0, current.length() - 1) + "-";
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*")) {
+				return true;
+			}
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals(current)) {
+				return true;
+			}
+			for (ContentCoding coding : ContentCoding.values()) {
+				if (tag.length() == prefix.length() + coding.token.length() + 1
+						&& tag.startsWith(prefix) && tag.startsWith(coding.token, prefix.length())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static BasicFileAttributes readAttributes(Path path) throws FileNotFoundException {
+		try {
+			return ContentCache.readAttributes(path);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new FileNotFoundException(path + " (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Pick the content coding of a response from the Accept-Encoding of the request.
+	 * The representation of a compressible type depends on that header, which Vary tells the caches.
+	 * @param request
+	 * @param response
+	 * @param contentType
+	 * @return the coding to apply, or null for identity
+	 */
+	private static ContentCoding negotiateCoding(HttpRequest request, HttpResponse response, String contentType) {
+		if (!COMPRESSION || !MimeTypes.isCompressible(contentType)) {
+			return null;
+		}
+		response.setHeader(HttpHeaderName.VARY, "Accept-Encoding");
+		return ContentCoding.negotiate(request.getHeader(HttpHeaderName.ACCEPT_ENCODING));
+	}
+
+	/**
+	 * Resolve the request target against the webroot.
+	 * @param request
+	 * @return the normalized path of the requested file
+	 * @throws FileNotFoundException if the target escapes the webroot
+	 */
+	private static Path resolve(HttpRequest request) throws FileNotFoundException {
+		String target = request.getRequestTarget();
+		Path path;
+		try {
+			path = WEBROOT.resolve(target.startsWith("/") ? target.substring(1) : target).normalize();
+		} catch (InvalidPathException e) {
+			throw new FileNotFoundException(target + " (Invalid path)");
+		}
+		if (!path.startsWith(WEBROOT)) {
+			throw new FileNotFoundException(request.getRequestTarget() + " (Outside of the webroot)");
+		}
+		return path;
 	}
 }
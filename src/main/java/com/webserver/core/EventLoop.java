@@ -0,0 +1,125 @@
+package com.webserver.core;
+
+import com.webserver.tls.TlsChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class is a selector event loop serving the connections registered to it on a single thread.
+ */
+public class EventLoop implements Runnable {
+
+	private final static Logger LOGGER = LogManager.getLogger(EventLoop.class);
+
+	private final Selector selector;
+
+	/**
+	 * The channels handed over by the acceptor, registered by the loop thread on its next wakeup:
+	 * socket channels, or TLS channels for the HTTPS listener.
+	 */
+	private final Queue<ByteChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The timer closing the idle connections of this loop, advanced by the loop thread.
+	 */
+	private final IdleTimer idleTimer;
+
+	/**
+	 * @param timeout the time after which an idle connection is closed, in milliseconds
+	 * @param timeoutGranularity the granularity of the timeout, in milliseconds
+	 * @throws IOException
+	 */
+	public EventLoop(long timeout, long timeoutGranularity) throws IOException {
+		this.selector = Selector.open();
+		this.idleTimer = new IdleTimer(timeout, timeoutGranularity);
+	}
+
+	/**
+	 * Hand an accepted non-blocking channel to this loop. Safe to call from any thread.
+	 * @param channel
+	 */
+	public void register(SocketChannel channel) {
+		pendingChannels.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Hand an accepted non-blocking channel of the HTTPS listener to this loop. Safe to call from any thread.
+	 * @param tlsChannel
+	 */
+	public void register(TlsChannel tlsChannel) {
+		pendingChannels.add(tlsChannel);
+		selector.wakeup();
+	}
+
+	public void close() {
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+				selector.select(idleTimer.getTickDuration());
+				registerPendingChannels();
+
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					NioConnection connection = (NioConnection) key.attachment();
+					try {
+						if (key.isValid() && key.isReadable()) {
+							connection.onReadable();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.onWritable();
+						}
+					} catch (IOException e) {
+						LOGGER.error(e.getMessage());
+						connection.close();
+					}
+				}
+
+				idleTimer.advance();
+			}
+		} catch (ClosedSelectorException e) {
+			// The selector is closed by close(), when the server stops
+			LOGGER.debug("Event loop stopped");
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	private void registerPendingChannels() {
+		ByteChannel pending;
+		while ((pending = pendingChannels.poll()) != null) {
+			TlsChannel tlsChannel = pending instanceof TlsChannel ? (TlsChannel) pending : null;
+			SocketChannel channel = tlsChannel != null ? tlsChannel.getChannel() : (SocketChannel) pending;
+			try {
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				key.attach(new NioConnection(channel, tlsChannel, key, idleTimer));
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,977 @@
+package com.webserver.core;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.Http2Exception;
+import com.webserver.exceptions.HttpParsingException;
+import com.webserver.http.FileRegion;
+import com.webserver.http.HttpHeaderName;
+import com.webserver.http.HttpHeaders;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpParser;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.RequestBody;
+import com.webserver.http.HttpResponse;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.http2.HpackDecoder;
+import com.webserver.http2.HpackEncoder;
+import com.webserver.http2.Http2ErrorCode;
+import com.webserver.http2.Http2Frame;
+import com.webserver.http2.Http2FrameReader;
+import com.webserver.http2.Http2FrameWriter;
+import com.webserver.http2.Http2Settings;
+import com.webserver.log.AccessLog;
+import com.webserver.metrics.ServerMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * RFC-7540
+ * This class serves an HTTP/2 connection of the blocking engine, started with the prior knowledge
+ * preface or upgraded from an HTTP/1.1 request (h2c).
+ *
+ * The thread of the connection multiplexes its streams: it reads the frames, answers a request as
+ * soon as it is complete, and between two frames sends the DATA frames of the pending responses in
+ * turn, one frame per stream, within the flow control windows. It only blocks on a read when no
+ * response can progress, until a frame (e.g. a WINDOW_UPDATE) arrives, so a large response does not
+ * hold back the small ones requested after it.
+ */
+class Http2Connection {
+
+	private final static Logger LOGGER = LogManager.getLogger(Http2Connection.class);
+
+	private static final ServerMetrics METRICS = ServerMetrics.getInstance();
+
+	private static final AccessLog ACCESS_LOG = AccessLog.getInstance();
+
+	private static final String HTTP_2 = "HTTP/2.0";
+
+	/**
+	 * Our SETTINGS_MAX_FRAME_SIZE, also the largest DATA frame sent.
+	 */
+	private static final int MAX_FRAME_SIZE = Http2Settings.DEFAULT_MAX_FRAME_SIZE;
+
+	private static final int MAX_HEADER_LIST_SIZE = HttpParser.MAX_HEADER_SIZE;
+
+	private static final int MAX_CONCURRENT_STREAMS =
+			ConfigurationManager.getInstance().getConfiguration().getHttp2MaxConcurrentStreams();
+
+	private static final long MAX_BODY_SIZE = ConfigurationManager.getInstance().getConfiguration().getMaxBodySize();
+
+	private static final int BODY_SPILL_THRESHOLD =
+			ConfigurationManager.getInstance().getConfiguration().getBodySpillThreshold();
+
+	/**
+	 * RFC-7540 Section 8.1.2.2
+	 * HTTP/2 does not use the Connection header field to indicate connection-specific header fields.
+	 */
+	private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+	private final Socket socket;
+
+	private final IdleTimer.Timeout idleTimeout;
+
+	private final InputStream inputStream;
+
+	private final ByteBuffer readBuffer;
+
+	private final Http2FrameReader reader;
+
+	private final Http2FrameWriter writer;
+
+	private final Http2Frame frame = new Http2Frame(MAX_FRAME_SIZE);
+
+	private final HpackDecoder decoder = new HpackDecoder(Http2Settings.DEFAULT_HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+
+	private final HpackEncoder encoder = new HpackEncoder(Http2Settings.DEFAULT_HEADER_TABLE_SIZE);
+
+	private final Http2Settings remoteSettings;
+
+	/**
+	 * The request upgraded from HTTP/1.1, answered on the stream 1, null with prior knowledge.
+	 */
+	private final HttpRequest upgradeRequest;
+
+	private final Map<Integer, Stream> streams = new HashMap<>();
+
+	/**
+	 * The streams with response data to send and room in their window, served in turn.
+	 */
+	private final ArrayDeque<Stream> sending = new ArrayDeque<>();
+
+	/**
+	 * The payload of the DATA frames read from a file or a channel.
+	 */
+	private final ByteBuffer dataBuffer = ByteBuffer.allocateDirect(MAX_FRAME_SIZE);
+
+	/**
+	 * The highest stream opened by the client.
+	 */
+	private int lastStreamId;
+
+	/**
+	 * The connection flow control windows, to send and to receive.
+	 */
+	private long sendWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+	private int receiveWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+
+	/**
+	 * Set when the client sent a GOAWAY: the connection ends with its last stream.
+	 */
+	private boolean goingAway;
+
+	/**
+	 * The header block being received, from a HEADERS frame and its CONTINUATION frames.
+	 */
+	private byte[] headerBlock = new byte[1024];
+	private int headerBlockLength;
+	private int headerBlockStreamId;
+	private boolean headerBlockEndStream;
+
+	/**
+	 * Set when the header block was sent on a half-closed (remote) stream: decoded, then the stream reset.
+	 */
+	private boolean headerBlockStreamClosed;
+
+	/**
+	 * @param socket
+	 * @param inputStream
+	 * @param readBuffer the read buffer of the connection, holding the bytes read ahead
+	 * @param outputStream
+	 * @param idleTimeout
+	 * @param upgradeRequest the request upgraded from HTTP/1.1, or null if the preface was read
+	 * @param clientSettings the settings of the HTTP2-Settings header of the upgraded request, or null
+	 */
+	Http2Connection(Socket socket, InputStream inputStream, ByteBuffer readBuffer, OutputStream outputStream,
+					IdleTimer.Timeout idleTimeout, HttpRequest upgradeRequest, Http2Settings clientSettings) {
+		this.socket = socket;
+		this.inputStream = inputStream;
+		this.readBuffer = readBuffer;
+		this.idleTimeout = idleTimeout;
+		this.upgradeRequest = upgradeRequest;
+		this.remoteSettings = clientSettings != null ? clientSettings : new Http2Settings();
+		this.reader = new Http2FrameReader(inputStream, readBuffer, MAX_FRAME_SIZE);
+		this.writer = new Http2FrameWriter(outputStream);
+	}
+
+	/**
+	 * RFC-7540 Section 3.2
+	 * A request that upgrades from HTTP/1.1 to HTTP/2 MUST include exactly one HTTP2-Settings header
+	 * field. A server MUST NOT upgrade the connection to HTTP/2 if this header field is not present.
+	 * @param request
+	 * @return the settings of the client if the request asks for h2c and can be upgraded, otherwise null
+	 */
+	static Http2Settings upgradeSettings(HttpRequest request) {
+		String upgrade = request.getHeader(HttpHeaderName.UPGRADE);
+		String settings = request.getHeader(HttpHeaderName.HTTP2_SETTINGS);
+		String connection = request.getHeader(HttpHeaderName.CONNECTION);
+		if (upgrade == null || settings == null || connection == null || !"HTTP/1.1".equals(request.getHttpVersion())
+				|| !hasToken(upgrade, "h2c") || !hasToken(connection, HttpHeaderName.HTTP2_SETTINGS.text)) {
+			return null;
+		}
+		Http2Settings clientSettings = new Http2Settings();
+		try {
+			byte[] payload = Base64.getUrlDecoder().decode(settings.trim());
+			clientSettings.apply(payload, 0, payload.length);
+		} catch (IllegalArgumentException | Http2Exception e) {
+			LOGGER.debug("Invalid HTTP2-Settings: {}", e.getMessage());
+			return null;
+		}
+		return clientSettings;
+	}
+
+	private static boolean hasToken(String list, String token) {
+		for (String element : list.split(",")) {
+			if (element.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Answer 101 Switching Protocols to a request accepted by {@link #upgradeSettings(HttpRequest)}.
+	 * @param outputStream
+	 */
+	static void switchProtocols(OutputStream outputStream) {
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_SWITCHING_PROTOCOLS);
+		response.setHeader(HttpHeaderName.CONNECTION, "Upgrade");
+		response.setHeader(HttpHeaderName.UPGRADE, "h2c");
+		response.writeHead(outputStream);
+	}
+
+	/**
+	 * Serve the connection until it is closed, by the client, an error or the idle timer.
+	 */
+	void run() {
+		try {
+			// RFC-7540: the server connection preface consists of a potentially empty SETTINGS frame
+			// that MUST be the first frame the server sends in the HTTP/2 connection
+			writer.writeSettings(
+					Http2Settings.MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS,
+					Http2Settings.MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE,
+					Http2Settings.ENABLE_PUSH, 0);
+			encoder.setMaxTableSize(remoteSettings.getHeaderTableSize());
+			if (upgradeRequest != null) {
+				// The upgraded request is the stream 1, half-closed (remote)
+				upgradeRequest.setHttpVersion(HTTP_2);
+				upgradeRequest.setKeepAlive(false);
+				Stream stream = new Stream(1, remoteSettings.getInitialWindowSize());
+				stream.request = upgradeRequest;
+				stream.startTime = System.nanoTime();
+				stream.endStreamReceived = true;
+				streams.put(1, stream);
+				lastStreamId = 1;
+				respond(stream);
+				writer.flush();
+				idleTimeout.touch();
+				if (!Http2FrameReader.readPreface(inputStream, readBuffer)) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid connection preface");
+				}
+			}
+			// RFC-7540: the SETTINGS frame MUST be the first frame the client sends
+			read();
+			if (frame.getType() != Http2Frame.SETTINGS || frame.hasFlag(Http2Frame.FLAG_ACK)) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "The connection preface lacks SETTINGS");
+			}
+			handleFrame();
+			serve();
+		} catch (Http2Exception e) {
+			LOGGER.debug("HTTP/2 connection error {}: {}", e.getErrorCode(), e.getMessage());
+			try {
+				writer.writeGoAway(lastStreamId, e.getErrorCode());
+				writer.flush();
+			} catch (IOException ignored) {
+				// The connection is closed anyway
+			}
+		} catch (IOException e) {
+			LOGGER.debug("HTTP/2 connection closed: {}", e.getMessage());
+		} finally {
+			for (Stream stream : streams.values()) {
+				stream.close();
+			}
+			streams.clear();
+			sending.clear();
+		}
+	}
+
+	/**
+	 * Read the frames and send the pending DATA frames, reading first whenever a frame is available
+	 * so the control frames (e.g. PING, WINDOW_UPDATE, RST_STREAM) are answered without delay.
+	 */
+	private void serve() throws IOException {
+		while (true) {
+			if (sending.isEmpty() || sendWindow <= 0 || reader.isReadable()) {
+				if (goingAway && streams.isEmpty()) {
+					return;
+				}
+				read();
+				try {
+					handleFrame();
+				} catch (Http2Exception e) {
+					if (e.isConnectionError()) {
+						throw e;
+					}
+					resetStream(e.getStreamId(), e.getErrorCode());
+				}
+			} else {
+				sendData();
+			}
+		}
+	}
+
+	/**
+	 * Read the next frame. The frames buffered so far are flushed before blocking, and the connection
+	 * may expire while waiting.
+	 */
+	private void read() throws IOException {
+		if (!reader.isReadable()) {
+			writer.flush();
+			idleTimeout.touch();
+			reader.read(frame);
+			idleTimeout.suspend();
+		} else {
+			reader.read(frame);
+		}
+	}
+
+	private void handleFrame() throws IOException {
+		int type = frame.getType();
+		int streamId = frame.getStreamId();
+		if (headerBlockStreamId != 0 && type != Http2Frame.CONTINUATION) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Expected a CONTINUATION frame");
+		}
+		switch (type) {
+			case Http2Frame.DATA:
+				handleData(streamId);
+				break;
+			case Http2Frame.HEADERS:
+				handleHeaders(streamId);
+				break;
+			case Http2Frame.PRIORITY:
+				// The priorities are not used, the streams are served in turn
+				if (streamId == 0) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PRIORITY on the stream 0");
+				}
+				if (frame.getLength() != 5) {
+					throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, streamId, "PRIORITY length " + frame.getLength());
+				}
+				break;
+			case Http2Frame.RST_STREAM:
+				handleRstStream(streamId);
+				break;
+			case Http2Frame.SETTINGS:
+				handleSettings(streamId);
+				break;
+			case Http2Frame.PUSH_PROMISE:
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PUSH_PROMISE sent by a client");
+			case Http2Frame.PING:
+				if (streamId != 0) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PING on the stream " + streamId);
+				}
+				if (frame.getLength() != 8) {
+					throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "PING length " + frame.getLength());
+				}
+				if (!frame.hasFlag(Http2Frame.FLAG_ACK)) {
+					writer.writePingAck(frame.getPayload(), 0);
+				}
+				break;
+			case Http2Frame.GOAWAY:
+				if (streamId != 0) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "GOAWAY on the stream " + streamId);
+				}
+				goingAway = true;
+				break;
+			case Http2Frame.WINDOW_UPDATE:
+				handleWindowUpdate(streamId);
+				break;
+			case Http2Frame.CONTINUATION:
+				if (headerBlockStreamId == 0 || streamId != headerBlockStreamId) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+				}
+				appendHeaderBlock(frame.getPayload(), 0, frame.getLength());
+				if (frame.hasFlag(Http2Frame.FLAG_END_HEADERS)) {
+					handleHeaderBlock();
+				}
+				break;
+			default:
+				// RFC-7540: implementations MUST ignore and discard any frame that has a type that is unknown
+				break;
+		}
+	}
+
+	/**
+	 * RFC-7540 Section 6.1
+	 * The payload of the DATA frames, without their padding, is appended to the body of the request.
+	 */
+	private void handleData(int streamId) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA on the stream 0");
+		}
+		int length = frame.getLength();
+		if (frame.hasFlag(Http2Frame.FLAG_PADDED) && (length == 0 || (frame.getPayload()[0] & 0xff) >= length)) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid padding");
+		}
+		receiveWindow -= length;
+		if (receiveWindow < 0) {
+			throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Connection receive window exceeded");
+		}
+		if (receiveWindow <= Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE / 2) {
+			writer.writeWindowUpdate(0, Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE - receiveWindow);
+			receiveWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+		}
+
+		Stream stream = streams.get(streamId);
+		if (stream == null || stream.endStreamReceived) {
+			if (streamId > lastStreamId) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA on the idle stream " + streamId);
+			}
+			throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, streamId, "DATA on the closed stream " + streamId);
+		}
+		stream.receiveWindow -= length;
+		if (stream.receiveWindow < 0) {
+			throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, streamId, "Stream receive window exceeded");
+		}
+		if (stream.errorStatus == null) {
+			receiveBody(stream);
+		}
+		if (frame.hasFlag(Http2Frame.FLAG_END_STREAM)) {
+			stream.endStreamReceived = true;
+			respond(stream);
+		} else if (stream.receiveWindow <= Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE / 2) {
+			writer.writeWindowUpdate(streamId, Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE - stream.receiveWindow);
+			stream.receiveWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+		}
+	}
+
+	/**
+	 * Append the data of the frame to the body of the request. A body growing past the limit is
+	 * dropped and the rest of the stream only accounted for, the request is answered 413.
+	 */
+	private void receiveBody(Stream stream) {
+		byte[] payload = frame.getPayload();
+		int offset = 0;
+		int count = frame.getLength();
+		if (frame.hasFlag(Http2Frame.FLAG_PADDED)) {
+			offset = 1;
+			count -= 1 + (payload[0] & 0xff);
+		}
+		if (count == 0) {
+			return;
+		}
+		RequestBody body = stream.request.getBody();
+		if (body == null) {
+			body = new RequestBody(BODY_SPILL_THRESHOLD, contentLength(stream.request));
+			stream.request.setBody(body);
+		}
+		if (body.length() + count > MAX_BODY_SIZE) {
+			stream.errorStatus = HttpStatusCode.SC_PAYLOAD_TOO_LARGE;
+		} else {
+			try {
+				body.append(ByteBuffer.wrap(payload, offset, count), count);
+				return;
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				stream.errorStatus = HttpStatusCode.SC_INTERNAL_SERVER_ERROE;
+			}
+		}
+		body.close();
+		stream.request.setBody(null);
+	}
+
+	/**
+	 * @return the content-length of the request, or -1 if it has none or an invalid one
+	 */
+	private static long contentLength(HttpRequest request) {
+		String contentLength = request.getHeader(HttpHeaderName.CONTENT_LENGTH);
+		if (contentLength == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * RFC-7540 Section 6.2
+	 *          +---------------+
+	 *          |Pad Length? (8)|
+	 *          +-+-------------+-----------------------------------------------+
+	 *          |E|                 Stream Dependency? (31)                     |
+	 *          +-+-------------+-----------------------------------------------+
+	 *          |  Weight? (8)  |
+	 *          +-+-------------+-----------------------------------------------+
+	 *          |                   Header Block Fragment (*)                 ...
+	 *          +---------------------------------------------------------------+
+	 *          |                           Padding (*)                       ...
+	 *          +---------------------------------------------------------------+
+	 */
+	private void handleHeaders(int streamId) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "HEADERS on the stream 0");
+		}
+		int offset = 0;
+		int length = frame.getLength();
+		if (frame.hasFlag(Http2Frame.FLAG_PADDED)) {
+			if (length == 0) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid padding");
+			}
+			offset = 1;
+			length -= 1 + (frame.getPayload()[0] & 0xff);
+		}
+		if (frame.hasFlag(Http2Frame.FLAG_PRIORITY)) {
+			offset += 5;
+			length -= 5;
+		}
+		if (length < 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid padding");
+		}
+		Stream stream = streams.get(streamId);
+		if (stream == null) {
+			// RFC-7540: the identifier of a newly established stream MUST be numerically greater than
+			// all streams that the initiating endpoint has opened, and odd for a client
+			if ((streamId & 1) == 0 || streamId <= lastStreamId) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid stream " + streamId);
+			}
+		}
+		headerBlockLength = 0;
+		headerBlockStreamId = streamId;
+		headerBlockEndStream = frame.hasFlag(Http2Frame.FLAG_END_STREAM);
+		// RFC-7540 Section 5.1: frames other than WINDOW_UPDATE, PRIORITY or RST_STREAM on a half-closed
+		// (remote) stream are a stream error of type STREAM_CLOSED, reported once the block is decoded
+		headerBlockStreamClosed = stream != null && stream.endStreamReceived;
+		appendHeaderBlock(frame.getPayload(), offset, length);
+		if (frame.hasFlag(Http2Frame.FLAG_END_HEADERS)) {
+			handleHeaderBlock();
+		}
+	}
+
+	private void appendHeaderBlock(byte[] fragment, int offset, int length) {
+		if (headerBlockLength + length > headerBlock.length) {
+			if (headerBlockLength + length > MAX_HEADER_LIST_SIZE) {
+				throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Header block too large");
+			}
+			headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlock.length * 2, headerBlockLength + length));
+		}
+		System.arraycopy(fragment, offset, headerBlock, headerBlockLength, length);
+		headerBlockLength += length;
+	}
+
+	/**
+	 * Decode a complete header block: the request of a new stream, or the trailers of an open one.
+	 * Every block is decoded, even the refused ones, to keep the dynamic table of the decoder in sync.
+	 */
+	private void handleHeaderBlock() throws IOException {
+		int streamId = headerBlockStreamId;
+		headerBlockStreamId = 0;
+		Stream stream = streams.get(streamId);
+		if (stream != null) {
+			// Trailers, not used
+			decoder.decode(headerBlock, 0, headerBlockLength, (name, value) -> { });
+			if (headerBlockStreamClosed) {
+				throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, streamId, "HEADERS on the half-closed stream " + streamId);
+			}
+			if (!headerBlockEndStream) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Trailers without END_STREAM");
+			}
+			stream.endStreamReceived = true;
+			respond(stream);
+			return;
+		}
+
+		lastStreamId = streamId;
+		RequestBuilder builder = new RequestBuilder();
+		boolean complete = decoder.decode(headerBlock, 0, headerBlockLength, builder);
+		if (streams.size() >= MAX_CONCURRENT_STREAMS || goingAway) {
+			writer.writeRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
+			return;
+		}
+		stream = new Stream(streamId, remoteSettings.getInitialWindowSize());
+		stream.startTime = System.nanoTime();
+		stream.request = builder.build();
+		stream.request.setRemoteAddress(socket.getInetAddress());
+		if (!complete) {
+			stream.errorStatus = HttpStatusCode.SC_BAD_REQUEST;
+		} else if (builder.malformed != null) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, builder.malformed);
+		} else {
+			stream.errorStatus = builder.errorStatus;
+		}
+		if (stream.errorStatus == null && contentLength(stream.request) > MAX_BODY_SIZE) {
+			// Refused before its data arrives, the data is then only accounted for
+			stream.errorStatus = HttpStatusCode.SC_PAYLOAD_TOO_LARGE;
+		}
+		streams.put(streamId, stream);
+		if (headerBlockEndStream) {
+			stream.endStreamReceived = true;
+			respond(stream);
+		}
+	}
+
+	/**
+	 * Collects the fields of a request header block into a request.
+	 * RFC-7540 Section 8.1.2
+	 * All pseudo-header fields MUST appear in the header block before regular header fields. A request
+	 * or response containing uppercase header field names MUST be treated as malformed.
+	 */
+	private static final class RequestBuilder implements BiConsumer<String, String> {
+
+		private final HttpRequest request = new HttpRequest();
+
+		private String method;
+		private String scheme;
+		private String path;
+		private String authority;
+
+		private boolean regularField;
+
+		/**
+		 * The reason the request is malformed, a stream error, or null.
+		 */
+		private String malformed;
+
+		/**
+		 * The status of the response to a well-formed request that cannot be served, or null.
+		 */
+		private HttpStatusCode errorStatus;
+
+		@Override
+		public void accept(String name, String value) {
+			if (name.startsWith(":")) {
+				if (regularField) {
+					malformed = "Pseudo-header field after a regular field";
+				} else if (":method".equals(name) && method == null) {
+					method = value;
+				} else if (":scheme".equals(name) && scheme == null) {
+					scheme = value;
+				} else if (":path".equals(name) && path == null) {
+					path = value;
+				} else if (":authority".equals(name) && authority == null) {
+					authority = value;
+				} else {
+					malformed = "Invalid pseudo-header field " + name;
+				}
+				return;
+			}
+			regularField = true;
+			if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+				malformed = "Uppercase header field name " + name;
+			} else if (CONNECTION_HEADERS.contains(name) || ("te".equals(name) && !"trailers".equals(value))) {
+				malformed = "Connection-specific header field " + name;
+			} else {
+				String previous = request.getHeader(name);
+				if (previous != null) {
+					// The cookie header field may be split into several fields, the others are lists
+					value = previous + ("cookie".equals(name) ? "; " : ", ") + value;
+				}
+				request.setHeader(name, value);
+			}
+		}
+
+		private HttpRequest build() {
+			request.setHttpVersion(HTTP_2);
+			if (malformed != null) {
+				return request;
+			}
+			if (method == null || scheme == null || path == null) {
+				malformed = "Missing pseudo-header field";
+				return request;
+			}
+			if (authority != null && !request.getHeaders().contains(HttpHeaderName.HOST)) {
+				request.setHeader(HttpHeaderName.HOST, authority);
+			}
+			try {
+				request.setMethod(method);
+				HttpParser.parseRequestTarget(path, request);
+			} catch (HttpParsingException e) {
+				errorStatus = e.getCode();
+			}
+			return request;
+		}
+	}
+
+	private void handleRstStream(int streamId) {
+		if (streamId == 0 || streamId > lastStreamId) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "RST_STREAM on the idle stream " + streamId);
+		}
+		if (frame.getLength() != 4) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "RST_STREAM length " + frame.getLength());
+		}
+		Stream stream = streams.remove(streamId);
+		if (stream != null) {
+			sending.remove(stream);
+			stream.close();
+		}
+	}
+
+	/**
+	 * RFC-7540 Section 6.5
+	 * When the value of SETTINGS_INITIAL_WINDOW_SIZE changes, a receiver MUST adjust the size of all
+	 * stream flow-control windows that it maintains by the difference between the new value and the
+	 * old value.
+	 */
+	private void handleSettings(int streamId) throws IOException {
+		if (streamId != 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "SETTINGS on the stream " + streamId);
+		}
+		if (frame.hasFlag(Http2Frame.FLAG_ACK)) {
+			if (frame.getLength() != 0) {
+				throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload");
+			}
+			return;
+		}
+		int initialWindowSize = remoteSettings.getInitialWindowSize();
+		int headerTableSize = remoteSettings.getHeaderTableSize();
+		remoteSettings.apply(frame.getPayload(), 0, frame.getLength());
+		int delta = remoteSettings.getInitialWindowSize() - initialWindowSize;
+		if (delta != 0) {
+			for (Stream stream : streams.values()) {
+				stream.sendWindow += delta;
+				if (stream.sendWindow > Http2Settings.MAX_WINDOW_SIZE) {
+					throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Stream window overflow");
+				}
+				unblock(stream);
+			}
+		}
+		if (remoteSettings.getHeaderTableSize() != headerTableSize) {
+			encoder.setMaxTableSize(remoteSettings.getHeaderTableSize());
+		}
+		writer.writeSettingsAck();
+	}
+
+	private void handleWindowUpdate(int streamId) {
+		if (frame.getLength() != 4) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "WINDOW_UPDATE length " + frame.getLength());
+		}
+		int increment = frame.getInt31(0);
+		if (streamId == 0) {
+			if (increment == 0) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+			}
+			sendWindow += increment;
+			if (sendWindow > Http2Settings.MAX_WINDOW_SIZE) {
+				throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Connection window overflow");
+			}
+			return;
+		}
+		if (increment == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "WINDOW_UPDATE of 0");
+		}
+		Stream stream = streams.get(streamId);
+		if (stream == null) {
+			if (streamId > lastStreamId) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "WINDOW_UPDATE on the idle stream " + streamId);
+			}
+			// A closed stream, the frames in flight are ignored
+			return;
+		}
+		stream.sendWindow += increment;
+		if (stream.sendWindow > Http2Settings.MAX_WINDOW_SIZE) {
+			throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+		}
+		unblock(stream);
+	}
+
+	private void unblock(Stream stream) {
+		if (stream.blocked && stream.sendWindow > 0) {
+			stream.blocked = false;
+			sending.add(stream);
+		}
+	}
+
+	private void resetStream(int streamId, Http2ErrorCode errorCode) throws IOException {
+		LOGGER.debug("HTTP/2 stream {} error {}", streamId, errorCode);
+		writer.writeRstStream(streamId, errorCode);
+		Stream stream = streams.remove(streamId);
+		if (stream != null) {
+			sending.remove(stream);
+			stream.close();
+		}
+	}
+
+	/**
+	 * Answer a complete request: the HEADERS frame is written at once, the body is queued for the
+	 * DATA frames.
+	 */
+	private void respond(Stream stream) throws IOException {
+		long handleStartTime = System.nanoTime();
+		HttpResponse response;
+		if (stream.errorStatus != null) {
+			response = new HttpResponse(stream.errorStatus);
+		} else {
+			try {
+				response = ClientHandler.handleRequest(stream.request);
+			} catch (FileNotFoundException e) {
+				LOGGER.error(e.getMessage());
+				response = new HttpResponse(HttpStatusCode.SC_NOT_FOUND);
+			} catch (HttpParsingException e) {
+				LOGGER.error(e.getMessage());
+				response = new HttpResponse(e.getCode());
+			}
+		}
+		METRICS.recordHandle(System.nanoTime() - handleStartTime);
+		stream.response = response;
+
+		encoder.reset();
+		encoder.encode(":status", Integer.toString(response.getCode()));
+		encoder.encode("date", HttpResponse.currentDate());
+		encoder.encode("server", HttpResponse.SERVER);
+		HttpHeaders headers = response.getHeaders();
+		for (int i = 0; i < headers.size(); i++) {
+			HttpHeaderName knownName = headers.getKnownName(i);
+			String name = knownName != null ? knownName.lowerCase : headers.getName(i).toLowerCase(Locale.ROOT);
+			if (!CONNECTION_HEADERS.contains(name)) {
+				encoder.encode(name, headers.getValue(i));
+			}
+		}
+		boolean hasBody = stream.request.getMethod() != HttpMethod.HEAD && stream.setBody(response);
+		writer.writeHeaders(stream.id, encoder.getBlock(), encoder.getLength(), !hasBody, remoteSettings.getMaxFrameSize());
+		stream.bytesSent = encoder.getLength();
+		if (hasBody) {
+			sending.add(stream);
+		} else {
+			complete(stream);
+		}
+	}
+
+	/**
+	 * Send the next DATA frame of the first stream in turn, as large as the windows allow.
+	 */
+	private void sendData() throws IOException {
+		Stream stream = sending.poll();
+		if (stream.sendWindow <= 0) {
+			// Sent again on a WINDOW_UPDATE of the stream
+			stream.blocked = true;
+			return;
+		}
+		int max = (int) Math.min(Math.min(sendWindow, stream.sendWindow),
+				Math.min(remoteSettings.getMaxFrameSize(), MAX_FRAME_SIZE));
+		ByteBuffer data;
+		try {
+			data = stream.nextData(max, dataBuffer);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+			resetStream(stream.id, Http2ErrorCode.INTERNAL_ERROR);
+			return;
+		}
+		int n = data.remaining();
+		boolean endStream = stream.isBodyDone();
+		writer.writeData(stream.id, data, endStream);
+		sendWindow -= n;
+		stream.sendWindow -= n;
+		stream.bytesSent += n;
+		if (endStream) {
+			complete(stream);
+		} else {
+			sending.add(stream);
+		}
+	}
+
+	/**
+	 * The response is sent: the stream is closed.
+	 */
+	private void complete(Stream stream) {
+		streams.remove(stream.id);
+		stream.close();
+		long endTime = System.nanoTime();
+		METRICS.recordResponse(stream.response.getStatusCode());
+		METRICS.recordBytesSent(stream.bytesSent);
+		if (ACCESS_LOG != null) {
+			ACCESS_LOG.log(socket.getInetAddress(), stream.request, stream.response.getCode(), stream.bytesSent,
+					endTime - stream.startTime);
+		}
+	}
+
+	/**
+	 * A stream of the connection, from its request to the last frame of its response.
+	 */
+	private static final class Stream {
+
+		private final int id;
+
+		private HttpRequest request;
+
+		/**
+		 * The status of the response to a request that cannot be served, or null.
+		 */
+		private HttpStatusCode errorStatus;
+
+		private HttpResponse response;
+
+		private long startTime;
+
+		private boolean endStreamReceived;
+
+		/**
+		 * The flow control windows of the stream, to send and to receive.
+		 */
+		private long sendWindow;
+		private int receiveWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+
+		/**
+		 * Set while the stream waits for a WINDOW_UPDATE, out of the sending queue.
+		 */
+		private boolean blocked;
+
+		/**
+		 * The body of the response, one of them.
+		 */
+		private ByteBuffer bufferBody;
+		private FileRegion fileBody;
+		private ReadableByteChannel channelBody;
+		private boolean channelDone;
+
+		private long bytesSent;
+
+		private Stream(int id, int initialWindowSize) {
+			this.id = id;
+			this.sendWindow = initialWindowSize;
+		}
+
+		/**
+		 * @return true if the response has a body to send
+		 */
+		private boolean setBody(HttpResponse response) {
+			bufferBody = response.getBufferBody();
+			fileBody = response.getFileBody();
+			channelBody = response.getChannelBody();
+			return (bufferBody != null && bufferBody.hasRemaining()) || (fileBody != null && fileBody.getCount() > 0)
+					|| channelBody != null;
+		}
+
+		/**
+		 * @param max the largest number of bytes allowed by the windows and the frame size
+		 * @param dataBuffer the buffer a file or a channel is read into
+		 * @return the payload of the next DATA frame, a slice of an in-memory body
+		 * @throws IOException
+		 */
+		private ByteBuffer nextData(int max, ByteBuffer dataBuffer) throws IOException {
+			if (bufferBody != null) {
+				ByteBuffer data = bufferBody.duplicate();
+				data.limit(data.position() + Math.min(max, data.remaining()));
+				bufferBody.position(data.limit());
+				return data;
+			}
+			dataBuffer.clear();
+			dataBuffer.limit(max);
+			if (fileBody != null) {
+				fileBody.read(dataBuffer);
+			} else {
+				while (dataBuffer.hasRemaining()) {
+					if (channelBody.read(dataBuffer) < 0) {
+						channelDone = true;
+						break;
+					}
+				}
+			}
+			dataBuffer.flip();
+			return dataBuffer;
+		}
+
+		private boolean isBodyDone() {
+			if (bufferBody != null) {
+				return !bufferBody.hasRemaining();
+			}
+			if (fileBody != null) {
+				return fileBody.isDone();
+			}
+			return channelDone;
+		}
+
+		private void close() {
+			if (request != null && request.getBody() != null) {
+				request.getBody().close();
+			}
+			try {
+				if (fileBody != null) {
+					fileBody.close();
+				}
+				if (channelBody != null) {
+					channelBody.close();
+				}
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.webserver.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class closes the connections idle for longer than the timeout, with a hashed timing wheel.
+ *
+ * The wheel is an array of buckets, one per tick of the configured granularity. A connection is
+ * linked in the bucket of the tick its timeout would expire at, so each tick only visits the
+ * connections due in it, never the whole set. Registering and cancelling are O(1) and lock-free:
+ * they are queued and applied by the thread advancing the wheel.
+ *
+ * Recording an activity is a single volatile write, the connection is not moved in the wheel.
+ * When its bucket comes up, a connection active since then is linked again at its new deadline,
+ * so a busy connection costs one relink per timeout period instead of one per request.
+ */
+public class IdleTimer {
+
+	private final static Logger LOGGER = LogManager.getLogger(IdleTimer.class);
+
+	/**
+	 * The largest number of buckets, the longer timeouts take several rounds of the wheel.
+	 */
+	private static final int MAX_TICKS_PER_WHEEL = 1 << 16;
+
+	/**
+	 * A connection closed by the timer when it expires.
+	 */
+	public interface Expirable {
+		void expire();
+	}
+
+	/**
+	 * The time after which an idle connection is closed.
+	 * Unit: millisecond
+	 */
+	private final long timeout;
+
+	/**
+	 * The granularity of the wheel, connections expire at most one tick late.
+	 * Unit: millisecond
+	 */
+	private final long tickDuration;
+
+	private final Bucket[] wheel;
+
+	private final int mask;
+
+	private final long startTimestamp;
+
+	/**
+	 * The number of ticks already processed.
+	 */
+	private long tick;
+
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong size = new AtomicLong();
+
+	/**
+	 * @param timeout the idle time after which a connection expires, in milliseconds
+	 * @param tickDuration the granularity of the timeouts, in milliseconds
+	 */
+	public IdleTimer(long timeout, long tickDuration) {
+		this.timeout = timeout;
+		this.tickDuration = Math.max(tickDuration, 1);
+		int ticksPerWheel = 1;
+		long needed = Math.min(timeout / this.tickDuration + 1, MAX_TICKS_PER_WHEEL);
+		while (ticksPerWheel < needed) {
+			ticksPerWheel <<= 1;
+		}
+		this.wheel = new Bucket[ticksPerWheel];
+		for (int i = 0; i < ticksPerWheel; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = ticksPerWheel - 1;
+		this.startTimestamp = System.currentTimeMillis();
+	}
+
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * @return the number of connections tracked
+	 */
+	public long size() {
+		return size.get();
+	}
+
+	/**
+	 * Start tracking a connection, active from now on. Safe to call from any thread.
+	 * @param target
+	 * @return the handle to record the activity of the connection and cancel its timeout
+	 */
+	public Timeout schedule(Expirable target) {
+		Timeout timeout = new Timeout(this, target);
+		size.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Expire the connections due in the ticks elapsed since the last call.
+	 * Must always be called from the same thread, at least once per tick.
+	 */
+	public void advance() {
+		long currentTimestamp = System.currentTimeMillis();
+		long targetTick = (currentTimestamp - startTimestamp) / tickDuration;
+		transferPendingTimeouts(currentTimestamp);
+		removeCancelledTimeouts();
+		while (tick < targetTick) {
+			expireTimeouts(wheel[(int) (tick & mask)], currentTimestamp);
+			tick++;
+		}
+	}
+
+	private void transferPendingTimeouts(long currentTimestamp) {
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.state.get() == Timeout.ACTIVE) {
+				link(timeout, deadlineTick(timeout.lastActivityTimestamp, currentTimestamp));
+			}
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void expireTimeouts(Bucket bucket, long currentTimestamp) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			// The later rounds of the wheel share the bucket
+			if (timeout.deadlineTick <= tick) {
+				bucket.remove(timeout);
+				long lastActivityTimestamp = timeout.lastActivityTimestamp;
+				if (lastActivityTimestamp != Timeout.SUSPENDED && currentTimestamp - lastActivityTimestamp > this.timeout) {
+					timeout.expire();
+				} else {
+					// Active since it was linked: follow it to its new deadline
+					link(timeout, deadlineTick(lastActivityTimestamp, currentTimestamp));
+				}
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * @param lastActivityTimestamp
+	 * @param currentTimestamp
+	 * @return the tick whose bucket is processed once the timeout of a connection last active at the
+	 *         given time has elapsed, a suspended connection is checked again one timeout later
+	 */
+	private long deadlineTick(long lastActivityTimestamp, long currentTimestamp) {
+		if (lastActivityTimestamp == Timeout.SUSPENDED) {
+			lastActivityTimestamp = currentTimestamp;
+		}
+		long deadline = lastActivityTimestamp + timeout - startTimestamp;
+		// The bucket of a tick is processed when the tick has ended
+		return Math.max(deadline / tickDuration, tick);
+	}
+
+	private void link(Timeout timeout, long deadlineTick) {
+		timeout.deadlineTick = deadlineTick;
+		wheel[(int) (deadlineTick & mask)].add(timeout);
+	}
+
+	/**
+	 * The handle of a connection tracked by the timer.
+	 */
+	public static class Timeout {
+
+		private static final int ACTIVE = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		/**
+		 * The last activity of a connection busy with a request, which never expires meanwhile.
+		 */
+		private static final long SUSPENDED = Long.MAX_VALUE;
+
+		private final IdleTimer timer;
+
+		private final Expirable target;
+
+		private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+		private volatile long lastActivityTimestamp = System.currentTimeMillis();
+
+		// Only accessed by the thread advancing the wheel
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+		private long deadlineTick;
+
+		private Timeout(IdleTimer timer, Expirable target) {
+			this.timer = timer;
+			this.target = target;
+		}
+
+		/**
+		 * Record an activity of the connection, restarting its timeout.
+		 */
+		public void touch() {
+			lastActivityTimestamp = System.currentTimeMillis();
+		}
+
+		/**
+		 * Keep the connection from expiring until the next {@link #touch()},
+		 * e.g. while a long response is written by a blocking handler.
+		 */
+		public void suspend() {
+			lastActivityTimestamp = SUSPENDED;
+		}
+
+		/**
+		 * Stop tracking the connection, e.g. when it is closed. Safe to call from any thread, more than once.
+		 */
+		public void cancel() {
+			if (state.compareAndSet(ACTIVE, CANCELLED)) {
+				timer.size.decrementAndGet();
+				timer.cancelledTimeouts.add(this);
+			}
+		}
+
+		private void expire() {
+			if (state.compareAndSet(ACTIVE, EXPIRED)) {
+				timer.size.decrementAndGet();
+				try {
+					target.expire();
+				} catch (RuntimeException e) {
+					LOGGER.error(e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The timeouts due in one tick of the wheel, as a doubly linked list.
+	 */
+	private static class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.prev = tail;
+			timeout.next = null;
+			if (tail == null) {
+				head = timeout;
+			} else {
+				tail.next = timeout;
+			}
+			tail = timeout;
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.prev == null) {
+				head = timeout.next;
+			} else {
+				timeout.prev.next = timeout.next;
+			}
+			if (timeout.next == null) {
+				tail = timeout.prev;
+			} else {
+				timeout.next.prev = timeout.prev;
+			}
+			timeout.bucket = null;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+}
@@ -0,0 +1,596 @@
+package com.webserver.core;
+
+import com.webserver.buffer.BufferPool;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpExecutionException;
+import com.webserver.exceptions.HttpParsingException;
+import com.webserver.http.FileRegion;
+import com.webserver.http.HttpParser;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.log.AccessLog;
+import com.webserver.metrics.ServerMetrics;
+import com.webserver.tls.TlsChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * This class holds the state of one connection served by an {@link EventLoop}.
+ *
+ * The bytes read are fed to an incremental parser as they arrive, each complete request is handled
+ * on the loop thread and the encoded response is queued until the socket accepts it.
+ *
+ * The request and the response are reused for every request of the connection, and its buffers are
+ * taken from the {@link BufferPool} only while they hold bytes: a connection waiting for its next
+ * request holds none.
+ */
+public class NioConnection implements IdleTimer.Expirable {
+
+	private final static Logger LOGGER = LogManager.getLogger(NioConnection.class);
+
+	private static final ServerMetrics METRICS = ServerMetrics.getInstance();
+
+	/**
+	 * The largest number of buffers written at once, far below the IOV_MAX of the systems.
+	 */
+	private static final int MAX_GATHER = 16;
+
+	/**
+	 * The access log, null if it is disabled.
+	 */
+	private static final AccessLog ACCESS_LOG = AccessLog.getInstance();
+
+	private static final BufferPool BUFFER_POOL = BufferPool.getInstance();
+
+	private static final long MAX_BODY_SIZE = ConfigurationManager.getInstance().getConfiguration().getMaxBodySize();
+
+	private static final int BODY_SPILL_THRESHOLD =
+			ConfigurationManager.getInstance().getConfiguration().getBodySpillThreshold();
+
+	private final SocketChannel channel;
+
+	/**
+	 * The TLS channel over the socket channel for the HTTPS listener, otherwise null.
+	 */
+	private final TlsChannel tlsChannel;
+
+	/**
+	 * The channels the requests are read from and the responses written to: the TLS channel or the
+	 * socket channel.
+	 */
+	private final ByteChannel input;
+	private final GatheringByteChannel output;
+
+	private final SelectionKey key;
+
+	/**
+	 * The pooled read buffer, in write mode, held while it keeps the bytes of an incomplete request.
+	 */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * The incremental parser, keeping the state of a request split across several reads.
+	 */
+	private final HttpParser parser = new HttpParser(true, MAX_BODY_SIZE, BODY_SPILL_THRESHOLD);
+
+	/**
+	 * The response of the connection, reset for each request. Its bodies are queued, not the response.
+	 */
+	private final HttpResponse response = new HttpResponse();
+
+	/**
+	 * The stream the responses are encoded into, behind the queued heads.
+	 */
+	private final QueueOutputStream encoded = new QueueOutputStream();
+
+	/**
+	 * The parts of the responses not yet written to the socket, in request order:
+	 * encoded heads and small bodies as {@link ByteBuffer}, large file bodies as {@link FileRegion}
+	 * and streamed bodies as {@link StreamedBody}.
+	 */
+	private final Deque<Object> writeQueue = new ArrayDeque<>();
+
+	/**
+	 * The queued buffers of a gathering write, reused.
+	 */
+	private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+	/**
+	 * Set when the last queued response does not keep the connection alive.
+	 */
+	private boolean closeAfterWrite;
+
+	/**
+	 * Set while the connection waits for the next request, with no response pending.
+	 */
+	private boolean idle;
+
+	private boolean closed;
+
+	/**
+	 * The idle timeout of the connection, restarted whenever data is sent or received.
+	 */
+	private final IdleTimer.Timeout idleTimeout;
+
+	/**
+	 * @param channel
+	 * @param tlsChannel the TLS channel over the socket channel, or null
+	 * @param key
+	 * @param idleTimer
+	 */
+	public NioConnection(SocketChannel channel, TlsChannel tlsChannel, SelectionKey key, IdleTimer idleTimer) {
+		this.channel = channel;
+		this.tlsChannel = tlsChannel;
+		this.input = tlsChannel != null ? tlsChannel : channel;
+		this.output = tlsChannel != null ? tlsChannel : channel;
+		this.key = key;
+		this.idleTimeout = idleTimer.schedule(this);
+		METRICS.connectionOpened();
+		updateIdle();
+	}
+
+	/**
+	 * Called by the idle timer, on the loop thread.
+	 */
+	@Override
+	public void expire() {
+		close();
+	}
+
+	public void onReadable() throws IOException {
+		// The selector does not report the bytes the TLS channel already decrypted, they are read at once
+		boolean read;
+		do {
+			read = read();
+		} while (read && hasBufferedInput());
+	}
+
+	public void onWritable() throws IOException {
+		flush();
+		updateIdle();
+		if (hasBufferedInput()) {
+			onReadable();
+		}
+	}
+
+	/**
+	 * @return true if the TLS channel holds decrypted bytes not read yet, and the connection is reading
+	 */
+	private boolean hasBufferedInput() {
+		return tlsChannel != null && !closed && tlsChannel.hasBufferedInput()
+				&& key.interestOps() == SelectionKey.OP_READ;
+	}
+
+	/**
+	 * Read and handle the requests received.
+	 * @return true if bytes were read
+	 * @throws IOException
+	 */
+	private boolean read() throws IOException {
+		if (readBuffer == null) {
+			readBuffer = BUFFER_POOL.acquire();
+		}
+		int read = input.read(readBuffer);
+		if (read < 0) {
+			close();
+			return false;
+		}
+		idleTimeout.touch();
+
+		readBuffer.flip();
+		try {
+			HttpRequest request;
+			while (!closeAfterWrite && (request = parser.parse(readBuffer)) != null) {
+				process(request);
+			}
+			if (!closeAfterWrite && parser.takeContinue()) {
+				// The client waits for the interim response before sending the body
+				HttpResponse.writeContinue(encoded);
+				writeQueue.add(encoded.end());
+			}
+		} catch (HttpParsingException e) {
+
+			LOGGER.error(e.getMessage());
+			response.reset();
+			response.setStatusCode(e.getCode());
+			long bytes = encode(response);
+			METRICS.recordResponse(e.getCode());
+			if (ACCESS_LOG != null) {
+				ACCESS_LOG.log(channel.socket().getInetAddress(), null, e.getCode().code, bytes, 0);
+			}
+			closeAfterWrite = true;
+		}
+		readBuffer.compact();
+		if (readBuffer.position() == 0) {
+			releaseReadBuffer();
+		}
+
+		flush();
+		updateIdle();
+		return read > 0;
+	}
+
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		updateIdle();
+		METRICS.connectionClosed();
+		idleTimeout.cancel();
+		key.cancel();
+		try {
+			if (tlsChannel != null) {
+				// Best effort close_notify, the socket is not waited for
+				tlsChannel.close();
+			} else {
+				channel.close();
+			}
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+		for (Object pending : writeQueue) {
+			if (pending instanceof FileRegion) {
+				closeQuietly((FileRegion) pending);
+			} else if (pending instanceof StreamedBody) {
+				closeQuietly((StreamedBody) pending);
+			}
+		}
+		writeQueue.clear();
+		releaseReadBuffer();
+		encoded.release();
+		// Delete the temporary file of a body cut by the end of the connection
+		parser.reset();
+	}
+
+	private void releaseReadBuffer() {
+		if (readBuffer != null) {
+			BUFFER_POOL.release(readBuffer);
+			readBuffer = null;
+		}
+	}
+
+	/**
+	 * Write as much of the queued responses as the socket accepts. While output is pending the
+	 * connection stops reading, so a slow client cannot make the queue grow.
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		while (!writeQueue.isEmpty()) {
+			Object pending = writeQueue.peek();
+			boolean done;
+			if (pending instanceof FileRegion) {
+				FileRegion fileRegion = (FileRegion) pending;
+				long written = fileRegion.transferTo(output);
+				if (written > 0) {
+					idleTimeout.touch();
+					METRICS.recordBytesSent(written);
+				}
+				done = fileRegion.isDone();
+				if (done) {
+					fileRegion.close();
+				}
+			} else if (pending instanceof StreamedBody) {
+				StreamedBody streamedBody = (StreamedBody) pending;
+				long written = streamedBody.writeTo(output);
+				if (written > 0) {
+					idleTimeout.touch();
+					METRICS.recordBytesSent(written);
+				}
+				done = streamedBody.isDone();
+			} else {
+				// The heads and the bodies queued in a row leave in one gathering write
+				int count = 0;
+				for (Object queued : writeQueue) {
+					if (!(queued instanceof ByteBuffer) || count == gather.length) {
+						break;
+					}
+					gather[count++] = (ByteBuffer) queued;
+				}
+				long written = output.write(gather, 0, count);
+				if (written > 0) {
+					idleTimeout.touch();
+					METRICS.recordBytesSent(written);
+				}
+				done = !gather[count - 1].hasRemaining();
+				// The buffers are sent in order, the last one is dequeued below
+				for (int i = 0; i < count - 1 && !gather[i].hasRemaining(); i++) {
+					writeQueue.poll();
+				}
+				Arrays.fill(gather, 0, count, null);
+			}
+			if (!done) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			writeQueue.poll();
+		}
+		// The queued heads are written, their buffer goes back to the pool
+		encoded.release();
+		if (tlsChannel != null && !tlsChannel.flush()) {
+			// Records of the responses or of the handshake are left
+			key.interestOps(SelectionKey.OP_WRITE);
+			return;
+		}
+
+		if (closeAfterWrite) {
+			close();
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Handle one complete request and queue its response.
+	 * @param request
+	 */
+	private void process(HttpRequest request) {
+		long handleStartTime = System.nanoTime();
+		METRICS.recordParse(handleStartTime - parser.getStartTime());
+		request.setRemoteAddress(channel.socket().getInetAddress());
+		try {
+			ClientHandler.handleRequest(request, response);
+		} catch (FileNotFoundException e) {
+
+			LOGGER.error(e.getMessage());
+			response.reset();
+			response.setStatusCode(HttpStatusCode.SC_NOT_FOUND);
+		}
+		long writeStartTime = System.nanoTime();
+		METRICS.recordHandle(writeStartTime - handleStartTime);
+
+		if (!response.isKeepAlive()) {
+			closeAfterWrite = true;
+		}
+		long bytes = encode(response);
+		long writeEndTime = System.nanoTime();
+		METRICS.recordWrite(writeEndTime - writeStartTime);
+		METRICS.recordResponse(response.getStatusCode());
+		if (ACCESS_LOG != null) {
+			ACCESS_LOG.log(channel.socket().getInetAddress(), request, response.getCode(), bytes,
+					writeEndTime - parser.getStartTime());
+		}
+	}
+
+	/**
+	 * Queue the encoded response. A large file body is queued as a region of the file, transferred
+	 * to the socket as it becomes writable, so the loop never blocks on it nor loads it in the heap.
+	 * A cached body is queued as is, without copying it, and leaves with the head in one gathering
+	 * write. A streamed body is pulled one chunk at a time as the socket drains.
+	 * @param response
+	 * @return the number of bytes of the response, or -1 if its body is streamed
+	 */
+	private long encode(HttpResponse response) {
+		FileRegion fileBody = response.getFileBody();
+		ByteBuffer bufferBody = response.getBufferBody();
+		ByteBuffer head;
+		try {
+			if (fileBody != null && fileBody.getCount() >= HttpResponse.TRANSFER_THRESHOLD) {
+				response.writeHead(encoded);
+				head = encoded.end();
+				writeQueue.add(head);
+				writeQueue.add(fileBody);
+				return head.remaining() + fileBody.getCount();
+			}
+			if (response.getChannelBody() != null) {
+				response.writeHead(encoded);
+				writeQueue.add(encoded.end());
+				writeQueue.add(new StreamedBody(response.getChannelBody()));
+				return -1;
+			}
+			if (bufferBody != null) {
+				response.writeHead(encoded);
+				head = encoded.end();
+				writeQueue.add(head);
+				writeQueue.add(bufferBody);
+				return head.remaining() + bufferBody.remaining();
+			}
+			response.respond(encoded);
+		} catch (HttpExecutionException e) {
+
+			LOGGER.error(e.getMessage());
+			encoded.discard();
+			response.reset();
+			response.setStatusCode(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+			response.respond(encoded);
+			closeAfterWrite = true;
+		}
+		head = encoded.end();
+		writeQueue.add(head);
+		return head.remaining();
+	}
+
+	/**
+	 * Count the connection as idle while it waits for a request with no response pending.
+	 */
+	private void updateIdle() {
+		boolean waiting = !closed && parser.isIdle() && writeQueue.isEmpty();
+		if (waiting != idle) {
+			idle = waiting;
+			if (waiting) {
+				METRICS.connectionIdle();
+			} else {
+				METRICS.connectionBusy();
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * The responses encoded one after the other into a pooled buffer, each one queued as a slice of it.
+	 * The buffer is acquired by the first response and released once the queue is written. A response
+	 * larger than the room left is encoded on the heap instead.
+	 */
+	private static final class QueueOutputStream extends OutputStream {
+
+		/**
+		 * The pooled buffer, in write mode, null while no response is queued.
+		 */
+		private ByteBuffer buffer;
+
+		/**
+		 * The offset in the buffer of the response being encoded.
+		 */
+		private int start;
+
+		/**
+		 * The response being encoded, once it outgrew the buffer.
+		 */
+		private ByteArrayOutputStream overflow;
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (overflow == null) {
+				if (buffer == null) {
+					buffer = BUFFER_POOL.acquire();
+					start = 0;
+				}
+				if (len <= buffer.remaining()) {
+					buffer.put(b, off, len);
+					return;
+				}
+				overflow = new ByteArrayOutputStream(buffer.position() - start + len);
+				for (int i = start; i < buffer.position(); i++) {
+					overflow.write(buffer.get(i));
+				}
+				buffer.position(start);
+			}
+			overflow.write(b, off, len);
+		}
+
+		/**
+		 * @return the bytes of the response encoded since the previous one
+		 */
+		ByteBuffer end() {
+			if (overflow != null) {
+				ByteBuffer bytes = ByteBuffer.wrap(overflow.toByteArray());
+				overflow = null;
+				return bytes;
+			}
+			if (buffer == null) {
+				return ByteBuffer.allocate(0);
+			}
+			ByteBuffer bytes = buffer.duplicate();
+			bytes.flip();
+			bytes.position(start);
+			start = buffer.position();
+			return bytes;
+		}
+
+		/**
+		 * Drop the bytes of the response being encoded.
+		 */
+		void discard() {
+			overflow = null;
+			if (buffer != null) {
+				buffer.position(start);
+			}
+		}
+
+		/**
+		 * Give the buffer back to the pool, once none of the responses queued is left to write.
+		 */
+		void release() {
+			if (buffer != null) {
+				BUFFER_POOL.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+
+	/**
+	 * A body read from a channel through a pooled buffer, e.g. a file compressed on the fly.
+	 */
+	private static class StreamedBody implements Closeable {
+
+		private final ReadableByteChannel source;
+
+		/**
+		 * The pooled buffer, null once the body is done.
+		 */
+		private ByteBuffer buffer = BUFFER_POOL.acquire();
+
+		private boolean done;
+
+		StreamedBody(ReadableByteChannel source) {
+			this.source = source;
+			buffer.flip();
+		}
+
+		/**
+		 * Write chunks of the body until the socket stops accepting them or the source ends.
+		 * @param target
+		 * @return the number of bytes written
+		 * @throws IOException
+		 */
+		long writeTo(WritableByteChannel target) throws IOException {
+			long written = 0;
+			while (!done) {
+				if (buffer.hasRemaining()) {
+					written += target.write(buffer);
+					if (buffer.hasRemaining()) {
+						break;
+					}
+				}
+				buffer.clear();
+				int n = source.read(buffer);
+				buffer.flip();
+				if (n < 0) {
+					done = true;
+					releaseBuffer();
+					source.close();
+				} else if (n == 0) {
+					// Nothing produced yet, retried when the socket is writable again
+					break;
+				}
+			}
+			return written;
+		}
+
+		boolean isDone() {
+			return done;
+		}
+
+		@Override
+		public void close() throws IOException {
+			releaseBuffer();
+			source.close();
+		}
+
+		private void releaseBuffer() {
+			if (buffer != null) {
+				BUFFER_POOL.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.webserver.core;
+
+import com.webserver.config.Configuration;
+import com.webserver.metrics.ServerMetrics;
+import com.webserver.tls.TlsChannel;
+import com.webserver.tls.TlsContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is the non-blocking connection engine.
+ *
+ * Acceptor threads accept the connections and hand them round-robin to a fixed set of selector
+ * event loops, so the number of threads does not grow with the number of connections. With several
+ * acceptors, each one listens on its own socket bound with SO_REUSEPORT and feeds its own group of
+ * event loops, so a connection storm is spread by the kernel instead of queuing on one accept loop.
+ */
+public class NioEngine {
+
+	private final static Logger LOGGER = LogManager.getLogger(NioEngine.class);
+
+	/**
+	 * The pause of an acceptor after a failed accept, e.g. out of file descriptors, before it retries.
+	 * Unit: millisecond
+	 */
+	private static final long ACCEPT_RETRY_DELAY = 100;
+
+	/**
+	 * The channels wait for clients to connect: one per acceptor with SO_REUSEPORT, otherwise one
+	 * shared by the acceptors.
+	 */
+	private final ServerSocketChannel[] serverChannels;
+
+	/**
+	 * The channels of the HTTPS listener, null if it is disabled.
+	 */
+	private final ServerSocketChannel[] httpsChannels;
+
+	/**
+	 * The TLS configuration of the HTTPS listener, null if it is disabled.
+	 */
+	private final TlsContext tls;
+
+	/**
+	 * The event loops multiplexing the accepted connections.
+	 */
+	private final EventLoop[] eventLoops;
+
+	private final Thread[] eventLoopThreads;
+
+	private final int acceptors;
+
+	private final Configuration configuration;
+
+	public NioEngine(Configuration configuration) throws IOException {
+		this.configuration = configuration;
+		this.acceptors = configuration.getAcceptors();
+		serverChannels = SocketOptions.openListeners(configuration);
+		tls = TlsContext.getInstance();
+		httpsChannels = tls != null ? SocketOptions.openListeners(configuration, configuration.getHttpsPort()) : null;
+
+		eventLoops = new EventLoop[configuration.getIoThreads()];
+		eventLoopThreads = new Thread[eventLoops.length];
+		for (int i = 0; i < eventLoops.length; i++) {
+			eventLoops[i] = new EventLoop(1000L * configuration.getTimeout(), configuration.getTimeoutGranularity());
+			eventLoopThreads[i] = new Thread(eventLoops[i], "nio-loop-" + i);
+		}
+	}
+
+	/**
+	 * Start the event loops and accept connections until the engine is stopped: the first acceptor
+	 * runs on the calling thread, the others on their own threads.
+	 */
+	public void start() {
+		for (Thread thread : eventLoopThreads) {
+			thread.start();
+		}
+		LOGGER.info("NIO engine started with " + eventLoops.length + " event loops and " + acceptors
+				+ " acceptors on " + serverChannels.length + " listening sockets"
+				+ (httpsChannels != null ? ", HTTPS on port " + configuration.getHttpsPort() : ""));
+		for (int i = 1; i < acceptors; i++) {
+			int acceptor = i;
+			new Thread(() -> accept(acceptor, serverChannels, null), "acceptor-" + i).start();
+		}
+		if (httpsChannels != null) {
+			// The HTTPS acceptors hand their connections to the same event loops
+			for (int i = 0; i < acceptors; i++) {
+				int acceptor = i;
+				new Thread(() -> accept(acceptor, httpsChannels, tls), "https-acceptor-" + i).start();
+			}
+		}
+		accept(0, serverChannels, null);
+	}
+
+	/**
+	 * The loop of an acceptor. Its group is the event loops whose index modulo the number of acceptors
+	 * is its own, or a single shared loop if there are fewer loops than acceptors.
+	 *
+	 * A failure of a connection only closes it, and a failed accept is retried after a pause: the
+	 * engine is only stopped once its listening channel is closed.
+	 * @param acceptor the index of the acceptor
+	 * @param listeners the listening channels of the port
+	 * @param tls the TLS configuration of the port, or null
+	 */
+	private void accept(int acceptor, ServerSocketChannel[] listeners, TlsContext tls) {
+		ServerSocketChannel serverChannel = listeners[acceptor % listeners.length];
+		int first = acceptor < eventLoops.length ? acceptor : acceptor % eventLoops.length;
+		int step = acceptor < eventLoops.length ? acceptors : eventLoops.length;
+		int next = first;
+		while (serverChannel.isOpen()) {
+			SocketChannel channel;
+			try {
+				channel = serverChannel.accept();
+			} catch (ClosedChannelException e) {
+				// Stopped, possibly by another acceptor
+				break;
+			} catch (IOException e) {
+				// E.g. too many open files: the connections wait in the backlog until some are closed
+				LOGGER.error("Error accepting a connection: {}", e.getMessage());
+				try {
+					Thread.sleep(ACCEPT_RETRY_DELAY);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				continue;
+			}
+			LOGGER.debug("Connected with {}", channel.socket().getInetAddress());
+			ServerMetrics.getInstance().connectionAccepted();
+			try {
+				SocketOptions.configure(channel, configuration);
+			} catch (IOException e) {
+				// E.g. reset by the client already: only this connection is closed, as by the blocking engine
+				LOGGER.error("Error setting the socket options: {}", e.getMessage());
+				close(channel);
+				continue;
+			}
+			try {
+				channel.configureBlocking(false);
+				if (tls != null) {
+					eventLoops[next].register(new TlsChannel(channel, tls.createEngine()));
+				} else {
+					eventLoops[next].register(channel);
+				}
+			} catch (IOException | RuntimeException e) {
+				// E.g. reset by the client already, or an SSLEngine that cannot be created for it
+				LOGGER.error("Error setting up the connection: {}", e.getMessage());
+				close(channel);
+				continue;
+			}
+			next += step;
+			if (next >= eventLoops.length) {
+				next = first;
+			}
+		}
+		stop();
+	}
+
+	public void stop() {
+		close(serverChannels);
+		close(httpsChannels);
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.close();
+		}
+	}
+
+	private static void close(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	private static void close(ServerSocketChannel[] listeners) {
+		if (listeners != null) {
+			for (ServerSocketChannel serverChannel : listeners) {
+				try {
+					serverChannel.close();
+				} catch (IOException e) {
+					LOGGER.error(e.getMessage());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.webserver.core;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpMethod;
+import com.webserver.proxy.ReverseProxy;
+import com.webserver.router.Handler;
+import com.webserver.router.Router;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * This class is a singleton class holding the routes of the server, compiled once at startup and
+ * shared by both engines:
+ * - the status page, on its exact path, for GET and HEAD;
+ * - the prefixes of the reverse proxy, for all the methods;
+ * - the custom handlers, on their prefixes, for all the methods;
+ * - the static files of the webroot, on the / prefix, for GET, HEAD and, with uploads enabled, PUT.
+ */
+public class Routes {
+
+	private final static Logger LOGGER = LogManager.getLogger(Routes.class);
+
+	private static Router router;
+
+	private Routes() {
+	}
+
+	/**
+	 * @return the router of the server
+	 * @throws HttpConfigurationException if a route is invalid, duplicated or its handler cannot be created
+	 */
+	public static synchronized Router getInstance() throws HttpConfigurationException {
+		if (router == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			Router.Builder builder = Router.builder();
+			String statusPath = configuration.getStatusPath();
+			if (statusPath != null && !statusPath.isEmpty()) {
+				builder.exact(statusPath, ClientHandler::handleStatus, HttpMethod.GET, HttpMethod.HEAD);
+			}
+			ReverseProxy proxy = ReverseProxy.getInstance();
+			if (proxy != null) {
+				proxy.register(builder);
+			}
+			mountHandlers(builder, configuration.getHandlers());
+			builder.prefix("/", ClientHandler::handleGET, HttpMethod.GET);
+			builder.prefix("/", ClientHandler::handleHEAD, HttpMethod.HEAD);
+			if (configuration.isUploads()) {
+				builder.prefix("/", ClientHandler::handlePUT, HttpMethod.PUT);
+			}
+			router = builder.build();
+		}
+		return router;
+	}
+
+	/**
+	 * Create the custom handlers, once, and mount each one on its prefix.
+	 * @param builder
+	 * @param handlers comma separated path-prefix=class pairs
+	 * @throws HttpConfigurationException
+	 */
+	static void mountHandlers(Router.Builder builder, String handlers) throws HttpConfigurationException {
+		for (String route : handlers.split(",")) {
+			route = route.trim();
+			if (route.isEmpty()) {
+				continue;
+			}
+			int eq = route.indexOf('=');
+			if (eq <= 0) {
+				throw new HttpConfigurationException("Invalid handler " + route + ", expected /prefix=class");
+			}
+			String prefix = route.substring(0, eq).trim();
+			String className = route.substring(eq + 1).trim();
+			Handler handler;
+			try {
+				handler = Class.forName(className).asSubclass(Handler.class).getConstructor().newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new HttpConfigurationException("Cannot create the handler " + className, e);
+			}
+			builder.prefix(prefix, handler);
+			LOGGER.info("Handling {} with {}", prefix, className);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.webserver.core;
+
+import com.webserver.config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class applies the configured socket options, shared by both engines.
+ */
+public class SocketOptions {
+
+	private final static Logger LOGGER = LogManager.getLogger(SocketOptions.class);
+
+	/**
+	 * StandardSocketOptions.SO_REUSEPORT, added in Java 9: looked up by name, so the server still
+	 * builds for Java 8. Null if the runtime does not define it.
+	 */
+	private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+	private SocketOptions() {}
+
+	/**
+	 * Open the listening channels of the acceptors. With SO_REUSEPORT, each acceptor gets its own
+	 * channel bound to the same port and the kernel spreads the new connections across them;
+	 * otherwise a single channel is shared by all the acceptors.
+	 * @param configuration
+	 * @return the bound channels, one per acceptor or a single one
+	 * @throws IOException
+	 */
+	public static ServerSocketChannel[] openListeners(Configuration configuration) throws IOException {
+		return openListeners(configuration, configuration.getPort());
+	}
+
+	/**
+	 * Open the listening channels of the acceptors on a port, e.g. the HTTPS one.
+	 * @param configuration
+	 * @param port
+	 * @return the bound channels, one per acceptor or a single one
+	 * @throws IOException
+	 */
+	public static ServerSocketChannel[] openListeners(Configuration configuration, int port) throws IOException {
+		int acceptors = configuration.getAcceptors();
+		if (acceptors > 1 && !isReusePortSupported()) {
+			LOGGER.warn("SO_REUSEPORT is not supported, the " + acceptors + " acceptors share one listening socket");
+			acceptors = 1;
+		}
+		ServerSocketChannel[] serverChannels = new ServerSocketChannel[acceptors];
+		try {
+			for (int i = 0; i < acceptors; i++) {
+				serverChannels[i] = ServerSocketChannel.open();
+				if (acceptors > 1) {
+					serverChannels[i].setOption(SO_REUSEPORT, true);
+				}
+				bind(serverChannels[i], configuration, port);
+			}
+		} catch (IOException e) {
+			for (ServerSocketChannel serverChannel : serverChannels) {
+				if (serverChannel != null) {
+					serverChannel.close();
+				}
+			}
+			throw e;
+		}
+		return serverChannels;
+	}
+
+	/**
+	 * Bind the listening channel with the configured backlog.
+	 * The receive buffer is set before the bind, so the accepted connections inherit it: a buffer
+	 * larger than 64 KiB needs the TCP window scale option, negotiated by the handshake.
+	 * @param serverChannel
+	 * @param configuration
+	 * @param port
+	 * @throws IOException
+	 */
+	private static void bind(ServerSocketChannel serverChannel, Configuration configuration, int port) throws IOException {
+		if (configuration.getReceiveBufferSize() > 0) {
+			serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, configuration.getReceiveBufferSize());
+		}
+		serverChannel.bind(new InetSocketAddress(port), configuration.getBacklog());
+	}
+
+	/**
+	 * Set the options of an accepted connection.
+	 * @param channel
+	 * @param configuration
+	 * @throws IOException
+	 */
+	public static void configure(SocketChannel channel, Configuration configuration) throws IOException {
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, configuration.isTcpNoDelay());
+		if (configuration.getSendBufferSize() > 0) {
+			channel.setOption(StandardSocketOptions.SO_SNDBUF, configuration.getSendBufferSize());
+		}
+		if (configuration.getSoLinger() >= 0) {
+			channel.setOption(StandardSocketOptions.SO_LINGER, configuration.getSoLinger());
+		}
+	}
+
+	/**
+	 * @return true if the listening sockets of the platform can share a port, e.g. Linux 3.9 and later
+	 */
+	public static boolean isReusePortSupported() {
+		if (SO_REUSEPORT == null) {
+			return false;
+		}
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			return serverChannel.supportedOptions().contains(SO_REUSEPORT);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> reusePortOption() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -2,6 +2,11 @@ package com.webserver.core;
 
 import com.webserver.config.Configuration;
 import com.webserver.config.ConfigurationManager;
+import com.webserver.config.Engine;
+import com.webserver.config.ExecutorType;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.metrics.ServerMetrics;
+import com.webserver.tls.TlsContext;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
@@ -10,13 +15,15 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
@@ -26,46 +33,165 @@ import java.util.concurrent.TimeUnit;
 public class WebServer {
 	private final static Logger LOGGER = LogManager.getLogger(WebServer.class);
 	/**
-	 * The socket waits for clients to connect.
+	 * The channels wait for clients to connect: one per acceptor with SO_REUSEPORT, otherwise one
+	 * shared by the acceptors.
 	 */
-	private ServerSocket serverSocket;
+	private ServerSocketChannel[] serverChannels;
 
 	/**
-	 * The thread pool is for threads handling client requests.
+	 * The channels of the HTTPS listener, null if it is disabled.
 	 */
-	private final ExecutorService pool;
+	private ServerSocketChannel[] httpsChannels;
 
 	/**
-	 * The thread pool is to execute cleaner thread repetitively.
+	 * The TLS configuration of the HTTPS listener, null if it is disabled.
+	 */
+	private TlsContext tls;
+
+	/**
+	 * The thread pools handling client requests, one per acceptor.
+	 */
+	private final ExecutorService[] pools;
+
+	/**
+	 * The admission control of each pool.
+	 */
+	private final AdmissionController[] admissions;
+
+	/**
+	 * The thread pool is to advance the idle timer repetitively.
 	 */
 	private final ScheduledExecutorService cleanerPool;
 
 	/**
-	 * The list is to store all existing client handlers.
+	 * The timer closing the idle connections.
+	 */
+	private final IdleTimer idleTimer;
+
+	/**
+	 * The non-blocking engine, only set if the configured engine is NIO.
 	 */
-	private final LinkedList<ClientHandler> handlers = new LinkedList<>();
+	private NioEngine nioEngine;
+
+	private final Configuration configuration;
 
 	public WebServer() {
-		Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+		configuration = ConfigurationManager.getInstance().getConfiguration();
+		// An invalid route fails the start, not the first request
+		Routes.getInstance();
+		if (configuration.getEngine() == Engine.NIO) {
+			try {
+				nioEngine = new NioEngine(configuration);
+			} catch (IOException e) {
+				LOGGER.info("Error binding port ", e);
+			}
+			pools = null;
+			admissions = null;
+			cleanerPool = null;
+			idleTimer = null;
+			return;
+		}
+
 		try {
-			serverSocket = new ServerSocket(configuration.getPort());
+			// Opened as channels, so the accepted sockets have one for FileChannel.transferTo
+			// and the gathering writes
+			serverChannels = SocketOptions.openListeners(configuration);
+			tls = TlsContext.getInstance();
+			if (tls != null) {
+				httpsChannels = SocketOptions.openListeners(configuration, configuration.getHttpsPort());
+			}
 		} catch (IOException e) {
 			LOGGER.info("Error binding port ", e);
 		}
-		pool = Executors.newFixedThreadPool(configuration.getMaxThreadNum());
+		// The threads and the queue are split between the acceptors, each one hands its connections
+		// to its own pool. The queue is bounded, the connections beyond are shed.
+		int acceptors = configuration.getAcceptors();
+		int threads = Math.max(1, configuration.getMaxThreadNum() / acceptors);
+		int queueSize = Math.max(1, configuration.getMaxQueueSize() / acceptors);
+		pools = new ExecutorService[acceptors];
+		admissions = new AdmissionController[acceptors];
+		for (int i = 0; i < acceptors; i++) {
+			pools[i] = configuration.getExecutorType() == ExecutorType.VIRTUAL
+					? newVirtualThreadPerTaskExecutor()
+					: new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+							new LinkedBlockingQueue<>(queueSize));
+			admissions[i] = new AdmissionController(configuration);
+		}
+		if (pools[0] instanceof ThreadPoolExecutor) {
+			ServerMetrics.getInstance().setPoolQueueDepth(() -> {
+				long depth = 0;
+				for (ExecutorService pool : pools) {
+					depth += ((ThreadPoolExecutor) pool).getQueue().size();
+				}
+				return depth;
+			});
+		}
+		idleTimer = new IdleTimer(1000L * configuration.getTimeout(), configuration.getTimeoutGranularity());
 		cleanerPool = Executors.newScheduledThreadPool(1);
-		cleanerPool.scheduleAtFixedRate(new SocketCleaner(), 5, 5, TimeUnit.SECONDS);
+		cleanerPool.scheduleAtFixedRate(idleTimer::advance, idleTimer.getTickDuration(),
+				idleTimer.getTickDuration(), TimeUnit.MILLISECONDS);
 	}
 
+	/**
+	 * Accept connections until the server is stopped: the first acceptor runs on the calling thread,
+	 * the others on their own threads.
+	 */
 	public void start() {
+		if (nioEngine != null) {
+			nioEngine.start();
+			return;
+		}
+		if (serverChannels == null) {
+			return;
+		}
+		for (int i = 1; i < pools.length; i++) {
+			int acceptor = i;
+			new Thread(() -> accept(acceptor, serverChannels, null), "acceptor-" + i).start();
+		}
+		if (httpsChannels != null) {
+			// The HTTPS acceptors hand their connections to the same pools
+			for (int i = 0; i < pools.length; i++) {
+				int acceptor = i;
+				new Thread(() -> accept(acceptor, httpsChannels, tls), "https-acceptor-" + i).start();
+			}
+		}
+		LOGGER.info("Blocking engine started with " + pools.length + " acceptors on "
+				+ serverChannels.length + " listening sockets"
+				+ (httpsChannels != null ? ", HTTPS on port " + configuration.getHttpsPort() : ""));
+		accept(0, serverChannels, null);
+	}
+
+	/**
+	 * The loop of an acceptor.
+	 * @param acceptor the index of the acceptor
+	 * @param listeners the listening channels of the port
+	 * @param tls the TLS configuration of the port, or null
+	 */
+	private void accept(int acceptor, ServerSocketChannel[] listeners, TlsContext tls) {
+		ServerSocketChannel serverChannel = listeners[acceptor % listeners.length];
+		ExecutorService pool = pools[acceptor];
 		try {
-			while (serverSocket.isBound() && !serverSocket.isClosed()) {
-				Socket socket = serverSocket.accept();
-				LOGGER.info("Connected with " + socket.getInetAddress());
-				ClientHandler handler = new ClientHandler(socket);
-				handlers.add(handler);
-				pool.execute(handler);
+			while (serverChannel.isOpen()) {
+				SocketChannel channel = serverChannel.accept();
+				LOGGER.debug("Connected with {}", channel.socket().getInetAddress());
+				ServerMetrics.getInstance().connectionAccepted();
+				try {
+					SocketOptions.configure(channel, configuration);
+				} catch (IOException e) {
+					// E.g. reset by the client already: only this connection is closed
+					LOGGER.error("Error setting the socket options: {}", e.getMessage());
+					close(channel);
+					continue;
+				}
+				ClientHandler handler = new ClientHandler(channel.socket(), idleTimer, admissions[acceptor], tls);
+				try {
+					pool.execute(handler);
+				} catch (RejectedExecutionException e) {
+					handler.shed();
+				}
 			}
+		} catch (ClosedChannelException e) {
+			// Stopped, possibly by another acceptor
 		} catch (IOException e) {
 			LOGGER.error(e.getMessage());
 		} finally {
@@ -74,15 +200,47 @@ public class WebServer {
 	}
 
 	public void stop() {
-		if (serverSocket != null) {
-			try {
-				serverSocket.close();
-			} catch (IOException e) {
-				LOGGER.error(e.getMessage());
+		if (nioEngine != null) {
+			nioEngine.stop();
+		}
+		close(serverChannels);
+		close(httpsChannels);
+	}
+
+	private static void close(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	private static void close(ServerSocketChannel[] listeners) {
+		if (listeners != null) {
+			for (ServerSocketChannel serverChannel : listeners) {
+				try {
+					serverChannel.close();
+				} catch (IOException e) {
+					LOGGER.error(e.getMessage());
+				}
 			}
 		}
 	}
 
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively, so the server still
+	 * builds for Java 8 and only the virtual executor requires a Java 21 runtime.
+	 * @return executor starting a new virtual thread for each task
+	 * @throws HttpConfigurationException if the runtime has no virtual threads
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() throws HttpConfigurationException {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new HttpConfigurationException("Virtual threads require Java 21 or later", e);
+		}
+	}
+
 	public static void main(String[] args) {
 		ArgumentParser parser = ArgumentParsers.newArgumentParser("A simple webserver", true);
 		parser.addArgument("--conf")
@@ -101,26 +259,4 @@ public class WebServer {
 		WebServer server = new WebServer();
 		server.start();
 	}
-
-	/**
-	 * This thread class clean up expired socket.
-	 */
-	public class SocketCleaner implements Runnable {
-
-		@Override
-		public void run() {
-			long currentTimestamp = System.currentTimeMillis();
-			LOGGER.debug("check: " + currentTimestamp);
-			Iterator<ClientHandler> iterator = handlers.iterator();
-			while (iterator.hasNext()) {
-				ClientHandler handler = iterator.next();
-				// If the client expires, close and remove it
-				if (currentTimestamp - handler.getLastRequestTimestamp() >
-						1000L * ConfigurationManager.getInstance().getConfiguration().getTimeout()) {
-					handler.closeSocket();
-					iterator.remove();
-				}
-			}
-		}
-	}
 }
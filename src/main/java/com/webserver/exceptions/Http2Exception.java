@@ -0,0 +1,39 @@
+package com.webserver.exceptions;
+
+import com.webserver.http2.Http2ErrorCode;
+
+/**
+ * RFC-7540 Section 5.4
+ * An error of the HTTP/2 connection, ending it with a GOAWAY frame, or of a single stream, ending the
+ * stream with a RST_STREAM frame.
+ */
+public class Http2Exception extends RuntimeException {
+	private final Http2ErrorCode errorCode;
+
+	/**
+	 * The stream in error, 0 for a connection error.
+	 */
+	private final int streamId;
+
+	public Http2Exception(Http2ErrorCode errorCode, String message) {
+		this(errorCode, 0, message);
+	}
+
+	public Http2Exception(Http2ErrorCode errorCode, int streamId, String message) {
+		super(message);
+		this.errorCode = errorCode;
+		this.streamId = streamId;
+	}
+
+	public Http2ErrorCode getErrorCode() {
+		return errorCode;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public boolean isConnectionError() {
+		return streamId == 0;
+	}
+}
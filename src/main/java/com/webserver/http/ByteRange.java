@@ -0,0 +1,139 @@
+package com.webserver.http;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * RFC-7233
+ * This class is a satisfiable range of bytes of a representation.
+ *
+ *          Range            = byte-ranges-specifier
+ *          byte-ranges-specifier = bytes-unit "=" byte-range-set
+ *          byte-range-set   = 1#( byte-range-spec / suffix-byte-range-spec )
+ *          byte-range-spec  = first-byte-pos "-" [ last-byte-pos ]
+ *          suffix-byte-range-spec = "-" suffix-length
+ */
+public class ByteRange {
+
+	/**
+	 * A Range header with more ranges than this is ignored, the full representation is sent instead.
+	 */
+	public static final int MAX_RANGES = 32;
+
+	private static final String BYTES_UNIT = "bytes=";
+
+	/**
+	 * The position of the first byte.
+	 */
+	public final long first;
+
+	/**
+	 * The position of the last byte, inclusive.
+	 */
+	public final long last;
+
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * @return the number of bytes of the range
+	 */
+	public long length() {
+		return last - first + 1;
+	}
+
+	/**
+	 * @param completeLength
+	 * @return the Content-Range of the range, e.g. bytes 0-499/1234
+	 */
+	public String toContentRange(long completeLength) {
+		return "bytes " + first + "-" + last + "/" + completeLength;
+	}
+
+	/**
+	 * Parse a Range header against the length of the representation.
+	 * @param range the header value
+	 * @param length the length of the representation
+	 * @return the satisfiable ranges in ascending order, an empty list if none is satisfiable,
+	 *         or null if the header is invalid and must be ignored
+	 */
+	public static List<ByteRange> parse(String range, long length) {
+		if (range.length() < BYTES_UNIT.length() || !range.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		int count = 0;
+		for (String spec : range.substring(BYTES_UNIT.length()).split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty()) {
+				continue;
+			}
+			if (++count > MAX_RANGES) {
+				return null;
+			}
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			long first;
+			long last;
+			try {
+				if (dash == 0) {
+					long suffix = Long.parseLong(spec.substring(1));
+					if (suffix < 0) {
+						return null;
+					}
+					first = Math.max(length - suffix, 0);
+					last = suffix == 0 ? -1 : length - 1;
+				} else {
+					first = Long.parseLong(spec.substring(0, dash));
+					last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+					if (first < 0 || last < first) {
+						return null;
+					}
+					last = Math.min(last, length - 1);
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (first < length && first <= last) {
+				ranges.add(new ByteRange(first, last));
+			}
+		}
+		return count == 0 ? null : coalesce(ranges);
+	}
+
+	/**
+	 * RFC-7233
+	 * When multiple ranges are requested, a server MAY coalesce any of the ranges that overlap, or that
+	 * are separated by a gap that is smaller than the overhead of sending multiple parts, regardless of
+	 * the order in which the corresponding byte-range-spec appeared in the received Range header field.
+	 * The overlapping and adjacent ranges are merged, so no byte is sent twice: bytes=0-,0-,0- is one range.
+	 * @param ranges
+	 * @return the ranges in ascending order, none overlapping or adjacent to another
+	 */
+	private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+		if (ranges.size() < 2) {
+			return ranges;
+		}
+		ranges.sort(Comparator.comparingLong(range -> range.first));
+		List<ByteRange> coalesced = new ArrayList<>(ranges.size());
+		ByteRange current = ranges.get(0);
+		for (int i = 1; i < ranges.size(); i++) {
+			ByteRange next = ranges.get(i);
+			if (next.first <= current.last + 1) {
+				if (next.last > current.last) {
+					current = new ByteRange(current.first, next.last);
+				}
+			} else {
+				coalesced.add(current);
+				current = next;
+			}
+		}
+		coalesced.add(current);
+		return coalesced;
+	}
+}
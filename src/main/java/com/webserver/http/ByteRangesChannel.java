@@ -0,0 +1,147 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * RFC-7233
+ * This class reads a multipart/byteranges body, one part per range, from a file or a cached content.
+ *
+ * The parts are read with positional reads, the source is never loaded as a whole.
+ *
+ *          --boundary CRLF
+ *          Content-Type: text/html CRLF
+ *          Content-Range: bytes 0-49/1270 CRLF
+ *          CRLF
+ *          ...the bytes of the range... CRLF
+ *          --boundary-- CRLF
+ */
+public class ByteRangesChannel implements ReadableByteChannel {
+
+	private final FileChannel file;
+
+	private final ByteBuffer content;
+
+	private final List<ByteRange> ranges;
+
+	/**
+	 * The encoded headers of each part, followed by the closing delimiter.
+	 */
+	private final ByteBuffer[] delimiters;
+
+	private final long length;
+
+	/**
+	 * The part being read: its delimiter and headers, then its range.
+	 */
+	private int part;
+
+	private long position;
+
+	private boolean open = true;
+
+	/**
+	 * @param file the file to read the ranges from, or null
+	 * @param content the content to read the ranges from if there is no file
+	 * @param ranges
+	 * @param contentType the type of the representation
+	 * @param completeLength the length of the representation
+	 * @param boundary
+	 */
+	public ByteRangesChannel(FileChannel file, ByteBuffer content, List<ByteRange> ranges, String contentType,
+							 long completeLength, String boundary) {
+		this.file = file;
+		this.content = content;
+		this.ranges = ranges;
+		this.delimiters = new ByteBuffer[ranges.size() + 1];
+		long total = 0;
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			String head = (i == 0 ? "" : "\r\n") + "--" + boundary + "\r\n"
+					+ "Content-Type: " + contentType + "\r\n"
+					+ "Content-Range: " + range.toContentRange(completeLength) + "\r\n\r\n";
+			delimiters[i] = ByteBuffer.wrap(head.getBytes(StandardCharsets.US_ASCII));
+			total += delimiters[i].remaining() + range.length();
+		}
+		delimiters[ranges.size()] = ByteBuffer.wrap(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+		this.length = total + delimiters[ranges.size()].remaining();
+		this.position = ranges.get(0).first;
+	}
+
+	/**
+	 * @return the Content-Length of the multipart body
+	 */
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int read = 0;
+		while (dst.hasRemaining() && part <= ranges.size()) {
+			ByteBuffer delimiter = delimiters[part];
+			if (delimiter.hasRemaining()) {
+				int n = Math.min(delimiter.remaining(), dst.remaining());
+				ByteBuffer slice = delimiter.duplicate();
+				slice.limit(slice.position() + n);
+				dst.put(slice);
+				delimiter.position(delimiter.position() + n);
+				read += n;
+				continue;
+			}
+			if (part == ranges.size()) {
+				part++;
+				break;
+			}
+
+			ByteRange range = ranges.get(part);
+			long remaining = range.last + 1 - position;
+			if (remaining <= 0) {
+				part++;
+				if (part < ranges.size()) {
+					position = ranges.get(part).first;
+				}
+				continue;
+			}
+			int n = readSource(dst, position, (int) Math.min(remaining, dst.remaining()));
+			position += n;
+			read += n;
+		}
+		return read == 0 && part > ranges.size() ? -1 : read;
+	}
+
+	private int readSource(ByteBuffer dst, long from, int count) throws IOException {
+		if (file == null) {
+			ByteBuffer slice = content.duplicate();
+			slice.position(slice.position() + (int) from);
+			slice.limit(slice.position() + count);
+			dst.put(slice);
+			return count;
+		}
+		ByteBuffer limited = dst.duplicate();
+		limited.limit(limited.position() + count);
+		int n = file.read(limited, from);
+		if (n < 0) {
+			throw new IOException("File truncated while sending ranges");
+		}
+		dst.position(limited.position());
+		return n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		open = false;
+		if (file != null) {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RFC-7230
+ * This class reads a body of unknown length with the chunked transfer coding applied.
+ *
+ *          chunked-body   = *chunk
+ *                           last-chunk
+ *                           trailer-part
+ *                           CRLF
+ *          chunk          = chunk-size [ chunk-ext ] CRLF
+ *                           chunk-data CRLF
+ *          last-chunk     = 1*("0") [ chunk-ext ] CRLF
+ *
+ * Every read of the source becomes one chunk, so the bytes are sent as soon as they are produced
+ * and no more than one chunk is ever held in memory.
+ */
+public class ChunkedChannel implements ReadableByteChannel {
+
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Room for the size of a chunk: up to 8 hexadecimal digits and CRLF.
+	 */
+	private static final int SIZE_LINE_LENGTH = 10;
+
+	private final ReadableByteChannel source;
+
+	private final int chunkSize;
+
+	/**
+	 * The encoded chunk not read yet, in read mode.
+	 */
+	private final ByteBuffer chunk;
+
+	private boolean ended;
+
+	/**
+	 * @param source the body
+	 * @param chunkSize the largest number of body bytes in a chunk
+	 */
+	public ChunkedChannel(ReadableByteChannel source, int chunkSize) {
+		this.source = source;
+		this.chunkSize = chunkSize;
+		this.chunk = ByteBuffer.allocate(SIZE_LINE_LENGTH + chunkSize + 2);
+		chunk.flip();
+	}
+
+	/**
+	 * @return the length of the largest encoded chunk
+	 */
+	public int capacity() {
+		return chunk.capacity();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!chunk.hasRemaining()) {
+			if (ended) {
+				return -1;
+			}
+			fill();
+		}
+		int n = Math.min(chunk.remaining(), dst.remaining());
+		ByteBuffer slice = chunk.duplicate();
+		slice.limit(slice.position() + n);
+		dst.put(slice);
+		chunk.position(chunk.position() + n);
+		return n;
+	}
+
+	/**
+	 * Read the next chunk from the source, leaving the room of its size line in front of it.
+	 * @throws IOException
+	 */
+	private void fill() throws IOException {
+		chunk.clear();
+		chunk.position(SIZE_LINE_LENGTH);
+		chunk.limit(SIZE_LINE_LENGTH + chunkSize);
+		int n = source.read(chunk);
+		if (n < 0) {
+			ended = true;
+			chunk.clear();
+			chunk.put(LAST_CHUNK);
+			chunk.flip();
+			return;
+		}
+		if (n == 0) {
+			chunk.limit(0);
+			return;
+		}
+		byte[] sizeLine = (Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+		int start = SIZE_LINE_LENGTH - sizeLine.length;
+		chunk.limit(chunk.capacity());
+		chunk.put((byte) '\r').put((byte) '\n');
+		int end = chunk.position();
+		chunk.position(start);
+		chunk.put(sizeLine);
+		chunk.position(start);
+		chunk.limit(end);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return source.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+}
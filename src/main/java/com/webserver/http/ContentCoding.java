@@ -0,0 +1,94 @@
+package com.webserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RFC-7231
+ * The content codings the server can apply to a response body.
+ *
+ *          gzip    = RFC-1952 header, DEFLATE data and CRC-32 trailer
+ *          deflate = RFC-1950 zlib wrapper around DEFLATE data
+ */
+public enum ContentCoding {
+	GZIP("gzip"), DEFLATE("deflate");
+
+	public final String token;
+
+	ContentCoding(String token) {
+		this.token = token;
+	}
+
+	/**
+	 * RFC-7231
+	 *          Accept-Encoding  = #( codings [ weight ] )
+	 *          codings          = content-coding / "identity" / "*"
+	 *          weight           = OWS ";" OWS "q=" qvalue
+	 * @param acceptEncoding the header value, may be null
+	 * @return the accepted coding with the highest weight, gzip on a tie, or null for identity
+	 */
+	public static ContentCoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+			return null;
+		}
+		float gzip = -1;
+		float deflate = -1;
+		float any = -1;
+		for (String element : acceptEncoding.split(",")) {
+			int semicolon = element.indexOf(';');
+			String coding = (semicolon < 0 ? element : element.substring(0, semicolon)).trim();
+			float weight = semicolon < 0 ? 1 : parseWeight(element.substring(semicolon + 1));
+			if (coding.equalsIgnoreCase(GZIP.token) || coding.equalsIgnoreCase("x-gzip")) {
+				gzip = weight;
+			} else if (coding.equalsIgnoreCase(DEFLATE.token)) {
+				deflate = weight;
+			} else if (coding.equals("*")) {
+				any = weight;
+			}
+		}
+		if (gzip < 0) {
+			gzip = any;
+		}
+		if (deflate < 0) {
+			deflate = any;
+		}
+		if (gzip > 0 && gzip >= deflate) {
+			return GZIP;
+		}
+		return deflate > 0 ? DEFLATE : null;
+	}
+
+	private static float parseWeight(String parameter) {
+		parameter = parameter.trim();
+		if (!parameter.startsWith("q=") && !parameter.startsWith("Q=")) {
+			return 1;
+		}
+		try {
+			return Float.parseFloat(parameter.substring(2).trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Encode a whole content at once, e.g. to cache the encoded variant of a file.
+	 * @param content the bytes between position and limit, left untouched
+	 * @param level the compression level, 1 (fastest) to 9 (smallest)
+	 * @return the encoded content
+	 * @throws IOException
+	 */
+	public ByteBuffer encode(ByteBuffer content, int level) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.remaining() / 3 + 64);
+		byte[] chunk = new byte[16 * 1024];
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		try (DeflatingChannel channel = new DeflatingChannel(DeflatingChannel.of(content.duplicate()), this, level)) {
+			int n;
+			while ((n = channel.read(buffer)) >= 0) {
+				outputStream.write(chunk, 0, n);
+				buffer.clear();
+			}
+		}
+		return ByteBuffer.wrap(outputStream.toByteArray());
+	}
+}
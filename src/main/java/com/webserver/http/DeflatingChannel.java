@@ -0,0 +1,165 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class compresses the bytes of a source channel on the fly, one bounded chunk at a time.
+ *
+ * It is the streaming compressor for bodies too large to be cached: reading it yields the gzip or
+ * deflate encoding of the source, with constant memory whatever the size of the source.
+ */
+public class DeflatingChannel implements ReadableByteChannel {
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	/**
+	 * RFC-1952: ID1 ID2 CM FLG MTIME(4) XFL OS, with CM = 8 (deflate) and OS = 255 (unknown)
+	 */
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final ReadableByteChannel source;
+
+	private final ContentCoding coding;
+
+	private final Deflater deflater;
+
+	private final CRC32 crc = new CRC32();
+
+	private final byte[] input = new byte[CHUNK_SIZE];
+
+	private final byte[] output = new byte[CHUNK_SIZE];
+
+	/**
+	 * The encoded bytes produced and not yet read.
+	 */
+	private ByteBuffer pending;
+
+	private boolean sourceExhausted;
+
+	private boolean trailerWritten;
+
+	public DeflatingChannel(ReadableByteChannel source, ContentCoding coding, int level) {
+		this.source = source;
+		this.coding = coding;
+		// gzip wraps raw DEFLATE data itself, deflate is DEFLATE data in the zlib format of the Deflater
+		this.deflater = new Deflater(level, coding == ContentCoding.GZIP);
+		this.pending = coding == ContentCoding.GZIP ? ByteBuffer.wrap(GZIP_HEADER.clone()) : ByteBuffer.allocate(0);
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int read = 0;
+		while (dst.hasRemaining()) {
+			if (pending.hasRemaining()) {
+				int n = Math.min(pending.remaining(), dst.remaining());
+				ByteBuffer slice = pending.duplicate();
+				slice.limit(slice.position() + n);
+				dst.put(slice);
+				pending.position(pending.position() + n);
+				read += n;
+				continue;
+			}
+			if (!produce()) {
+				return read == 0 ? -1 : read;
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Produce the next encoded bytes into the pending buffer.
+	 * @return false once the whole encoding has been produced
+	 * @throws IOException
+	 */
+	private boolean produce() throws IOException {
+		while (true) {
+			if (deflater.finished()) {
+				if (coding == ContentCoding.GZIP && !trailerWritten) {
+					trailerWritten = true;
+					pending = trailer();
+					return true;
+				}
+				return false;
+			}
+			if (deflater.needsInput() && !sourceExhausted) {
+				ByteBuffer buffer = ByteBuffer.wrap(input);
+				int n = source.read(buffer);
+				if (n < 0) {
+					sourceExhausted = true;
+					deflater.finish();
+				} else if (n > 0) {
+					crc.update(input, 0, n);
+					deflater.setInput(input, 0, n);
+				}
+				continue;
+			}
+			int n = deflater.deflate(output);
+			if (n > 0) {
+				pending = ByteBuffer.wrap(output, 0, n);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * RFC-1952: CRC32(4) ISIZE(4), little endian
+	 */
+	private ByteBuffer trailer() {
+		long value = crc.getValue();
+		long size = deflater.getBytesRead();
+		byte[] trailer = new byte[8];
+		for (int i = 0; i < 4; i++) {
+			trailer[i] = (byte) (value >>> (8 * i));
+			trailer[4 + i] = (byte) (size >>> (8 * i));
+		}
+		return ByteBuffer.wrap(trailer);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return source.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		deflater.end();
+		source.close();
+	}
+
+	/**
+	 * @param buffer
+	 * @return a channel reading the bytes between the position and the limit of the buffer
+	 */
+	public static ReadableByteChannel of(ByteBuffer buffer) {
+		return new ReadableByteChannel() {
+			private boolean open = true;
+
+			@Override
+			public int read(ByteBuffer dst) {
+				if (!buffer.hasRemaining()) {
+					return -1;
+				}
+				int n = Math.min(buffer.remaining(), dst.remaining());
+				ByteBuffer slice = buffer.duplicate();
+				slice.limit(slice.position() + n);
+				dst.put(slice);
+				buffer.position(buffer.position() + n);
+				return n;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() {
+				open = false;
+			}
+		};
+	}
+}
@@ -0,0 +1,151 @@
+package com.webserver.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a region of a file sent as a message body without being loaded in the heap.
+ *
+ * The file is only opened when the first byte is sent. To a socket channel the region is sent with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which is sendfile on Linux; to any
+ * other output it is copied through a small bounded buffer.
+ */
+public class FileRegion implements Closeable {
+
+	/**
+	 * The size of the buffer of the copying fallback.
+	 */
+	private static final int COPY_CHUNK_SIZE = 16 * 1024;
+
+	private final File file;
+
+	private FileChannel channel;
+
+	/**
+	 * The position in the file of the next byte to send.
+	 */
+	private long position;
+
+	/**
+	 * The number of bytes left to send.
+	 */
+	private long remaining;
+
+	private final long count;
+
+	public FileRegion(File file, long position, long count) {
+		this.file = file;
+		this.position = position;
+		this.remaining = count;
+		this.count = count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the total number of bytes of the region
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public boolean isDone() {
+		return remaining == 0;
+	}
+
+	/**
+	 * Transfer as many bytes as the target accepts. A blocking target accepts them all, a
+	 * non-blocking one may accept only part, the rest is sent on the next call.
+	 * @param target
+	 * @return the number of bytes transferred
+	 * @throws IOException
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		long transferred = 0;
+		while (remaining > 0) {
+			long n = open().transferTo(position, remaining, target);
+			if (n <= 0) {
+				if (position >= channel.size()) {
+					throw new IOException("File truncated while sending " + file);
+				}
+				break;
+			}
+			position += n;
+			remaining -= n;
+			transferred += n;
+		}
+		return transferred;
+	}
+
+	/**
+	 * Copy the remaining bytes to the stream, one bounded chunk at a time.
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public void copyTo(OutputStream outputStream) throws IOException {
+		byte[] chunk = new byte[(int) Math.min(COPY_CHUNK_SIZE, Math.max(remaining, 1))];
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		while (remaining > 0) {
+			buffer.clear();
+			buffer.limit((int) Math.min(chunk.length, remaining));
+			int n = open().read(buffer, position);
+			if (n < 0) {
+				throw new IOException("File truncated while sending " + file);
+			}
+			outputStream.write(chunk, 0, n);
+			position += n;
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Read the next bytes of the region into the buffer, as many as it has room for.
+	 * @param buffer
+	 * @return the number of bytes read
+	 * @throws IOException
+	 */
+	public int read(ByteBuffer buffer) throws IOException {
+		if (remaining == 0) {
+			return 0;
+		}
+		int limit = buffer.limit();
+		if (buffer.remaining() > remaining) {
+			buffer.limit(buffer.position() + (int) remaining);
+		}
+		int n;
+		try {
+			n = open().read(buffer, position);
+		} finally {
+			buffer.limit(limit);
+		}
+		if (n < 0) {
+			throw new IOException("File truncated while sending " + file);
+		}
+		position += n;
+		remaining -= n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private FileChannel open() throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+		return channel;
+	}
+}
@@ -0,0 +1,109 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * This class is a buffered output stream to a socket channel, sending the buffered bytes and a body
+ * in a single gathering write.
+ *
+ * A {@link java.io.BufferedOutputStream} writes the buffered head and a body that does not fit the
+ * buffer separately, so a response takes two system calls and often two TCP segments. Here the head
+ * stays in the buffer and goes out with the body through {@link GatheringByteChannel#write(ByteBuffer[])},
+ * without copying the body.
+ */
+public class GatheringOutputStream extends OutputStream {
+
+	private final GatheringByteChannel channel;
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * The buffer and the body of a gathering write, reused.
+	 */
+	private final ByteBuffer[] gather = new ByteBuffer[2];
+
+	/**
+	 * @param channel a blocking channel
+	 * @param size the size of the buffer
+	 */
+	public GatheringOutputStream(GatheringByteChannel channel, int size) {
+		this(channel, ByteBuffer.allocate(size));
+	}
+
+	/**
+	 * @param channel a blocking channel
+	 * @param buffer the buffer, e.g. a pooled direct one the channel writes without copying it
+	 */
+	public GatheringOutputStream(GatheringByteChannel channel, ByteBuffer buffer) {
+		this.channel = channel;
+		this.buffer = buffer;
+		buffer.clear();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len <= buffer.remaining()) {
+			buffer.put(b, off, len);
+			return;
+		}
+		if (len < buffer.capacity()) {
+			flush();
+			buffer.put(b, off, len);
+			return;
+		}
+		write(ByteBuffer.wrap(b, off, len));
+	}
+
+	/**
+	 * Write the buffered bytes followed by the bytes between the position and the limit of the body,
+	 * in one gathering write if the socket accepts them at once.
+	 * @param body
+	 * @throws IOException
+	 */
+	public void write(ByteBuffer body) throws IOException {
+		if (body.remaining() <= buffer.remaining()) {
+			buffer.put(body);
+			return;
+		}
+		buffer.flip();
+		gather[0] = buffer;
+		gather[1] = body;
+		try {
+			while (body.hasRemaining()) {
+				channel.write(gather);
+			}
+		} finally {
+			gather[1] = null;
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
@@ -0,0 +1,46 @@
+package com.webserver.http;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * RFC-7231
+ * This class formats and parses HTTP dates.
+ *
+ *          HTTP-date    = IMF-fixdate / obs-date
+ *          IMF-fixdate  = day-name "," SP date1 SP time-of-day SP GMT
+ *                       ; e.g. Sun, 06 Nov 1994 08:49:37 GMT
+ */
+public class HttpDate {
+
+	private static final DateTimeFormatter IMF_FIXDATE =
+			DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	/**
+	 * @param millis
+	 * @return the IMF-fixdate of the time, truncated to the second
+	 */
+	public static String format(long millis) {
+		return IMF_FIXDATE.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * A recipient MUST accept the obsolete formats too, RFC 1123 ones without leading zero are accepted.
+	 * @param date
+	 * @return the time in milliseconds, or -1 if the date is invalid
+	 */
+	public static long parse(String date) {
+		if (date == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+}
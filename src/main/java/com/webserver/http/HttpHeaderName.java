@@ -0,0 +1,149 @@
+package com.webserver.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The header field names the server reads or writes, resolved from the bytes of a request without
+ * allocating and written from their pre-encoded form.
+ *
+ * RFC-7230
+ * Each header field consists of a case-insensitive field name followed by a colon (":"), optional
+ * leading whitespace, the field value, and optional trailing whitespace.
+ */
+public enum HttpHeaderName {
+	ACCEPT("Accept"),
+	ACCEPT_CHARSET("Accept-Charset"),
+	ACCEPT_ENCODING("Accept-Encoding"),
+	ACCEPT_LANGUAGE("Accept-Language"),
+	ACCEPT_RANGES("Accept-Ranges"),
+	ALLOW("Allow"),
+	AUTHORIZATION("Authorization"),
+	CACHE_CONTROL("Cache-Control"),
+	CONNECTION("Connection"),
+	CONTENT_ENCODING("Content-Encoding"),
+	CONTENT_LENGTH("Content-Length"),
+	CONTENT_RANGE("Content-Range"),
+	CONTENT_TYPE("Content-Type"),
+	COOKIE("Cookie"),
+	DATE("Date"),
+	ETAG("ETag"),
+	EXPECT("Expect"),
+	HOST("Host"),
+	HTTP2_SETTINGS("HTTP2-Settings"),
+	IF_MATCH("If-Match"),
+	IF_MODIFIED_SINCE("If-Modified-Since"),
+	IF_NONE_MATCH("If-None-Match"),
+	IF_RANGE("If-Range"),
+	IF_UNMODIFIED_SINCE("If-Unmodified-Since"),
+	KEEP_ALIVE("Keep-Alive"),
+	LAST_MODIFIED("Last-Modified"),
+	LOCATION("Location"),
+	ORIGIN("Origin"),
+	PRAGMA("Pragma"),
+	RANGE("Range"),
+	REFERER("Referer"),
+	RETRY_AFTER("Retry-After"),
+	SERVER("Server"),
+	SET_COOKIE("Set-Cookie"),
+	TE("TE"),
+	TRAILER("Trailer"),
+	TRANSFER_ENCODING("Transfer-Encoding"),
+	UPGRADE("Upgrade"),
+	USER_AGENT("User-Agent"),
+	VARY("Vary"),
+	VIA("Via"),
+	X_FORWARDED_FOR("X-Forwarded-For");
+
+	/**
+	 * The names by length, the candidates compared to the bytes of a field name.
+	 */
+	private static final HttpHeaderName[][] BY_LENGTH;
+	static {
+		int maxLength = 0;
+		for (HttpHeaderName name : values()) {
+			maxLength = Math.max(maxLength, name.text.length());
+		}
+		BY_LENGTH = new HttpHeaderName[maxLength + 1][0];
+		for (HttpHeaderName name : values()) {
+			HttpHeaderName[] names = BY_LENGTH[name.text.length()];
+			names = Arrays.copyOf(names, names.length + 1);
+			names[names.length - 1] = name;
+			BY_LENGTH[name.text.length()] = names;
+		}
+	}
+
+	/**
+	 * The name as written in an HTTP/1 head.
+	 */
+	public final String text;
+
+	/**
+	 * The name as written in an HTTP/2 header block, which requires lowercase names.
+	 */
+	public final String lowerCase;
+
+	/**
+	 * The name followed by its separator: "name: ".
+	 */
+	final byte[] encoded;
+
+	HttpHeaderName(String text) {
+		this.text = text;
+		this.lowerCase = text.toLowerCase(Locale.ROOT);
+		this.encoded = (text + ": ").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param name a field name, in any case
+	 * @return the well-known name, or null if the name is not one
+	 */
+	public static HttpHeaderName of(String name) {
+		if (name.length() >= BY_LENGTH.length) {
+			return null;
+		}
+		for (HttpHeaderName candidate : BY_LENGTH[name.length()]) {
+			if (candidate.text.equalsIgnoreCase(name)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return the well-known name of the bytes between start and end, in any case, or null if they are not one
+	 */
+	static HttpHeaderName of(ByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		if (length >= BY_LENGTH.length) {
+			return null;
+		}
+		for (HttpHeaderName candidate : BY_LENGTH[length]) {
+			if (regionMatches(buffer, start, candidate.text)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static boolean regionMatches(ByteBuffer buffer, int start, String ascii) {
+		for (int i = 0; i < ascii.length(); i++) {
+			if (toLowerCase(buffer.get(start + i)) != toLowerCase(ascii.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The field names are tokens: only the ASCII letters have a case.
+	 */
+	static int toLowerCase(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+}
@@ -0,0 +1,491 @@
+package com.webserver.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * This class holds the header fields of a request or a response, looked up by name regardless of
+ * its case.
+ *
+ * The fields are kept in arrays, in the order they were set. A well-known name
+ * ({@link HttpHeaderName}) is resolved once and indexes its field directly, the other names are
+ * looked up in a small hash table, so a message with many fields is not scanned once per field. The
+ * fields received are copied as bytes into one array: their names and values are only decoded to
+ * strings when read, and the ones never read are never decoded. Setting a field replaces the field of
+ * the same name, a field received again is combined with it.
+ */
+public class HttpHeaders {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final int INITIAL_BYTES = 512;
+
+	private int size;
+
+	/**
+	 * The well-known name of each field, null for the other names.
+	 */
+	private HttpHeaderName[] knownNames = new HttpHeaderName[INITIAL_CAPACITY];
+
+	/**
+	 * The other names, null until decoded from their bytes.
+	 */
+	private String[] names = new String[INITIAL_CAPACITY];
+
+	/**
+	 * The values, null until decoded from their bytes.
+	 */
+	private String[] values = new String[INITIAL_CAPACITY];
+
+	/**
+	 * The offset and length in {@link #bytes} of the name, then of the value, of each field received.
+	 */
+	private int[] slices = new int[4 * INITIAL_CAPACITY];
+
+	/**
+	 * The bytes of the fields received.
+	 */
+	private byte[] bytes;
+
+	private int bytesLength;
+
+	/**
+	 * The index plus one of the field of each well-known name, 0 if it is not set.
+	 */
+	private final int[] knownIndexes = new int[HttpHeaderName.values().length];
+
+	/**
+	 * The index plus one of the field of each other name, 0 for an empty slot: an open-addressing table
+	 * by the hash of the name in lower case, its length a power of two at least twice
+	 * {@link #otherSize}. Null until a field of another name is set.
+	 */
+	private int[] otherIndexes;
+
+	/**
+	 * The number of fields in {@link #otherIndexes}.
+	 */
+	private int otherSize;
+
+	/**
+	 * @return the number of fields
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index
+	 * @return the well-known name of the field, or null if its name is not one
+	 */
+	public HttpHeaderName getKnownName(int index) {
+		return knownNames[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the name of the field, as it was set or received
+	 */
+	public String getName(int index) {
+		if (knownNames[index] != null) {
+			return knownNames[index].text;
+		}
+		if (names[index] == null) {
+			names[index] = new String(bytes, slices[4 * index], slices[4 * index + 1], StandardCharsets.ISO_8859_1);
+		}
+		return names[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the value of the field
+	 */
+	public String getValue(int index) {
+		if (values[index] == null) {
+			values[index] = new String(bytes, slices[4 * index + 2], slices[4 * index + 3], StandardCharsets.ISO_8859_1);
+		}
+		return values[index];
+	}
+
+	public String get(HttpHeaderName name) {
+		int index = knownIndexes[name.ordinal()] - 1;
+		return index < 0 ? null : getValue(index);
+	}
+
+	/**
+	 * @param name a field name, in any case
+	 * @return the value of the field, or null if it is not set
+	 */
+	public String get(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : getValue(index);
+	}
+
+	public boolean contains(HttpHeaderName name) {
+		return knownIndexes[name.ordinal()] > 0;
+	}
+
+	public boolean contains(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	public void set(HttpHeaderName name, String value) {
+		int index = knownIndexes[name.ordinal()] - 1;
+		if (index < 0) {
+			index = append(name);
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * @param name a field name, resolved to a well-known one regardless of its case
+	 * @param value
+	 */
+	public void set(String name, String value) {
+		HttpHeaderName knownName = HttpHeaderName.of(name);
+		if (knownName != null) {
+			set(knownName, value);
+			return;
+		}
+		int index = indexOfOther(name);
+		if (index < 0) {
+			index = append(null);
+			names[index] = name;
+			putOther(index, hash(name));
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * RFC-7230
+	 * A recipient MAY combine multiple header fields with the same field name into one
+	 *    "field-name: field-value" pair, without changing the semantics of the message, by appending
+	 *    each subsequent field value to the combined field value in order, separated by a comma.
+	 * Set-Cookie is the exception: each of its fields is kept, written as is but not looked up.
+	 * @param name
+	 * @param value
+	 */
+	public void add(String name, String value) {
+		int index = indexOf(name);
+		if (index < 0) {
+			set(name, value);
+		} else if (HttpHeaderName.of(name) == HttpHeaderName.SET_COOKIE) {
+			index = append(null);
+			names[index] = name;
+			values[index] = value;
+		} else {
+			values[index] = getValue(index) + ", " + value;
+		}
+	}
+
+	/**
+	 * Add a field from the bytes of a received header line, copied but not decoded.
+	 *
+	 * RFC-7230
+	 * A recipient MAY combine multiple header fields with the same field name into one
+	 *    "field-name: field-value" pair, without changing the semantics of the message, by appending
+	 *    each subsequent field value to the combined field value in order, separated by a comma.
+	 * The fields of a Cookie header are separated by a semicolon, as RFC-6265 sends them in one field.
+	 * A repeated field is decoded to be combined, a Set-Cookie field is kept as a field of its own.
+	 * @param buffer
+	 * @param nameStart
+	 * @param nameEnd
+	 * @param valueStart
+	 * @param valueEnd
+	 */
+	void add(ByteBuffer buffer, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		HttpHeaderName knownName = HttpHeaderName.of(buffer, nameStart, nameEnd);
+		int index = knownName != null ? knownIndexes[knownName.ordinal()] - 1 : indexOfOther(buffer, nameStart, nameEnd);
+		if (index >= 0) {
+			if (knownName == HttpHeaderName.SET_COOKIE) {
+				index = append(null);
+				names[index] = knownName.text;
+				values[index] = decode(buffer, valueStart, valueEnd);
+			} else {
+				values[index] = getValue(index) + (knownName == HttpHeaderName.COOKIE ? "; " : ", ")
+						+ decode(buffer, valueStart, valueEnd);
+			}
+			return;
+		}
+		if (knownName != null) {
+			index = append(knownName);
+		} else {
+			index = append(null);
+			slices[4 * index] = copy(buffer, nameStart, nameEnd);
+			slices[4 * index + 1] = nameEnd - nameStart;
+			putOther(index, hash(bytes, slices[4 * index], slices[4 * index + 1]));
+		}
+		values[index] = null;
+		slices[4 * index + 2] = copy(buffer, valueStart, valueEnd);
+		slices[4 * index + 3] = valueEnd - valueStart;
+	}
+
+	public void remove(HttpHeaderName name) {
+		int index = knownIndexes[name.ordinal()] - 1;
+		if (index >= 0) {
+			remove(index);
+		}
+	}
+
+	public void remove(String name) {
+		int index = indexOf(name);
+		if (index >= 0) {
+			remove(index);
+		}
+	}
+
+	/**
+	 * Remove all the fields, keeping the arrays for the next message.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			if (knownNames[i] != null) {
+				knownIndexes[knownNames[i].ordinal()] = 0;
+				knownNames[i] = null;
+			}
+			names[i] = null;
+			values[i] = null;
+		}
+		if (otherSize > 0) {
+			Arrays.fill(otherIndexes, 0);
+			otherSize = 0;
+		}
+		size = 0;
+		bytesLength = 0;
+	}
+
+	/**
+	 * @param action called with the name and the value of each field, in order
+	 */
+	public void forEach(BiConsumer<String, String> action) {
+		for (int i = 0; i < size; i++) {
+			action.accept(getName(i), getValue(i));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder info = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			info.append(getName(i)).append('=').append(getValue(i)).append("\r\n");
+		}
+		return info.toString();
+	}
+
+	private int indexOf(String name) {
+		HttpHeaderName knownName = HttpHeaderName.of(name);
+		if (knownName != null) {
+			return knownIndexes[knownName.ordinal()] - 1;
+		}
+		return indexOfOther(name);
+	}
+
+	/**
+	 * @return the index of the field of the name, which is not a well-known one, or -1
+	 */
+	private int indexOfOther(String name) {
+		if (otherSize == 0) {
+			return -1;
+		}
+		int mask = otherIndexes.length - 1;
+		for (int slot = hash(name) & mask; otherIndexes[slot] != 0; slot = (slot + 1) & mask) {
+			int i = otherIndexes[slot] - 1;
+			if (names[i] != null ? names[i].equalsIgnoreCase(name) : sliceEquals(i, name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOfOther(ByteBuffer buffer, int start, int end) {
+		if (otherSize == 0) {
+			return -1;
+		}
+		int mask = otherIndexes.length - 1;
+		for (int slot = hash(buffer, start, end) & mask; otherIndexes[slot] != 0; slot = (slot + 1) & mask) {
+			int i = otherIndexes[slot] - 1;
+			if (names[i] != null ? regionEquals(buffer, start, end, names[i]) : sliceEquals(i, buffer, start, end)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Index a new field of another name, growing the table to keep it at most half full.
+	 * @param index the index of the field, already appended
+	 * @param hash the hash of its name
+	 */
+	private void putOther(int index, int hash) {
+		if (otherIndexes == null) {
+			otherIndexes = new int[2 * INITIAL_CAPACITY];
+		} else if (2 * (otherSize + 1) > otherIndexes.length) {
+			// The new field is indexed with the others
+			indexOthers(2 * otherIndexes.length);
+			return;
+		}
+		int mask = otherIndexes.length - 1;
+		int slot = hash & mask;
+		while (otherIndexes[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		otherIndexes[slot] = index + 1;
+		otherSize++;
+	}
+
+	/**
+	 * Rebuild the table of the other names, after it grows or a field is removed.
+	 * Only the first field of a name is indexed: the next ones are the Set-Cookie fields kept as is.
+	 * @param capacity
+	 */
+	private void indexOthers(int capacity) {
+		otherIndexes = new int[capacity];
+		otherSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (knownNames[i] == null && (names[i] == null || indexOfOther(names[i]) < 0)) {
+				putOther(i, names[i] != null ? hash(names[i]) : hash(bytes, slices[4 * i], slices[4 * i + 1]));
+			}
+		}
+	}
+
+	/**
+	 * @return the hash of the name in lower case, the same for its string and its ISO-8859-1 bytes
+	 */
+	private static int hash(String name) {
+		int hash = 0;
+		for (int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + HttpHeaderName.toLowerCase(name.charAt(i));
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int hash(ByteBuffer buffer, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + HttpHeaderName.toLowerCase(buffer.get(i) & 0xff);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + HttpHeaderName.toLowerCase(bytes[i] & 0xff);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private boolean sliceEquals(int index, String name) {
+		int offset = slices[4 * index];
+		int length = slices[4 * index + 1];
+		if (length != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (HttpHeaderName.toLowerCase(bytes[offset + i]) != HttpHeaderName.toLowerCase(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean sliceEquals(int index, ByteBuffer buffer, int start, int end) {
+		int offset = slices[4 * index];
+		int length = slices[4 * index + 1];
+		if (length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (HttpHeaderName.toLowerCase(bytes[offset + i]) != HttpHeaderName.toLowerCase(buffer.get(start + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean regionEquals(ByteBuffer buffer, int start, int end, String name) {
+		if (end - start != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (HttpHeaderName.toLowerCase(buffer.get(start + i)) != HttpHeaderName.toLowerCase(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the index of a new field of the name
+	 */
+	private int append(HttpHeaderName knownName) {
+		if (size == knownNames.length) {
+			int capacity = 2 * size;
+			knownNames = Arrays.copyOf(knownNames, capacity);
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
+			slices = Arrays.copyOf(slices, 4 * capacity);
+		}
+		int index = size++;
+		knownNames[index] = knownName;
+		if (knownName != null) {
+			knownIndexes[knownName.ordinal()] = index + 1;
+		}
+		return index;
+	}
+
+	private void remove(int index) {
+		if (knownNames[index] != null) {
+			knownIndexes[knownNames[index].ordinal()] = 0;
+		}
+		int moved = size - index - 1;
+		System.arraycopy(knownNames, index + 1, knownNames, index, moved);
+		System.arraycopy(names, index + 1, names, index, moved);
+		System.arraycopy(values, index + 1, values, index, moved);
+		System.arraycopy(slices, 4 * (index + 1), slices, 4 * index, 4 * moved);
+		size--;
+		knownNames[size] = null;
+		names[size] = null;
+		values[size] = null;
+		for (int i = index; i < size; i++) {
+			if (knownNames[i] != null) {
+				knownIndexes[knownNames[i].ordinal()] = i + 1;
+			}
+		}
+		if (otherSize > 0) {
+			// The fields after the one removed have moved
+			indexOthers(otherIndexes.length);
+		}
+	}
+
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (buffer.get(start + i) & 0xff);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return the offset of the bytes copied
+	 */
+	private int copy(ByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		if (bytes == null) {
+			bytes = new byte[Math.max(INITIAL_BYTES, length)];
+		} else if (bytesLength + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, bytesLength + length));
+		}
+		int offset = bytesLength;
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + start, bytes, offset, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				bytes[offset + i] = buffer.get(start + i);
+			}
+		}
+		bytesLength += length;
+		return offset;
+	}
+}
@@ -5,9 +5,9 @@ package com.webserver.http;
  * The methods GET and HEAD MUST be supported by all general-purpose servers.
  * All other methods are OPTIONAL.
  *
- * Currently support GET and HEAD
- * TODO: OPTIONS, POST, PUT, DELETE, TRACE, CONNECT
+ * Currently support GET, HEAD, POST and PUT
+ * TODO: OPTIONS, DELETE, TRACE, CONNECT
  */
 public enum HttpMethod {
-	GET, HEAD
+	GET, HEAD, POST, PUT
 }
@@ -4,23 +4,162 @@ import com.webserver.exceptions.HttpParsingException;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class parses the request message from the client.
+ *
+ * The parser is an incremental state machine working directly on the bytes of a buffer: every call
+ * to {@link #parse(ByteBuffer)} consumes the complete lines available and remembers where it stopped,
+ * so the same instance can be fed from a connection buffer as the bytes arrive. The request line and
+ * the header fields are located by offset, no line is decoded as a whole and no regex is involved.
+ * The bytes of a body are moved to a {@link RequestBody} as they arrive, which spills to a temporary
+ * file past a threshold, so the memory of a request does not depend on the size of its body.
  */
 public class HttpParser {
 	private final static Logger LOGGER = LogManager.getLogger(HttpParser.class);
-	private final static String SP = " ";
-	private final static String CRLF = "\r\n";
-	private final static String EQ = "=";
-	private final static String AND = "&";
-	private final static String COLON = ":";
+	private final static byte SP = ' ';
+	private final static byte HTAB = '\t';
+	private final static byte CR = '\r';
+	private final static byte LF = '\n';
+	private final static byte EQ = '=';
+	private final static byte AND = '&';
+	private final static byte COLON = ':';
+	private final static byte QUESTION = '?';
+	private final static byte HASH = '#';
+	private final static byte PERCENT = '%';
+	private final static byte SLASH = '/';
+	private final static byte SEMICOLON = ';';
+
+	/**
+	 * The longest request line or header line accepted.
+	 */
+	public static final int MAX_LINE_LENGTH = 8 * 1024;
+
+	/**
+	 * The largest header section accepted.
+	 */
+	public static final int MAX_HEADER_SIZE = 64 * 1024;
+
+	/**
+	 * The size of a read buffer able to hold any accepted line.
+	 */
+	public static final int BUFFER_SIZE = 2 * MAX_LINE_LENGTH;
+
+	/**
+	 * The size from which a body is moved to a temporary file, unless configured.
+	 */
+	public static final int DEFAULT_SPILL_THRESHOLD = 64 * 1024;
+
+	/**
+	 * The largest body accepted, unless configured: the claimed Content-Length or chunk sizes of a
+	 * client are never trusted without a bound.
+	 */
+	public static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+	private static final String HTTP_1_1 = "HTTP/1.1";
+	private static final String HTTP_1_0 = "HTTP/1.0";
+	private static final String DEFAULT_TARGET = "/index.html";
+	private static final String CHUNKED = "chunked";
+	private static final String CONTINUE = "100-continue";
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+	static {
+		for (int i = 0; i < METHODS.length; i++) {
+			METHOD_NAMES[i] = METHODS[i].name().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private enum State {
+		REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS
+	}
+
+	private State state = State.REQUEST_LINE;
+
+	/**
+	 * The request being parsed.
+	 */
+	private HttpRequest request;
+
+	/**
+	 * The request reset and filled again by each parse, null if each parse creates a new one.
+	 */
+	private final HttpRequest reusedRequest;
+
+	/**
+	 * The number of bytes after the buffer position already scanned for a line end.
+	 */
+	private int scanned;
+
+	/**
+	 * The number of bytes of the header section consumed so far.
+	 */
+	private int headerSize;
+
+	/**
+	 * The largest body accepted, a larger one is refused with 413.
+	 */
+	private final long maxBodySize;
+
+	/**
+	 * The size from which a body is moved from memory to a temporary file.
+	 */
+	private final int spillThreshold;
+
+	private RequestBody body;
+
+	/**
+	 * The number of bytes of a body delimited by its Content-Length not consumed yet.
+	 */
+	private long bodyRemaining;
+
+	/**
+	 * The number of bytes of the current chunk not consumed yet.
+	 */
+	private long chunkRemaining;
+
+	/**
+	 * Set when the client waits for a 100 Continue before sending the body.
+	 */
+	private boolean expectContinue;
+
+	/**
+	 * The time the first byte of the request being parsed was consumed, 0 if none was.
+	 * Unit: nanosecond
+	 */
+	private long startTime;
+
+	private long completedStartTime;
+
+	public HttpParser() {
+		this(false);
+	}
+
+	/**
+	 * @param reuseRequest whether the same request is returned by every parse, reset first. The
+	 *                     request must then be done with before the next one is parsed, as the
+	 *                     requests of a connection are.
+	 */
+	public HttpParser(boolean reuseRequest) {
+		this(reuseRequest, DEFAULT_MAX_BODY_SIZE, DEFAULT_SPILL_THRESHOLD);
+	}
+
+	/**
+	 * @param reuseRequest whether the same request is returned by every parse
+	 * @param maxBodySize the largest body accepted, a larger one is refused with 413
+	 * @param spillThreshold the size from which a body is moved from memory to a temporary file
+	 */
+	public HttpParser(boolean reuseRequest, long maxBodySize, int spillThreshold) {
+		this.reusedRequest = reuseRequest ? new HttpRequest() : null;
+		this.maxBodySize = maxBodySize;
+		this.spillThreshold = spillThreshold;
+	}
 
 	/**
 	 *  RFC-7230
@@ -34,103 +173,582 @@ public class HttpParser {
 	 * @throws IOException
 	 */
 	public static HttpRequest parseHttpRequest(InputStream inputStream) throws HttpParsingException, IOException {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-		HttpRequest request = new HttpRequest();
-		parseRequestLine(reader, request);
-		parseHeaders(reader, request);
-	    parseBody(reader, request);
-		return request;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+		return new HttpParser().read(inputStream, buffer);
 	}
 
 	/**
-	 * RFC-7230
-	 *          request-line   = method SP request-target SP HTTP-version CRLF
-	 * @param reader
-	 * @param request
+	 * Parse the next request, reading from the stream only while the buffer does not hold a complete one.
+	 * The bytes following the request stay in the buffer, so a buffer kept for the whole connection
+	 * does not lose the pipelined requests read ahead.
+	 * @param inputStream
+	 * @param buffer heap buffer in read mode, at least {@link #BUFFER_SIZE} bytes
+	 * @return the parsed request
+	 * @throws HttpParsingException
+	 * @throws IOException EOFException if the stream ends between two requests
+	 */
+	public HttpRequest read(InputStream inputStream, ByteBuffer buffer) throws HttpParsingException, IOException {
+		return read(inputStream, buffer, null);
+	}
+
+	/**
+	 * Parse the next request, as {@link #read(InputStream, ByteBuffer)}, answering 100 Continue to a
+	 * client waiting for it before sending the body.
+	 * @param inputStream
+	 * @param buffer heap buffer in read mode, at least {@link #BUFFER_SIZE} bytes
+	 * @param interimOutput the stream the 100 Continue is written to and flushed, or null
+	 * @return the parsed request
 	 * @throws HttpParsingException
 	 * @throws IOException
 	 */
-	private static void parseRequestLine(BufferedReader reader, HttpRequest request) throws HttpParsingException, IOException {
-		String requestLine = reader.readLine();
-		LOGGER.info(requestLine);
+	public HttpRequest read(InputStream inputStream, ByteBuffer buffer, OutputStream interimOutput)
+			throws HttpParsingException, IOException {
+		HttpRequest request;
+		while ((request = parse(buffer)) == null) {
+			if (takeContinue() && interimOutput != null) {
+				HttpResponse.writeContinue(interimOutput);
+				interimOutput.flush();
+			}
+			buffer.compact();
+			int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (read > 0) {
+				buffer.position(buffer.position() + read);
+			}
+			buffer.flip();
+			if (read < 0) {
+				if (isIdle() && !buffer.hasRemaining()) {
+					throw new EOFException("Connection closed by the client");
+				}
+				throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+			}
+		}
+		return request;
+	}
+
+	/**
+	 * Consume the bytes between the position and the limit of the buffer.
+	 * The bytes of an incomplete line are left in the buffer and scanned again, together with the new
+	 * bytes, on the next call, so the caller must keep them (e.g. {@link ByteBuffer#compact()}).
+	 * @param buffer in read mode
+	 * @return the parsed request, or null if more bytes are needed
+	 * @throws HttpParsingException
+	 */
+	public HttpRequest parse(ByteBuffer buffer) throws HttpParsingException {
+		if (startTime == 0 && buffer.hasRemaining()) {
+			startTime = System.nanoTime();
+		}
+		while (true) {
+			if (state == State.BODY) {
+				int length = (int) Math.min(buffer.remaining(), bodyRemaining);
+				appendBody(buffer, length);
+				bodyRemaining -= length;
+				if (bodyRemaining > 0) {
+					return null;
+				}
+				request.setBody(body);
+				return complete();
+			}
+			if (state == State.CHUNK_DATA) {
+				int length = (int) Math.min(buffer.remaining(), chunkRemaining);
+				appendBody(buffer, length);
+				chunkRemaining -= length;
+				if (chunkRemaining > 0) {
+					return null;
+				}
+				state = State.CHUNK_DATA_END;
+			}
+
+			int lineEnd = findLineEnd(buffer);
+			if (lineEnd < 0) {
+				return null;
+			}
+			int start = buffer.position();
+			int end = lineEnd > start && buffer.get(lineEnd - 1) == CR ? lineEnd - 1 : lineEnd;
+			buffer.position(lineEnd + 1);
+			scanned = 0;
+
+			if (state == State.REQUEST_LINE) {
+				// RFC-7230: a server SHOULD ignore at least one empty line received prior to the request-line
+				if (end == start) {
+					continue;
+				}
+				if (reusedRequest != null) {
+					request = reusedRequest;
+					request.reset();
+				} else {
+					request = new HttpRequest();
+				}
+				parseRequestLine(buffer, start, end, request);
+				state = State.HEADERS;
+				continue;
+			}
+			if (state == State.CHUNK_SIZE) {
+				chunkRemaining = parseChunkSize(buffer, start, end);
+				state = chunkRemaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+				continue;
+			}
+			if (state == State.CHUNK_DATA_END) {
+				if (end != start) {
+					throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+				}
+				state = State.CHUNK_SIZE;
+				continue;
+			}
+
+			headerSize += lineEnd + 1 - start;
+			if (headerSize > MAX_HEADER_SIZE) {
+				throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+			}
+			if (end > start) {
+				// The trailer fields are not used, they are only checked against the size limit
+				if (state == State.HEADERS) {
+					parseHeader(buffer, start, end, request);
+				}
+				continue;
+			}
+			if (state == State.TRAILERS) {
+				request.setBody(body);
+				return complete();
+			}
+
+			// Empty line: end of the header section
+			String connection = request.getHeader(HttpHeaderName.CONNECTION);
+			request.setKeepAlive(connection == null || connection.equalsIgnoreCase("keep-alive"));
+			if (isChunked(request)) {
+				body = new RequestBody(spillThreshold, -1);
+				state = State.CHUNK_SIZE;
+			} else {
+				long contentLength = parseContentLength(request);
+				if (contentLength == 0) {
+					return complete();
+				}
+				// RFC-7231: the server MAY close the connection to prevent the client from continuing the request
+				if (contentLength > maxBodySize) {
+					throw new HttpParsingException(HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+				}
+				body = new RequestBody(spillThreshold, contentLength);
+				bodyRemaining = contentLength;
+				state = State.BODY;
+			}
+			expectContinue = "HTTP/1.1".equals(request.getHttpVersion())
+					&& CONTINUE.equalsIgnoreCase(request.getHeader(HttpHeaderName.EXPECT));
+		}
+	}
+
+	/**
+	 * RFC-7231
+	 * A server that receives a 100-continue expectation in an HTTP/1.1 request message with a
+	 * non-zero Content-Length or a chunked body, and intends to read it, sends an immediate
+	 * 100 (Continue) response. A body too large is refused before, with 413.
+	 * @return true once, if the client of the request being parsed waits for a 100 Continue
+	 */
+	public boolean takeContinue() {
+		boolean expected = expectContinue;
+		expectContinue = false;
+		return expected;
+	}
+
+	/**
+	 * @return true if no byte of the next request has been consumed yet
+	 */
+	public boolean isIdle() {
+		return state == State.REQUEST_LINE;
+	}
 
-		if (requestLine == null || requestLine.length() == 0) {
+	/**
+	 * @return the time the first byte of the last parsed request was consumed, in nanoseconds
+	 */
+	public long getStartTime() {
+		return completedStartTime;
+	}
+
+	/**
+	 * Discard the partially parsed request, so the parser can be reused.
+	 */
+	public void reset() {
+		state = State.REQUEST_LINE;
+		request = null;
+		scanned = 0;
+		headerSize = 0;
+		if (body != null) {
+			// The body of a request never completed, its temporary file is deleted
+			body.close();
+			body = null;
+		}
+		bodyRemaining = 0;
+		chunkRemaining = 0;
+		expectContinue = false;
+		startTime = 0;
+	}
+
+	private HttpRequest complete() {
+		HttpRequest completed = request;
+		completedStartTime = startTime;
+		// The body belongs to the request now
+		body = null;
+		reset();
+		return completed;
+	}
+
+	private void appendBody(ByteBuffer buffer, int length) throws HttpParsingException {
+		try {
+			body.append(buffer, length);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+			throw new HttpParsingException(HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+		}
+	}
+
+	/**
+	 * @return the index of the next LF in the buffer, or -1 if the line is not complete yet
+	 * @throws HttpParsingException if the line is too long
+	 */
+	private int findLineEnd(ByteBuffer buffer) throws HttpParsingException {
+		int from = buffer.position() + scanned;
+		for (int i = from; i < buffer.limit(); i++) {
+			if (buffer.get(i) == LF) {
+				if (i - buffer.position() > MAX_LINE_LENGTH) {
+					throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+				}
+				return i;
+			}
+		}
+		scanned = buffer.remaining();
+		if (scanned > MAX_LINE_LENGTH) {
 			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
 		}
+		return -1;
+	}
 
-		String[] strings = requestLine.split(SP);
-		if (strings.length != 3) {
+	/**
+	 * RFC-7230
+	 *          request-line   = method SP request-target SP HTTP-version CRLF
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param request
+	 * @throws HttpParsingException
+	 */
+	private static void parseRequestLine(ByteBuffer buffer, int start, int end, HttpRequest request) throws HttpParsingException {
+		int methodEnd = indexOf(buffer, SP, start, end);
+		int targetEnd = methodEnd < 0 ? -1 : indexOf(buffer, SP, methodEnd + 1, end);
+		if (methodEnd <= start || targetEnd <= methodEnd + 1 || targetEnd + 1 >= end
+				|| indexOf(buffer, SP, targetEnd + 1, end) >= 0) {
 			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
 		}
 
 		// Method
-		request.setMethod(strings[0]);
+		request.setMethod(parseMethod(buffer, start, methodEnd));
 
 		// Request target
-		URI uri = null;
-		try {
-			uri = new URI(strings[1]);
-		} catch (URISyntaxException e) {
+		parseRequestTarget(buffer, methodEnd + 1, targetEnd, request);
+
+		// Http version
+		request.setHttpVersion(parseVersion(buffer, targetEnd + 1, end));
+
+		LOGGER.debug("{} {} {}", request.getMethod(), request.getRawRequestTarget(), request.getHttpVersion());
+	}
+
+	/**
+	 * If the method is not implemented, throw NOT IMPLEMENTED error.
+	 */
+	private static HttpMethod parseMethod(ByteBuffer buffer, int start, int end) throws HttpParsingException {
+		for (int i = 0; i < METHODS.length; i++) {
+			if (regionEquals(buffer, start, end, METHOD_NAMES[i])) {
+				return METHODS[i];
+			}
+		}
+		throw new HttpParsingException(HttpStatusCode.SC_NOT_IMPLEMENTED);
+	}
+
+	private static String parseVersion(ByteBuffer buffer, int start, int end) {
+		if (regionEquals(buffer, start, end, HTTP_1_1)) {
+			return HTTP_1_1;
+		}
+		if (regionEquals(buffer, start, end, HTTP_1_0)) {
+			return HTTP_1_0;
+		}
+		return string(buffer, start, end);
+	}
+
+	/**
+	 * Set the request target of a request not read from an HTTP/1 request line, e.g. the :path
+	 * pseudo-header of an HTTP/2 request.
+	 * @param target
+	 * @param request
+	 * @throws HttpParsingException BAD REQUEST if the target is malformed
+	 */
+	public static void parseRequestTarget(String target, HttpRequest request) throws HttpParsingException {
+		if (target.isEmpty()) {
 			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
 		}
+		ByteBuffer buffer = ByteBuffer.wrap(target.getBytes(StandardCharsets.ISO_8859_1));
+		parseRequestTarget(buffer, 0, buffer.limit(), request);
+	}
+
+	/**
+	 * RFC-7230
+	 *          request-target = origin-form / absolute-form / authority-form / asterisk-form
+	 *          origin-form    = absolute-path [ "?" query ]
+	 * The path and the query are percent-decoded, as {@link java.net.URI#getPath()} and
+	 * {@link java.net.URI#getQuery()} would do.
+	 */
+	private static void parseRequestTarget(ByteBuffer buffer, int start, int end, HttpRequest request) throws HttpParsingException {
+		request.setRawRequestTarget(string(buffer, start, end));
+
+		int fragment = indexOf(buffer, HASH, start, end);
+		if (fragment >= 0) {
+			end = fragment;
+		}
+		int pathStart = start;
+		// absolute-form: skip the scheme and the authority
+		if (buffer.get(start) != SLASH) {
+			int scheme = indexOf(buffer, COLON, start, end);
+			if (scheme > start && scheme + 2 < end && buffer.get(scheme + 1) == SLASH && buffer.get(scheme + 2) == SLASH) {
+				pathStart = indexOf(buffer, SLASH, scheme + 3, end);
+				if (pathStart < 0) {
+					pathStart = end;
+				}
+			}
+		}
+		int query = indexOf(buffer, QUESTION, pathStart, end);
+		int pathEnd = query < 0 ? end : query;
+
 		// Default redirection file: index.html
-		request.setRequestTarget(uri.getPath().equals("/")? "/index.html": uri.getPath());
+		if (pathEnd == pathStart || (pathEnd - pathStart == 1 && buffer.get(pathStart) == SLASH)) {
+			request.setRequestTarget(DEFAULT_TARGET);
+		} else {
+			request.setRequestTarget(decode(buffer, pathStart, pathEnd));
+		}
 
 		// Query
-		if (uri.getQuery() != null && uri.getQuery().length() > 0) {
-			String[] queries = uri.getQuery().split(AND);
-			for (String query : queries) {
-				String[] kv = query.split(EQ);
-				request.setQuery(kv[0], kv[1]);
+		if (query >= 0) {
+			int from = query + 1;
+			while (from < end) {
+				int to = indexOf(buffer, AND, from, end);
+				if (to < 0) {
+					to = end;
+				}
+				if (to > from) {
+					int eq = indexOf(buffer, EQ, from, to);
+					if (eq < 0) {
+						request.setQuery(decode(buffer, from, to), "");
+					} else {
+						request.setQuery(decode(buffer, from, eq), decode(buffer, eq + 1, to));
+					}
+				}
+				from = to + 1;
 			}
 		}
-
-		// Http version
-		request.setHttpVersion(strings[2]);
 	}
 
 	/**
 	 * RFC-7230
 	 *          header-field   = field-name ":" OWS field-value OWS
-	 * @param reader
+	 * @param buffer
+	 * @param start
+	 * @param end
 	 * @param request
 	 * @throws HttpParsingException
-	 * @throws IOException
 	 */
-	private static void parseHeaders(BufferedReader reader, HttpRequest request) throws HttpParsingException, IOException {
-		String headerLine = reader.readLine();
-		LOGGER.info(headerLine);
-		while (headerLine.length() != 0) {
-			String[] kv = headerLine.split(COLON);
-			request.setHeader(kv[0].trim(), kv[1].trim());
-			headerLine = reader.readLine();
+	private static void parseHeader(ByteBuffer buffer, int start, int end, HttpRequest request) throws HttpParsingException {
+		int colon = indexOf(buffer, COLON, start, end);
+		if (colon < 0) {
+			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+		}
+		int nameEnd = colon;
+		while (nameEnd > start && isWhitespace(buffer.get(nameEnd - 1))) {
+			nameEnd--;
+		}
+		if (nameEnd == start) {
+			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
 		}
-		request.setKeepAlive(
-				request.getHeaderFields().getOrDefault("Connection", "keep-alive")
-						.equalsIgnoreCase("keep-alive")
-		);
+		int valueStart = colon + 1;
+		while (valueStart < end && isWhitespace(buffer.get(valueStart))) {
+			valueStart++;
+		}
+		int valueEnd = end;
+		while (valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1))) {
+			valueEnd--;
+		}
+		request.getHeaders().add(buffer, start, nameEnd, valueStart, valueEnd);
 	}
 
 	/**
 	 * RFC-7230
-	 *              message-body = *OCTET
-	 * @param reader
+	 *              Content-Length = 1*DIGIT
+	 * If a message is received without Transfer-Encoding and with either multiple Content-Length header
+	 * fields having differing field-values or a single Content-Length header field having an invalid
+	 * value, then the message framing is invalid and the recipient MUST treat it as an unrecoverable
+	 * error. The repeated fields are combined into a list: its values must all be the same.
 	 * @param request
-	 * @throws HttpParsingException
+	 * @return the length of the message body
+	 * @throws HttpParsingException BAD REQUEST if the value is not digits or the values differ
 	 */
-	private static void parseBody(BufferedReader reader, HttpRequest request) throws HttpParsingException {
-		int contentLength = Integer.parseInt(
-				request.getHeaderFields().getOrDefault("Content-Length", "0")
-		);
-		if (contentLength == 0) return;
-
-		char[] buf = new char[contentLength];
+	private static long parseContentLength(HttpRequest request) throws HttpParsingException {
+		String contentLength = request.getHeader(HttpHeaderName.CONTENT_LENGTH);
+		if (contentLength == null) {
+			return 0;
+		}
+		String first = null;
+		for (String value : contentLength.split(",", -1)) {
+			value = value.trim();
+			if (value.isEmpty() || (first != null && !value.equals(first))) {
+				throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+			}
+			for (int i = 0; i < value.length(); i++) {
+				if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+					throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+				}
+			}
+			first = value;
+		}
 		try {
-			reader.read(buf);
-			request.setBody(buf);
-		} catch (IOException e) {
+			return Long.parseLong(first);
+		} catch (NumberFormatException e) {
+			// Too large
 			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
 		}
 	}
 
+	/**
+	 * RFC-7230
+	 * If a Transfer-Encoding header field is present, it overrides the Content-Length. A request body
+	 * whose final transfer coding is not chunked cannot be delimited.
+	 * @param request
+	 * @return true if the body is chunked
+	 * @throws HttpParsingException NOT IMPLEMENTED if a transfer coding other than chunked is applied
+	 */
+	private static boolean isChunked(HttpRequest request) throws HttpParsingException {
+		String transferEncoding = request.getHeader(HttpHeaderName.TRANSFER_ENCODING);
+		if (transferEncoding == null) {
+			return false;
+		}
+		transferEncoding = transferEncoding.trim();
+		if (transferEncoding.equalsIgnoreCase(CHUNKED)) {
+			return true;
+		}
+		int last = transferEncoding.lastIndexOf(',');
+		if (last >= 0 && transferEncoding.substring(last + 1).trim().equalsIgnoreCase(CHUNKED)) {
+			throw new HttpParsingException(HttpStatusCode.SC_NOT_IMPLEMENTED);
+		}
+		throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+	}
+
+	/**
+	 * RFC-7230
+	 *          chunk          = chunk-size [ chunk-ext ] CRLF
+	 *                           chunk-data CRLF
+	 *          chunk-size     = 1*HEXDIG
+	 * The chunk extensions are ignored.
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return the size of the chunk
+	 * @throws HttpParsingException PAYLOAD TOO LARGE if the chunk makes the body exceed its limit
+	 */
+	private long parseChunkSize(ByteBuffer buffer, int start, int end) throws HttpParsingException {
+		int extension = indexOf(buffer, SEMICOLON, start, end);
+		if (extension >= 0) {
+			end = extension;
+		}
+		while (end > start && isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+		// At most 15 hexadecimal digits, the size cannot overflow
+		if (end == start || end - start > 15) {
+			throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+		}
+		long size = 0;
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(buffer.get(i), 16);
+			if (digit < 0) {
+				throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+			}
+			size = (size << 4) | digit;
+		}
+		if (size > maxBodySize - body.length()) {
+			throw new HttpParsingException(HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+		}
+		return size;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == SP || b == HTAB;
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(ByteBuffer buffer, int start, int end, byte[] bytes) {
+		if (end - start != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean regionEquals(ByteBuffer buffer, int start, int end, String ascii) {
+		if (end - start != ascii.length()) {
+			return false;
+		}
+		for (int i = 0; i < ascii.length(); i++) {
+			if (buffer.get(start + i) != ascii.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String string(ByteBuffer buffer, int start, int end) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+		}
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Decode the percent-encoded octets of a path or query component as UTF-8.
+	 * @throws HttpParsingException if an escape is malformed
+	 */
+	private static String decode(ByteBuffer buffer, int start, int end) throws HttpParsingException {
+		if (indexOf(buffer, PERCENT, start, end) < 0) {
+			return string(buffer, start, end);
+		}
+		byte[] bytes = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == PERCENT) {
+				if (i + 2 >= end) {
+					throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+				}
+				int high = Character.digit(buffer.get(i + 1), 16);
+				int low = Character.digit(buffer.get(i + 2), 16);
+				if (high < 0 || low < 0) {
+					throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+				}
+				b = (byte) ((high << 4) | low);
+				i += 2;
+			}
+			bytes[length++] = b;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
 }
@@ -2,6 +2,9 @@ package com.webserver.http;
 
 import com.webserver.exceptions.HttpParsingException;
 
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,12 +18,19 @@ import java.util.Map;
 public class HttpRequest {
 	private HttpMethod method;
 	private String requestTarget;
+	private String rawRequestTarget;
+	private URI uri;
 	private String httpVersion;
-	private char[] body;
+	private RequestBody body;
+
+	/**
+	 * The address of the client, set by the connection.
+	 */
+	private InetAddress remoteAddress;
 
 	private boolean keepAlive;
 
-	private final Map<String, String> headerFields = new HashMap();
+	private final HttpHeaders headers = new HttpHeaders();
 	private final Map<String, String> queries = new HashMap();
 
 	public HttpMethod getMethod() {
@@ -42,6 +52,10 @@ public class HttpRequest {
 		throw new HttpParsingException(HttpStatusCode.SC_NOT_IMPLEMENTED);
 	}
 
+	public void setMethod(HttpMethod method) {
+		this.method = method;
+	}
+
 	public String getRequestTarget() {
 		return requestTarget;
 	}
@@ -50,6 +64,34 @@ public class HttpRequest {
 		this.requestTarget = requestTarget;
 	}
 
+	/**
+	 * @return the request target as sent by the client, not decoded
+	 */
+	public String getRawRequestTarget() {
+		return rawRequestTarget;
+	}
+
+	public void setRawRequestTarget(String rawRequestTarget) {
+		this.rawRequestTarget = rawRequestTarget;
+		this.uri = null;
+	}
+
+	/**
+	 * The URI is only built on demand, the parser does not need it.
+	 * @return the request target as an URI
+	 * @throws HttpParsingException
+	 */
+	public URI getUri() throws HttpParsingException {
+		if (uri == null && rawRequestTarget != null) {
+			try {
+				uri = new URI(rawRequestTarget);
+			} catch (URISyntaxException e) {
+				throw new HttpParsingException(HttpStatusCode.SC_BAD_REQUEST);
+			}
+		}
+		return uri;
+	}
+
 	public String getHttpVersion() {
 		return httpVersion;
 	}
@@ -66,11 +108,27 @@ public class HttpRequest {
 	}
 
 	public void setHeader(String key, String value) {
-		headerFields.put(key, value);
+		headers.set(key, value);
 	}
 
-	public Map<String, String> getHeaderFields() {
-		return headerFields;
+	public void setHeader(HttpHeaderName name, String value) {
+		headers.set(name, value);
+	}
+
+	/**
+	 * @param name a field name, in any case
+	 * @return the value of the header, or null if the request does not have it
+	 */
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	public String getHeader(HttpHeaderName name) {
+		return headers.get(name);
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
 	}
 	public void setKeepAlive(boolean keepAlive) {
 		this.keepAlive = keepAlive;
@@ -80,23 +138,51 @@ public class HttpRequest {
 		return keepAlive;
 	}
 
-	public char[] getBody() {
+	/**
+	 * @return the body of the request, or null if it has none
+	 */
+	public RequestBody getBody() {
 		return body;
 	}
 
-	public void setBody(char[] body) {
+	public void setBody(RequestBody body) {
 		this.body = body;
 	}
 
+	public InetAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public void setRemoteAddress(InetAddress remoteAddress) {
+		this.remoteAddress = remoteAddress;
+	}
+
+	/**
+	 * Clear the request, keeping its header and query containers for the next request of the connection.
+	 */
+	public void reset() {
+		method = null;
+		requestTarget = null;
+		rawRequestTarget = null;
+		uri = null;
+		httpVersion = null;
+		if (body != null) {
+			body.close();
+			body = null;
+		}
+		remoteAddress = null;
+		keepAlive = false;
+		headers.clear();
+		queries.clear();
+	}
+
 	public String toString() {
 		StringBuilder info = new StringBuilder();
 		info.append(method.name()).append(" ").append(requestTarget).append(" ").append(httpVersion).append("\r\n");
 		for (Map.Entry<String, String> entry: queries.entrySet()) {
 			info.append(entry.toString()).append("\r\n");
 		}
-		for (Map.Entry<String, String> entry: headerFields.entrySet()) {
-			info.append(entry.toString()).append("\r\n");
-		}
+		info.append(headers);
 		return info.toString();
 	}
 }
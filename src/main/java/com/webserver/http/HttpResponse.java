@@ -5,8 +5,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  *
@@ -20,12 +23,77 @@ public class HttpResponse {
 
 	private final static Logger LOGGER = LogManager.getLogger(HttpResponse.class);
 
-	private String httpVersion = "HTTP/1.1";
+	/**
+	 * File and buffer bodies from this size on are written straight to the channel when one is
+	 * available, files with transferTo. Smaller ones are copied behind the headers, so the whole
+	 * response leaves in one write.
+	 */
+	public static final long TRANSFER_THRESHOLD = 64 * 1024;
+
+	private static final int COPY_CHUNK_SIZE = 8 * 1024;
+
+	private static final String HTTP_VERSION = "HTTP/1.1";
+
+	/**
+	 * The value of the Server header.
+	 */
+	public static final String SERVER = "SimpleWebServer";
+
+	private static final byte[] CRLF = {'\r', '\n'};
+
+	/**
+	 * The HTTP/1.1 status lines, CRLF included, indexed by the ordinal of their status code.
+	 */
+	private static final byte[][] STATUS_LINES = new byte[HttpStatusCode.values().length][];
+
+	private static final byte[] SERVER_HEADER = encode("Server: " + SERVER + "\r\n");
+
+	private static final byte[] CONTINUE = encode(HTTP_VERSION + " 100 Continue\r\n\r\n");
+
+	/**
+	 * The Date header of the current second, shared by all the threads. Replaced by the first response
+	 * of each second, a race only formats the same date twice.
+	 */
+	private static volatile DateHeader dateHeader = new DateHeader(System.currentTimeMillis());
+
+	/**
+	 * The buffer the head is serialized into, reused by all the responses of a thread.
+	 */
+	private static final ThreadLocal<HeadBuffer> HEAD_BUFFER = ThreadLocal.withInitial(HeadBuffer::new);
+
+	static {
+		for (HttpStatusCode statusCode : HttpStatusCode.values()) {
+			STATUS_LINES[statusCode.ordinal()] =
+					encode(HTTP_VERSION + " " + statusCode.code + " " + statusCode.message + "\r\n");
+		}
+	}
+
+	private String httpVersion = HTTP_VERSION;
 	private HttpStatusCode httpStatusCode;
 
+	/**
+	 * The status code and the reason phrase received from an upstream server, sent instead of those of
+	 * {@link #httpStatusCode}; 0 and null if the status was not received.
+	 */
+	private int receivedCode;
+	private String receivedReasonPhrase;
+
 	private boolean keepAlive;
-	private final Map<String, String> headerFields = new HashMap();
+	private final HttpHeaders headers = new HttpHeaders();
 	private InputStream body;
+	private FileRegion fileBody;
+	private ByteBuffer bufferBody;
+	private ReadableByteChannel channelBody;
+
+	/**
+	 * The largest chunk of a body of unknown length, 0 if the client does not support the chunked coding.
+	 */
+	private int chunkSize;
+
+	/**
+	 * The number of bytes written by {@link #respond(OutputStream, WritableByteChannel)}.
+	 */
+	private long bytesWritten;
 
 	public HttpResponse() {}
 
@@ -37,14 +105,59 @@ public class HttpResponse {
 
 	public void setStatusCode(HttpStatusCode statusCode) {
 		this.httpStatusCode = statusCode;
+		this.receivedCode = 0;
+		this.receivedReasonPhrase = null;
+	}
+
+	/**
+	 * RFC-7231
+	 * A client MUST understand the class of any status code, as indicated by the first digit, and
+	 * treat an unrecognized status code as being equivalent to the x00 status code of that class.
+	 * A gateway forwards the status as it was received: the code and the reason phrase are sent
+	 * unchanged, the response is handled as the status code of {@link HttpStatusCode#forCode(int)}.
+	 * @param code a valid status code
+	 * @param reasonPhrase
+	 */
+	public void setStatus(int code, String reasonPhrase) {
+		this.httpStatusCode = HttpStatusCode.forCode(code);
+		this.receivedCode = code;
+		this.receivedReasonPhrase = reasonPhrase;
+	}
+
+	/**
+	 * @return the status code, or the x00 status code of its class for an unrecognized code received
+	 */
+	public HttpStatusCode getStatusCode() {
+		return httpStatusCode;
+	}
+
+	/**
+	 * @return the numeric status code sent
+	 */
+	public int getCode() {
+		return receivedCode != 0 ? receivedCode : httpStatusCode.code;
+	}
+
+	/**
+	 * @return the reason phrase sent
+	 */
+	public String getReasonPhrase() {
+		return receivedReasonPhrase != null ? receivedReasonPhrase : httpStatusCode.message;
+	}
+
+	/**
+	 * @return the number of bytes of the head and the body written so far
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
 	}
 
 	public void setContentType(String contentType) {
-		headerFields.put("Content-Type", contentType);
+		headers.set(HttpHeaderName.CONTENT_TYPE, contentType);
 	}
 
-	public void setContentLength(int contentLength) {
-		headerFields.put("Content-Length", String.valueOf(contentLength));
+	public void setContentLength(long contentLength) {
+		headers.set(HttpHeaderName.CONTENT_LENGTH, String.valueOf(contentLength));
 	}
 
 
@@ -52,8 +165,88 @@ public class HttpResponse {
 		this.body = inputStream;
 	}
 
+	/**
+	 * Send the whole file as the body. The file is not opened before the response is written.
+	 * @param file
+	 */
+	public void setBody(File file) {
+		setBody(new FileRegion(file, 0, file.length()));
+	}
+
+	public void setBody(FileRegion fileRegion) {
+		this.fileBody = fileRegion;
+		setContentLength(fileRegion.getCount());
+	}
+
+	public FileRegion getFileBody() {
+		return fileBody;
+	}
+
+	/**
+	 * Send the bytes between the position and the limit of the buffer as the body, e.g. cached content.
+	 * @param content
+	 */
+	public void setBody(ByteBuffer content) {
+		this.bufferBody = content;
+		setContentLength(content.remaining());
+	}
+
+	public ByteBuffer getBufferBody() {
+		return bufferBody;
+	}
+
+	/**
+	 * Enable the chunked transfer coding for the bodies of unknown length, which HTTP/1.1 clients support.
+	 * It must be set before the body.
+	 * @param chunkSize the largest number of body bytes in a chunk, 0 to disable
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Send the bytes read from the channel as the body, e.g. a compressing stream.
+	 * The bytes are streamed as they are read, the body is never held in memory as a whole.
+	 * A body of unknown length is sent with the chunked transfer coding if the client supports it,
+	 * otherwise it is delimited by closing the connection.
+	 * @param channel
+	 * @param length the number of bytes of the body, or -1 if unknown
+	 */
+	public void setBody(ReadableByteChannel channel, long length) {
+		if (length >= 0) {
+			this.channelBody = channel;
+			setContentLength(length);
+		} else if (chunkSize > 0) {
+			this.channelBody = new ChunkedChannel(channel, chunkSize);
+			headers.remove(HttpHeaderName.CONTENT_LENGTH);
+			headers.set(HttpHeaderName.TRANSFER_ENCODING, "chunked");
+		} else {
+			this.channelBody = channel;
+			headers.remove(HttpHeaderName.CONTENT_LENGTH);
+			headers.remove(HttpHeaderName.KEEP_ALIVE);
+			headers.set(HttpHeaderName.CONNECTION, "close");
+			keepAlive = false;
+		}
+	}
+
+	public ReadableByteChannel getChannelBody() {
+		return channelBody;
+	}
+
 	public void setHeader(String key, String value) {
-		headerFields.put(key, value);
+		headers.set(key, value);
+	}
+
+	public void setHeader(HttpHeaderName name, String value) {
+		headers.set(name, value);
+	}
+
+	public String getHeader(HttpHeaderName name) {
+		return headers.get(name);
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
 	}
 
 	public boolean isKeepAlive() {
@@ -64,38 +257,305 @@ public class HttpResponse {
 		this.keepAlive = keepAlive;
 	}
 
+	/**
+	 * Clear the response, keeping its header container for the next response of the connection.
+	 * The bodies are not closed, writing the response does.
+	 */
+	public void reset() {
+		httpVersion = HTTP_VERSION;
+		httpStatusCode = null;
+		receivedCode = 0;
+		receivedReasonPhrase = null;
+		keepAlive = false;
+		headers.clear();
+		body = null;
+		fileBody = null;
+		bufferBody = null;
+		channelBody = null;
+		chunkSize = 0;
+		bytesWritten = 0;
+	}
+
 	/**
 	 * Write response to the socket.
+	 * The stream is not flushed, so the responses to pipelined requests can be sent together.
 	 * @param outputStream
 	 * @throws HttpExecutionException
 	 */
 	public void respond(OutputStream outputStream) throws HttpExecutionException {
-		PrintStream printStream = new PrintStream(outputStream);
+		respond(outputStream, null);
+	}
 
-		// Status line
-		printStream.println(httpVersion +  " " + httpStatusCode.code + " " + httpStatusCode.message);
-		LOGGER.info(httpVersion +  " " + httpStatusCode.code + " " + httpStatusCode.message);
+	/**
+	 * Write response to the socket. A large file body is transferred straight to the channel,
+	 * after flushing the headers buffered in the stream. To a {@link GatheringOutputStream}, a buffer
+	 * body leaves with the headers in one gathering write.
+	 * @param outputStream
+	 * @param channel the channel of the socket, or null to copy the body through the stream
+	 * @throws HttpExecutionException
+	 */
+	public void respond(OutputStream outputStream, WritableByteChannel channel) throws HttpExecutionException {
+		// The bodies are closed whether the head and the body were written or not: a body is opened
+		// before the response is written, the response reset for the next one drops it
+		try {
+			writeHead(outputStream);
 
-		// Headers
-		for (Map.Entry<String, String> entry: headerFields.entrySet()) {
-			printStream.println(entry.getKey() + ":" + entry.getValue());
+			// Body
+			if (fileBody != null) {
+				if (channel != null && fileBody.getCount() >= TRANSFER_THRESHOLD) {
+					outputStream.flush();
+					fileBody.transferTo(channel);
+				} else {
+					fileBody.copyTo(outputStream);
+				}
+				bytesWritten += fileBody.getCount();
+			} else if (bufferBody != null) {
+				bytesWritten += bufferBody.remaining();
+				if (outputStream instanceof GatheringOutputStream) {
+					// The head and the body leave together, the body is not copied
+					((GatheringOutputStream) outputStream).write(bufferBody);
+				} else if (channel != null && bufferBody.remaining() >= TRANSFER_THRESHOLD) {
+					outputStream.flush();
+					while (bufferBody.hasRemaining()) {
+						channel.write(bufferBody);
+					}
+				} else {
+					write(bufferBody, outputStream);
+				}
+			} else if (channelBody != null) {
+				if (channelBody instanceof ChunkedChannel) {
+					bytesWritten += copyChunks((ChunkedChannel) channelBody, outputStream);
+				} else {
+					bytesWritten += copy(channelBody, outputStream);
+				}
+			} else if (body != null) {
+				long length = Long.parseLong(headers.get(HttpHeaderName.CONTENT_LENGTH));
+				copy(body, outputStream, length);
+				bytesWritten += length;
+			}
+		} catch (IOException e) {
+			throw new HttpExecutionException(e);
+		} finally {
+			closeBodies();
 		}
-		printStream.println();
+	}
+
+	/**
+	 * Close the file, channel and stream bodies, releasing their file descriptors.
+	 */
+	private void closeBodies() {
+		close(fileBody);
+		close(channelBody);
+		close(body);
+	}
 
-		// Body
+	private static void close(Closeable body) {
 		if (body != null) {
 			try {
-				BufferedInputStream bis = new BufferedInputStream(body);
-				byte[] bs = new byte[Integer.parseInt(headerFields.get("Content-Length"))];
-				bis.read(bs);
-				printStream.write(bs);
 				body.close();
 			} catch (IOException e) {
-				e.printStackTrace();
-				throw new HttpExecutionException(e);
+				LOGGER.error(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * RFC-7231
+	 * The 100 (Continue) status code indicates that the initial part of a request has been received
+	 * and has not yet been rejected by the server. The server intends to send a final response after
+	 * the request has been fully received and acted upon.
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public static void writeContinue(OutputStream outputStream) throws IOException {
+		outputStream.write(CONTINUE);
+	}
+
+	/**
+	 * Write the status line and the headers, framed by CRLF.
+	 * The head is serialized into a buffer of the thread, from the pre-encoded status line, well-known
+	 * header names and Date header, then written at once.
+	 * @param outputStream
+	 * @throws HttpExecutionException
+	 */
+	public void writeHead(OutputStream outputStream) throws HttpExecutionException {
+		LOGGER.debug("{} {} {}", httpVersion, getCode(), getReasonPhrase());
+		HeadBuffer head = HEAD_BUFFER.get();
+		head.reset();
+
+		// Status line
+		if (HTTP_VERSION.equals(httpVersion) && receivedCode == 0) {
+			head.write(STATUS_LINES[httpStatusCode.ordinal()]);
+		} else {
+			head.write(httpVersion).write(' ').write(Integer.toString(getCode())).write(' ')
+					.write(getReasonPhrase()).write(CRLF);
+		}
+
+		// Headers
+		head.write(currentDateHeader()).write(SERVER_HEADER);
+		for (int i = 0; i < headers.size(); i++) {
+			HttpHeaderName name = headers.getKnownName(i);
+			if (name != null) {
+				head.write(name.encoded);
+			} else {
+				head.write(headers.getName(i)).write(':').write(' ');
 			}
+			head.write(headers.getValue(i)).write(CRLF);
+		}
+		head.write(CRLF);
+
+		try {
+			outputStream.write(head.bytes, 0, head.length);
+		} catch (IOException e) {
+			throw new HttpExecutionException(e);
 		}
+		bytesWritten += head.length;
+	}
+
+	/**
+	 * RFC-7231
+	 * An origin server MUST NOT send a Date header field if it does not have a clock capable of providing
+	 * a reasonable approximation of the current instance in Coordinated Universal Time. An origin server
+	 * MUST send a Date header field if its clock can provide such an approximation.
+	 * @return the encoded Date header of the current second, CRLF included
+	 */
+	private static byte[] currentDateHeader() {
+		return currentDateHeaderOf(System.currentTimeMillis()).bytes;
+	}
 
-		printStream.flush();
+	/**
+	 * @return the value of the Date header of the current second, shared with the HTTP/1 heads
+	 */
+	public static String currentDate() {
+		return currentDateHeaderOf(System.currentTimeMillis()).value;
+	}
+
+	private static DateHeader currentDateHeaderOf(long now) {
+		DateHeader header = dateHeader;
+		if (header.second != now / 1000) {
+			header = new DateHeader(now);
+			dateHeader = header;
+		}
+		return header;
+	}
+
+	private static byte[] encode(String text) {
+		return text.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static final class DateHeader {
+
+		private final long second;
+
+		private final String value;
+
+		private final byte[] bytes;
+
+		private DateHeader(long millis) {
+			this.second = millis / 1000;
+			this.value = HttpDate.format(millis);
+			this.bytes = encode("Date: " + value + "\r\n");
+		}
+	}
+
+	/**
+	 * A growable byte array the head is encoded into, ISO-8859-1 character by character.
+	 */
+	private static final class HeadBuffer {
+
+		private byte[] bytes = new byte[512];
+
+		private int length;
+
+		void reset() {
+			length = 0;
+		}
+
+		HeadBuffer write(byte[] source) {
+			ensureCapacity(source.length);
+			System.arraycopy(source, 0, bytes, length, source.length);
+			length += source.length;
+			return this;
+		}
+
+		HeadBuffer write(String text) {
+			int n = text.length();
+			ensureCapacity(n);
+			for (int i = 0; i < n; i++) {
+				char c = text.charAt(i);
+				bytes[length++] = c < 0x100 ? (byte) c : (byte) '?';
+			}
+			return this;
+		}
+
+		HeadBuffer write(char c) {
+			ensureCapacity(1);
+			bytes[length++] = (byte) c;
+			return this;
+		}
+
+		private void ensureCapacity(int n) {
+			if (length + n > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+			}
+		}
+	}
+
+	private static void write(ByteBuffer buffer, OutputStream outputStream) throws IOException {
+		if (buffer.hasArray()) {
+			outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		byte[] chunk = new byte[Math.min(COPY_CHUNK_SIZE, Math.max(buffer.remaining(), 1))];
+		while (buffer.hasRemaining()) {
+			int n = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, n);
+			outputStream.write(chunk, 0, n);
+		}
+	}
+
+	private static long copy(ReadableByteChannel channel, OutputStream outputStream) throws IOException {
+		byte[] chunk = new byte[COPY_CHUNK_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		long copied = 0;
+		int n;
+		while ((n = channel.read(buffer)) >= 0) {
+			outputStream.write(chunk, 0, n);
+			copied += n;
+			buffer.clear();
+		}
+		return copied;
+	}
+
+	/**
+	 * Copy the chunks one at a time, each one flushed as soon as it is read.
+	 */
+	private static long copyChunks(ChunkedChannel channel, OutputStream outputStream) throws IOException {
+		byte[] chunk = new byte[channel.capacity()];
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		long copied = 0;
+		int n;
+		while ((n = channel.read(buffer)) >= 0) {
+			if (n > 0) {
+				outputStream.write(chunk, 0, n);
+				outputStream.flush();
+				copied += n;
+			}
+			buffer.clear();
+		}
+		return copied;
+	}
+
+	private static void copy(InputStream inputStream, OutputStream outputStream, long length) throws IOException {
+		byte[] chunk = new byte[(int) Math.min(COPY_CHUNK_SIZE, Math.max(length, 1))];
+		while (length > 0) {
+			int n = inputStream.read(chunk, 0, (int) Math.min(chunk.length, length));
+			if (n < 0) {
+				throw new EOFException("Body shorter than its Content-Length");
+			}
+			outputStream.write(chunk, 0, n);
+			length -= n;
+		}
 	}
 }
@@ -1,19 +1,76 @@
 package com.webserver.http;
 
 public enum HttpStatusCode {
+	SC_CONTINUE(100, "Continue"),
+	SC_SWITCHING_PROTOCOLS(101, "Switching Protocols"),
 	SC_OK(200, "OK"),
+	SC_CREATED(201, "Created"),
+	SC_ACCEPTED(202, "Accepted"),
+	SC_NON_AUTHORITATIVE_INFORMATION(203, "Non-Authoritative Information"),
+	SC_NO_CONTENT(204, "No Content"),
+	SC_RESET_CONTENT(205, "Reset Content"),
+	SC_PARTIAL_CONTENT(206, "Partial Content"),
+	SC_MULTIPLE_CHOICES(300, "Multiple Choices"),
+	SC_MOVED_PERMANENTLY(301, "Moved Permanently"),
+	SC_FOUND(302, "Found"),
+	SC_SEE_OTHER(303, "See Other"),
+	SC_NOT_MODIFIED(304, "Not Modified"),
+	SC_TEMPORARY_REDIRECT(307, "Temporary Redirect"),
+	SC_PERMANENT_REDIRECT(308, "Permanent Redirect"),
 	SC_BAD_REQUEST(400, "Bad Request"),
-	SC_METHOD_NOT_ALLOWED(401, "Method Not Allowed"),
+	SC_UNAUTHORIZED(401, "Unauthorized"),
+	SC_FORBIDDEN(403, "Forbidden"),
 	SC_NOT_FOUND(404, "Not Found"),
+	SC_METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+	SC_NOT_ACCEPTABLE(406, "Not Acceptable"),
+	SC_REQUEST_TIMEOUT(408, "Request Timeout"),
+	SC_CONFLICT(409, "Conflict"),
+	SC_GONE(410, "Gone"),
+	SC_LENGTH_REQUIRED(411, "Length Required"),
+	SC_PRECONDITION_FAILED(412, "Precondition Failed"),
+	SC_PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+	SC_URI_TOO_LONG(414, "URI Too Long"),
+	SC_UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
+	SC_RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
+	SC_EXPECTATION_FAILED(417, "Expectation Failed"),
+	SC_UPGRADE_REQUIRED(426, "Upgrade Required"),
+	SC_TOO_MANY_REQUESTS(429, "Too Many Requests"),
 
 	SC_INTERNAL_SERVER_ERROE(500, "Internal Server Error"),
-	SC_NOT_IMPLEMENTED(501, "Not Implemented");
+	SC_NOT_IMPLEMENTED(501, "Not Implemented"),
+	SC_BAD_GATEWAY(502, "Bad Gateway"),
+	SC_SERVICE_UNAVAILABLE(503, "Service Unavailable"),
+	SC_GATEWAY_TIMEOUT(504, "Gateway Timeout"),
+	SC_HTTP_VERSION_NOT_SUPPORTED(505, "HTTP Version Not Supported");
 
 	public final int code;
 	public final String message;
 
+	private static final HttpStatusCode[] BY_CODE = new HttpStatusCode[600];
+
+	static {
+		for (HttpStatusCode statusCode : values()) {
+			BY_CODE[statusCode.code] = statusCode;
+		}
+	}
+
 	HttpStatusCode(int code, String message) {
 		this.code = code;
 		this.message = message;
 	}
+
+	/**
+	 * RFC-7231
+	 * A client MUST understand the class of any status code, as indicated by the first digit, and
+	 * treat an unrecognized status code as being equivalent to the x00 status code of that class.
+	 * @param code a status code received, e.g. from an upstream server
+	 * @return the status code, or the x00 status code of its class, or null if it is not a valid code
+	 */
+	public static HttpStatusCode forCode(int code) {
+		if (code < 100 || code >= BY_CODE.length) {
+			return null;
+		}
+		HttpStatusCode statusCode = BY_CODE[code];
+		return statusCode != null ? statusCode : BY_CODE[code / 100 * 100];
+	}
 }
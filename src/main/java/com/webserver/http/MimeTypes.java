@@ -0,0 +1,74 @@
+package com.webserver.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class maps file extensions to media types.
+ */
+public class MimeTypes {
+
+	public static final String DEFAULT = "application/octet-stream";
+
+	private static final Map<String, String> TYPES = new HashMap<>();
+	static {
+		TYPES.put("html", "text/html");
+		TYPES.put("htm", "text/html");
+		TYPES.put("css", "text/css");
+		TYPES.put("txt", "text/plain");
+		TYPES.put("csv", "text/csv");
+		TYPES.put("xml", "application/xml");
+		TYPES.put("js", "application/javascript");
+		TYPES.put("mjs", "application/javascript");
+		TYPES.put("json", "application/json");
+		TYPES.put("map", "application/json");
+		TYPES.put("wasm", "application/wasm");
+		TYPES.put("svg", "image/svg+xml");
+		TYPES.put("ico", "image/x-icon");
+		TYPES.put("png", "image/png");
+		TYPES.put("jpg", "image/jpeg");
+		TYPES.put("jpeg", "image/jpeg");
+		TYPES.put("gif", "image/gif");
+		TYPES.put("webp", "image/webp");
+		TYPES.put("avif", "image/avif");
+		TYPES.put("woff", "font/woff");
+		TYPES.put("woff2", "font/woff2");
+		TYPES.put("ttf", "font/ttf");
+		TYPES.put("otf", "font/otf");
+		TYPES.put("mp3", "audio/mpeg");
+		TYPES.put("ogg", "audio/ogg");
+		TYPES.put("mp4", "video/mp4");
+		TYPES.put("webm", "video/webm");
+		TYPES.put("pdf", "application/pdf");
+		TYPES.put("zip", "application/zip");
+		TYPES.put("gz", "application/gzip");
+	}
+
+	/**
+	 * @param fileName
+	 * @return the media type of the file, by extension
+	 */
+	public static String forFileName(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		if (dot < 0 || dot == fileName.length() - 1) {
+			return DEFAULT;
+		}
+		String type = TYPES.get(fileName.substring(dot + 1).toLowerCase());
+		return type == null ? DEFAULT : type;
+	}
+
+	/**
+	 * Text based types shrink when compressed, images, media, fonts and archives are compressed already.
+	 * @param mimeType
+	 * @return true if the content is worth compressing
+	 */
+	public static boolean isCompressible(String mimeType) {
+		return mimeType.startsWith("text/")
+				|| mimeType.equals("application/javascript")
+				|| mimeType.equals("application/json")
+				|| mimeType.equals("application/xml")
+				|| mimeType.equals("application/wasm")
+				|| mimeType.equals("image/svg+xml")
+				|| mimeType.equals("image/x-icon");
+	}
+}
@@ -0,0 +1,186 @@
+package com.webserver.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class holds the body of a request as its bytes are received.
+ *
+ * The bytes are copied from the read buffer of the connection as they arrive, so the body is never
+ * read as a whole. A small body stays in memory, a body growing past the spill threshold is moved to
+ * a temporary file and the next bytes are written to it: the memory held by a request is bounded
+ * whatever the size of its body. The temporary file is deleted when the body is closed.
+ */
+public class RequestBody implements Closeable {
+
+	private final static Logger LOGGER = LogManager.getLogger(RequestBody.class);
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The largest number of bytes held in memory.
+	 */
+	private final int spillThreshold;
+
+	/**
+	 * The bytes in memory, null once spilled.
+	 */
+	private byte[] bytes;
+
+	/**
+	 * The channel of the temporary file of a spilled body. The file is deleted when the channel is
+	 * closed, or at once on POSIX systems, so it is only read through this channel.
+	 */
+	private FileChannel fileChannel;
+
+	private long length;
+
+	private boolean closed;
+
+	/**
+	 * @param spillThreshold the largest number of bytes held in memory
+	 * @param expectedLength the Content-Length of the request, or -1 if it is chunked
+	 */
+	public RequestBody(int spillThreshold, long expectedLength) {
+		this.spillThreshold = spillThreshold;
+		this.bytes = new byte[(int) Math.min(expectedLength >= 0 ? expectedLength : INITIAL_CAPACITY, spillThreshold)];
+	}
+
+	/**
+	 * Append the next bytes of the buffer, from its position.
+	 * @param buffer
+	 * @param count the number of bytes consumed from the buffer
+	 * @throws IOException if the temporary file cannot be written
+	 */
+	public void append(ByteBuffer buffer, int count) throws IOException {
+		if (bytes != null && length + count > spillThreshold) {
+			spill();
+		}
+		if (bytes != null) {
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(Math.max(2L * bytes.length, length + count), spillThreshold));
+			}
+			buffer.get(bytes, (int) length, count);
+		} else {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(slice.position() + count);
+			while (slice.hasRemaining()) {
+				fileChannel.write(slice);
+			}
+			buffer.position(slice.position());
+		}
+		length += count;
+	}
+
+	private void spill() throws IOException {
+		Path file = Files.createTempFile("body", ".tmp");
+		fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		ByteBuffer received = ByteBuffer.wrap(bytes, 0, (int) length);
+		while (received.hasRemaining()) {
+			fileChannel.write(received);
+		}
+		bytes = null;
+	}
+
+	/**
+	 * @return the number of bytes received
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return true if the body was moved to a temporary file
+	 */
+	public boolean isSpilled() {
+		return fileChannel != null;
+	}
+
+	/**
+	 * Write the whole body to a channel, a spilled body from its file with {@link FileChannel#transferTo},
+	 * so the bytes are copied by the kernel.
+	 * @param target
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		if (bytes != null) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) length);
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+			return length;
+		}
+		long position = 0;
+		while (position < length) {
+			position += fileChannel.transferTo(position, length - position, target);
+		}
+		return length;
+	}
+
+	/**
+	 * @return a stream of the body, which must be read before the body is closed
+	 */
+	public InputStream getInputStream() {
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes, 0, (int) length);
+		}
+		return new InputStream() {
+
+			/**
+			 * Positional reads, the stream does not move the channel the body is written to.
+			 */
+			private long position;
+
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (position >= length) {
+					return -1;
+				}
+				int read = fileChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, length - position)), position);
+				if (read > 0) {
+					position += read;
+				}
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * Release the memory of the body and delete its temporary file.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		bytes = null;
+		if (fileChannel != null) {
+			try {
+				fileChannel.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.webserver.http2;
+
+import com.webserver.exceptions.Http2Exception;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * RFC-7541
+ * This class decodes the header blocks of a connection. The decoder of a connection keeps the dynamic
+ * table the encoder of the peer fills, so every block must be decoded, in the order of the frames,
+ * even the blocks of a refused stream.
+ *
+ * The names and the values are decoded as ISO-8859-1, one character per octet, as the HTTP/1 parser does.
+ */
+public class HpackDecoder {
+
+	/**
+	 * The largest dynamic table the peer may use, our SETTINGS_HEADER_TABLE_SIZE.
+	 */
+	private final int maxTableSize;
+
+	/**
+	 * The largest header list delivered, our SETTINGS_MAX_HEADER_LIST_SIZE.
+	 */
+	private final int maxHeaderListSize;
+
+	private final HpackTable table;
+
+	/**
+	 * The position in the block being decoded.
+	 */
+	private int position;
+
+	public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+		this.table = new HpackTable(maxTableSize);
+	}
+
+	/**
+	 * Decode a complete header block.
+	 * @param block
+	 * @param offset
+	 * @param length
+	 * @param listener receives the fields in order, until the header list exceeds its maximum size
+	 * @return false if the header list exceeds its maximum size, the block is then decoded to the end
+	 *         without delivering the rest of the fields
+	 * @throws Http2Exception COMPRESSION_ERROR if the block is malformed
+	 */
+	public boolean decode(byte[] block, int offset, int length, BiConsumer<String, String> listener) throws Http2Exception {
+		position = offset;
+		int end = offset + length;
+		long headerListSize = 0;
+		boolean fieldDecoded = false;
+		while (position < end) {
+			int b = block[position] & 0xff;
+			String name;
+			String value;
+			if ((b & 0x80) != 0) {
+				// Indexed Header Field Representation
+				int index = readInteger(block, end, 7);
+				if (index == 0) {
+					throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "Invalid HPACK index 0");
+				}
+				name = table.getName(index);
+				value = table.getValue(index);
+			} else if ((b & 0x40) != 0) {
+				// Literal Header Field with Incremental Indexing
+				int index = readInteger(block, end, 6);
+				name = index == 0 ? readString(block, end) : table.getName(index);
+				value = readString(block, end);
+				table.add(name, value);
+			} else if ((b & 0x20) != 0) {
+				// Dynamic Table Size Update, only at the beginning of a block
+				if (fieldDecoded) {
+					throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "HPACK table size update after a field");
+				}
+				int size = readInteger(block, end, 5);
+				if (size > maxTableSize) {
+					throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "HPACK table size " + size + " above the limit");
+				}
+				table.setMaxSize(size);
+				continue;
+			} else {
+				// Literal Header Field without Indexing, or Never Indexed
+				int index = readInteger(block, end, 4);
+				name = index == 0 ? readString(block, end) : table.getName(index);
+				value = readString(block, end);
+			}
+			fieldDecoded = true;
+			if (headerListSize <= maxHeaderListSize) {
+				headerListSize += name.length() + value.length() + 32;
+				if (headerListSize <= maxHeaderListSize) {
+					listener.accept(name, value);
+				}
+			}
+		}
+		return headerListSize <= maxHeaderListSize;
+	}
+
+	/**
+	 * RFC-7541 Section 5.1
+	 *          decode I from the next N bits
+	 *          if I < 2^N - 1, return I
+	 *          else
+	 *              M = 0
+	 *              repeat
+	 *                  B = next octet
+	 *                  I = I + (B & 127) * 2^M
+	 *                  M = M + 7
+	 *              while B & 128 == 128
+	 *              return I
+	 */
+	private int readInteger(byte[] block, int end, int prefixBits) throws Http2Exception {
+		int mask = (1 << prefixBits) - 1;
+		long value = block[position++] & mask;
+		if (value < mask) {
+			return (int) value;
+		}
+		int shift = 0;
+		int b;
+		do {
+			if (position == end) {
+				throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "Truncated HPACK integer");
+			}
+			if (shift > 28) {
+				throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "HPACK integer overflow");
+			}
+			b = block[position++] & 0xff;
+			value += (long) (b & 0x7f) << shift;
+			shift += 7;
+			if (value > Integer.MAX_VALUE) {
+				throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "HPACK integer overflow");
+			}
+		} while ((b & 0x80) != 0);
+		return (int) value;
+	}
+
+	/**
+	 * RFC-7541 Section 5.2
+	 *            0   1   2   3   4   5   6   7
+	 *          +---+---+---+---+---+---+---+---+
+	 *          | H |    String Length (7+)     |
+	 *          +---+---------------------------+
+	 *          |  String Data (Length octets)  |
+	 *          +-------------------------------+
+	 */
+	private String readString(byte[] block, int end) throws Http2Exception {
+		if (position == end) {
+			throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "Truncated HPACK string");
+		}
+		boolean huffman = (block[position] & 0x80) != 0;
+		int length = readInteger(block, end, 7);
+		if (length > end - position) {
+			throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "Truncated HPACK string");
+		}
+		String string = huffman
+				? Huffman.decode(block, position, length)
+				: new String(block, position, length, StandardCharsets.ISO_8859_1);
+		position += length;
+		return string;
+	}
+}
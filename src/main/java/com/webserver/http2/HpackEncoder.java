@@ -0,0 +1,176 @@
+package com.webserver.http2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * RFC-7541
+ * This class encodes the header blocks of a connection into a reused buffer.
+ *
+ * A field found in the static or the dynamic table is sent as an index. The other fields are inserted
+ * into the dynamic table, so the fields repeated on every response of the connection (server,
+ * content-type, cache-control...) only cost one or two octets from the second response on. The fields
+ * changing on every response (date, content-length, etag...) are sent as literals without indexing,
+ * so they do not evict the useful entries. A string is Huffman encoded when it is shorter so.
+ */
+public class HpackEncoder {
+
+	/**
+	 * The fields whose value changes on nearly every response, not worth an entry of the dynamic table.
+	 */
+	private static final Set<String> NOT_INDEXED = new HashSet<>(Arrays.asList(
+			"age", "content-length", "content-range", "date", "etag", "expires", "last-modified", "location",
+			"set-cookie"));
+
+	/**
+	 * The largest dynamic table used, whatever the peer allows.
+	 */
+	private final int maxTableSize;
+
+	private final HpackTable table;
+
+	/**
+	 * The smallest and the last table size set by the peer since the previous block, -1 if unchanged.
+	 */
+	private int minPendingSize = -1;
+	private int pendingSize = -1;
+
+	private byte[] block = new byte[512];
+
+	private int length;
+
+	/**
+	 * @param maxTableSize the largest dynamic table used, at most the SETTINGS_HEADER_TABLE_SIZE of the peer
+	 */
+	public HpackEncoder(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+		this.table = new HpackTable(maxTableSize);
+	}
+
+	/**
+	 * Called on a SETTINGS_HEADER_TABLE_SIZE of the peer. The change is signaled at the beginning of
+	 * the next block.
+	 * @param size the largest dynamic table the decoder of the peer accepts
+	 */
+	public void setMaxTableSize(int size) {
+		size = Math.min(size, maxTableSize);
+		minPendingSize = minPendingSize < 0 ? size : Math.min(minPendingSize, size);
+		pendingSize = size;
+	}
+
+	/**
+	 * Start a new block.
+	 * RFC-7541
+	 * If the maximum size is reduced and then increased before the next block, the smallest maximum
+	 * table size that occurs in that interval MUST be signaled in a dynamic table size update, then the
+	 * final maximum size.
+	 */
+	public void reset() {
+		length = 0;
+		if (pendingSize >= 0) {
+			if (minPendingSize < pendingSize) {
+				writeSizeUpdate(minPendingSize);
+			}
+			writeSizeUpdate(pendingSize);
+			minPendingSize = -1;
+			pendingSize = -1;
+		}
+	}
+
+	private void writeSizeUpdate(int size) {
+		table.setMaxSize(size);
+		writeInteger(0x20, 5, size);
+	}
+
+	/**
+	 * Append a field to the block.
+	 * @param name lower case, as HTTP/2 requires
+	 * @param value
+	 */
+	public void encode(String name, String value) {
+		int index = table.indexOf(name, value);
+		if (index > 0) {
+			// Indexed Header Field Representation
+			writeInteger(0x80, 7, index);
+			return;
+		}
+		boolean indexed = !NOT_INDEXED.contains(name);
+		if (indexed) {
+			// Literal Header Field with Incremental Indexing
+			writeInteger(0x40, 6, -index);
+		} else {
+			// Literal Header Field without Indexing
+			writeInteger(0x00, 4, -index);
+		}
+		if (index == 0) {
+			writeString(name);
+		}
+		writeString(value);
+		if (indexed) {
+			table.add(name, value);
+		}
+	}
+
+	/**
+	 * @return the buffer of the block, valid until the next reset
+	 */
+	public byte[] getBlock() {
+		return block;
+	}
+
+	/**
+	 * @return the length of the block
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * RFC-7541 Section 5.1
+	 *          if I < 2^N - 1, encode I on N bits
+	 *          else
+	 *              encode (2^N - 1) on N bits
+	 *              I = I - (2^N - 1)
+	 *              while I >= 128
+	 *                   encode (I % 128 + 128) on 8 bits
+	 *                   I = I / 128
+	 *              encode I on 8 bits
+	 */
+	private void writeInteger(int pattern, int prefixBits, int value) {
+		ensureCapacity(6);
+		int mask = (1 << prefixBits) - 1;
+		if (value < mask) {
+			block[length++] = (byte) (pattern | value);
+			return;
+		}
+		block[length++] = (byte) (pattern | mask);
+		value -= mask;
+		while (value >= 128) {
+			block[length++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		block[length++] = (byte) value;
+	}
+
+	private void writeString(String s) {
+		int huffmanLength = Huffman.encodedLength(s);
+		if (huffmanLength < s.length()) {
+			writeInteger(0x80, 7, huffmanLength);
+			ensureCapacity(huffmanLength);
+			length = Huffman.encode(s, block, length);
+		} else {
+			writeInteger(0x00, 7, s.length());
+			ensureCapacity(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				block[length++] = (byte) s.charAt(i);
+			}
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if (length + n > block.length) {
+			block = Arrays.copyOf(block, Math.max(block.length * 2, length + n));
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.webserver.http2;
+
+import com.webserver.exceptions.Http2Exception;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RFC-7541 Section 2.3
+ * This class is the index address space of HPACK: the static table of the 61 predefined header
+ * fields, followed by the dynamic table of the fields inserted by the encoder, newest first.
+ *
+ *          <----------  Index Address Space ---------->
+ *          <-- Static  Table -->  <-- Dynamic Table -->
+ *          +---+-----------+---+  +---+-----------+---+
+ *          | 1 |    ...    | s |  |s+1|    ...    |s+k|
+ *          +---+-----------+---+  +---+-----------+---+
+ *
+ * The dynamic table is a ring of entries. Its size is the sum of the sizes of its entries, the length
+ * of the name and the value plus 32 octets each, and entries are evicted from the oldest to keep it
+ * below the maximum size.
+ */
+final class HpackTable {
+
+	/**
+	 * RFC-7541 Appendix A
+	 */
+	private static final String[][] STATIC_TABLE = {
+			{":authority", ""},
+			{":method", "GET"},
+			{":method", "POST"},
+			{":path", "/"},
+			{":path", "/index.html"},
+			{":scheme", "http"},
+			{":scheme", "https"},
+			{":status", "200"},
+			{":status", "204"},
+			{":status", "206"},
+			{":status", "304"},
+			{":status", "400"},
+			{":status", "404"},
+			{":status", "500"},
+			{"accept-charset", ""},
+			{"accept-encoding", "gzip, deflate"},
+			{"accept-language", ""},
+			{"accept-ranges", ""},
+			{"accept", ""},
+			{"access-control-allow-origin", ""},
+			{"age", ""},
+			{"allow", ""},
+			{"authorization", ""},
+			{"cache-control", ""},
+			{"content-disposition", ""},
+			{"content-encoding", ""},
+			{"content-language", ""},
+			{"content-length", ""},
+			{"content-location", ""},
+			{"content-range", ""},
+			{"content-type", ""},
+			{"cookie", ""},
+			{"date", ""},
+			{"etag", ""},
+			{"expect", ""},
+			{"expires", ""},
+			{"from", ""},
+			{"host", ""},
+			{"if-match", ""},
+			{"if-modified-since", ""},
+			{"if-none-match", ""},
+			{"if-range", ""},
+			{"if-unmodified-since", ""},
+			{"last-modified", ""},
+			{"link", ""},
+			{"location", ""},
+			{"max-forwards", ""},
+			{"proxy-authenticate", ""},
+			{"proxy-authorization", ""},
+			{"range", ""},
+			{"referer", ""},
+			{"refresh", ""},
+			{"retry-after", ""},
+			{"server", ""},
+			{"set-cookie", ""},
+			{"strict-transport-security", ""},
+			{"transfer-encoding", ""},
+			{"user-agent", ""},
+			{"vary", ""},
+			{"via", ""},
+			{"www-authenticate", ""}
+	};
+
+	static final int STATIC_LENGTH = STATIC_TABLE.length;
+
+	/**
+	 * The first static index of each name, and the static index of each field with a value.
+	 */
+	private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+	private static final Map<String, Integer> STATIC_FIELDS = new HashMap<>();
+	static {
+		for (int i = STATIC_LENGTH - 1; i >= 0; i--) {
+			STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+			if (!STATIC_TABLE[i][1].isEmpty()) {
+				STATIC_FIELDS.put(STATIC_TABLE[i][0] + ':' + STATIC_TABLE[i][1], i + 1);
+			}
+		}
+	}
+
+	/**
+	 * RFC-7541
+	 * The size of an entry is the sum of its name's length in octets, its value's length in octets,
+	 * and 32.
+	 */
+	private static final int ENTRY_OVERHEAD = 32;
+
+	private String[] names = new String[16];
+	private String[] values = new String[16];
+
+	/**
+	 * The slot of the newest entry.
+	 */
+	private int head = -1;
+
+	private int count;
+
+	private int size;
+
+	private int maxSize;
+
+	HpackTable(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the number of entries of the dynamic table
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the size of the dynamic table in octets
+	 */
+	int getSize() {
+		return size;
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Change the maximum size of the dynamic table, evicting the oldest entries above it.
+	 * @param maxSize
+	 */
+	void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict(0);
+	}
+
+	/**
+	 * @param index from 1, the static table first
+	 * @return the name of the entry
+	 * @throws Http2Exception COMPRESSION_ERROR if the index is not in the table
+	 */
+	String getName(int index) throws Http2Exception {
+		if (index > 0 && index <= STATIC_LENGTH) {
+			return STATIC_TABLE[index - 1][0];
+		}
+		return names[slot(index)];
+	}
+
+	/**
+	 * @param index from 1, the static table first
+	 * @return the value of the entry
+	 * @throws Http2Exception COMPRESSION_ERROR if the index is not in the table
+	 */
+	String getValue(int index) throws Http2Exception {
+		if (index > 0 && index <= STATIC_LENGTH) {
+			return STATIC_TABLE[index - 1][1];
+		}
+		return values[slot(index)];
+	}
+
+	private int slot(int index) throws Http2Exception {
+		int dynamicIndex = index - STATIC_LENGTH - 1;
+		if (index <= 0 || dynamicIndex >= count) {
+			throw new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, "Invalid HPACK index " + index);
+		}
+		return (head - dynamicIndex) & (names.length - 1);
+	}
+
+	/**
+	 * RFC-7541
+	 * Before a new entry is added to the dynamic table, entries are evicted from the end of the dynamic
+	 * table until the size of the dynamic table is less than or equal to (maximum size - new entry
+	 * size) or until the table is empty. An attempt to add an entry larger than the maximum size
+	 * causes the table to be emptied of all existing entries and results in an empty table.
+	 * @param name
+	 * @param value
+	 */
+	void add(String name, String value) {
+		int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+		if (entrySize > maxSize) {
+			evict(maxSize);
+			return;
+		}
+		evict(entrySize);
+		if (count == names.length) {
+			grow();
+		}
+		head = (head + 1) & (names.length - 1);
+		names[head] = name;
+		values[head] = value;
+		count++;
+		size += entrySize;
+	}
+
+	/**
+	 * Evict the oldest entries until there is room for the given size.
+	 */
+	private void evict(int room) {
+		while (count > 0 && size + room > maxSize) {
+			int oldest = (head - count + 1) & (names.length - 1);
+			size -= names[oldest].length() + values[oldest].length() + ENTRY_OVERHEAD;
+			names[oldest] = null;
+			values[oldest] = null;
+			count--;
+		}
+	}
+
+	private void grow() {
+		String[] newNames = new String[names.length * 2];
+		String[] newValues = new String[values.length * 2];
+		for (int i = 0; i < count; i++) {
+			int slot = (head - count + 1 + i) & (names.length - 1);
+			newNames[i] = names[slot];
+			newValues[i] = values[slot];
+		}
+		names = newNames;
+		values = newValues;
+		head = count - 1;
+	}
+
+	/**
+	 * Look a field up, for the encoder.
+	 * @param name
+	 * @param value
+	 * @return the index of the field, or minus the index of an entry with the same name, or 0
+	 */
+	int indexOf(String name, String value) {
+		Integer index = STATIC_FIELDS.get(name + ':' + value);
+		if (index != null) {
+			return index;
+		}
+		int nameIndex = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = (head - i) & (names.length - 1);
+			if (names[slot].equals(name)) {
+				if (values[slot].equals(value)) {
+					return STATIC_LENGTH + 1 + i;
+				}
+				if (nameIndex == 0) {
+					nameIndex = STATIC_LENGTH + 1 + i;
+				}
+			}
+		}
+		Integer staticName = STATIC_NAMES.get(name);
+		if (staticName != null) {
+			return -staticName;
+		}
+		return -nameIndex;
+	}
+}
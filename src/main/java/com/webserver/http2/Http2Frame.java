@@ -0,0 +1,100 @@
+package com.webserver.http2;
+
+/**
+ * RFC-7540 Section 4.1
+ * This class is a frame read from a connection, reused for every frame.
+ *
+ *          +-----------------------------------------------+
+ *          |                 Length (24)                   |
+ *          +---------------+---------------+---------------+
+ *          |   Type (8)    |   Flags (8)   |
+ *          +-+-------------+---------------+-------------------------------+
+ *          |R|                 Stream Identifier (31)                      |
+ *          +=+=============================================================+
+ *          |                   Frame Payload (0...)                      ...
+ *          +---------------------------------------------------------------+
+ */
+public class Http2Frame {
+
+	public static final int HEADER_LENGTH = 9;
+
+	public static final int DATA = 0x0;
+	public static final int HEADERS = 0x1;
+	public static final int PRIORITY = 0x2;
+	public static final int RST_STREAM = 0x3;
+	public static final int SETTINGS = 0x4;
+	public static final int PUSH_PROMISE = 0x5;
+	public static final int PING = 0x6;
+	public static final int GOAWAY = 0x7;
+	public static final int WINDOW_UPDATE = 0x8;
+	public static final int CONTINUATION = 0x9;
+
+	public static final int FLAG_END_STREAM = 0x1;
+	public static final int FLAG_ACK = 0x1;
+	public static final int FLAG_END_HEADERS = 0x4;
+	public static final int FLAG_PADDED = 0x8;
+	public static final int FLAG_PRIORITY = 0x20;
+
+	private int length;
+	private int type;
+	private int flags;
+	private int streamId;
+
+	/**
+	 * Holds the largest frame accepted, only the first length bytes are the payload.
+	 */
+	private final byte[] payload;
+
+	public Http2Frame(int maxFrameSize) {
+		this.payload = new byte[maxFrameSize];
+	}
+
+	void setHeader(int length, int type, int flags, int streamId) {
+		this.length = length;
+		this.type = type;
+		this.flags = flags;
+		this.streamId = streamId;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public boolean hasFlag(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @param offset
+	 * @return the 31-bit integer at the offset of the payload, the reserved bit ignored
+	 */
+	public int getInt31(int offset) {
+		return ((payload[offset] & 0x7f) << 24) | ((payload[offset + 1] & 0xff) << 16)
+				| ((payload[offset + 2] & 0xff) << 8) | (payload[offset + 3] & 0xff);
+	}
+
+	/**
+	 * @param offset
+	 * @return the 32-bit integer at the offset of the payload
+	 */
+	public int getInt(int offset) {
+		return ((payload[offset] & 0xff) << 24) | ((payload[offset + 1] & 0xff) << 16)
+				| ((payload[offset + 2] & 0xff) << 8) | (payload[offset + 3] & 0xff);
+	}
+}
@@ -0,0 +1,119 @@
+package com.webserver.http2;
+
+import com.webserver.exceptions.Http2Exception;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads the frames of a connection from a blocking stream.
+ *
+ * The frames are read through the read buffer of the connection, so the bytes the HTTP/1 parser read
+ * ahead of an upgrade are not lost, and the frame headers of small frames read together cost a
+ * single read. A payload longer than the buffered bytes is read straight into the frame.
+ */
+public class Http2FrameReader {
+
+	/**
+	 * RFC-7540 Section 3.5
+	 * The client connection preface starts with a sequence of 24 octets, followed by a SETTINGS frame.
+	 */
+	public static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	private final InputStream inputStream;
+
+	private final ByteBuffer buffer;
+
+	private final int maxFrameSize;
+
+	/**
+	 * @param inputStream
+	 * @param buffer heap buffer in read mode, holding the bytes read ahead
+	 * @param maxFrameSize our SETTINGS_MAX_FRAME_SIZE
+	 */
+	public Http2FrameReader(InputStream inputStream, ByteBuffer buffer, int maxFrameSize) {
+		this.inputStream = inputStream;
+		this.buffer = buffer;
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Read the connection preface if the stream starts with it. Only the bytes needed to tell it apart
+	 * are read: an HTTP/1 request differs from the first byte on, and stays in the buffer for the parser.
+	 * @param inputStream
+	 * @param buffer heap buffer in read mode
+	 * @return true if the preface was read and consumed
+	 * @throws IOException
+	 */
+	public static boolean readPreface(InputStream inputStream, ByteBuffer buffer) throws IOException {
+		while (true) {
+			int n = Math.min(buffer.remaining(), PREFACE.length);
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(buffer.position() + i) != PREFACE[i]) {
+					return false;
+				}
+			}
+			if (n == PREFACE.length) {
+				buffer.position(buffer.position() + n);
+				return true;
+			}
+			if (read(inputStream, buffer) < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @return true if a frame can be read without blocking, at least its first bytes
+	 * @throws IOException
+	 */
+	public boolean isReadable() throws IOException {
+		return buffer.hasRemaining() || inputStream.available() > 0;
+	}
+
+	/**
+	 * Read the next frame, blocking until it is complete.
+	 * @param frame
+	 * @throws IOException EOFException if the connection is closed
+	 * @throws Http2Exception FRAME_SIZE_ERROR if the frame is larger than our SETTINGS_MAX_FRAME_SIZE
+	 */
+	public void read(Http2Frame frame) throws IOException, Http2Exception {
+		while (buffer.remaining() < Http2Frame.HEADER_LENGTH) {
+			if (read(inputStream, buffer) < 0) {
+				throw new EOFException("Connection closed by the client");
+			}
+		}
+		int length = ((buffer.get() & 0xff) << 16) | ((buffer.get() & 0xff) << 8) | (buffer.get() & 0xff);
+		int type = buffer.get() & 0xff;
+		int flags = buffer.get() & 0xff;
+		int streamId = buffer.getInt() & 0x7fffffff;
+		if (length > maxFrameSize) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Frame of " + length + " bytes");
+		}
+		frame.setHeader(length, type, flags, streamId);
+
+		byte[] payload = frame.getPayload();
+		int buffered = Math.min(length, buffer.remaining());
+		buffer.get(payload, 0, buffered);
+		for (int n = buffered; n < length; ) {
+			int read = inputStream.read(payload, n, length - n);
+			if (read < 0) {
+				throw new EOFException("Connection closed by the client");
+			}
+			n += read;
+		}
+	}
+
+	private static int read(InputStream inputStream, ByteBuffer buffer) throws IOException {
+		buffer.compact();
+		int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		if (read > 0) {
+			buffer.position(buffer.position() + read);
+		}
+		buffer.flip();
+		return read;
+	}
+}
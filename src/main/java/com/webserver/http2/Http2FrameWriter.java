@@ -0,0 +1,155 @@
+package com.webserver.http2;
+
+import com.webserver.http.GatheringOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class writes the frames of a connection to a buffered stream, only flushed on demand so the
+ * frames of several streams leave together.
+ *
+ * To a {@link GatheringOutputStream}, the payload of a DATA frame is not copied behind its header:
+ * both leave in one gathering write.
+ */
+public class Http2FrameWriter {
+
+	private final OutputStream outputStream;
+
+	private final byte[] header = new byte[Http2Frame.HEADER_LENGTH];
+
+	/**
+	 * The payload of the small frames.
+	 */
+	private final byte[] payload = new byte[8];
+
+	private long bytesWritten;
+
+	public Http2FrameWriter(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
+	/**
+	 * @return the number of bytes of the frames written so far
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	private void writeHeader(int length, int type, int flags, int streamId) throws IOException {
+		header[0] = (byte) (length >>> 16);
+		header[1] = (byte) (length >>> 8);
+		header[2] = (byte) length;
+		header[3] = (byte) type;
+		header[4] = (byte) flags;
+		putInt(header, 5, streamId);
+		outputStream.write(header, 0, Http2Frame.HEADER_LENGTH);
+		bytesWritten += Http2Frame.HEADER_LENGTH + length;
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * @param parameters pairs of an identifier and a value
+	 * @throws IOException
+	 */
+	public void writeSettings(int... parameters) throws IOException {
+		int count = parameters.length / 2;
+		writeHeader(6 * count, Http2Frame.SETTINGS, 0, 0);
+		for (int i = 0; i < count; i++) {
+			payload[0] = (byte) (parameters[2 * i] >>> 8);
+			payload[1] = (byte) parameters[2 * i];
+			putInt(payload, 2, parameters[2 * i + 1]);
+			outputStream.write(payload, 0, 6);
+		}
+	}
+
+	public void writeSettingsAck() throws IOException {
+		writeHeader(0, Http2Frame.SETTINGS, Http2Frame.FLAG_ACK, 0);
+	}
+
+	/**
+	 * @param opaqueData the 8 bytes of the PING to acknowledge
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void writePingAck(byte[] opaqueData, int offset) throws IOException {
+		writeHeader(8, Http2Frame.PING, Http2Frame.FLAG_ACK, 0);
+		outputStream.write(opaqueData, offset, 8);
+	}
+
+	public void writeGoAway(int lastStreamId, Http2ErrorCode errorCode) throws IOException {
+		writeHeader(8, Http2Frame.GOAWAY, 0, 0);
+		putInt(payload, 0, lastStreamId);
+		putInt(payload, 4, errorCode.code);
+		outputStream.write(payload, 0, 8);
+	}
+
+	public void writeRstStream(int streamId, Http2ErrorCode errorCode) throws IOException {
+		writeHeader(4, Http2Frame.RST_STREAM, 0, streamId);
+		putInt(payload, 0, errorCode.code);
+		outputStream.write(payload, 0, 4);
+	}
+
+	public void writeWindowUpdate(int streamId, int increment) throws IOException {
+		writeHeader(4, Http2Frame.WINDOW_UPDATE, 0, streamId);
+		putInt(payload, 0, increment);
+		outputStream.write(payload, 0, 4);
+	}
+
+	/**
+	 * Write a header block in a HEADERS frame, followed by CONTINUATION frames if it is larger than a frame.
+	 * @param streamId
+	 * @param block
+	 * @param length
+	 * @param endStream true if no DATA frame follows
+	 * @param maxFrameSize the SETTINGS_MAX_FRAME_SIZE of the peer
+	 * @throws IOException
+	 */
+	public void writeHeaders(int streamId, byte[] block, int length, boolean endStream, int maxFrameSize)
+			throws IOException {
+		int offset = 0;
+		int type = Http2Frame.HEADERS;
+		int flags = endStream ? Http2Frame.FLAG_END_STREAM : 0;
+		do {
+			int n = Math.min(length - offset, maxFrameSize);
+			boolean last = offset + n == length;
+			writeHeader(n, type, last ? flags | Http2Frame.FLAG_END_HEADERS : flags, streamId);
+			outputStream.write(block, offset, n);
+			offset += n;
+			type = Http2Frame.CONTINUATION;
+			flags = 0;
+		} while (offset < length);
+	}
+
+	/**
+	 * Write the bytes between the position and the limit of the buffer as a DATA frame.
+	 * @param streamId
+	 * @param data at most the SETTINGS_MAX_FRAME_SIZE of the peer, consumed
+	 * @param endStream
+	 * @throws IOException
+	 */
+	public void writeData(int streamId, ByteBuffer data, boolean endStream) throws IOException {
+		writeHeader(data.remaining(), Http2Frame.DATA, endStream ? Http2Frame.FLAG_END_STREAM : 0, streamId);
+		if (outputStream instanceof GatheringOutputStream) {
+			((GatheringOutputStream) outputStream).write(data);
+		} else if (data.hasArray()) {
+			outputStream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+			data.position(data.limit());
+		} else {
+			while (data.hasRemaining()) {
+				outputStream.write(data.get());
+			}
+		}
+	}
+
+	public void flush() throws IOException {
+		outputStream.flush();
+	}
+}
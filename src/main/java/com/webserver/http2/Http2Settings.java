@@ -0,0 +1,135 @@
+package com.webserver.http2;
+
+import com.webserver.exceptions.Http2Exception;
+
+/**
+ * RFC-7540 Section 6.5.2
+ * This class holds the settings of one endpoint of a connection, the initial values until a SETTINGS
+ * frame changes them.
+ *
+ *          +-------------------------------+
+ *          |       Identifier (16)         |
+ *          +-------------------------------+-------------------------------+
+ *          |                        Value (32)                             |
+ *          +---------------------------------------------------------------+
+ */
+public class Http2Settings {
+
+	public static final int HEADER_TABLE_SIZE = 0x1;
+	public static final int ENABLE_PUSH = 0x2;
+	public static final int MAX_CONCURRENT_STREAMS = 0x3;
+	public static final int INITIAL_WINDOW_SIZE = 0x4;
+	public static final int MAX_FRAME_SIZE = 0x5;
+	public static final int MAX_HEADER_LIST_SIZE = 0x6;
+
+	public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+	public static final int DEFAULT_INITIAL_WINDOW_SIZE = 65535;
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+	public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private static final int MAX_MAX_FRAME_SIZE = 16777215;
+
+	private int headerTableSize = DEFAULT_HEADER_TABLE_SIZE;
+	private boolean enablePush = true;
+	private int maxConcurrentStreams = Integer.MAX_VALUE;
+	private int initialWindowSize = DEFAULT_INITIAL_WINDOW_SIZE;
+	private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private int maxHeaderListSize = Integer.MAX_VALUE;
+
+	/**
+	 * Apply the parameters of a SETTINGS frame, in order. The unknown parameters are ignored.
+	 * @param payload
+	 * @param offset
+	 * @param length
+	 * @throws Http2Exception if a value is out of its range
+	 */
+	public void apply(byte[] payload, int offset, int length) throws Http2Exception {
+		if (length % 6 != 0) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "SETTINGS length " + length + " not a multiple of 6");
+		}
+		for (int i = offset; i < offset + length; i += 6) {
+			int identifier = ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+			long value = ((payload[i + 2] & 0xffL) << 24) | ((payload[i + 3] & 0xff) << 16)
+					| ((payload[i + 4] & 0xff) << 8) | (payload[i + 5] & 0xff);
+			switch (identifier) {
+				case HEADER_TABLE_SIZE:
+					headerTableSize = (int) Math.min(value, Integer.MAX_VALUE);
+					break;
+				case ENABLE_PUSH:
+					if (value > 1) {
+						throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "SETTINGS_ENABLE_PUSH " + value);
+					}
+					enablePush = value == 1;
+					break;
+				case MAX_CONCURRENT_STREAMS:
+					maxConcurrentStreams = (int) Math.min(value, Integer.MAX_VALUE);
+					break;
+				case INITIAL_WINDOW_SIZE:
+					if (value > MAX_WINDOW_SIZE) {
+						throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "SETTINGS_INITIAL_WINDOW_SIZE " + value);
+					}
+					initialWindowSize = (int) value;
+					break;
+				case MAX_FRAME_SIZE:
+					if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_MAX_FRAME_SIZE) {
+						throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "SETTINGS_MAX_FRAME_SIZE " + value);
+					}
+					maxFrameSize = (int) value;
+					break;
+				case MAX_HEADER_LIST_SIZE:
+					maxHeaderListSize = (int) Math.min(value, Integer.MAX_VALUE);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	public int getHeaderTableSize() {
+		return headerTableSize;
+	}
+
+	public void setHeaderTableSize(int headerTableSize) {
+		this.headerTableSize = headerTableSize;
+	}
+
+	public boolean isEnablePush() {
+		return enablePush;
+	}
+
+	public void setEnablePush(boolean enablePush) {
+		this.enablePush = enablePush;
+	}
+
+	public int getMaxConcurrentStreams() {
+		return maxConcurrentStreams;
+	}
+
+	public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+		this.maxConcurrentStreams = maxConcurrentStreams;
+	}
+
+	public int getInitialWindowSize() {
+		return initialWindowSize;
+	}
+
+	public void setInitialWindowSize(int initialWindowSize) {
+		this.initialWindowSize = initialWindowSize;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public void setMaxFrameSize(int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	public int getMaxHeaderListSize() {
+		return maxHeaderListSize;
+	}
+
+	public void setMaxHeaderListSize(int maxHeaderListSize) {
+		this.maxHeaderListSize = maxHeaderListSize;
+	}
+}
@@ -0,0 +1,286 @@
+package com.webserver.log;
+
+import com.webserver.config.AccessLogPolicy;
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is a singleton class writing one record per request to the access log, off the request path.
+ *
+ * The request threads copy the fields of a record into a preallocated slot of a ring buffer: no string
+ * is built and nothing is allocated on their side. A single background thread drains the ring, formats
+ * the records and writes them in batches, one write per batch instead of one per request.
+ *
+ * A slot is claimed by incrementing a sequence and published by a volatile write of its sequence number,
+ * so the request threads never lock. When the ring is full the record is dropped or the request thread
+ * waits, depending on the {@link AccessLogPolicy}.
+ */
+public class AccessLog {
+
+	private final static Logger LOGGER = LogManager.getLogger(AccessLog.class);
+
+	/**
+	 * The formatted bytes written at once, unless the ring is drained before.
+	 */
+	private static final int BATCH_SIZE = 64 * 1024;
+
+	/**
+	 * How long the writer sleeps when the ring is empty.
+	 * Unit: nanosecond
+	 */
+	private static final long IDLE_PARK_NANOS = 1_000_000;
+
+	private static AccessLog accessLog;
+
+	private final Entry[] ring;
+
+	private final int mask;
+
+	private final AccessLogFormat format;
+
+	private final AccessLogPolicy policy;
+
+	private final OutputStream outputStream;
+
+	/**
+	 * The sequence of the next slot to claim.
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+
+	/**
+	 * The sequence of the next slot to write, the slots before it are free.
+	 */
+	private final AtomicLong consumed = new AtomicLong();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final Thread writer;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param outputStream the destination of the records, closed when the log is closed
+	 * @param format
+	 * @param bufferSize the number of records of the ring, rounded up to a power of two
+	 * @param policy
+	 */
+	public AccessLog(OutputStream outputStream, AccessLogFormat format, int bufferSize, AccessLogPolicy policy) {
+		int capacity = 1;
+		while (capacity < bufferSize) {
+			capacity <<= 1;
+		}
+		this.ring = new Entry[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new Entry(i - capacity, format.getHeaderNames().length);
+		}
+		this.mask = capacity - 1;
+		this.format = format;
+		this.policy = policy;
+		this.outputStream = outputStream;
+		this.writer = new Thread(this::drain, "access-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return the access log of the server, or null if it is disabled
+	 */
+	public static synchronized AccessLog getInstance() {
+		if (accessLog == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			if (configuration.getAccessLog().isEmpty()) {
+				return null;
+			}
+			try {
+				accessLog = new AccessLog(new FileOutputStream(configuration.getAccessLog(), true),
+						AccessLogFormat.compile(configuration.getAccessLogFormat()),
+						configuration.getAccessLogBufferSize(), configuration.getAccessLogPolicy());
+			} catch (IOException e) {
+				LOGGER.error("Access log disabled: " + e.getMessage());
+				return null;
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(accessLog::close));
+		}
+		return accessLog;
+	}
+
+	/**
+	 * Record a response. Safe to call from any thread.
+	 * @param remoteAddress the address of the client
+	 * @param request the request, or null if it could not be parsed
+	 * @param statusCode the status sent
+	 * @param bytesSent the number of bytes of the response, or -1 if it is not known yet
+	 * @param nanos the time from the first byte of the request to the response written
+	 */
+	public void log(InetAddress remoteAddress, HttpRequest request, int statusCode, long bytesSent,
+			long nanos) {
+		long sequence = claim();
+		if (sequence < 0) {
+			return;
+		}
+		Entry entry = ring[(int) (sequence & mask)];
+		entry.timestamp = System.currentTimeMillis();
+		entry.remoteAddress = remoteAddress;
+		entry.statusCode = statusCode;
+		entry.bytesSent = bytesSent;
+		entry.nanos = nanos;
+		String[] headerNames = format.getHeaderNames();
+		if (request != null) {
+			entry.method = request.getMethod();
+			entry.target = request.getRawRequestTarget();
+			entry.httpVersion = request.getHttpVersion();
+			for (int i = 0; i < headerNames.length; i++) {
+				entry.headers[i] = request.getHeader(headerNames[i]);
+			}
+		}
+		// Publish: the writer reads the fields after it sees the sequence
+		entry.sequence = sequence;
+	}
+
+	/**
+	 * @return the sequence of the claimed slot, or -1 if the record is dropped
+	 */
+	private long claim() {
+		if (policy == AccessLogPolicy.BLOCK) {
+			long sequence = claimed.getAndIncrement();
+			while (sequence - ring.length >= consumed.get()) {
+				if (!running) {
+					return -1;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+			return sequence;
+		}
+		while (true) {
+			long sequence = claimed.get();
+			if (sequence - ring.length >= consumed.get()) {
+				dropped.increment();
+				return -1;
+			}
+			if (claimed.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of records dropped because the ring was full
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Write the pending records and stop the writer.
+	 */
+	public void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The loop of the writer thread.
+	 */
+	private void drain() {
+		StringBuilder batch = new StringBuilder(BATCH_SIZE + 1024);
+		long sequence = consumed.get();
+		while (true) {
+			Entry entry = ring[(int) (sequence & mask)];
+			if (entry.sequence == sequence) {
+				format.format(entry, batch);
+				batch.append('\n');
+				entry.clear();
+				sequence++;
+				// Frees the slot for the request threads
+				consumed.lazySet(sequence);
+				if (batch.length() < BATCH_SIZE) {
+					continue;
+				}
+			}
+			if (batch.length() > 0) {
+				write(batch);
+			} else if (!running) {
+				break;
+			} else {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+		try {
+			outputStream.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	private void write(StringBuilder batch) {
+		try {
+			outputStream.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+			outputStream.flush();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+		batch.setLength(0);
+	}
+
+	/**
+	 * A slot of the ring. The fields are written by the request thread which claimed it, then read by
+	 * the writer once the sequence is published.
+	 */
+	static class Entry {
+
+		volatile long sequence;
+
+		long timestamp;
+		InetAddress remoteAddress;
+		HttpMethod method;
+		String target;
+		String httpVersion;
+		int statusCode;
+		long bytesSent;
+		long nanos;
+
+		/**
+		 * The values of the request headers used by the format, in the order of its header names.
+		 */
+		final String[] headers;
+
+		Entry(long sequence, int headerCount) {
+			this.sequence = sequence;
+			this.headers = new String[headerCount];
+		}
+
+		/**
+		 * Release the references, so the requests are not retained by the ring.
+		 */
+		void clear() {
+			remoteAddress = null;
+			method = null;
+			target = null;
+			httpVersion = null;
+			for (int i = 0; i < headers.length; i++) {
+				headers[i] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.webserver.log;
+
+import com.webserver.exceptions.HttpConfigurationException;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is the format of the access log records, a pattern of the directives of the Apache
+ * httpd LogFormat:
+ *
+ *     %h         the address of the client
+ *     %l %u      the remote logname and user, always -
+ *     %t         the time the response was written, [10/Oct/2000:13:55:36 +0000]
+ *     %r         the request line
+ *     %m %U %H   the method, the request target and the protocol of the request
+ *     %s %>s     the status code
+ *     %b %B      the bytes of the response, - or 0 if none
+ *     %D %T      the time taken to serve the request, in microseconds or seconds
+ *     %{Name}i   the value of the request header Name
+ *     %%         a percent sign
+ *
+ * The pattern is compiled once, a record is then rendered by the writer thread of the access log.
+ */
+public class AccessLogFormat {
+
+	public static final String COMMON = "%h %l %u %t \"%r\" %>s %b";
+
+	public static final String COMBINED = COMMON + " \"%{Referer}i\" \"%{User-Agent}i\"";
+
+	private static final DateTimeFormatter TIME_FORMATTER =
+			DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ROOT).withZone(ZoneId.systemDefault());
+
+	/**
+	 * A part of the pattern, rendering a literal or a field of a record.
+	 */
+	private interface Element {
+		void format(AccessLog.Entry entry, StringBuilder out);
+	}
+
+	private final Element[] elements;
+
+	private final String[] headerNames;
+
+	/**
+	 * The formatted time of the last second a record was written in, the only one formatting it.
+	 */
+	private long formattedSecond = -1;
+	private String formattedTime;
+
+	private AccessLogFormat(String pattern) throws HttpConfigurationException {
+		List<Element> elements = new ArrayList<>();
+		List<String> headerNames = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i++);
+			if (c != '%') {
+				literal.append(c);
+				continue;
+			}
+			if (i == pattern.length()) {
+				throw new HttpConfigurationException("Incomplete access log directive at the end of " + pattern);
+			}
+			c = pattern.charAt(i++);
+			if (c == '%') {
+				literal.append('%');
+				continue;
+			}
+			if (literal.length() > 0) {
+				elements.add(literal(literal.toString()));
+				literal.setLength(0);
+			}
+			if (c == '>' && i < pattern.length() && pattern.charAt(i) == 's') {
+				c = pattern.charAt(i++);
+			}
+			if (c == '{') {
+				int end = pattern.indexOf("}i", i);
+				if (end < 0) {
+					throw new HttpConfigurationException("Unsupported access log directive in " + pattern);
+				}
+				int index = headerNames.size();
+				headerNames.add(pattern.substring(i, end));
+				elements.add((entry, out) -> orDash(entry.headers[index], out));
+				i = end + 2;
+				continue;
+			}
+			elements.add(directive(c, pattern));
+		}
+		if (literal.length() > 0) {
+			elements.add(literal(literal.toString()));
+		}
+		this.elements = elements.toArray(new Element[0]);
+		this.headerNames = headerNames.toArray(new String[0]);
+	}
+
+	/**
+	 * @param pattern common, combined, or a pattern of directives
+	 * @return the compiled format
+	 * @throws HttpConfigurationException if a directive is unknown
+	 */
+	public static AccessLogFormat compile(String pattern) throws HttpConfigurationException {
+		if ("common".equalsIgnoreCase(pattern)) {
+			return new AccessLogFormat(COMMON);
+		}
+		if ("combined".equalsIgnoreCase(pattern)) {
+			return new AccessLogFormat(COMBINED);
+		}
+		return new AccessLogFormat(pattern);
+	}
+
+	private static Element literal(String text) {
+		return (entry, out) -> out.append(text);
+	}
+
+	private Element directive(char c, String pattern) throws HttpConfigurationException {
+		switch (c) {
+			case 'h':
+				return (entry, out) -> out.append(entry.remoteAddress == null ? "-" : entry.remoteAddress.getHostAddress());
+			case 'l':
+			case 'u':
+				return (entry, out) -> out.append('-');
+			case 't':
+				return (entry, out) -> appendTime(entry.timestamp, out);
+			case 'r':
+				return (entry, out) -> {
+					if (entry.method == null) {
+						out.append('-');
+					} else {
+						out.append(entry.method).append(' ').append(entry.target).append(' ').append(entry.httpVersion);
+					}
+				};
+			case 'm':
+				return (entry, out) -> orDash(entry.method == null ? null : entry.method.name(), out);
+			case 'U':
+				return (entry, out) -> orDash(entry.target, out);
+			case 'H':
+				return (entry, out) -> orDash(entry.httpVersion, out);
+			case 's':
+				return (entry, out) -> out.append(entry.statusCode);
+			case 'b':
+				return (entry, out) -> {
+					if (entry.bytesSent > 0) {
+						out.append(entry.bytesSent);
+					} else {
+						out.append('-');
+					}
+				};
+			case 'B':
+				return (entry, out) -> out.append(Math.max(entry.bytesSent, 0));
+			case 'D':
+				return (entry, out) -> out.append(entry.nanos / 1000);
+			case 'T':
+				return (entry, out) -> out.append(entry.nanos / 1_000_000_000);
+			default:
+				throw new HttpConfigurationException("Unknown access log directive %" + c + " in " + pattern);
+		}
+	}
+
+	private static void orDash(String value, StringBuilder out) {
+		out.append(value == null || value.isEmpty() ? "-" : value);
+	}
+
+	/**
+	 * @return the request headers used by the format, copied into each record
+	 */
+	String[] getHeaderNames() {
+		return headerNames;
+	}
+
+	/**
+	 * Render a record. Only called by the writer thread.
+	 * @param entry
+	 * @param out
+	 */
+	void format(AccessLog.Entry entry, StringBuilder out) {
+		for (Element element : elements) {
+			element.format(entry, out);
+		}
+	}
+
+	private void appendTime(long timestamp, StringBuilder out) {
+		long second = timestamp / 1000;
+		if (second != formattedSecond) {
+			formattedTime = '[' + TIME_FORMATTER.format(Instant.ofEpochMilli(timestamp)) + ']';
+			formattedSecond = second;
+		}
+		out.append(formattedTime);
+	}
+}
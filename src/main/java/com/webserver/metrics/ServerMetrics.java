@@ -0,0 +1,395 @@
+package com.webserver.metrics;
+
+import com.webserver.cache.ContentCache;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.log.AccessLog;
+import com.webserver.proxy.ReverseProxy;
+import com.webserver.proxy.Upstream;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class is a singleton class collecting the metrics of the server, shared by both engines.
+ *
+ * The counters are {@link LongAdder}, striped per thread under contention, and the latencies are
+ * {@link LatencyHistogram}: recording never locks nor allocates, so it can stay on the hot path.
+ * Reading the metrics sums the stripes, which is only done to render the status page.
+ */
+public class ServerMetrics {
+
+	private static final HttpStatusCode[] STATUS_CODES = HttpStatusCode.values();
+
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	private static final ServerMetrics SERVER_METRICS = new ServerMetrics();
+
+	/**
+	 * The time an accepted connection waits for a thread of the pool.
+	 */
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+
+	/**
+	 * The time from the first byte of a request to its last byte.
+	 */
+	private final LatencyHistogram parseLatency = new LatencyHistogram();
+
+	/**
+	 * The time to build the response of a request.
+	 */
+	private final LatencyHistogram handleLatency = new LatencyHistogram();
+
+	/**
+	 * The time to encode a response and hand it to the socket.
+	 */
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+	/**
+	 * The responses sent, indexed by the ordinal of their status code.
+	 */
+	private final LongAdder[] responses = new LongAdder[STATUS_CODES.length];
+
+	private final LongAdder bytesSent = new LongAdder();
+
+	private final LongAdder acceptedConnections = new LongAdder();
+
+	/**
+	 * The connections answered 503 by the admission control, without being served.
+	 */
+	private final LongAdder shedConnections = new LongAdder();
+
+	/**
+	 * The connections being served, opened and not closed yet.
+	 */
+	private final LongAdder activeConnections = new LongAdder();
+
+	/**
+	 * The active connections waiting for the next request.
+	 */
+	private final LongAdder idleConnections = new LongAdder();
+
+	/**
+	 * The number of accepted connections waiting for a thread of the pool.
+	 */
+	private volatile LongSupplier poolQueueDepth = () -> 0;
+
+	private final long startTimestamp = System.currentTimeMillis();
+
+	/**
+	 * The counters at the previous rendering, to report the rates over the interval since.
+	 * Guarded by this.
+	 */
+	private long lastRateTimestamp = startTimestamp;
+	private final long[] lastResponses = new long[STATUS_CODES.length];
+	private long lastBytesSent;
+	private final double[] responseRates = new double[STATUS_CODES.length];
+	private double bytesSentRate;
+
+	private ServerMetrics() {
+		for (int i = 0; i < responses.length; i++) {
+			responses[i] = new LongAdder();
+		}
+	}
+
+	public static ServerMetrics getInstance() {
+		return SERVER_METRICS;
+	}
+
+	public void recordQueue(long nanos) {
+		queueLatency.record(nanos);
+	}
+
+	public void recordParse(long nanos) {
+		parseLatency.record(nanos);
+	}
+
+	public void recordHandle(long nanos) {
+		handleLatency.record(nanos);
+	}
+
+	public void recordWrite(long nanos) {
+		writeLatency.record(nanos);
+	}
+
+	public void recordResponse(HttpStatusCode statusCode) {
+		responses[statusCode.ordinal()].increment();
+	}
+
+	public void recordBytesSent(long bytes) {
+		bytesSent.add(bytes);
+	}
+
+	public void connectionAccepted() {
+		acceptedConnections.increment();
+	}
+
+	public void connectionShed() {
+		shedConnections.increment();
+	}
+
+	public void connectionOpened() {
+		activeConnections.increment();
+	}
+
+	public void connectionClosed() {
+		activeConnections.decrement();
+	}
+
+	public void connectionIdle() {
+		idleConnections.increment();
+	}
+
+	public void connectionBusy() {
+		idleConnections.decrement();
+	}
+
+	public void setPoolQueueDepth(LongSupplier poolQueueDepth) {
+		this.poolQueueDepth = poolQueueDepth;
+	}
+
+	public LatencyHistogram getQueueLatency() {
+		return queueLatency;
+	}
+
+	public LatencyHistogram getParseLatency() {
+		return parseLatency;
+	}
+
+	public LatencyHistogram getHandleLatency() {
+		return handleLatency;
+	}
+
+	public LatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
+
+	public long getResponses(HttpStatusCode statusCode) {
+		return responses[statusCode.ordinal()].sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getShedConnections() {
+		return shedConnections.sum();
+	}
+
+	public long getActiveConnections() {
+		return activeConnections.sum();
+	}
+
+	public long getIdleConnections() {
+		return idleConnections.sum();
+	}
+
+	/**
+	 * Refresh the rates, computed over the interval since the previous refresh if it lasted at least a second.
+	 */
+	private synchronized void updateRates() {
+		long currentTimestamp = System.currentTimeMillis();
+		long interval = currentTimestamp - lastRateTimestamp;
+		if (interval < 1000) {
+			return;
+		}
+		for (int i = 0; i < STATUS_CODES.length; i++) {
+			long current = responses[i].sum();
+			responseRates[i] = (current - lastResponses[i]) * 1000.0 / interval;
+			lastResponses[i] = current;
+		}
+		long current = bytesSent.sum();
+		bytesSentRate = (current - lastBytesSent) * 1000.0 / interval;
+		lastBytesSent = current;
+		lastRateTimestamp = currentTimestamp;
+	}
+
+	/**
+	 * @return the metrics as a JSON document, latencies in microseconds
+	 */
+	public synchronized String toJson() {
+		updateRates();
+		StringBuilder json = new StringBuilder(2048);
+		json.append("{\n  \"uptime_seconds\": ").append((System.currentTimeMillis() - startTimestamp) / 1000);
+
+		long total = 0;
+		double totalRate = 0;
+		StringBuilder byStatus = new StringBuilder();
+		for (int i = 0; i < STATUS_CODES.length; i++) {
+			long count = responses[i].sum();
+			total += count;
+			totalRate += responseRates[i];
+			if (count > 0) {
+				byStatus.append(byStatus.length() == 0 ? "" : ",").append("\n      \"").append(STATUS_CODES[i].code)
+						.append("\": {\"count\": ").append(count)
+						.append(", \"per_second\": ").append(format(responseRates[i])).append('}');
+			}
+		}
+		json.append(",\n  \"requests\": {\"count\": ").append(total)
+				.append(", \"per_second\": ").append(format(totalRate))
+				.append(",\n    \"by_status\": {").append(byStatus).append("\n    }\n  }");
+		json.append(",\n  \"bytes_sent\": {\"count\": ").append(bytesSent.sum())
+				.append(", \"per_second\": ").append(format(bytesSentRate)).append('}');
+		json.append(",\n  \"connections\": {\"accepted\": ").append(acceptedConnections.sum())
+				.append(", \"shed\": ").append(shedConnections.sum())
+				.append(", \"active\": ").append(activeConnections.sum())
+				.append(", \"idle\": ").append(idleConnections.sum())
+				.append(", \"pool_queue_depth\": ").append(poolQueueDepth.getAsLong()).append('}');
+		json.append(",\n  \"latency_us\": {");
+		appendJson(json, "queue", queueLatency);
+		json.append(',');
+		appendJson(json, "parse", parseLatency);
+		json.append(',');
+		appendJson(json, "handle", handleLatency);
+		json.append(',');
+		appendJson(json, "write", writeLatency);
+		json.append("\n  }");
+
+		ContentCache cache = ContentCache.getInstance();
+		json.append(",\n  \"cache\": {\"entries\": ").append(cache.getEntryCount())
+				.append(", \"size\": ").append(cache.getSize())
+				.append(", \"capacity\": ").append(cache.getCapacity())
+				.append(", \"hits\": ").append(cache.getHits())
+				.append(", \"misses\": ").append(cache.getMisses())
+				.append(", \"evictions\": ").append(cache.getEvictions()).append('}');
+		AccessLog accessLog = AccessLog.getInstance();
+		if (accessLog != null) {
+			json.append(",\n  \"access_log\": {\"dropped\": ").append(accessLog.getDropped()).append('}');
+		}
+		ReverseProxy proxy = ReverseProxy.getInstance();
+		if (proxy != null) {
+			json.append(",\n  \"upstreams\": [");
+			boolean first = true;
+			for (Upstream upstream : proxy.getUpstreams()) {
+				json.append(first ? "\n    " : ",\n    ");
+				first = false;
+				json.append("{\"prefix\": \"").append(upstream.getPrefix().replace("\\", "\\\\").replace("\"", "\\\""))
+						.append("\", \"server\": \"").append(upstream)
+						.append("\", \"available\": ").append(upstream.isAvailable())
+						.append(", \"requests\": ").append(upstream.getRequests())
+						.append(", \"failures\": ").append(upstream.getFailures())
+						.append(", \"active\": ").append(upstream.getActiveConnections())
+						.append(", \"idle\": ").append(upstream.getIdleConnections())
+						.append(", \"opened\": ").append(upstream.getConnectionsOpened())
+						.append(", \"reused\": ").append(upstream.getConnectionsReused()).append('}');
+			}
+			json.append("\n  ]");
+		}
+		json.append("\n}\n");
+		return json.toString();
+	}
+
+	private static void appendJson(StringBuilder json, String name, LatencyHistogram histogram) {
+		json.append("\n    \"").append(name).append("\": {\"count\": ").append(histogram.getCount())
+				.append(", \"mean\": ").append(format(histogram.getMean() / 1000));
+		for (double percentile : PERCENTILES) {
+			json.append(", \"p").append(format(percentile).replace(".", "")).append("\": ")
+					.append(format(histogram.getValueAtPercentile(percentile) / 1000.0));
+		}
+		json.append(", \"max\": ").append(format(histogram.getMax() / 1000.0)).append('}');
+	}
+
+	/**
+	 * @return the metrics in the Prometheus text exposition format, latencies in seconds
+	 */
+	public String toPrometheus() {
+		StringBuilder text = new StringBuilder(4096);
+		text.append("# HELP webserver_requests_total The responses sent, by status code.\n")
+				.append("# TYPE webserver_requests_total counter\n");
+		for (int i = 0; i < STATUS_CODES.length; i++) {
+			text.append("webserver_requests_total{code=\"").append(STATUS_CODES[i].code).append("\"} ")
+					.append(responses[i].sum()).append('\n');
+		}
+		appendPrometheus(text, "webserver_bytes_sent_total", "counter", "The bytes written to the sockets.", bytesSent.sum());
+		appendPrometheus(text, "webserver_connections_accepted_total", "counter", "The connections accepted.",
+				acceptedConnections.sum());
+		appendPrometheus(text, "webserver_connections_shed_total", "counter",
+				"The connections answered 503 by the admission control.", shedConnections.sum());
+		appendPrometheus(text, "webserver_connections_active", "gauge", "The connections being served.",
+				activeConnections.sum());
+		appendPrometheus(text, "webserver_connections_idle", "gauge", "The connections waiting for a request.",
+				idleConnections.sum());
+		appendPrometheus(text, "webserver_pool_queue_depth", "gauge", "The connections waiting for a thread.",
+				poolQueueDepth.getAsLong());
+		appendPrometheus(text, "webserver_queue_duration_seconds", "The time a connection waits for a thread.",
+				queueLatency);
+		appendPrometheus(text, "webserver_parse_duration_seconds", "The time to receive and parse a request.", parseLatency);
+		appendPrometheus(text, "webserver_handle_duration_seconds", "The time to build a response.", handleLatency);
+		appendPrometheus(text, "webserver_write_duration_seconds", "The time to write a response.", writeLatency);
+
+		ContentCache cache = ContentCache.getInstance();
+		appendPrometheus(text, "webserver_cache_entries", "gauge", "The files in the content cache.", cache.getEntryCount());
+		appendPrometheus(text, "webserver_cache_size_bytes", "gauge", "The bytes held by the content cache.", cache.getSize());
+		appendPrometheus(text, "webserver_cache_hits_total", "counter", "The content cache hits.", cache.getHits());
+		appendPrometheus(text, "webserver_cache_misses_total", "counter", "The content cache misses.", cache.getMisses());
+		appendPrometheus(text, "webserver_cache_evictions_total", "counter", "The content cache evictions.",
+				cache.getEvictions());
+		AccessLog accessLog = AccessLog.getInstance();
+		if (accessLog != null) {
+			appendPrometheus(text, "webserver_access_log_dropped_total", "counter",
+					"The access log records dropped because the buffer was full.", accessLog.getDropped());
+		}
+		ReverseProxy proxy = ReverseProxy.getInstance();
+		if (proxy != null) {
+			appendUpstreams(text, proxy, "webserver_upstream_requests_total", "counter",
+					"The requests forwarded to the upstream server.", Upstream::getRequests);
+			appendUpstreams(text, proxy, "webserver_upstream_failures_total", "counter",
+					"The failed exchanges with the upstream server.", Upstream::getFailures);
+			appendUpstreams(text, proxy, "webserver_upstream_available", "gauge",
+					"Whether the upstream server is up, 0 while it is marked down.",
+					upstream -> upstream.isAvailable() ? 1 : 0);
+			appendUpstreams(text, proxy, "webserver_upstream_connections_active", "gauge",
+					"The connections to the upstream server in use.", Upstream::getActiveConnections);
+			appendUpstreams(text, proxy, "webserver_upstream_connections_idle", "gauge",
+					"The connections to the upstream server in the pool.", Upstream::getIdleConnections);
+			appendUpstreams(text, proxy, "webserver_upstream_connections_opened_total", "counter",
+					"The connections opened to the upstream server.", Upstream::getConnectionsOpened);
+			appendUpstreams(text, proxy, "webserver_upstream_connections_reused_total", "counter",
+					"The requests sent on a pooled connection.", Upstream::getConnectionsReused);
+		}
+		return text.toString();
+	}
+
+	private static void appendUpstreams(StringBuilder text, ReverseProxy proxy, String name, String type, String help,
+										ToLongFunction<Upstream> value) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+				.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		for (Upstream upstream : proxy.getUpstreams()) {
+			text.append(name).append("{prefix=\"").append(upstream.getPrefix().replace("\\", "\\\\").replace("\"", "\\\""))
+					.append("\",server=\"").append(upstream).append("\"} ").append(value.applyAsLong(upstream)).append('\n');
+		}
+	}
+
+	private static void appendPrometheus(StringBuilder text, String name, String type, String help, long value) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+				.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+				.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void appendPrometheus(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+				.append("# TYPE ").append(name).append(" summary\n");
+		for (double percentile : PERCENTILES) {
+			text.append(name).append("{quantile=\"").append(format(percentile / 100)).append("\"} ")
+					.append(format(histogram.getValueAtPercentile(percentile) / 1e9)).append('\n');
+		}
+		text.append(name).append("_sum ").append(format(histogram.getSum() / 1e9)).append('\n')
+				.append(name).append("_count ").append(histogram.getCount()).append('\n');
+	}
+
+	/**
+	 * @return the number without a trailing zero fraction, in a locale independent format
+	 */
+	private static String format(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		String formatted = String.format(Locale.ROOT, "%.6f", value);
+		int end = formatted.length();
+		while (formatted.charAt(end - 1) == '0') {
+			end--;
+		}
+		return formatted.substring(0, end);
+	}
+}
@@ -0,0 +1,469 @@
+package com.webserver.proxy;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.config.Engine;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpHeaderName;
+import com.webserver.http.HttpHeaders;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.http.RequestBody;
+import com.webserver.router.Router;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * This class forwards the requests of configured path prefixes to upstream servers, as a gateway.
+ *
+ * The routes are given as prefix=host:port pairs, mounted on the router. The request is
+ * sent in HTTP/1.1 on a persistent connection taken from the pool of the upstream, its path
+ * unchanged, and the response is streamed back to the client as it is received. The hop-by-hop
+ * header fields are not forwarded, each side of the gateway has its own connection.
+ *
+ * Errors are answered by the gateway: 502 Bad Gateway if the server cannot be reached or answers
+ * an invalid response, 504 Gateway Timeout if it does not answer in time, 503 Service Unavailable if
+ * it is marked down or all its connections are in use.
+ *
+ * The exchanges are blocking, the proxy needs the blocking engine: an event loop of the NIO engine
+ * waiting for an upstream would stall all its connections.
+ */
+public class ReverseProxy {
+
+	private final static Logger LOGGER = LogManager.getLogger(ReverseProxy.class);
+
+	private static ReverseProxy reverseProxy;
+
+	/**
+	 * RFC-7230
+	 * A proxy or gateway MUST parse a received Connection header field before a message is forwarded
+	 * and, for each connection-option in this field, remove any header field(s) from the message with
+	 * the same name as the connection-option, and then remove the Connection header field itself.
+	 * The fields below are hop-by-hop whether they are listed or not.
+	 */
+	private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+			"te", "trailer", "transfer-encoding", "upgrade", "http2-settings"));
+
+	private static final String HTTP_1_0 = "HTTP/1.0";
+
+	private static final String HTTP_1_1 = "HTTP/1.1";
+
+	/**
+	 * The upstreams, in the order of the routes.
+	 */
+	private final List<Upstream> upstreams;
+
+	public ReverseProxy(String routes, int maxConnections, int connectTimeout, int readTimeout, int maxFails,
+						int failTimeout) {
+		List<Upstream> upstreams = new ArrayList<>();
+		for (String route : routes.split(",")) {
+			route = route.trim();
+			if (route.isEmpty()) {
+				continue;
+			}
+			int eq = route.indexOf('=');
+			int colon = route.lastIndexOf(':');
+			if (eq <= 0 || colon <= eq + 1 || route.charAt(0) != '/') {
+				throw new HttpConfigurationException("Invalid proxy route " + route + ", expected /prefix=host:port");
+			}
+			String prefix = route.substring(0, eq).trim();
+			String host = route.substring(eq + 1, colon).trim();
+			if (host.startsWith("[") && host.endsWith("]")) {
+				host = host.substring(1, host.length() - 1);
+			}
+			int port;
+			try {
+				port = Integer.parseInt(route.substring(colon + 1).trim());
+			} catch (NumberFormatException e) {
+				port = -1;
+			}
+			if (host.isEmpty() || port <= 0 || port > 65535) {
+				throw new HttpConfigurationException("Invalid proxy route " + route + ", expected /prefix=host:port");
+			}
+			upstreams.add(new Upstream(prefix, host, port, maxConnections, connectTimeout, readTimeout, maxFails,
+					failTimeout));
+		}
+		this.upstreams = Collections.unmodifiableList(upstreams);
+	}
+
+	/**
+	 * @return the reverse proxy, or null if no route is configured
+	 * @throws HttpConfigurationException if a route is invalid or the engine is not the blocking one
+	 */
+	public static synchronized ReverseProxy getInstance() throws HttpConfigurationException {
+		if (reverseProxy == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			if (configuration.getProxyRoutes().isEmpty()) {
+				return null;
+			}
+			if (configuration.getEngine() != Engine.BLOCKING) {
+				throw new HttpConfigurationException("proxy_routes needs engine=blocking, the exchanges with the"
+						+ " upstream servers would block the event loops of the " + configuration.getEngine() + " engine");
+			}
+			reverseProxy = new ReverseProxy(configuration.getProxyRoutes(), configuration.getProxyMaxConnections(),
+					configuration.getProxyConnectTimeout(), configuration.getProxyReadTimeout(),
+					configuration.getProxyMaxFails(), configuration.getProxyFailTimeout());
+			for (Upstream upstream : reverseProxy.upstreams) {
+				LOGGER.info("Proxying {} to {}", upstream.getPrefix(), upstream);
+			}
+		}
+		return reverseProxy;
+	}
+
+	public List<Upstream> getUpstreams() {
+		return upstreams;
+	}
+
+	/**
+	 * Mount each upstream on its prefix, for all the methods. The route resolves the upstream, a request
+	 * is not matched again against the prefixes.
+	 * @param builder
+	 * @throws HttpConfigurationException if a prefix is already routed
+	 */
+	public void register(Router.Builder builder) throws HttpConfigurationException {
+		for (Upstream upstream : upstreams) {
+			builder.prefix(upstream.getPrefix(), (request, response) -> forward(upstream, request, response));
+		}
+	}
+
+	/**
+	 * Forward the request and fill the response with the answer of the server, its body streamed
+	 * when the response is written. A request that failed on a reused connection, which the server
+	 * may have closed meanwhile, is retried once if its method is idempotent.
+	 * @param upstream
+	 * @param request
+	 * @param response
+	 */
+	public void forward(Upstream upstream, HttpRequest request, HttpResponse response) {
+		upstream.recordRequest();
+		if (!upstream.isAvailable()) {
+			// RFC-7231: the server MAY send a Retry-After header field to suggest an appropriate amount of time
+			response.setStatusCode(HttpStatusCode.SC_SERVICE_UNAVAILABLE);
+			response.setHeader(HttpHeaderName.RETRY_AFTER, Long.toString(Math.max(1, upstream.getRetryAfter())));
+			response.setContentLength(0);
+			return;
+		}
+		for (int attempt = 0; ; attempt++) {
+			UpstreamConnection connection;
+			try {
+				connection = upstream.acquire();
+			} catch (IOException e) {
+				LOGGER.error("Cannot connect to {}: {}", upstream, e.getMessage());
+				fail(upstream, e, response);
+				return;
+			}
+			if (connection == null) {
+				LOGGER.warn("All {} connections to {} in use", upstream.getMaxConnections(), upstream);
+				response.setStatusCode(HttpStatusCode.SC_SERVICE_UNAVAILABLE);
+				response.setContentLength(0);
+				return;
+			}
+			try {
+				exchange(upstream, connection, request, response);
+				return;
+			} catch (IOException e) {
+				upstream.discard(connection);
+				if (attempt == 0 && connection.isReused() && !(e instanceof SocketTimeoutException)
+						&& request.getMethod() != HttpMethod.POST) {
+					LOGGER.debug("Retrying on a new connection to {}: {}", upstream, e.getMessage());
+					continue;
+				}
+				LOGGER.error("Error forwarding to {}: {}", upstream, e.getMessage());
+				fail(upstream, e, response);
+				return;
+			}
+		}
+	}
+
+	private static void fail(Upstream upstream, IOException e, HttpResponse response) {
+		upstream.failed();
+		response.setStatusCode(e instanceof SocketTimeoutException
+				? HttpStatusCode.SC_GATEWAY_TIMEOUT : HttpStatusCode.SC_BAD_GATEWAY);
+		response.setContentLength(0);
+	}
+
+	/**
+	 * Send the request and read the head of the response. The response is only filled once its head
+	 * was received, a failure leaves it untouched.
+	 * @throws IOException
+	 */
+	private void exchange(Upstream upstream, UpstreamConnection connection, HttpRequest request,
+						  HttpResponse response) throws IOException {
+		RequestBody body = request.getBody();
+		connection.writeHead(requestHead(upstream, request, body));
+		OutputStream outputStream = connection.getOutputStream();
+		if (body != null && body.length() > 0 && body.isSpilled()) {
+			// The head leaves first, the file is transferred to the socket by the kernel
+			outputStream.flush();
+			body.transferTo(connection.getChannel());
+		} else {
+			if (body != null) {
+				body.transferTo(Channels.newChannel(outputStream));
+			}
+			outputStream.flush();
+		}
+
+		// RFC-7231: a client MUST be able to parse one or more 1xx responses received prior to a final response
+		HttpHeaders headers = new HttpHeaders();
+		String statusLine;
+		int code;
+		do {
+			statusLine = connection.readLine(UpstreamConnection.MAX_LINE_LENGTH);
+			code = parseStatusCode(statusLine);
+			headers.clear();
+			readHeaders(connection, headers);
+		} while (code < 200 && code != 101);
+		if (code == 101) {
+			// The upgrade was not asked, Upgrade is not forwarded
+			throw new IOException("Unexpected 101 Switching Protocols from " + upstream);
+		}
+		if (HttpStatusCode.forCode(code) == null) {
+			throw new IOException("Invalid status code " + code + " from " + upstream);
+		}
+		String reasonPhrase = parseReasonPhrase(statusLine);
+		upstream.succeeded();
+
+		String connectionOptions = headers.get(HttpHeaderName.CONNECTION);
+		boolean keepAlive = statusLine.startsWith(HTTP_1_0)
+				? hasToken(connectionOptions, "keep-alive") : !hasToken(connectionOptions, "close");
+		String transferEncoding = headers.get(HttpHeaderName.TRANSFER_ENCODING);
+		String contentLength = headers.get(HttpHeaderName.CONTENT_LENGTH);
+		long length = -1;
+		if (transferEncoding == null && contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException e) {
+				length = -1;
+			}
+			if (length < 0) {
+				throw new IOException("Invalid Content-Length " + contentLength + " from " + upstream);
+			}
+		}
+
+		// An unrecognized status code and the reason phrase are forwarded as received
+		response.setStatus(code, reasonPhrase);
+		HttpHeaders responseHeaders = response.getHeaders();
+		for (int i = 0; i < headers.size(); i++) {
+			String name = headers.getName(i);
+			HttpHeaderName knownName = headers.getKnownName(i);
+			if (knownName == HttpHeaderName.DATE || knownName == HttpHeaderName.SERVER
+					|| knownName == HttpHeaderName.CONTENT_LENGTH || isHopByHop(name, connectionOptions)) {
+				// The Date and Server of the gateway are sent
+				continue;
+			}
+			responseHeaders.add(name, headers.getValue(i));
+		}
+
+		// RFC-7230 3.3.3: the length of the body of a response
+		if (request.getMethod() == HttpMethod.HEAD || code == 204 || code == 304) {
+			if (contentLength != null && code != 204) {
+				response.setHeader(HttpHeaderName.CONTENT_LENGTH, contentLength);
+			}
+			release(upstream, connection, keepAlive);
+		} else if (transferEncoding != null) {
+			if (lastToken(transferEncoding).equalsIgnoreCase("chunked")) {
+				response.setBody(UpstreamBody.chunked(upstream, connection, keepAlive), -1);
+			} else {
+				response.setBody(UpstreamBody.untilClose(upstream, connection), -1);
+			}
+		} else if (length == 0) {
+			response.setContentLength(0);
+			release(upstream, connection, keepAlive);
+		} else if (length > 0) {
+			response.setBody(UpstreamBody.ofLength(upstream, connection, length, keepAlive), length);
+		} else {
+			response.setBody(UpstreamBody.untilClose(upstream, connection), -1);
+		}
+	}
+
+	private static void release(Upstream upstream, UpstreamConnection connection, boolean keepAlive) {
+		if (keepAlive) {
+			upstream.release(connection);
+		} else {
+			upstream.discard(connection);
+		}
+	}
+
+	/**
+	 * RFC-7230
+	 * An HTTP-to-HTTP gateway MUST send an appropriate Via header field in each inbound request message.
+	 * Every request is sent in HTTP/1.1, its body framed by a Content-Length: a chunked body was
+	 * decoded by the parser.
+	 * @return the request line and the header fields, CRLF terminated
+	 */
+	private static String requestHead(Upstream upstream, HttpRequest request, RequestBody body) {
+		StringBuilder head = new StringBuilder(512);
+		head.append(request.getMethod().name()).append(' ').append(originForm(request.getRawRequestTarget()))
+				.append(' ').append(HTTP_1_1).append("\r\n");
+
+		HttpHeaders headers = request.getHeaders();
+		String connectionOptions = headers.get(HttpHeaderName.CONNECTION);
+		for (int i = 0; i < headers.size(); i++) {
+			HttpHeaderName knownName = headers.getKnownName(i);
+			String name = headers.getName(i);
+			String value = headers.getValue(i);
+			if (knownName == HttpHeaderName.CONTENT_LENGTH || knownName == HttpHeaderName.EXPECT
+					|| knownName == HttpHeaderName.VIA || knownName == HttpHeaderName.X_FORWARDED_FOR
+					|| isHopByHop(name, connectionOptions) || value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+				continue;
+			}
+			head.append(name).append(": ").append(value).append("\r\n");
+		}
+		if (!headers.contains(HttpHeaderName.HOST)) {
+			head.append("Host: ").append(upstream.getHost()).append(':').append(upstream.getPort()).append("\r\n");
+		}
+
+		String via = headers.get(HttpHeaderName.VIA);
+		String version = request.getHttpVersion();
+		head.append("Via: ");
+		if (via != null) {
+			head.append(via).append(", ");
+		}
+		head.append(version.startsWith("HTTP/") ? version.substring(5) : version).append(' ')
+				.append(HttpResponse.SERVER).append("\r\n");
+
+		String forwardedFor = headers.get(HttpHeaderName.X_FORWARDED_FOR);
+		if (request.getRemoteAddress() != null) {
+			forwardedFor = forwardedFor == null ? request.getRemoteAddress().getHostAddress()
+					: forwardedFor + ", " + request.getRemoteAddress().getHostAddress();
+		}
+		if (forwardedFor != null) {
+			head.append("X-Forwarded-For: ").append(forwardedFor).append("\r\n");
+		}
+
+		if (body != null) {
+			head.append("Content-Length: ").append(body.length()).append("\r\n");
+		} else if (request.getMethod() == HttpMethod.POST || request.getMethod() == HttpMethod.PUT) {
+			head.append("Content-Length: 0\r\n");
+		}
+		return head.append("\r\n").toString();
+	}
+
+	/**
+	 * RFC-7230
+	 * When making a request directly to an origin server, a client MUST send only the absolute path
+	 * and query components of the target URI as the request-target.
+	 * @param target the request target as received
+	 * @return the target in origin-form
+	 */
+	static String originForm(String target) {
+		int fragment = target.indexOf('#');
+		if (fragment >= 0) {
+			target = target.substring(0, fragment);
+		}
+		if (!target.startsWith("/")) {
+			int authority = target.indexOf("://");
+			if (authority > 0) {
+				int path = target.indexOf('/', authority + 3);
+				int query = target.indexOf('?', authority + 3);
+				if (path < 0 || (query >= 0 && query < path)) {
+					return query < 0 ? "/" : "/" + target.substring(query);
+				}
+				return target.substring(path);
+			}
+			return "/" + target;
+		}
+		return target;
+	}
+
+	/**
+	 * RFC-7230
+	 *      status-line = HTTP-version SP status-code SP reason-phrase CRLF
+	 * @return the status code
+	 * @throws IOException if the line is not a status line
+	 */
+	private static int parseStatusCode(String statusLine) throws IOException {
+		if ((!statusLine.startsWith(HTTP_1_1) && !statusLine.startsWith(HTTP_1_0)) || statusLine.length() < 12
+				|| statusLine.charAt(8) != ' ' || (statusLine.length() > 12 && statusLine.charAt(12) != ' ')) {
+			throw new IOException("Invalid status line " + statusLine);
+		}
+		int code = 0;
+		for (int i = 9; i < 12; i++) {
+			char c = statusLine.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IOException("Invalid status line " + statusLine);
+			}
+			code = code * 10 + (c - '0');
+		}
+		return code;
+	}
+
+	/**
+	 * RFC-7230
+	 *      reason-phrase  = *( HTAB / SP / VCHAR / obs-text )
+	 * @return the reason phrase of the status line, empty if it has none
+	 * @throws IOException if it contains a control character
+	 */
+	private static String parseReasonPhrase(String statusLine) throws IOException {
+		if (statusLine.length() <= 13) {
+			return "";
+		}
+		for (int i = 13; i < statusLine.length(); i++) {
+			char c = statusLine.charAt(i);
+			if ((c < ' ' && c != '\t') || c == 0x7f) {
+				throw new IOException("Invalid status line " + statusLine);
+			}
+		}
+		return statusLine.substring(13);
+	}
+
+	/**
+	 * Read the header fields up to the empty line, the repeated fields combined.
+	 * The head is bounded as a request head is.
+	 * @throws IOException if a field is invalid or the head too large
+	 */
+	private static void readHeaders(UpstreamConnection connection, HttpHeaders headers) throws IOException {
+		int budget = UpstreamConnection.MAX_LINE_LENGTH;
+		String line;
+		while (!(line = connection.readLine(budget)).isEmpty()) {
+			budget -= line.length() + 2;
+			int colon = line.indexOf(':');
+			// RFC-7230: obs-fold is rejected, as is whitespace between the field name and the colon
+			if (colon <= 0 || line.charAt(0) == ' ' || line.charAt(0) == '\t' || line.charAt(colon - 1) == ' ') {
+				throw new IOException("Invalid header field " + line);
+			}
+			headers.add(line.substring(0, colon), line.substring(colon + 1).trim());
+		}
+	}
+
+	private static boolean isHopByHop(String name, String connectionOptions) {
+		String lowerCase = name.toLowerCase(Locale.ROOT);
+		return HOP_BY_HOP_HEADERS.contains(lowerCase) || hasToken(connectionOptions, lowerCase);
+	}
+
+	/**
+	 * @param list a comma-separated list, or null
+	 * @param token
+	 * @return true if the list contains the token, case-insensitively
+	 */
+	private static boolean hasToken(String list, String token) {
+		if (list == null) {
+			return false;
+		}
+		for (String element : list.split(",")) {
+			if (element.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String lastToken(String list) {
+		return list.substring(list.lastIndexOf(',') + 1).trim();
+	}
+}
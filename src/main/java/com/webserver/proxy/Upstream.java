@@ -0,0 +1,243 @@
+package com.webserver.proxy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is an upstream server the requests of a path prefix are forwarded to, with its pool of
+ * persistent connections and its health.
+ *
+ * At most a bounded number of connections are open, idle or in use: a request waits for one up to
+ * the connect timeout. The idle connections are reused most recently released first, so the pool
+ * shrinks to the connections needed, the others being closed by the server once they time out.
+ *
+ * After a number of consecutive failures (connection refused, timeout, invalid response) the server
+ * is marked down and not tried for the fail timeout, its requests are answered 503 at once. The first
+ * request after that time tries it again: a success marks it up, a failure down again.
+ */
+public class Upstream {
+
+	private final static Logger LOGGER = LogManager.getLogger(Upstream.class);
+
+	private final String prefix;
+
+	private final String host;
+
+	private final int port;
+
+	private final int maxConnections;
+
+	private final int connectTimeout;
+
+	private final int readTimeout;
+
+	private final int maxFails;
+
+	private final long failTimeoutNanos;
+
+	/**
+	 * A permit per connection that may be opened or taken from the pool.
+	 */
+	private final Semaphore permits;
+
+	private final ConcurrentLinkedDeque<UpstreamConnection> idle = new ConcurrentLinkedDeque<>();
+
+	private final AtomicInteger consecutiveFails = new AtomicInteger();
+
+	/**
+	 * The time the server marked down is tried again, 0 while it is up.
+	 * Unit: nanosecond
+	 */
+	private volatile long downUntil;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder connectionsOpened = new LongAdder();
+	private final LongAdder connectionsReused = new LongAdder();
+
+	/**
+	 * @param prefix the path prefix of the requests forwarded
+	 * @param host
+	 * @param port
+	 * @param maxConnections the maximum number of connections, idle or in use
+	 * @param connectTimeout the timeout to connect or wait for a connection, in milliseconds
+	 * @param readTimeout the timeout of a read, in milliseconds, 0 for none
+	 * @param maxFails the consecutive failures marking the server down, 0 to never
+	 * @param failTimeout the time the server is not tried once down, in seconds
+	 */
+	public Upstream(String prefix, String host, int port, int maxConnections, int connectTimeout, int readTimeout,
+					int maxFails, int failTimeout) {
+		this.prefix = prefix;
+		this.host = host;
+		this.port = port;
+		this.maxConnections = maxConnections;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.maxFails = maxFails;
+		this.failTimeoutNanos = TimeUnit.SECONDS.toNanos(failTimeout);
+		this.permits = new Semaphore(maxConnections);
+	}
+
+	/**
+	 * Take an idle connection, or open a new one if none is left and the limit allows it.
+	 * @return a connection, to be given back with {@link #release} or {@link #discard}, or null if
+	 * none became available within the connect timeout
+	 * @throws IOException if the connection cannot be opened
+	 */
+	UpstreamConnection acquire() throws IOException {
+		try {
+			if (!permits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS)) {
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		UpstreamConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			if (!connection.isStale()) {
+				connectionsReused.increment();
+				return connection;
+			}
+			LOGGER.debug("Stale connection to {} closed", this);
+			connection.close();
+		}
+		try {
+			connection = UpstreamConnection.open(host, port, connectTimeout, readTimeout);
+		} catch (IOException e) {
+			permits.release();
+			throw e;
+		}
+		connectionsOpened.increment();
+		return connection;
+	}
+
+	/**
+	 * Give back a connection whose response was read to its end, kept for the next request.
+	 * @param connection
+	 */
+	void release(UpstreamConnection connection) {
+		connection.setReused();
+		idle.offerFirst(connection);
+		permits.release();
+	}
+
+	/**
+	 * Close a connection that cannot be reused: failed, cut or closed by the server.
+	 * @param connection
+	 */
+	void discard(UpstreamConnection connection) {
+		connection.close();
+		permits.release();
+	}
+
+	/**
+	 * @return false while the server is marked down
+	 */
+	public boolean isAvailable() {
+		long until = downUntil;
+		return until == 0 || System.nanoTime() - until >= 0;
+	}
+
+	/**
+	 * Count a request, before it is forwarded.
+	 */
+	void recordRequest() {
+		requests.increment();
+	}
+
+	/**
+	 * A response head was received: the server is up.
+	 */
+	void succeeded() {
+		consecutiveFails.set(0);
+		if (downUntil != 0) {
+			downUntil = 0;
+			LOGGER.info("Upstream {} is up", this);
+		}
+	}
+
+	/**
+	 * The server could not be reached or did not answer properly.
+	 */
+	void failed() {
+		failures.increment();
+		if (maxFails > 0 && consecutiveFails.incrementAndGet() >= maxFails) {
+			if (isAvailable()) {
+				LOGGER.warn("Upstream {} is down for {} seconds after {} consecutive failures", this,
+						TimeUnit.NANOSECONDS.toSeconds(failTimeoutNanos), consecutiveFails.get());
+			}
+			// Never 0, which means up
+			downUntil = (System.nanoTime() + failTimeoutNanos) | 1;
+		}
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * @return the number of connections in use
+	 */
+	public int getActiveConnections() {
+		return maxConnections - permits.availablePermits();
+	}
+
+	/**
+	 * @return the number of connections waiting in the pool
+	 */
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	public long getConnectionsOpened() {
+		return connectionsOpened.sum();
+	}
+
+	public long getConnectionsReused() {
+		return connectionsReused.sum();
+	}
+
+	/**
+	 * @return the seconds to wait before the server marked down is tried again, 0 if it is up
+	 */
+	public long getRetryAfter() {
+		long until = downUntil;
+		if (until == 0) {
+			return 0;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toSeconds(until - System.nanoTime() + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
@@ -0,0 +1,181 @@
+package com.webserver.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class streams the body of an upstream response to the client as it is received, never held
+ * in memory as a whole.
+ *
+ * RFC-7230
+ * The body is delimited by its Content-Length, by the chunked transfer coding, whose chunks are
+ * decoded here and encoded again for the client if needed, or by the server closing the connection.
+ * Once the body was read to its end, closing the channel gives the connection back to the pool of
+ * its upstream if the server keeps it alive. A body cut short, by the client or the server, closes it.
+ */
+class UpstreamBody implements ReadableByteChannel {
+
+	/**
+	 * The remaining is unknown: the body ends when the server closes the connection.
+	 */
+	private static final long UNTIL_CLOSE = -1;
+
+	private final Upstream upstream;
+
+	private final UpstreamConnection connection;
+
+	private final InputStream inputStream;
+
+	private final boolean chunked;
+
+	/**
+	 * Whether the server keeps the connection alive after the response.
+	 */
+	private final boolean keepAlive;
+
+	/**
+	 * The bytes left of the body, or of the current chunk of a chunked body.
+	 */
+	private long remaining;
+
+	/**
+	 * Whether the size line of a chunk was read, the first chunk has no CRLF before it.
+	 */
+	private boolean chunkStarted;
+
+	private boolean done;
+
+	private boolean open = true;
+
+	private UpstreamBody(Upstream upstream, UpstreamConnection connection, boolean chunked, long length,
+						 boolean keepAlive) {
+		this.upstream = upstream;
+		this.connection = connection;
+		this.inputStream = connection.getInputStream();
+		this.chunked = chunked;
+		this.remaining = length;
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * @param length the Content-Length of the body, more than 0
+	 */
+	static UpstreamBody ofLength(Upstream upstream, UpstreamConnection connection, long length, boolean keepAlive) {
+		return new UpstreamBody(upstream, connection, false, length, keepAlive);
+	}
+
+	static UpstreamBody chunked(Upstream upstream, UpstreamConnection connection, boolean keepAlive) {
+		return new UpstreamBody(upstream, connection, true, 0, keepAlive);
+	}
+
+	/**
+	 * The connection cannot be reused, the end of the body is its end.
+	 */
+	static UpstreamBody untilClose(Upstream upstream, UpstreamConnection connection) {
+		return new UpstreamBody(upstream, connection, false, UNTIL_CLOSE, false);
+	}
+
+	/**
+	 * Read the next bytes of the body, through the copy buffer of the connection as the destination
+	 * may be a direct buffer.
+	 * @param dst
+	 * @return the number of bytes read, or -1 at the end of the body
+	 * @throws IOException EOFException if the server closed the connection before the end of the body
+	 */
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (done) {
+			return -1;
+		}
+		if (chunked && remaining == 0 && !nextChunk()) {
+			return -1;
+		}
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		byte[] copyBuffer = connection.getCopyBuffer();
+		int max = Math.min(dst.remaining(), copyBuffer.length);
+		if (remaining != UNTIL_CLOSE) {
+			max = (int) Math.min(max, remaining);
+		}
+		int n = inputStream.read(copyBuffer, 0, max);
+		if (n < 0) {
+			if (remaining == UNTIL_CLOSE) {
+				done = true;
+				return -1;
+			}
+			throw new EOFException("Upstream response body cut by " + upstream);
+		}
+		dst.put(copyBuffer, 0, n);
+		if (remaining != UNTIL_CLOSE) {
+			remaining -= n;
+			if (remaining == 0 && !chunked) {
+				done = true;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * RFC-7230
+	 *      chunked-body   = *chunk
+	 *                       last-chunk
+	 *                       trailer-part
+	 *                       CRLF
+	 *      chunk          = chunk-size [ chunk-ext ] CRLF
+	 *                       chunk-data CRLF
+	 * The chunk extensions and the trailer fields are discarded.
+	 * @return false at the last chunk, whose trailer was consumed
+	 * @throws IOException
+	 */
+	private boolean nextChunk() throws IOException {
+		if (chunkStarted && !connection.readLine(UpstreamConnection.MAX_LINE_LENGTH).isEmpty()) {
+			throw new IOException("Invalid chunk from " + upstream);
+		}
+		chunkStarted = true;
+		String line = connection.readLine(UpstreamConnection.MAX_LINE_LENGTH);
+		int end = line.indexOf(';');
+		String size = (end < 0 ? line : line.substring(0, end)).trim();
+		try {
+			remaining = Long.parseLong(size, 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid chunk size " + size + " from " + upstream);
+		}
+		if (remaining < 0) {
+			throw new IOException("Invalid chunk size " + size + " from " + upstream);
+		}
+		if (remaining == 0) {
+			while (!connection.readLine(UpstreamConnection.MAX_LINE_LENGTH).isEmpty()) {
+				// Trailer field
+			}
+			done = true;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Give the connection back to the pool if the body was read to its end, otherwise close it:
+	 * the rest of the body would be read as the next response.
+	 */
+	@Override
+	public void close() {
+		if (!open) {
+			return;
+		}
+		open = false;
+		if (done && keepAlive) {
+			upstream.release(connection);
+		} else {
+			upstream.discard(connection);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.webserver.proxy;
+
+import com.webserver.http.HttpParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a persistent connection to an upstream server, kept in the pool of its
+ * {@link Upstream} between two exchanges.
+ *
+ * The socket is blocking, read through a buffered stream honoring the read timeout. Its channel is
+ * kept for the request bodies spilled to a file, transferred to the socket by the kernel.
+ */
+class UpstreamConnection implements Closeable {
+
+	private final static Logger LOGGER = LogManager.getLogger(UpstreamConnection.class);
+
+	private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * The longest line of a response head accepted, as for a request.
+	 */
+	static final int MAX_LINE_LENGTH = HttpParser.MAX_HEADER_SIZE;
+
+	private final SocketChannel channel;
+
+	private final InputStream inputStream;
+
+	private final OutputStream outputStream;
+
+	/**
+	 * The bytes of a response body, copied from the stream to the buffer of the client connection.
+	 */
+	private final byte[] copyBuffer = new byte[INPUT_BUFFER_SIZE];
+
+	/**
+	 * The line being read, reused.
+	 */
+	private final StringBuilder line = new StringBuilder(128);
+
+	/**
+	 * Set once the connection went back to the pool: a request on it may find it closed by the server.
+	 */
+	private boolean reused;
+
+	private UpstreamConnection(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		Socket socket = channel.socket();
+		this.inputStream = new BufferedInputStream(socket.getInputStream(), INPUT_BUFFER_SIZE);
+		this.outputStream = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param host
+	 * @param port
+	 * @param connectTimeout in milliseconds
+	 * @param readTimeout in milliseconds, 0 for none
+	 * @return a connected connection
+	 * @throws IOException
+	 */
+	static UpstreamConnection open(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+		// Resolved for each connection, so a change of the address of the host is followed
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		if (address.isUnresolved()) {
+			throw new UnknownHostException(host);
+		}
+		SocketChannel channel = SocketChannel.open();
+		try {
+			Socket socket = channel.socket();
+			// The head and a small body are written at once, the response is not delayed by Nagle
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(readTimeout);
+			socket.connect(address, connectTimeout);
+			return new UpstreamConnection(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	InputStream getInputStream() {
+		return inputStream;
+	}
+
+	OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	byte[] getCopyBuffer() {
+		return copyBuffer;
+	}
+
+	boolean isReused() {
+		return reused;
+	}
+
+	void setReused() {
+		reused = true;
+	}
+
+	/**
+	 * Read a line of a response head or of a chunked body, without its CRLF.
+	 *
+	 * RFC-7230
+	 * Field values containing CR, LF or NUL characters are invalid and dangerous, due to the varying
+	 * ways that implementations might parse and interpret those characters. A CR is only accepted
+	 * before the LF ending the line, a lone LF ends it too.
+	 * @param maxLength
+	 * @return the line
+	 * @throws IOException if the line contains a bare CR or a NUL, EOFException if the server closed
+	 *         the connection
+	 */
+	String readLine(int maxLength) throws IOException {
+		line.setLength(0);
+		int b;
+		while ((b = inputStream.read()) != '\n') {
+			if (b < 0) {
+				throw new EOFException("Connection closed by the upstream server");
+			}
+			if (b == '\r') {
+				if ((b = inputStream.read()) == '\n') {
+					break;
+				}
+				throw new IOException("Bare CR in a line from the upstream server");
+			}
+			if (b == 0) {
+				throw new IOException("NUL in a line from the upstream server");
+			}
+			if (line.length() == maxLength) {
+				throw new IOException("Line longer than " + maxLength + " bytes from the upstream server");
+			}
+			line.append((char) b);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Write the head of a request, encoded in ISO-8859-1 as the fields were received.
+	 * @param head
+	 * @throws IOException
+	 */
+	void writeHead(String head) throws IOException {
+		outputStream.write(head.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * RFC-7230
+	 * A client, server, or proxy MAY close the transport connection at any time. A connection idle in
+	 * the pool may have been closed by the server: it would fail the next request sent on it.
+	 * @return true if the server closed the connection or sent unexpected bytes
+	 */
+	boolean isStale() {
+		try {
+			if (inputStream.available() > 0) {
+				return true;
+			}
+			channel.configureBlocking(false);
+			try {
+				return channel.read(ByteBuffer.allocate(1)) != 0;
+			} finally {
+				channel.configureBlocking(true);
+			}
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return String.valueOf(channel.getRemoteAddress());
+		} catch (IOException e) {
+			return "closed";
+		}
+	}
+}
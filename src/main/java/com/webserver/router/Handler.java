@@ -0,0 +1,25 @@
+package com.webserver.router;
+
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+
+import java.io.IOException;
+
+/**
+ * A handler fills the response to the requests of its route, in the thread of the connection.
+ *
+ * The response was reset and carries the keep-alive headers of the connection. A body set on the
+ * response is written after the handler returned, it may be streamed from a channel. The body of
+ * the request, if any, is closed after the handler returned.
+ */
+@FunctionalInterface
+public interface Handler {
+
+	/**
+	 * @param request
+	 * @param response
+	 * @throws java.io.FileNotFoundException answered 404 Not Found
+	 * @throws IOException answered 500 Internal Server Error
+	 */
+	void handle(HttpRequest request, HttpResponse response) throws IOException;
+}
@@ -0,0 +1,302 @@
+package com.webserver.router;
+
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpHeaderName;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpStatusCode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class dispatches the requests to their handlers, by path then by method.
+ *
+ * The routes are a trie of path segments, compiled once by a {@link Builder}: each node holds its
+ * children in an open-addressing table, probed with the hash of the segment computed in place in the
+ * path, so a lookup costs a hash and a comparison per segment of the path, whatever the number of
+ * routes, and allocates nothing.
+ *
+ * A route is exact, e.g. /server-status, or a prefix, e.g. /api, matching whole segments: /api and
+ * /api/users, not /apis. An exact route wins, then the longest prefix. A trailing slash is ignored.
+ * A path matching a route without a handler for its method is answered 405 Method Not Allowed.
+ */
+public class Router {
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+
+	private final Node root;
+
+	private Router(Node root) {
+		this.root = root;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * RFC-3986
+	 * The path is matched once its dot-segments are removed, as the file it would be resolved to:
+	 * /api/../secret.txt is not a path of /api.
+	 * @param method
+	 * @param path the decoded path of the request
+	 * @return the handler of the most specific route matching the path, its 405 handler if the route has
+	 * no handler for the method, or null if no route matches
+	 */
+	public Handler route(HttpMethod method, String path) {
+		if (hasDotSegment(path)) {
+			path = removeDotSegments(path);
+		}
+		Node node = root;
+		Node prefixNode = root.prefixHandlers != null ? root : null;
+		int length = path.length();
+		int start = length > 0 && path.charAt(0) == '/' ? 1 : 0;
+		while (start < length) {
+			int end = path.indexOf('/', start);
+			if (end < 0) {
+				end = length;
+			}
+			node = node.child(path, start, end);
+			if (node == null) {
+				break;
+			}
+			if (node.prefixHandlers != null) {
+				prefixNode = node;
+			}
+			start = end + 1;
+		}
+		if (node != null && node.exactHandlers != null) {
+			Handler handler = node.exactHandlers[method.ordinal()];
+			return handler != null ? handler : node.exactNotAllowed;
+		}
+		if (prefixNode != null) {
+			Handler handler = prefixNode.prefixHandlers[method.ordinal()];
+			return handler != null ? handler : prefixNode.prefixNotAllowed;
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if a segment of the path is . or ..
+	 */
+	static boolean hasDotSegment(String path) {
+		for (int i = path.indexOf("/."); i >= 0; i = path.indexOf("/.", i + 1)) {
+			int end = i + 2;
+			if (end < path.length() && path.charAt(end) == '.') {
+				end++;
+			}
+			if (end == path.length() || path.charAt(end) == '/') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * RFC-3986 5.2.4, a .. above the root is dropped.
+	 * @param path an absolute path
+	 * @return the path without its dot-segments
+	 */
+	static String removeDotSegments(String path) {
+		List<String> segments = new ArrayList<>();
+		for (String segment : path.split("/", -1)) {
+			if (segment.equals("..")) {
+				if (!segments.isEmpty()) {
+					segments.remove(segments.size() - 1);
+				}
+			} else if (!segment.equals(".") && !segment.isEmpty()) {
+				segments.add(segment);
+			}
+		}
+		return "/" + String.join("/", segments);
+	}
+
+	/**
+	 * RFC-7231
+	 * The origin server MUST generate an Allow header field in a 405 response containing a list of the
+	 * target resource's currently supported methods.
+	 * @param handlers
+	 * @return the handler answering 405 with the methods of the route
+	 */
+	private static Handler methodNotAllowed(Handler[] handlers) {
+		StringBuilder allow = new StringBuilder();
+		for (HttpMethod method : METHODS) {
+			if (handlers[method.ordinal()] != null) {
+				if (allow.length() > 0) {
+					allow.append(", ");
+				}
+				allow.append(method.name());
+			}
+		}
+		String methods = allow.toString();
+		return (request, response) -> {
+			response.setStatusCode(HttpStatusCode.SC_METHOD_NOT_ALLOWED);
+			response.setHeader(HttpHeaderName.ALLOW, methods);
+			response.setContentLength(0);
+		};
+	}
+
+	/**
+	 * A compiled node of the trie, immutable.
+	 */
+	private static final class Node {
+
+		/**
+		 * The segments of the children, by hash, linearly probed. At most half full.
+		 */
+		private final String[] segments;
+
+		private final Node[] children;
+
+		private final int mask;
+
+		/**
+		 * The handlers of the exact route of the node by method, or null if it has none.
+		 */
+		private final Handler[] exactHandlers;
+
+		private final Handler exactNotAllowed;
+
+		/**
+		 * The handlers of the prefix route of the node by method, or null if it has none.
+		 */
+		private final Handler[] prefixHandlers;
+
+		private final Handler prefixNotAllowed;
+
+		private Node(Builder.Node node) {
+			int capacity = Integer.highestOneBit(Math.max(1, node.children.size()) * 2) * 2;
+			segments = new String[capacity];
+			children = new Node[capacity];
+			mask = capacity - 1;
+			for (Map.Entry<String, Builder.Node> child : node.children.entrySet()) {
+				int index = spread(child.getKey().hashCode()) & mask;
+				while (segments[index] != null) {
+					index = (index + 1) & mask;
+				}
+				segments[index] = child.getKey();
+				children[index] = new Node(child.getValue());
+			}
+			exactHandlers = node.exactHandlers;
+			exactNotAllowed = exactHandlers != null ? methodNotAllowed(exactHandlers) : null;
+			prefixHandlers = node.prefixHandlers;
+			prefixNotAllowed = prefixHandlers != null ? methodNotAllowed(prefixHandlers) : null;
+		}
+
+		/**
+		 * @return the child of the segment of the path between start and end, or null
+		 */
+		private Node child(String path, int start, int end) {
+			// As String.hashCode, without extracting the segment from the path
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + path.charAt(i);
+			}
+			int length = end - start;
+			for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+				String segment = segments[index];
+				if (segment == null) {
+					return null;
+				}
+				if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+					return children[index];
+				}
+			}
+		}
+
+		/**
+		 * The segments of sibling routes often differ in their last characters only, the high bits of
+		 * the hash are mixed into the low bits the table is indexed by.
+		 */
+		private static int spread(int hash) {
+			return hash ^ (hash >>> 16) ^ (hash >>> 8);
+		}
+	}
+
+	/**
+	 * This class collects the routes, then compiles them into a router.
+	 * Registering a path and a method twice is a configuration error.
+	 */
+	public static class Builder {
+
+		private final Node root = new Node();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param path
+		 * @param handler
+		 * @param methods the methods handled, all if none is given
+		 * @return this builder
+		 * @throws HttpConfigurationException if the path already has a handler for one of the methods
+		 */
+		public Builder exact(String path, Handler handler, HttpMethod... methods) throws HttpConfigurationException {
+			Node node = node(path);
+			if (node.exactHandlers == null) {
+				node.exactHandlers = new Handler[METHODS.length];
+			}
+			register(node.exactHandlers, path, handler, methods);
+			return this;
+		}
+
+		/**
+		 * @param prefix
+		 * @param handler
+		 * @param methods the methods handled, all if none is given
+		 * @return this builder
+		 * @throws HttpConfigurationException if the prefix already has a handler for one of the methods
+		 */
+		public Builder prefix(String prefix, Handler handler, HttpMethod... methods) throws HttpConfigurationException {
+			Node node = node(prefix);
+			if (node.prefixHandlers == null) {
+				node.prefixHandlers = new Handler[METHODS.length];
+			}
+			register(node.prefixHandlers, prefix, handler, methods);
+			return this;
+		}
+
+		public Router build() {
+			return new Router(new Router.Node(root));
+		}
+
+		private Node node(String path) {
+			if (!path.startsWith("/") || hasDotSegment(path)) {
+				throw new HttpConfigurationException("Invalid route " + path + ", expected an absolute path");
+			}
+			Node node = root;
+			for (String segment : path.split("/")) {
+				if (!segment.isEmpty()) {
+					node = node.children.computeIfAbsent(segment, s -> new Node());
+				}
+			}
+			return node;
+		}
+
+		private static void register(Handler[] handlers, String path, Handler handler, HttpMethod[] methods) {
+			for (HttpMethod method : methods.length > 0 ? methods : METHODS) {
+				if (handlers[method.ordinal()] != null) {
+					throw new HttpConfigurationException("Duplicate route " + method + " " + path);
+				}
+				handlers[method.ordinal()] = handler;
+			}
+		}
+
+		/**
+		 * A node of the trie being built.
+		 */
+		private static final class Node {
+
+			/**
+			 * In the order of registration.
+			 */
+			private final Map<String, Node> children = new LinkedHashMap<>();
+
+			private Handler[] exactHandlers;
+
+			private Handler[] prefixHandlers;
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package com.webserver.tls;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is a socket channel secured by an {@link SSLEngine}, for both engines: in blocking mode
+ * the reads and the writes block as the ones of the socket, in non-blocking mode they return 0 when
+ * the socket is not ready, as the ones of a non-blocking socket.
+ *
+ * The handshake is driven by the reads and the writes, so the connection code stays the same as for
+ * a plain socket. The records that cannot be sent at once stay in the outbound buffer, sent by the
+ * next write or {@link #flush()}: a non-blocking caller waits for OP_WRITE while
+ * {@link #hasPendingOutput()}. The decrypted bytes that do not fit the buffer of a read are kept for
+ * the next one, the selector does not know about them: see {@link #hasBufferedInput()}.
+ */
+public class TlsChannel implements ByteChannel, GatheringByteChannel {
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final SocketChannel channel;
+
+	private final SSLEngine engine;
+
+	/**
+	 * The records received, not yet decrypted, in write mode.
+	 */
+	private ByteBuffer netIn;
+
+	/**
+	 * The records encrypted, not yet sent, in read mode.
+	 */
+	private ByteBuffer netOut;
+
+	/**
+	 * The bytes decrypted, not yet read, in read mode.
+	 */
+	private ByteBuffer appIn;
+
+	/**
+	 * Set when the peer closed the connection, by a close_notify or at the TCP level.
+	 */
+	private boolean inboundDone;
+
+	private final InputStream inputStream = new TlsInputStream();
+
+	/**
+	 * @param channel a connected socket channel, blocking or not
+	 * @param engine a server engine, created by {@link TlsContext#createEngine()}
+	 */
+	public TlsChannel(SocketChannel channel, SSLEngine engine) {
+		this.channel = channel;
+		this.engine = engine;
+		SSLSession session = engine.getSession();
+		netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+		netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+		netOut.flip();
+		appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+		appIn.flip();
+	}
+
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return the protocol negotiated by ALPN, e.g. h2, or null
+	 */
+	public String getApplicationProtocol() {
+		return TlsContext.getApplicationProtocol(engine);
+	}
+
+	/**
+	 * @return a blocking input stream of the decrypted bytes
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * A read decrypts a single record: the records received with it wait in the inbound buffer, the
+	 * socket they were read from does not report them anymore.
+	 * @return true if decrypted bytes or received records wait for a read, the selector does not report them
+	 */
+	public boolean hasBufferedInput() {
+		return appIn.hasRemaining() || netIn.position() > 0;
+	}
+
+	/**
+	 * @return true if encrypted records wait for the socket to be writable
+	 */
+	public boolean hasPendingOutput() {
+		return netOut.hasRemaining();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (appIn.hasRemaining()) {
+			return transfer(appIn, dst);
+		}
+		if (inboundDone) {
+			return -1;
+		}
+		while (true) {
+			if (!flush()) {
+				// The handshake waits for its records to be sent
+				return 0;
+			}
+			if (netIn.position() > 0) {
+				netIn.flip();
+				appIn.clear();
+				SSLEngineResult result;
+				try {
+					result = engine.unwrap(netIn, appIn);
+				} finally {
+					netIn.compact();
+					appIn.flip();
+				}
+				switch (result.getStatus()) {
+					case OK:
+						if (appIn.hasRemaining()) {
+							return transfer(appIn, dst);
+						}
+						if (result.bytesConsumed() > 0
+								|| result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK
+								|| result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+							continue;
+						}
+						break;
+					case BUFFER_OVERFLOW:
+						// Empty, nothing was decrypted
+						appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+						appIn.flip();
+						continue;
+					case CLOSED:
+						// close_notify of the peer, answered by ours
+						inboundDone = true;
+						flush();
+						return -1;
+					case BUFFER_UNDERFLOW:
+					default:
+						if (!netIn.hasRemaining()) {
+							netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+						}
+						break;
+				}
+			}
+			int n = channel.read(netIn);
+			if (n < 0) {
+				inboundDone = true;
+				try {
+					engine.closeInbound();
+				} catch (SSLException e) {
+					// Closed without a close_notify, as many clients do
+				}
+				return -1;
+			}
+			if (n == 0) {
+				return 0;
+			}
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return (int) write(new ByteBuffer[] {src}, 0, 1);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	/**
+	 * Encrypt the buffers one record at a time. The bytes of a record are consumed once it is encrypted,
+	 * even if the socket only accepts a part of it: the rest is sent by the next write or flush.
+	 */
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if (!flush()) {
+			return 0;
+		}
+		long consumed = 0;
+		while (hasRemaining(srcs, offset, length)) {
+			netOut.compact();
+			SSLEngineResult result;
+			try {
+				result = engine.wrap(srcs, offset, length, netOut);
+			} finally {
+				netOut.flip();
+			}
+			switch (result.getStatus()) {
+				case OK:
+					consumed += result.bytesConsumed();
+					break;
+				case BUFFER_OVERFLOW:
+					netOut = newNetOut();
+					break;
+				case CLOSED:
+				default:
+					throw new ClosedChannelException();
+			}
+			if (!flush()) {
+				break;
+			}
+		}
+		return consumed;
+	}
+
+	/**
+	 * Send the pending records and the ones the handshake produces.
+	 * @return true if everything is sent, false if a non-blocking socket is full
+	 * @throws IOException
+	 */
+	public boolean flush() throws IOException {
+		while (true) {
+			while (netOut.hasRemaining()) {
+				if (channel.write(netOut) == 0) {
+					return false;
+				}
+			}
+			switch (engine.getHandshakeStatus()) {
+				case NEED_TASK:
+					// The delegated tasks (e.g. the key exchange) run on the thread of the connection
+					Runnable task;
+					while ((task = engine.getDelegatedTask()) != null) {
+						task.run();
+					}
+					break;
+				case NEED_WRAP:
+					netOut.compact();
+					SSLEngineResult result;
+					try {
+						result = engine.wrap(EMPTY, netOut);
+					} finally {
+						netOut.flip();
+					}
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						netOut = newNetOut();
+					} else if (result.getStatus() == SSLEngineResult.Status.CLOSED && !netOut.hasRemaining()) {
+						return true;
+					}
+					break;
+				default:
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * Send a close_notify, without closing the socket.
+	 */
+	public void closeOutbound() {
+		engine.closeOutbound();
+		try {
+			flush();
+		} catch (IOException e) {
+			// The peer may already be gone
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeOutbound();
+		channel.close();
+	}
+
+	private static int transfer(ByteBuffer src, ByteBuffer dst) {
+		int n = Math.min(src.remaining(), dst.remaining());
+		if (n == src.remaining()) {
+			dst.put(src);
+		} else {
+			ByteBuffer slice = src.duplicate();
+			slice.limit(slice.position() + n);
+			dst.put(slice);
+			src.position(src.position() + n);
+		}
+		return n;
+	}
+
+	/**
+	 * @param buffer in write mode
+	 * @param size the size the session needs
+	 * @return a larger buffer with the bytes of the buffer, in write mode
+	 */
+	private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+		buffer.flip();
+		ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+		larger.put(buffer);
+		return larger;
+	}
+
+	/**
+	 * The outbound buffer is only replaced once sent, when the session needs larger records.
+	 * @return an empty outbound buffer of the packet size of the session, in read mode
+	 */
+	private ByteBuffer newNetOut() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (buffers[i].hasRemaining()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The decrypted bytes, read from a blocking channel.
+	 */
+	private class TlsInputStream extends InputStream {
+
+		private final byte[] one = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			return TlsChannel.this.read(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public int available() {
+			return appIn.remaining();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.webserver.tls;
+
+import com.webserver.config.Configuration;
+import com.webserver.config.ConfigurationManager;
+import com.webserver.config.Engine;
+import com.webserver.exceptions.HttpConfigurationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class holds the TLS configuration of the HTTPS listener: the certificate of the keystore, the
+ * enabled protocols and cipher suites, and the session cache shared by all the connections.
+ *
+ * RFC-5246 and RFC-8446
+ * A returning client resumes its session with an abbreviated handshake, without the key exchange and
+ * the certificate: by session ID from the server session cache with TLS 1.2, or by a ticket with
+ * TLS 1.3 (and with TLS 1.2 when the client supports RFC 5077 tickets), issued by the JDK from the
+ * same session context. The size and the lifetime of the sessions are configured.
+ */
+public class TlsContext {
+
+	private final static Logger LOGGER = LogManager.getLogger(TlsContext.class);
+
+	private static final String HTTP_1_1 = "http/1.1";
+
+	private static final String H2 = "h2";
+
+	/**
+	 * SSLParameters.setApplicationProtocols and SSLEngine.getApplicationProtocol, added in Java 9 and
+	 * 8u252: looked up by name, so the server still builds for Java 8. Null if the runtime lacks ALPN.
+	 */
+	private static final Method SET_APPLICATION_PROTOCOLS = method(SSLParameters.class, "setApplicationProtocols", String[].class);
+	private static final Method GET_APPLICATION_PROTOCOL = method(SSLEngine.class, "getApplicationProtocol");
+
+	private static TlsContext tlsContext;
+
+	private final SSLContext sslContext;
+
+	private final String[] protocols;
+
+	/**
+	 * The enabled cipher suites, null for the defaults of the JDK.
+	 */
+	private final String[] cipherSuites;
+
+	/**
+	 * The protocols offered by ALPN, h2 first if HTTP/2 is enabled, only spoken by the blocking engine.
+	 */
+	private final String[] applicationProtocols;
+
+	/**
+	 * @param configuration
+	 * @throws HttpConfigurationException if the keystore cannot be loaded or no protocol is supported
+	 */
+	public TlsContext(Configuration configuration) throws HttpConfigurationException {
+		char[] password = configuration.getKeystorePassword().toCharArray();
+		try (InputStream inputStream = new FileInputStream(configuration.getKeystore())) {
+			KeyStore keyStore = KeyStore.getInstance(configuration.getKeystoreType());
+			keyStore.load(inputStream, password);
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, password);
+			sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+		} catch (IOException | GeneralSecurityException e) {
+			throw new HttpConfigurationException("Error loading the keystore " + configuration.getKeystore(), e);
+		}
+
+		SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+		sessionContext.setSessionCacheSize(configuration.getTlsSessionCacheSize());
+		sessionContext.setSessionTimeout(configuration.getTlsSessionTimeout());
+
+		SSLParameters supported = sslContext.getSupportedSSLParameters();
+		protocols = select(configuration.getTlsProtocols(), supported.getProtocols(), "protocol");
+		if (protocols.length == 0) {
+			throw new HttpConfigurationException("No supported TLS protocol in " + configuration.getTlsProtocols());
+		}
+		String[] ciphers = select(configuration.getTlsCiphers(), supported.getCipherSuites(), "cipher suite");
+		cipherSuites = ciphers.length == 0 ? null : ciphers;
+		applicationProtocols = configuration.isHttp2() && configuration.getEngine() == Engine.BLOCKING
+				? new String[] {H2, HTTP_1_1} : new String[] {HTTP_1_1};
+	}
+
+	/**
+	 * @return the TLS context of the HTTPS listener, or null if it is disabled
+	 * @throws HttpConfigurationException
+	 */
+	public static synchronized TlsContext getInstance() throws HttpConfigurationException {
+		if (tlsContext == null) {
+			Configuration configuration = ConfigurationManager.getInstance().getConfiguration();
+			if (configuration.getHttpsPort() <= 0) {
+				return null;
+			}
+			tlsContext = new TlsContext(configuration);
+		}
+		return tlsContext;
+	}
+
+	/**
+	 * @return a new server engine for an accepted connection
+	 */
+	public SSLEngine createEngine() {
+		SSLEngine engine = sslContext.createSSLEngine();
+		engine.setUseClientMode(false);
+		SSLParameters parameters = engine.getSSLParameters();
+		parameters.setProtocols(protocols);
+		if (cipherSuites != null) {
+			parameters.setCipherSuites(cipherSuites);
+		}
+		if (SET_APPLICATION_PROTOCOLS != null) {
+			try {
+				SET_APPLICATION_PROTOCOLS.invoke(parameters, (Object) applicationProtocols);
+			} catch (ReflectiveOperationException e) {
+				LOGGER.debug("ALPN not available: {}", e.getMessage());
+			}
+		}
+		engine.setSSLParameters(parameters);
+		return engine;
+	}
+
+	/**
+	 * @param engine
+	 * @return the protocol negotiated by ALPN, or null if none was
+	 */
+	static String getApplicationProtocol(SSLEngine engine) {
+		if (GET_APPLICATION_PROTOCOL == null) {
+			return null;
+		}
+		try {
+			String protocol = (String) GET_APPLICATION_PROTOCOL.invoke(engine);
+			return protocol == null || protocol.isEmpty() ? null : protocol;
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	public SSLSessionContext getSessionContext() {
+		return sslContext.getServerSessionContext();
+	}
+
+	/**
+	 * @param configured a comma separated list, empty for none
+	 * @param supported
+	 * @param kind
+	 * @return the configured values supported by the JDK, in the configured order
+	 */
+	private static String[] select(String configured, String[] supported, String kind) {
+		List<String> selected = new ArrayList<>();
+		List<String> supportedList = Arrays.asList(supported);
+		for (String value : configured.split(",")) {
+			value = value.trim();
+			if (value.isEmpty()) {
+				continue;
+			}
+			if (supportedList.contains(value)) {
+				selected.add(value);
+			} else {
+				LOGGER.warn("Unsupported TLS " + kind + " " + value + " ignored");
+			}
+		}
+		return selected.toArray(new String[0]);
+	}
+
+	private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
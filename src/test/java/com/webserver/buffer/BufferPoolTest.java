@@ -0,0 +1,64 @@
+package com.webserver.buffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+class BufferPoolTest {
+
+	@org.junit.jupiter.api.Test
+	void testReuse() {
+		BufferPool pool = new BufferPool(1024, 2, false);
+		ByteBuffer first = pool.acquire();
+		assertTrue(first.isDirect());
+		assertEquals(first.remaining(), 1024);
+		first.put((byte) 1);
+		pool.release(first);
+
+		// The released buffer is given back cleared, nothing is allocated
+		ByteBuffer second = pool.acquire();
+		assertSame(second, first);
+		assertEquals(second.position(), 0);
+		assertEquals(pool.getAllocations(), 1);
+
+		// At most 2 buffers are kept
+		ByteBuffer third = pool.acquire();
+		ByteBuffer fourth = pool.acquire();
+		assertEquals(pool.getInUse(), 3);
+		pool.release(second);
+		pool.release(third);
+		pool.release(fourth);
+		assertEquals(pool.getInUse(), 0);
+		assertEquals(pool.getPooled(), 2);
+		assertEquals(pool.getAllocations(), 3);
+
+		assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(512)));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testDisabled() {
+		BufferPool pool = new BufferPool(1024, 0, false);
+		ByteBuffer buffer = pool.acquire();
+		assertFalse(buffer.isDirect());
+		pool.release(buffer);
+		assertNotSame(pool.acquire(), buffer);
+		assertEquals(pool.getPooled(), 0);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testLeakDetection() {
+		BufferPool pool = new BufferPool(1024, 2, true);
+		ByteBuffer released = pool.acquire();
+		ByteBuffer leaked = pool.acquire();
+		pool.release(released);
+		assertThrows(IllegalStateException.class, () -> pool.release(released));
+		assertThrows(IllegalStateException.class, () -> pool.release(ByteBuffer.allocateDirect(1024)));
+
+		// The leak is reported with the stack of its acquisition
+		assertEquals(pool.checkLeaks(), 1);
+		StackTraceElement[] stack = pool.getLeaks().get(0).getStackTrace();
+		assertEquals(stack[1].getMethodName(), "testLeakDetection");
+		pool.release(leaked);
+		assertTrue(pool.getLeaks().isEmpty());
+	}
+}
@@ -0,0 +1,78 @@
+package com.webserver.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+class ContentCacheTest {
+
+	@org.junit.jupiter.api.io.TempDir
+	Path webroot;
+
+	private Path write(String name, String content) throws IOException {
+		return Files.write(webroot.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String content(ContentCache.Entry entry) {
+		ByteBuffer buffer = entry.getContent();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@org.junit.jupiter.api.Test
+	void hitAfterMiss() throws IOException {
+		ContentCache cache = new ContentCache(1024, 1024, false);
+		Path path = write("a.html", "aaaa");
+		assertEquals(content(cache.get(path)), "aaaa");
+		assertEquals(content(cache.get(path)), "aaaa");
+		assertEquals(cache.getMisses(), 1);
+		assertEquals(cache.getHits(), 1);
+		assertEquals(cache.getSize(), 4);
+	}
+
+	@org.junit.jupiter.api.Test
+	void reloadChangedFile() throws IOException {
+		ContentCache cache = new ContentCache(1024, 1024, true);
+		Path path = write("a.html", "aaaa");
+		assertEquals(content(cache.get(path)), "aaaa");
+		write("a.html", "bbbb");
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+		assertEquals(content(cache.get(path)), "bbbb");
+		assertEquals(cache.getMisses(), 2);
+		assertEquals(cache.getEntryCount(), 1);
+	}
+
+	@org.junit.jupiter.api.Test
+	void evictLeastRecentlyUsed() throws IOException {
+		ContentCache cache = new ContentCache(10, 10, false);
+		Path a = write("a.html", "aaaa");
+		Path b = write("b.html", "bbbb");
+		Path c = write("c.html", "cccc");
+		cache.get(a);
+		cache.get(b);
+		cache.get(a);
+		cache.get(c);
+		assertEquals(cache.getEvictions(), 1);
+		assertEquals(cache.getSize(), 8);
+		cache.get(a);
+		assertEquals(cache.getHits(), 2);
+		// b was the least recently used one
+		cache.get(b);
+		assertEquals(cache.getMisses(), 4);
+	}
+
+	@org.junit.jupiter.api.Test
+	void skipLargeAndMissingFiles() throws IOException {
+		ContentCache cache = new ContentCache(1024, 4, false);
+		assertNull(cache.get(write("large.html", "aaaaaaaa")));
+		assertThrows(FileNotFoundException.class, () -> cache.get(webroot.resolve("missing.html")));
+		assertThrows(FileNotFoundException.class, () -> cache.get(webroot));
+	}
+}
@@ -0,0 +1,74 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.Configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+class AdmissionControllerTest {
+
+	private static AdmissionController newController() {
+		Configuration configuration = new Configuration(8080, 1, "WebContent", 5);
+		configuration.setQueueDelayTarget(5);
+		configuration.setQueueDelayInterval(20);
+		configuration.setRetryAfter(3);
+		return new AdmissionController(configuration);
+	}
+
+	private static long waitedFor(long millis) {
+		return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testAdmit() throws InterruptedException {
+		AdmissionController admission = newController();
+		// Not overloaded: only the connections waiting longer than an interval are shed
+		assertTrue(admission.admit(waitedFor(10)));
+		assertFalse(admission.admit(waitedFor(30)));
+
+		// The least delay of the interval was above the target: a standing queue
+		Thread.sleep(25);
+		assertFalse(admission.admit(waitedFor(10)));
+		assertTrue(admission.admit(System.nanoTime()));
+
+		// The queue drained during the interval
+		Thread.sleep(25);
+		assertTrue(admission.admit(waitedFor(10)));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testShed() throws IOException {
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+			try (Socket client = new Socket("127.0.0.1", serverChannel.socket().getLocalPort())) {
+				client.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+				SocketChannel channel = serverChannel.accept();
+				newController().shed(channel);
+				assertFalse(channel.isOpen());
+
+				client.setSoTimeout(5000);
+				InputStream in = client.getInputStream();
+				ByteArrayOutputStream response = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1024];
+				int n;
+				while ((n = in.read(buffer)) >= 0) {
+					response.write(buffer, 0, n);
+				}
+				assertEquals(response.toString("ISO-8859-1"), "HTTP/1.1 503 Service Unavailable\r\n" +
+						"Server: SimpleWebServer\r\n" +
+						"Retry-After: 3\r\n" +
+						"Content-Length: 0\r\n" +
+						"Connection: close\r\n\r\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpParsingException;
+import com.webserver.http.HttpHeaderName;
+import com.webserver.http.HttpParser;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import com.webserver.http.HttpStatusCode;
+import com.webserver.router.Handler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * The static file handlers, called as the engines call them, on a webroot of a cached page and of a
+ * page too large to be cached.
+ */
+class ClientHandlerTest {
+
+	private static Path webroot;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		webroot = Files.createTempDirectory("webroot");
+		Files.write(webroot.resolve("page.html"), page(2048).getBytes(StandardCharsets.ISO_8859_1));
+		Files.write(webroot.resolve("large.html"), page(16384).getBytes(StandardCharsets.ISO_8859_1));
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"compression=true\n" +
+				"compression_min_size=1024\n" +
+				"cache_max_file_size=8192\n" +
+				"handlers=/fail=" + FailingHandler.class.getName() + "\n" +
+				"access_log=\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private static String page(int length) {
+		StringBuilder page = new StringBuilder("<html>");
+		while (page.length() < length - 7) {
+			page.append("hello, ");
+		}
+		return page.append("</html>").toString();
+	}
+
+	/**
+	 * A custom handler with a bug.
+	 */
+	public static class FailingHandler implements Handler {
+
+		@Override
+		public void handle(HttpRequest request, HttpResponse response) {
+			throw new IllegalStateException("Bug in the handler");
+		}
+	}
+
+	static HttpResponse handle(String request) throws HttpParsingException, IOException {
+		HttpRequest httpRequest = new HttpParser().parse(ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1)));
+		HttpResponse response = ClientHandler.handleRequest(httpRequest);
+		ReadableByteChannel channel = response.getChannelBody();
+		if (channel != null) {
+			channel.close();
+		}
+		return response;
+	}
+
+	private static Map<String, String> headers(HttpResponse response) {
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		response.getHeaders().forEach(headers::put);
+		return headers;
+	}
+
+	@org.junit.jupiter.api.Test
+	void testHeadNegotiatesAsGet() throws Exception {
+		for (String file : new String[]{"/page.html", "/large.html"}) {
+			for (String acceptEncoding : new String[]{"", "Accept-Encoding: gzip\r\n", "Accept-Encoding: br\r\n"}) {
+				String head = " " + file + " HTTP/1.1\r\nHost: localhost\r\n" + acceptEncoding + "\r\n";
+				HttpResponse get = handle("GET" + head);
+				HttpResponse response = handle("HEAD" + head);
+				assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+				assertNull(response.getBufferBody());
+				assertNull(response.getFileBody());
+				assertNull(response.getChannelBody());
+				// The same header fields, but the transfer coding of a body that is not sent
+				Map<String, String> getHeaders = headers(get);
+				getHeaders.remove(HttpHeaderName.TRANSFER_ENCODING.text);
+				assertEquals(headers(response), getHeaders, file + " " + acceptEncoding);
+			}
+		}
+		HttpResponse response = handle("HEAD /page.html HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n");
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_ENCODING), "gzip");
+		assertEquals(response.getHeader(HttpHeaderName.VARY), "Accept-Encoding");
+		assertTrue(Long.parseLong(response.getHeader(HttpHeaderName.CONTENT_LENGTH)) < 2048);
+		// Compressed as it is sent, the length of the large page is unknown
+		response = handle("HEAD /large.html HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n");
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_ENCODING), "gzip");
+		assertNull(response.getHeader(HttpHeaderName.CONTENT_LENGTH));
+		// A range is ignored by HEAD
+		response = handle("HEAD /page.html HTTP/1.1\r\nRange: bytes=0-9\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_LENGTH), String.valueOf(Files.size(webroot.resolve("page.html"))));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testConditional() throws Exception {
+		HttpResponse response = handle("GET /page.html HTTP/1.1\r\n\r\n");
+		String etag = response.getHeader(HttpHeaderName.ETAG);
+		String lastModified = response.getHeader(HttpHeaderName.LAST_MODIFIED);
+		String gzipEtag = handle("GET /page.html HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n").getHeader(HttpHeaderName.ETAG);
+		assertNotEquals(gzipEtag, etag);
+
+		// Weak comparison: any tag of the current version of the file, in any coding, in a list or *
+		for (String ifNoneMatch : new String[]{etag, "W/" + etag, "\"other\", " + etag, "*", gzipEtag, " W/" + gzipEtag + " "}) {
+			response = handle("GET /page.html HTTP/1.1\r\nIf-None-Match: " + ifNoneMatch + "\r\n\r\n");
+			assertEquals(response.getStatusCode(), HttpStatusCode.SC_NOT_MODIFIED, ifNoneMatch);
+			// The validators of the representation, without its body
+			assertEquals(response.getHeader(HttpHeaderName.ETAG), etag);
+			assertEquals(response.getHeader(HttpHeaderName.LAST_MODIFIED), lastModified);
+			assertNull(response.getHeader(HttpHeaderName.CONTENT_LENGTH));
+			assertNull(response.getBufferBody());
+			assertNull(response.getFileBody());
+			assertNull(response.getChannelBody());
+		}
+		for (String ifNoneMatch : new String[]{"\"other\"", etag.substring(0, etag.length() - 1) + "-x\"", "W/\"\""}) {
+			response = handle("GET /page.html HTTP/1.1\r\nIf-None-Match: " + ifNoneMatch + "\r\n\r\n");
+			assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK, ifNoneMatch);
+		}
+		// The 304 of a compressed representation carries its own tag
+		response = handle("GET /page.html HTTP/1.1\r\nAccept-Encoding: gzip\r\nIf-None-Match: " + etag + "\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_NOT_MODIFIED);
+		assertEquals(response.getHeader(HttpHeaderName.ETAG), gzipEtag);
+
+		response = handle("GET /page.html HTTP/1.1\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_NOT_MODIFIED);
+		response = handle("HEAD /page.html HTTP/1.1\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_NOT_MODIFIED);
+		response = handle("GET /page.html HTTP/1.1\r\nIf-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		// An invalid date is ignored
+		for (String date : new String[]{"yesterday", "", "Sun, 32 Nov 1994 08:49:37 GMT", lastModified + " x"}) {
+			response = handle("GET /page.html HTTP/1.1\r\nIf-Modified-Since: " + date + "\r\n\r\n");
+			assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK, date);
+		}
+
+		// If-None-Match takes precedence, If-Modified-Since is not evaluated with it
+		response = handle("GET /page.html HTTP/1.1\r\nIf-None-Match: \"other\"\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		response = handle("GET /page.html HTTP/1.1\r\nIf-None-Match: " + etag
+				+ "\r\nIf-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_NOT_MODIFIED);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testRanges() throws Exception {
+		long size = Files.size(webroot.resolve("page.html"));
+		HttpResponse response = handle("GET /page.html HTTP/1.1\r\nRange: bytes=0-,0-,0-,0-\r\n\r\n");
+		// Coalesced into one range, the file is sent once
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_PARTIAL_CONTENT);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_RANGE), "bytes 0-" + (size - 1) + "/" + size);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_LENGTH), String.valueOf(size));
+
+		response = handle("GET /page.html HTTP/1.1\r\nRange: bytes=10-19,0-9,100-109\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_PARTIAL_CONTENT);
+		assertTrue(response.getHeader(HttpHeaderName.CONTENT_TYPE).startsWith("multipart/byteranges"));
+
+		response = handle("GET /page.html HTTP/1.1\r\nRange: bytes=" + size + "-\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_RANGE_NOT_SATISFIABLE);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_RANGE), "bytes */" + size);
+
+		StringBuilder many = new StringBuilder("bytes=0-0");
+		for (int i = 1; i <= 32; i++) {
+			many.append(',').append(2 * i).append('-').append(2 * i);
+		}
+		response = handle("GET /page.html HTTP/1.1\r\nRange: " + many + "\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_LENGTH), String.valueOf(size));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testStatus() throws Exception {
+		HttpResponse response = handle("GET /server-status HTTP/1.1\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		assertEquals(response.getHeader(HttpHeaderName.CONTENT_TYPE), "application/json");
+		assertEquals(response.getHeader(HttpHeaderName.CACHE_CONTROL), "no-store");
+		String json = StandardCharsets.UTF_8.decode(response.getBufferBody()).toString();
+		assertTrue(json.startsWith("{\n  \"uptime_seconds\": "), json);
+		assertTrue(json.contains("\"requests\": {"), json);
+
+		// Prometheus, asked by a query or by the Accept header of a scraper
+		for (String request : new String[]{"GET /server-status?format=prometheus HTTP/1.1\r\n\r\n",
+				"GET /server-status HTTP/1.1\r\nAccept: text/plain;version=0.0.4;q=0.3,*/*;q=0.1\r\n\r\n"}) {
+			response = handle(request);
+			assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+			assertEquals(response.getHeader(HttpHeaderName.CONTENT_TYPE), "text/plain; version=0.0.4; charset=utf-8");
+			String text = StandardCharsets.UTF_8.decode(response.getBufferBody()).toString();
+			assertTrue(text.startsWith("# HELP webserver_requests_total "), text);
+		}
+
+		response = handle("HEAD /server-status HTTP/1.1\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+		assertNull(response.getBufferBody());
+		assertTrue(Long.parseLong(response.getHeader(HttpHeaderName.CONTENT_LENGTH)) > 0);
+
+		response = handle("POST /server-status HTTP/1.1\r\nContent-Length: 0\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_METHOD_NOT_ALLOWED);
+		assertEquals(response.getHeader(HttpHeaderName.ALLOW), "GET, HEAD");
+	}
+
+	@org.junit.jupiter.api.Test
+	void testFailingHandler() throws Exception {
+		// Answered 500, the next requests are served
+		HttpResponse response = handle("GET /fail/now HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_INTERNAL_SERVER_ERROE);
+		assertEquals(headers(response).get("Content-Length"), "0");
+		response = handle("GET /page.html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		assertEquals(response.getStatusCode(), HttpStatusCode.SC_OK);
+	}
+}
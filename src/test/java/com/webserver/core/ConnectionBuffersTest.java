@@ -0,0 +1,217 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.buffer.BufferPool;
+import com.webserver.config.ConfigurationManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Keep-alive connections to a running server, with the leak detection of the buffer pool: once the
+ * connections are closed, every buffer they acquired is released, and the buffers were reused.
+ * The uploads go through the same buffers, their bodies spilled to temporary files.
+ */
+class ConnectionBuffersTest {
+
+	private static final String BODY = "<html>ok</html>\n";
+
+	private static final int REQUESTS = 20;
+
+	private static final int MAX_BODY_SIZE = 64 * 1024;
+
+	private static Path webroot;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		webroot = Files.createTempDirectory("webroot");
+		Files.write(webroot.resolve("index.html"), BODY.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testBlocking() throws Exception {
+		serve("blocking");
+	}
+
+	@org.junit.jupiter.api.Test
+	void testNio() throws Exception {
+		serve("nio");
+	}
+
+	private static void serve(String engine) throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"port=" + port + "\n" +
+				"engine=" + engine + "\n" +
+				"io_threads=1\n" +
+				"max_thread_num=2\n" +
+				"http2=false\n" +
+				"compression=false\n" +
+				"access_log=\n" +
+				"buffer_pool_size=16\n" +
+				"buffer_leak_detection=true\n" +
+				"uploads=true\n" +
+				"max_body_size=" + MAX_BODY_SIZE + "\n" +
+				"body_spill_threshold=1024\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+		BufferPool pool = BufferPool.getInstance();
+
+		WebServer server = new WebServer();
+		Thread thread = new Thread(server::start, "acceptor-0");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+			String upload = "upload-" + engine + ".txt";
+			long allocations = -1;
+			for (int connection = 0; connection < 3; connection++) {
+				try (Socket socket = connect(address)) {
+					InputStream in = socket.getInputStream();
+					OutputStream out = socket.getOutputStream();
+					byte[] request = ("GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n")
+							.getBytes(StandardCharsets.ISO_8859_1);
+					for (int i = 0; i < REQUESTS; i++) {
+						out.write(request);
+						out.flush();
+						assertEquals(readResponse(in), "HTTP/1.1 200 OK");
+					}
+					// Created by the first connection, replaced by the next ones
+					String content = content(connection);
+					out.write(("PUT /" + upload + " HTTP/1.1\r\nContent-Length: " + content.length() + "\r\n\r\n" + content)
+							.getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					assertEquals(readResponse(in), connection == 0 ? "HTTP/1.1 201 Created" : "HTTP/1.1 204 No Content");
+					assertEquals(new String(Files.readAllBytes(webroot.resolve(upload)), StandardCharsets.ISO_8859_1), content);
+					// The body is only sent once the server asked for it
+					out.write(("PUT /" + upload + " HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\n")
+							.getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					assertEquals(readResponse(in), "HTTP/1.1 100 Continue");
+					out.write("ok".getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					assertEquals(readResponse(in), "HTTP/1.1 204 No Content");
+					out.write(("POST /" + upload + " HTTP/1.1\r\nContent-Length: 2\r\n\r\nok").getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					assertEquals(readResponse(in), "HTTP/1.1 405 Method Not Allowed");
+					// Pipelined, with a missing file closing the connection
+					ByteArrayOutputStream pipelined = new ByteArrayOutputStream();
+					for (int i = 0; i < 3; i++) {
+						pipelined.write(request);
+					}
+					pipelined.write("GET /missing.html HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+					out.write(pipelined.toByteArray());
+					out.flush();
+					for (int i = 0; i < 3; i++) {
+						assertEquals(readResponse(in), "HTTP/1.1 200 OK");
+					}
+					assertEquals(readResponse(in), "HTTP/1.1 404 Not Found");
+					assertEquals(in.read(), -1);
+				}
+				awaitReleased(pool);
+				// The buffers of the first connection are reused by the next ones
+				if (allocations < 0) {
+					allocations = pool.getAllocations();
+				}
+				assertEquals(pool.getAllocations(), allocations);
+			}
+			try (Socket socket = connect(address)) {
+				socket.getOutputStream().write(("PUT /" + upload + " HTTP/1.1\r\nContent-Length: " + (MAX_BODY_SIZE + 1)
+						+ "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				assertEquals(readResponse(socket.getInputStream()), "HTTP/1.1 413 Payload Too Large");
+			}
+			awaitReleased(pool);
+			assertEquals(new String(Files.readAllBytes(webroot.resolve(upload)), StandardCharsets.ISO_8859_1), "ok");
+			assertTrue(pool.getLeaks().isEmpty());
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * @return a body past the spill threshold, different for each connection
+	 */
+	private static String content(int connection) {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			content.append(connection).append(':').append(i).append('\n');
+		}
+		return content.toString();
+	}
+
+	private static Socket connect(InetSocketAddress address) throws IOException, InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Socket socket = new Socket();
+			try {
+				socket.connect(address, 1000);
+				socket.setSoTimeout(5000);
+				return socket;
+			} catch (IOException e) {
+				socket.close();
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("The server did not start on " + address);
+	}
+
+	/**
+	 * The connection is closed on the server side after the client saw its end: wait for its release.
+	 */
+	private static void awaitReleased(BufferPool pool) throws InterruptedException {
+		for (int i = 0; i < 100 && pool.getInUse() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(pool.getInUse(), 0, () -> pool.getLeaks().toString());
+	}
+
+	/**
+	 * Read the head and the body of a response delimited by its Content-Length.
+	 * @return the status line
+	 */
+	private static String readResponse(InputStream in) throws IOException {
+		StringBuilder head = new StringBuilder();
+		while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("Connection closed before the end of the head");
+			}
+			head.append((char) b);
+		}
+		String lowerCase = head.toString().toLowerCase();
+		int contentLength = lowerCase.indexOf("\r\ncontent-length: ");
+		int length = 0;
+		if (contentLength >= 0) {
+			int start = contentLength + "\r\ncontent-length: ".length();
+			length = Integer.parseInt(lowerCase.substring(start, lowerCase.indexOf("\r\n", start)).trim());
+		}
+		for (int i = 0; i < length; i++) {
+			if (in.read() < 0) {
+				throw new IOException("Connection closed before the end of the body");
+			}
+		}
+		return head.substring(0, head.indexOf("\r\n"));
+	}
+}
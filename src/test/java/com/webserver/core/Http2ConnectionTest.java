@@ -0,0 +1,331 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.http2.HpackDecoder;
+import com.webserver.http2.HpackEncoder;
+import com.webserver.http2.Http2ErrorCode;
+import com.webserver.http2.Http2Frame;
+import com.webserver.http2.Http2FrameReader;
+import com.webserver.http2.Http2FrameWriter;
+import com.webserver.http2.Http2Settings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * HTTP/2 connections to a running server of the blocking engine, driven frame by frame: the prefaces
+ * and the SETTINGS exchange, requests and responses, flow control, stream resets and the h2c upgrade.
+ */
+class Http2ConnectionTest {
+
+	private static final String SMALL = "<html>small</html>\n";
+
+	/**
+	 * Larger than the stream window the client grants, smaller than the connection window.
+	 */
+	private static final int LARGE_LENGTH = 50000;
+
+	/**
+	 * The SETTINGS_INITIAL_WINDOW_SIZE of the client.
+	 */
+	private static final int WINDOW = 100;
+
+	private static Path webroot;
+
+	private static WebServer server;
+
+	private static InetSocketAddress address;
+
+	@BeforeAll
+	static void setup() throws Exception {
+		webroot = Files.createTempDirectory("webroot");
+		Files.write(webroot.resolve("small.html"), SMALL.getBytes(StandardCharsets.ISO_8859_1));
+		byte[] large = new byte[LARGE_LENGTH];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) ('a' + i % 26);
+		}
+		Files.write(webroot.resolve("large.txt"), large);
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"port=" + port + "\n" +
+				"engine=blocking\n" +
+				"max_thread_num=4\n" +
+				"http2=true\n" +
+				"compression=false\n" +
+				"cache_size=0\n" +
+				"access_log=\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+		server = new WebServer();
+		Thread thread = new Thread(server::start, "acceptor-0");
+		thread.setDaemon(true);
+		thread.start();
+		address = new InetSocketAddress("127.0.0.1", port);
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		server.stop();
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testPriorKnowledge() throws Exception {
+		try (Socket socket = connect(address)) {
+			Client client = new Client(socket);
+			client.out.write(Http2FrameReader.PREFACE);
+			client.writer.writeSettings(Http2Settings.INITIAL_WINDOW_SIZE, WINDOW);
+			client.writer.flush();
+
+			// The server preface, then the acknowledgement of the client SETTINGS
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.SETTINGS);
+			assertFalse(client.frame.hasFlag(Http2Frame.FLAG_ACK));
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.SETTINGS);
+			assertTrue(client.frame.hasFlag(Http2Frame.FLAG_ACK));
+
+			client.request(1, "/small.html");
+			Map<String, String> headers = client.readHeaders(1);
+			assertEquals(headers.get(":status"), "200");
+			assertEquals(headers.get("content-length"), String.valueOf(SMALL.length()));
+			assertEquals(client.readData(1, Integer.MAX_VALUE), SMALL);
+			assertTrue(client.endStream);
+
+			// The response waits for the WINDOW_UPDATE of its stream
+			client.request(3, "/large.txt");
+			assertEquals(client.readHeaders(3).get(":status"), "200");
+			String data = client.readData(3, WINDOW);
+			assertEquals(data.length(), WINDOW);
+			assertFalse(client.endStream);
+			client.ping();
+			client.writer.writeWindowUpdate(3, LARGE_LENGTH);
+			client.writer.flush();
+			data += client.readData(3, Integer.MAX_VALUE);
+			assertTrue(client.endStream);
+			assertEquals(data, new String(Files.readAllBytes(webroot.resolve("large.txt")), StandardCharsets.ISO_8859_1));
+
+			// A stream reset by the client sends nothing more, the connection goes on
+			client.request(5, "/large.txt");
+			assertEquals(client.readHeaders(5).get(":status"), "200");
+			assertEquals(client.readData(5, WINDOW).length(), WINDOW);
+			client.writer.writeRstStream(5, Http2ErrorCode.CANCEL);
+			client.writer.writeWindowUpdate(5, LARGE_LENGTH);
+			client.writer.flush();
+			client.ping();
+
+			// HEADERS on a half-closed (remote) stream is a stream error, its block still decoded
+			client.request(7, "/large.txt");
+			assertEquals(client.readHeaders(7).get(":status"), "200");
+			assertEquals(client.readData(7, WINDOW).length(), WINDOW);
+			client.request(7, "/small.html");
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.RST_STREAM);
+			assertEquals(client.frame.getStreamId(), 7);
+			assertEquals(client.frame.getInt(0), Http2ErrorCode.STREAM_CLOSED.code);
+
+			client.request(9, "/missing.html");
+			assertEquals(client.readHeaders(9).get(":status"), "404");
+			client.request(11, "/small.html");
+			assertEquals(client.readHeaders(11).get(":status"), "200");
+			assertEquals(client.readData(11, Integer.MAX_VALUE), SMALL);
+
+			// An even stream is a connection error
+			client.request(12, "/small.html");
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.GOAWAY);
+			assertEquals(client.frame.getInt31(0), 11);
+			assertEquals(client.frame.getInt(4), Http2ErrorCode.PROTOCOL_ERROR.code);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testUpgrade() throws Exception {
+		try (Socket socket = connect(address)) {
+			Client client = new Client(socket);
+			ByteArrayOutputStream settings = new ByteArrayOutputStream();
+			new Http2FrameWriter(settings).writeSettings(Http2Settings.INITIAL_WINDOW_SIZE, WINDOW);
+			byte[] payload = settings.toByteArray();
+			// The payload of a SETTINGS frame, without its frame header
+			String http2Settings = Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(Arrays.copyOfRange(payload, Http2Frame.HEADER_LENGTH, payload.length));
+			client.out.write(("GET /large.txt HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+					"Upgrade: h2c\r\nHTTP2-Settings: " + http2Settings + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			client.out.flush();
+			String head = client.readHttp1Head();
+			assertTrue(head.startsWith("HTTP/1.1 101 Switching Protocols\r\n"), head);
+			assertTrue(head.contains("Upgrade: h2c\r\n"), head);
+
+			// The upgraded request is answered on the stream 1, its data sent once the client preface is read
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.SETTINGS);
+			assertFalse(client.frame.hasFlag(Http2Frame.FLAG_ACK));
+			assertEquals(client.readHeaders(1).get(":status"), "200");
+			client.out.write(Http2FrameReader.PREFACE);
+			client.writer.writeSettings();
+			client.writer.flush();
+			client.next();
+			assertEquals(client.frame.getType(), Http2Frame.SETTINGS);
+			assertTrue(client.frame.hasFlag(Http2Frame.FLAG_ACK));
+			// Within the window of the HTTP2-Settings header
+			assertEquals(client.readData(1, WINDOW).length(), WINDOW);
+			assertFalse(client.endStream);
+			client.writer.writeWindowUpdate(1, LARGE_LENGTH);
+			client.writer.flush();
+			assertEquals(client.readData(1, Integer.MAX_VALUE).length(), LARGE_LENGTH - WINDOW);
+			assertTrue(client.endStream);
+
+			client.request(3, "/small.html");
+			assertEquals(client.readHeaders(3).get(":status"), "200");
+			assertEquals(client.readData(3, Integer.MAX_VALUE), SMALL);
+		}
+	}
+
+	/**
+	 * The client side of a connection, reading the frames of the server one by one.
+	 */
+	private static final class Client {
+
+		private final InputStream in;
+
+		private final OutputStream out;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(32 * 1024);
+
+		private final Http2FrameReader reader;
+
+		private final Http2FrameWriter writer;
+
+		private final Http2Frame frame = new Http2Frame(Http2Settings.DEFAULT_MAX_FRAME_SIZE);
+
+		private final HpackEncoder encoder = new HpackEncoder(Http2Settings.DEFAULT_HEADER_TABLE_SIZE);
+
+		private final HpackDecoder decoder = new HpackDecoder(Http2Settings.DEFAULT_HEADER_TABLE_SIZE, 65536);
+
+		/**
+		 * Whether the last DATA frame read ended its stream.
+		 */
+		private boolean endStream;
+
+		private Client(Socket socket) throws IOException {
+			in = socket.getInputStream();
+			out = socket.getOutputStream();
+			buffer.flip();
+			reader = new Http2FrameReader(in, buffer, Http2Settings.DEFAULT_MAX_FRAME_SIZE);
+			writer = new Http2FrameWriter(out);
+		}
+
+		/**
+		 * Read the next frame, skipping the WINDOW_UPDATE frames of the server.
+		 */
+		private void next() throws IOException {
+			do {
+				reader.read(frame);
+			} while (frame.getType() == Http2Frame.WINDOW_UPDATE);
+		}
+
+		private void request(int streamId, String path) throws IOException {
+			encoder.reset();
+			encoder.encode(":method", "GET");
+			encoder.encode(":scheme", "http");
+			encoder.encode(":path", path);
+			encoder.encode(":authority", "localhost");
+			writer.writeHeaders(streamId, encoder.getBlock(), encoder.getLength(), true, Http2Settings.DEFAULT_MAX_FRAME_SIZE);
+			writer.flush();
+		}
+
+		/**
+		 * Send a PING and read its acknowledgement: the server sent nothing in between.
+		 */
+		private void ping() throws IOException {
+			byte[] ping = new byte[Http2Frame.HEADER_LENGTH + 8];
+			ping[2] = 8;
+			ping[3] = Http2Frame.PING;
+			ping[Http2Frame.HEADER_LENGTH] = 42;
+			out.write(ping);
+			out.flush();
+			next();
+			assertEquals(frame.getType(), Http2Frame.PING);
+			assertTrue(frame.hasFlag(Http2Frame.FLAG_ACK));
+			assertEquals(frame.getPayload()[0], 42);
+		}
+
+		private Map<String, String> readHeaders(int streamId) throws IOException {
+			next();
+			assertEquals(frame.getType(), Http2Frame.HEADERS);
+			assertEquals(frame.getStreamId(), streamId);
+			assertTrue(frame.hasFlag(Http2Frame.FLAG_END_HEADERS));
+			Map<String, String> headers = new HashMap<>();
+			assertTrue(decoder.decode(frame.getPayload(), 0, frame.getLength(), headers::put));
+			endStream = frame.hasFlag(Http2Frame.FLAG_END_STREAM);
+			return headers;
+		}
+
+		/**
+		 * Read the DATA frames of the stream until its end or the given number of bytes.
+		 */
+		private String readData(int streamId, int max) throws IOException {
+			StringBuilder data = new StringBuilder();
+			endStream = false;
+			while (!endStream && data.length() < max) {
+				next();
+				assertEquals(frame.getType(), Http2Frame.DATA);
+				assertEquals(frame.getStreamId(), streamId);
+				data.append(new String(frame.getPayload(), 0, frame.getLength(), StandardCharsets.ISO_8859_1));
+				endStream = frame.hasFlag(Http2Frame.FLAG_END_STREAM);
+			}
+			return data.toString();
+		}
+
+		private String readHttp1Head() throws IOException {
+			StringBuilder head = new StringBuilder();
+			while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				int b = in.read();
+				if (b < 0) {
+					throw new IOException("Connection closed before the end of the head");
+				}
+				head.append((char) b);
+			}
+			return head.toString();
+		}
+	}
+
+	private static Socket connect(InetSocketAddress address) throws IOException, InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Socket socket = new Socket();
+			try {
+				socket.connect(address, 1000);
+				socket.setSoTimeout(5000);
+				return socket;
+			} catch (IOException e) {
+				socket.close();
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("The server did not start on " + address);
+	}
+}
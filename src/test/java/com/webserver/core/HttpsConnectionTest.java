@@ -0,0 +1,171 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Pipelined requests over TLS, each in its own record: the records received in one read are decrypted
+ * one by one, the ones left in the TLS channel are read without waiting for the selector.
+ */
+class HttpsConnectionTest {
+
+	private static final String PASSWORD = "changeit";
+
+	private static final String BODY = "<html>ok</html>\n";
+
+	private static Path webroot;
+
+	@BeforeAll
+	static void setup() throws IOException, InterruptedException {
+		webroot = Files.createTempDirectory("webroot");
+		Files.write(webroot.resolve("index.html"), BODY.getBytes(StandardCharsets.ISO_8859_1));
+		Path keystore = webroot.resolve("keystore.p12");
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+				"-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore", keystore.toString(),
+				"-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+		assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+		assertEquals(process.exitValue(), 0);
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(webroot)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testBlocking() throws Exception {
+		serve("blocking");
+	}
+
+	@org.junit.jupiter.api.Test
+	void testNio() throws Exception {
+		serve("nio");
+	}
+
+	private static void serve(String engine) throws Exception {
+		int port;
+		int httpsPort;
+		try (ServerSocket socket = new ServerSocket(0); ServerSocket httpsSocket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+			httpsPort = httpsSocket.getLocalPort();
+		}
+		Path properties = webroot.resolve("webserver.properties");
+		Files.write(properties, ("webroot=" + webroot + "\n" +
+				"port=" + port + "\n" +
+				"https_port=" + httpsPort + "\n" +
+				"keystore=" + webroot.resolve("keystore.p12") + "\n" +
+				"keystore_password=" + PASSWORD + "\n" +
+				"engine=" + engine + "\n" +
+				"io_threads=1\n" +
+				"max_thread_num=2\n" +
+				"http2=false\n" +
+				"compression=false\n" +
+				"access_log=\n").getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+
+		WebServer server = new WebServer();
+		Thread thread = new Thread(server::start, "acceptor-0");
+		thread.setDaemon(true);
+		thread.start();
+		try (SSLSocket socket = connect(new InetSocketAddress("127.0.0.1", httpsPort))) {
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			byte[] request = "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+			for (int i = 0; i < 20; i++) {
+				// A record per write, sent back to back: most arrive in the same read of the server
+				for (int j = 0; j < 3; j++) {
+					out.write(request);
+				}
+				out.flush();
+				for (int j = 0; j < 3; j++) {
+					assertEquals(readResponse(in), BODY);
+				}
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static SSLSocket connect(InetSocketAddress address) throws Exception {
+		TrustManager trustAll = new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		};
+		SSLContext context = SSLContext.getInstance("TLSv1.3");
+		context.init(null, new TrustManager[] {trustAll}, null);
+		for (int i = 0; i < 100; i++) {
+			SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket();
+			try {
+				socket.connect(address, 1000);
+				socket.setSoTimeout(5000);
+				socket.startHandshake();
+				return socket;
+			} catch (IOException e) {
+				socket.close();
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("The server did not start on " + address);
+	}
+
+	/**
+	 * Read a 200 response delimited by its Content-Length.
+	 * @return the body
+	 */
+	private static String readResponse(InputStream in) throws IOException {
+		StringBuilder head = new StringBuilder();
+		while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("Connection closed before the end of the head");
+			}
+			head.append((char) b);
+		}
+		assertTrue(head.toString().startsWith("HTTP/1.1 200 OK\r\n"), head.toString());
+		int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+		int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+		byte[] body = new byte[length];
+		for (int n = 0; n < length; ) {
+			int read = in.read(body, n, length - n);
+			if (read < 0) {
+				throw new IOException("Connection closed before the end of the body");
+			}
+			n += read;
+		}
+		return new String(body, StandardCharsets.ISO_8859_1);
+	}
+}
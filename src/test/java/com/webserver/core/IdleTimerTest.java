@@ -0,0 +1,43 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IdleTimerTest {
+
+	@org.junit.jupiter.api.Test
+	void expireIdleConnections() throws InterruptedException {
+		IdleTimer timer = new IdleTimer(100, 10);
+		AtomicInteger idle = new AtomicInteger();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger cancelled = new AtomicInteger();
+		AtomicInteger suspended = new AtomicInteger();
+		timer.schedule(idle::incrementAndGet);
+		IdleTimer.Timeout activeTimeout = timer.schedule(active::incrementAndGet);
+		timer.schedule(cancelled::incrementAndGet).cancel();
+		timer.schedule(suspended::incrementAndGet).suspend();
+		assertEquals(timer.size(), 3);
+
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < 400) {
+			activeTimeout.touch();
+			timer.advance();
+			Thread.sleep(5);
+		}
+		assertEquals(idle.get(), 1);
+		assertEquals(active.get(), 0);
+		assertEquals(cancelled.get(), 0);
+		assertEquals(suspended.get(), 0);
+		assertEquals(timer.size(), 2);
+
+		// Once idle, the active connection expires within a timeout and a tick
+		start = System.currentTimeMillis();
+		while (active.get() == 0 && System.currentTimeMillis() - start < 1000) {
+			timer.advance();
+			Thread.sleep(5);
+		}
+		assertEquals(active.get(), 1);
+		assertTrue(System.currentTimeMillis() - start < 200);
+	}
+}
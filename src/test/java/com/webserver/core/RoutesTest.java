@@ -0,0 +1,72 @@
+package com.webserver.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import com.webserver.router.Handler;
+import com.webserver.router.Router;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The custom handlers, created from their class names and mounted with the routes of the server.
+ */
+class RoutesTest {
+
+	public static class HelloHandler implements Handler {
+
+		@Override
+		public void handle(HttpRequest request, HttpResponse response) {
+			response.setHeader("X-Handler", "hello");
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testMountHandlers() {
+		Router.Builder builder = Router.builder();
+		Routes.mountHandlers(builder, " /hello=" + HelloHandler.class.getName() + ", ,/hi=" + HelloHandler.class.getName());
+		Router router = builder.build();
+		assertTrue(router.route(HttpMethod.POST, "/hello/world") instanceof HelloHandler);
+		assertTrue(router.route(HttpMethod.GET, "/hi") instanceof HelloHandler);
+		// Each route has its own instance
+		assertNotSame(router.route(HttpMethod.GET, "/hello"), router.route(HttpMethod.GET, "/hi"));
+		assertNull(router.route(HttpMethod.GET, "/other"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testInvalidHandlers() {
+		assertThrows(HttpConfigurationException.class,
+				() -> Routes.mountHandlers(Router.builder(), "/hello=com.example.MissingHandler"));
+		// Not a Handler
+		assertThrows(HttpConfigurationException.class,
+				() -> Routes.mountHandlers(Router.builder(), "/hello=java.lang.String"));
+		// No public constructor without argument
+		assertThrows(HttpConfigurationException.class,
+				() -> Routes.mountHandlers(Router.builder(), "/hello=java.lang.Runtime"));
+		assertThrows(HttpConfigurationException.class,
+				() -> Routes.mountHandlers(Router.builder(), HelloHandler.class.getName()));
+		assertThrows(HttpConfigurationException.class,
+				() -> Routes.mountHandlers(Router.builder(), "hello=" + HelloHandler.class.getName()));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testCollisionWithStaticFiles() throws IOException {
+		// A handler on / would take the GET of the static files: the routes are not built
+		Path properties = Files.createTempFile("webserver", ".properties");
+		try {
+			Files.write(properties, ("handlers=/=" + HelloHandler.class.getName() + "\naccess_log=\n")
+					.getBytes(StandardCharsets.ISO_8859_1));
+			ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+			assertThrows(HttpConfigurationException.class, Routes::getInstance);
+		} finally {
+			Files.delete(properties);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class ByteRangeTest {
+
+	@org.junit.jupiter.api.Test
+	void parse() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=9000-20000, 0-499, -100, 600-699", 10000);
+		assertEquals(ranges.size(), 3);
+		assertEquals(ranges.get(0).toContentRange(10000), "bytes 0-499/10000");
+		assertEquals(ranges.get(1).toContentRange(10000), "bytes 600-699/10000");
+		assertEquals(ranges.get(2).toContentRange(10000), "bytes 9000-9999/10000");
+		assertEquals(ByteRange.parse("bytes=-20000", 100).get(0).length(), 100);
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseCoalesced() {
+		// Overlapping or adjacent ranges are merged, no byte is sent twice
+		List<ByteRange> ranges = ByteRange.parse("bytes=0-,0-,0-,0-", 10000);
+		assertEquals(ranges.size(), 1);
+		assertEquals(ranges.get(0).toContentRange(10000), "bytes 0-9999/10000");
+		ranges = ByteRange.parse("bytes=0-499, 500-, -100, 9000-20000", 10000);
+		assertEquals(ranges.size(), 1);
+		assertEquals(ranges.get(0).length(), 10000);
+		ranges = ByteRange.parse("bytes=200-299, 0-99, 250-400, 100-150, 402-402", 10000);
+		assertEquals(ranges.size(), 3);
+		assertEquals(ranges.get(0).toContentRange(10000), "bytes 0-150/10000");
+		assertEquals(ranges.get(1).toContentRange(10000), "bytes 200-400/10000");
+		assertEquals(ranges.get(2).toContentRange(10000), "bytes 402-402/10000");
+
+		// Too many ranges are ignored, the whole representation is sent
+		StringBuilder many = new StringBuilder("bytes=0-0");
+		for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+			many.append(',').append(2 * i).append('-').append(2 * i);
+		}
+		assertNull(ByteRange.parse(many.toString(), 10000));
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseUnsatisfiableOrInvalid() {
+		assertTrue(ByteRange.parse("bytes=100-", 100).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+		assertEquals(ByteRange.parse("bytes=5-1", 100), null);
+		assertEquals(ByteRange.parse("bytes=a-b", 100), null);
+		assertEquals(ByteRange.parse("items=0-1", 100), null);
+		assertEquals(ByteRange.parse("bytes=", 100), null);
+	}
+
+	@org.junit.jupiter.api.Test
+	void readMultipartByteRanges() throws IOException {
+		ByteBuffer content = ByteBuffer.wrap("0123456789".getBytes(StandardCharsets.US_ASCII));
+		ByteRangesChannel channel = new ByteRangesChannel(null, content,
+				ByteRange.parse("bytes=0-1,-3", 10), "text/plain", 10, "XYZ");
+		ByteBuffer body = ByteBuffer.allocate(1024);
+		// A small destination makes the parts span several reads
+		ByteBuffer chunk = ByteBuffer.allocate(7);
+		while (channel.read(chunk) >= 0) {
+			chunk.flip();
+			body.put(chunk);
+			chunk.clear();
+		}
+		body.flip();
+		String expected = "--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/10\r\n\r\n01"
+				+ "\r\n--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 7-9/10\r\n\r\n789"
+				+ "\r\n--XYZ--\r\n";
+		assertEquals(StandardCharsets.US_ASCII.decode(body).toString(), expected);
+		assertEquals(channel.length(), expected.length());
+	}
+}
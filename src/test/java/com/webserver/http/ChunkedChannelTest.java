@@ -0,0 +1,28 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+class ChunkedChannelTest {
+
+	@org.junit.jupiter.api.Test
+	void readChunks() throws IOException {
+		byte[] content = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+		ChunkedChannel channel = new ChunkedChannel(Channels.newChannel(new ByteArrayInputStream(content)), 16);
+		ByteBuffer body = ByteBuffer.allocate(1024);
+		ByteBuffer buffer = ByteBuffer.allocate(channel.capacity());
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			body.put(buffer);
+			buffer.clear();
+		}
+		body.flip();
+		assertEquals(StandardCharsets.US_ASCII.decode(body).toString(),
+				"10\r\n0123456789abcdef\r\n4\r\nghij\r\n0\r\n\r\n");
+	}
+}
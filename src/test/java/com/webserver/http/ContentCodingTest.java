@@ -0,0 +1,64 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+class ContentCodingTest {
+
+	private static byte[] decode(ContentCoding coding, ByteBuffer encoded) throws IOException {
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		InputStream inputStream = coding == ContentCoding.GZIP
+				? new GZIPInputStream(new ByteArrayInputStream(bytes))
+				: new InflaterInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int n;
+		while ((n = inputStream.read(chunk)) >= 0) {
+			outputStream.write(chunk, 0, n);
+		}
+		return outputStream.toByteArray();
+	}
+
+	@org.junit.jupiter.api.Test
+	void negotiate() {
+		assertEquals(ContentCoding.negotiate("gzip, deflate, br"), ContentCoding.GZIP);
+		assertEquals(ContentCoding.negotiate("deflate, gzip;q=0.5"), ContentCoding.DEFLATE);
+		assertEquals(ContentCoding.negotiate("br, *;q=0.1"), ContentCoding.GZIP);
+		assertEquals(ContentCoding.negotiate("gzip;q=0, deflate;q=0"), null);
+		assertEquals(ContentCoding.negotiate("identity"), null);
+		assertEquals(ContentCoding.negotiate(null), null);
+	}
+
+	@org.junit.jupiter.api.Test
+	void encodeRoundTrip() throws IOException {
+		// Larger than the chunks of the channel, half compressible half random
+		byte[] content = new byte[100 * 1024];
+		new Random(42).nextBytes(content);
+		for (int i = 0; i < content.length / 2; i++) {
+			content[i] = (byte) ('a' + i % 7);
+		}
+		for (ContentCoding coding : ContentCoding.values()) {
+			ByteBuffer source = ByteBuffer.wrap(content);
+			ByteBuffer encoded = coding.encode(source, 6);
+			assertEquals(source.position(), 0);
+			assertTrue(encoded.remaining() < content.length);
+			assertArrayEquals(decode(coding, encoded), content);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void encodeEmpty() throws IOException {
+		for (ContentCoding coding : ContentCoding.values()) {
+			assertEquals(decode(coding, coding.encode(ByteBuffer.allocate(0), 6)).length, 0);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+
+class GatheringOutputStreamTest {
+
+	/**
+	 * Accepts at most 1000 bytes per write, as a socket with a small send buffer.
+	 */
+	private static class RecordingChannel implements GatheringByteChannel {
+
+		private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+		private int writes;
+
+		@Override
+		public int write(ByteBuffer src) {
+			return (int) write(new ByteBuffer[]{src}, 0, 1);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			writes++;
+			int budget = 1000;
+			for (int i = offset; i < offset + length && budget > 0; i++) {
+				while (srcs[i].hasRemaining() && budget > 0) {
+					written.write(srcs[i].get());
+					budget--;
+				}
+			}
+			return 1000 - budget;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void writeHeadAndBodyTogether() throws IOException {
+		RecordingChannel channel = new RecordingChannel();
+		GatheringOutputStream outputStream = new GatheringOutputStream(channel, 64);
+		byte[] head = "HTTP/1.1 200 OK\r\n\r\n".getBytes();
+		byte[] body = new byte[2500];
+		Arrays.fill(body, (byte) 'b');
+
+		outputStream.write(head);
+		assertEquals(channel.writes, 0);
+		outputStream.write(ByteBuffer.wrap(body));
+		// The head leaves with the first part of the body
+		assertEquals(channel.writes, 3);
+		outputStream.write(head);
+		outputStream.flush();
+		assertEquals(channel.writes, 4);
+
+		byte[] expected = new byte[head.length * 2 + body.length];
+		System.arraycopy(head, 0, expected, 0, head.length);
+		System.arraycopy(body, 0, expected, head.length, body.length);
+		System.arraycopy(head, 0, expected, head.length + body.length, head.length);
+		assertArrayEquals(channel.written.toByteArray(), expected);
+	}
+
+	@org.junit.jupiter.api.Test
+	void bufferSmallWrites() throws IOException {
+		RecordingChannel channel = new RecordingChannel();
+		GatheringOutputStream outputStream = new GatheringOutputStream(channel, 64);
+		for (int i = 0; i < 100; i++) {
+			outputStream.write('a' + i % 26);
+		}
+		outputStream.write(ByteBuffer.wrap(new byte[10]));
+		outputStream.flush();
+		assertEquals(channel.written.size(), 110);
+		assertEquals(channel.writes, 2);
+	}
+}
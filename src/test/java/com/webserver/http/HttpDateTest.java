@@ -0,0 +1,24 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpDateTest {
+
+	@org.junit.jupiter.api.Test
+	void formatAndParse() {
+		assertEquals(HttpDate.format(784111777000L), "Sun, 06 Nov 1994 08:49:37 GMT");
+		assertEquals(HttpDate.parse("Sun, 06 Nov 1994 08:49:37 GMT"), 784111777000L);
+		assertEquals(HttpDate.parse(" Sun, 6 Nov 1994 08:49:37 GMT "), 784111777000L);
+		// Truncated to the second
+		assertEquals(HttpDate.parse(HttpDate.format(784111777999L)), 784111777000L);
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseInvalid() {
+		assertEquals(HttpDate.parse(null), -1);
+		assertEquals(HttpDate.parse(""), -1);
+		assertEquals(HttpDate.parse("yesterday"), -1);
+		assertEquals(HttpDate.parse("Sun, 32 Nov 1994 08:49:37 GMT"), -1);
+		assertEquals(HttpDate.parse("Sun, 06 Nov 1994 08:49:37"), -1);
+	}
+}
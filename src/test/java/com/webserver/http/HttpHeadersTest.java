@@ -0,0 +1,115 @@
+package com.webserver.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class HttpHeadersTest {
+
+	private static void receive(HttpHeaders headers, String line) {
+		ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.ISO_8859_1));
+		int colon = line.indexOf(':');
+		headers.add(buffer, 0, colon, colon + 2, line.length());
+	}
+
+	@org.junit.jupiter.api.Test
+	void testCaseInsensitive() {
+		HttpHeaders headers = new HttpHeaders();
+		receive(headers, "content-length: 12");
+		receive(headers, "X-Trace: abc");
+		headers.set("Accept-ranges", "bytes");
+
+		assertEquals(headers.size(), 3);
+		assertEquals(headers.get(HttpHeaderName.CONTENT_LENGTH), "12");
+		assertEquals(headers.get("CONTENT-LENGTH"), "12");
+		assertEquals(headers.get("x-trace"), "abc");
+		assertEquals(headers.get(HttpHeaderName.ACCEPT_RANGES), "bytes");
+		// A well-known name is written in its canonical case, the others as received
+		assertEquals(headers.getName(0), "Content-Length");
+		assertEquals(headers.getName(1), "X-Trace");
+		assertNull(headers.get(HttpHeaderName.HOST));
+		assertNull(headers.get("X-Other"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testCombineAndRemove() {
+		HttpHeaders headers = new HttpHeaders();
+		receive(headers, "Connection: keep-alive");
+		receive(headers, "x-trace: abc");
+		receive(headers, "connection: close");
+		receive(headers, "X-TRACE: def");
+		// The fields received again are combined, in order
+		assertEquals(headers.size(), 2);
+		assertEquals(headers.get(HttpHeaderName.CONNECTION), "keep-alive, close");
+		assertEquals(headers.get("X-Trace"), "abc, def");
+		receive(headers, "Cookie: a=1");
+		receive(headers, "cookie: b=2");
+		assertEquals(headers.get(HttpHeaderName.COOKIE), "a=1; b=2");
+		headers.remove(HttpHeaderName.COOKIE);
+		// Set on the side, not combined
+		headers.set("x-trace", "ghi");
+		assertEquals(headers.get("X-Trace"), "ghi");
+
+		headers.set(HttpHeaderName.ETAG, "\"1\"");
+		headers.remove(HttpHeaderName.CONNECTION);
+		assertEquals(headers.size(), 2);
+		assertFalse(headers.contains(HttpHeaderName.CONNECTION));
+		assertEquals(headers.get("ETag"), "\"1\"");
+		assertEquals(headers.getKnownName(1), HttpHeaderName.ETAG);
+
+		headers.clear();
+		assertEquals(headers.size(), 0);
+		assertFalse(headers.contains(HttpHeaderName.ETAG));
+		receive(headers, "Host: localhost");
+		assertEquals(headers.get(HttpHeaderName.HOST), "localhost");
+	}
+
+	@org.junit.jupiter.api.Test
+	void testGrow() {
+		HttpHeaders headers = new HttpHeaders();
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			value.append('v');
+		}
+		for (int i = 0; i < 40; i++) {
+			receive(headers, "X-Field-" + i + ": " + value + i);
+		}
+		assertEquals(headers.size(), 40);
+		for (int i = 0; i < 40; i++) {
+			assertEquals(headers.get("x-field-" + i), value.toString() + i);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testManyOtherNames() {
+		HttpHeaders headers = new HttpHeaders();
+		for (int i = 0; i < 5000; i++) {
+			receive(headers, "X-" + i + ": " + i);
+		}
+		headers.set("y-set", "set");
+		headers.add("Set-Cookie", "a=1");
+		headers.add("Set-Cookie", "b=2");
+		receive(headers, "x-10: ten");
+		headers.add("X-11", "eleven");
+		assertEquals(headers.size(), 5003);
+		assertEquals(headers.get("x-10"), "10, ten");
+		assertEquals(headers.get("X-11"), "11, eleven");
+		assertEquals(headers.get("Y-SET"), "set");
+		assertEquals(headers.get(HttpHeaderName.SET_COOKIE), "a=1");
+
+		// The fields after the one removed move, and are still found
+		headers.remove("X-0");
+		assertFalse(headers.contains("x-0"));
+		for (int i = 1; i < 5000; i += 7) {
+			assertEquals(headers.getValue(i - 1), headers.get("x-" + i));
+		}
+		assertEquals(headers.get("Y-Set"), "set");
+		assertNull(headers.get("X-5000"));
+
+		headers.clear();
+		assertNull(headers.get("X-1"));
+		receive(headers, "X-1: again");
+		assertEquals(headers.get("x-1"), "again");
+	}
+}
@@ -4,8 +4,12 @@ import com.webserver.exceptions.HttpParsingException;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 class HttpParserTest {
 
@@ -157,12 +161,18 @@ class HttpParserTest {
 		String testString = testStrs[3];
 		InputStream inputStream = new ByteArrayInputStream(testString.getBytes());
 		try {
-			HttpParser.parseHttpRequest(inputStream);
+			HttpRequest request = HttpParser.parseHttpRequest(inputStream);
+			assertEquals(request.getMethod(), HttpMethod.POST);
+			assertNull(request.getBody());
 		} catch (HttpParsingException e) {
-			assertEquals(e.getCode().code, 501);
+			fail(e);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+
+		InputStream patch = new ByteArrayInputStream("PATCH /index.html HTTP/1.1\r\n\r\n".getBytes());
+		HttpParsingException e = assertThrows(HttpParsingException.class, () -> HttpParser.parseHttpRequest(patch));
+		assertEquals(e.getCode().code, 501);
 	}
 
 	@org.junit.jupiter.api.Test
@@ -174,8 +184,8 @@ class HttpParserTest {
 			assertEquals(request.getMethod().name(), "GET");
 			assertEquals(request.getRequestTarget(), "/index.html");
 			assertEquals(request.getHttpVersion(), "HTTP/1.1");
-			assertEquals(request.getHeaderFields().get("Content-Length"), "2");
-			assertEquals(String.valueOf(request.getBody()), "aa");
+			assertEquals(request.getHeader("Content-Length"), "2");
+			assertEquals(bodyOf(request), "aa");
 			assertTrue(request.getKeepAlive());
 		} catch (HttpParsingException e) {
 			e.printStackTrace();
@@ -184,4 +194,244 @@ class HttpParserTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@org.junit.jupiter.api.Test
+	void parseHttpRequestIncrementally() {
+		byte[] bytes = ("GET /my%20file.html?k1=v1&k2 HTTP/1.1\r\n" +
+				"Host: localhost:8080\r\n" +
+				"Connection: close\r\n" +
+				"Content-Length: 2\r\n" +
+				"\r\n" +
+				"aa").getBytes();
+		HttpParser parser = new HttpParser();
+		ByteBuffer buffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+		HttpRequest request = null;
+		// Feed the message one byte at a time, as a slow client would send it
+		for (int i = 0; i < bytes.length; i++) {
+			assertNull(request);
+			buffer.put(bytes[i]);
+			buffer.flip();
+			request = parser.parse(buffer);
+			buffer.compact();
+		}
+		assertNotNull(request);
+		assertEquals(request.getMethod(), HttpMethod.GET);
+		assertEquals(request.getRequestTarget(), "/my file.html");
+		assertEquals(request.getRawRequestTarget(), "/my%20file.html?k1=v1&k2");
+		assertEquals(request.getQueries().get("k1"), "v1");
+		assertEquals(request.getQueries().get("k2"), "");
+		assertEquals(request.getHeader("Host"), "localhost:8080");
+		assertEquals(bodyOf(request), "aa");
+		assertFalse(request.getKeepAlive());
+		assertTrue(parser.isIdle());
+	}
+
+	@org.junit.jupiter.api.Test
+	void parsePipelinedHttpRequests() {
+		String testString = "GET /index.html HTTP/1.1\r\nHost: localhost:8080\r\n\r\n" +
+				"HEAD /test.html HTTP/1.1\r\nHost: localhost:8080\r\nContent-Length: 2\r\n\r\naa" +
+				"GET /index.html HTTP/1.1\r\nConnection: close\r\n\r\n";
+		InputStream inputStream = new ByteArrayInputStream(testString.getBytes());
+		ByteBuffer buffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+		buffer.flip();
+		HttpParser parser = new HttpParser();
+		try {
+			HttpRequest request = parser.read(inputStream, buffer);
+			assertEquals(request.getMethod(), HttpMethod.GET);
+			// The first read pulled the whole stream, the next requests come from the buffer
+			assertEquals(inputStream.available(), 0);
+			request = parser.parse(buffer);
+			assertEquals(request.getMethod(), HttpMethod.HEAD);
+			assertEquals(request.getRequestTarget(), "/test.html");
+			assertEquals(bodyOf(request), "aa");
+			request = parser.read(inputStream, buffer);
+			assertFalse(request.getKeepAlive());
+			assertThrows(EOFException.class, () -> parser.read(inputStream, buffer));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseChunkedHttpRequest() {
+		byte[] bytes = ("GET /upload HTTP/1.1\r\n" +
+				"Host: localhost:8080\r\n" +
+				"Transfer-Encoding: chunked\r\n" +
+				"\r\n" +
+				"5;name=value\r\nhello\r\n" +
+				"7\r\n, world\r\n" +
+				"0\r\n" +
+				"Expires: never\r\n" +
+				"\r\n" +
+				"GET /index.html HTTP/1.1\r\n\r\n").getBytes();
+		HttpParser parser = new HttpParser();
+		ByteBuffer buffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+		HttpRequest request = null;
+		// Feed the message one byte at a time, so the chunks are split across reads
+		int i = 0;
+		while (request == null) {
+			buffer.put(bytes[i++]);
+			buffer.flip();
+			try {
+				request = parser.parse(buffer);
+			} catch (HttpParsingException e) {
+				fail(e);
+			}
+			buffer.compact();
+		}
+		assertEquals(request.getMethod(), HttpMethod.GET);
+		assertEquals(bodyOf(request), "hello, world");
+		assertNull(request.getHeader("Expires"));
+		assertTrue(parser.isIdle());
+		assertEquals(new String(bytes, i, bytes.length - i), "GET /index.html HTTP/1.1\r\n\r\n");
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseInvalidChunkedHttpRequest() {
+		InputStream inputStream = new ByteArrayInputStream(("GET /upload HTTP/1.1\r\n" +
+				"Transfer-Encoding: chunked\r\n\r\nzz\r\n").getBytes());
+		HttpParsingException e = assertThrows(HttpParsingException.class, () -> HttpParser.parseHttpRequest(inputStream));
+		assertEquals(e.getCode(), HttpStatusCode.SC_BAD_REQUEST);
+
+		InputStream gzipped = new ByteArrayInputStream(("GET /upload HTTP/1.1\r\n" +
+				"Transfer-Encoding: gzip, chunked\r\n\r\n").getBytes());
+		e = assertThrows(HttpParsingException.class, () -> HttpParser.parseHttpRequest(gzipped));
+		assertEquals(e.getCode(), HttpStatusCode.SC_NOT_IMPLEMENTED);
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseContentLength() throws HttpParsingException, IOException {
+		// The repeated fields are combined, the same length repeated is accepted
+		HttpRequest request = HttpParser.parseHttpRequest(new ByteArrayInputStream(("POST /upload HTTP/1.1\r\n" +
+				"Content-Length: 2\r\nCookie: a=1\r\nContent-Length: 2\r\nCookie: b=2\r\n\r\naa").getBytes()));
+		assertEquals(bodyOf(request), "aa");
+		assertEquals(request.getHeader(HttpHeaderName.COOKIE), "a=1; b=2");
+
+		// RFC-7230: differing lengths or an invalid one are an unrecoverable framing error
+		for (String contentLength : new String[] {"Content-Length: 2\r\nContent-Length: 3", "Content-Length: 2, 3",
+				"Content-Length: +2", "Content-Length: -2", "Content-Length: 2,", "Content-Length: 0x2",
+				"Content-Length: 99999999999999999999"}) {
+			InputStream inputStream = new ByteArrayInputStream(("POST /upload HTTP/1.1\r\n" + contentLength
+					+ "\r\n\r\naaa").getBytes());
+			HttpParsingException e = assertThrows(HttpParsingException.class, () -> HttpParser.parseHttpRequest(inputStream));
+			assertEquals(e.getCode(), HttpStatusCode.SC_BAD_REQUEST, contentLength);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseCaseInsensitiveHeaders() throws HttpParsingException, IOException {
+		InputStream inputStream = new ByteArrayInputStream(("GET /index.html HTTP/1.1\r\n" +
+				"host: localhost:8080\r\n" +
+				"CONNECTION: close\r\n" +
+				"content-length: 2\r\n" +
+				"x-request-id: 42\r\n\r\n" +
+				"aa").getBytes());
+		HttpRequest request = HttpParser.parseHttpRequest(inputStream);
+		assertEquals(bodyOf(request), "aa");
+		assertFalse(request.getKeepAlive());
+		assertEquals(request.getHeader(HttpHeaderName.HOST), "localhost:8080");
+		assertEquals(request.getHeader("Content-Length"), "2");
+		assertEquals(request.getHeader("X-Request-Id"), "42");
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseReusedHttpRequest() throws HttpParsingException {
+		String testString = "GET /index.html?k1=v1 HTTP/1.1\r\nX-Trace: abc\r\nContent-Length: 2\r\n\r\naa" +
+				"HEAD /test.html HTTP/1.0\r\nHost: localhost:8080\r\n\r\n";
+		ByteBuffer buffer = ByteBuffer.wrap(testString.getBytes());
+		HttpParser parser = new HttpParser(true);
+		HttpRequest first = parser.parse(buffer);
+		assertEquals(first.getQueries().get("k1"), "v1");
+		assertEquals(bodyOf(first), "aa");
+
+		// The same request is filled again, nothing of the previous one is left
+		HttpRequest second = parser.parse(buffer);
+		assertSame(second, first);
+		assertEquals(second.getMethod(), HttpMethod.HEAD);
+		assertEquals(second.getRequestTarget(), "/test.html");
+		assertEquals(second.getHttpVersion(), "HTTP/1.0");
+		assertEquals(second.getHeader(HttpHeaderName.HOST), "localhost:8080");
+		assertNull(second.getHeader("X-Trace"));
+		assertNull(second.getHeader(HttpHeaderName.CONTENT_LENGTH));
+		assertTrue(second.getQueries().isEmpty());
+		assertNull(second.getBody());
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseSpilledHttpRequest() throws HttpParsingException, IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			content.append(i).append(',');
+		}
+		String testString = "PUT /upload.txt HTTP/1.1\r\nContent-Length: " + content.length() + "\r\n\r\n" + content +
+				"PUT /upload.txt HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+				"5\r\nhello\r\n7\r\n, world\r\n0\r\n\r\n";
+		ByteBuffer buffer = ByteBuffer.wrap(testString.getBytes());
+		HttpParser parser = new HttpParser(false, Long.MAX_VALUE, 1024);
+		// Past the threshold, the body is moved to a temporary file
+		HttpRequest request = parser.parse(buffer);
+		assertEquals(request.getMethod(), HttpMethod.PUT);
+		assertTrue(request.getBody().isSpilled());
+		assertEquals(request.getBody().length(), content.length());
+		assertEquals(bodyOf(request), content.toString());
+		request.getBody().close();
+
+		request = parser.parse(buffer);
+		assertFalse(request.getBody().isSpilled());
+		assertEquals(bodyOf(request), "hello, world");
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseTooLargeHttpRequest() {
+		HttpParser parser = new HttpParser(false, 10, 1024);
+		HttpParsingException e = assertThrows(HttpParsingException.class, () -> parser.parse(ByteBuffer.wrap(
+				"PUT /upload.txt HTTP/1.1\r\nContent-Length: 11\r\n\r\n".getBytes())));
+		assertEquals(e.getCode(), HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+
+		// The size of a chunked body is only known as its chunks arrive
+		parser.reset();
+		e = assertThrows(HttpParsingException.class, () -> parser.parse(ByteBuffer.wrap(
+				"PUT /upload.txt HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n6\r\nhello,\r\n5\r\n".getBytes())));
+		assertEquals(e.getCode(), HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+
+		// Unless configured, a body is bounded too, whatever size the client claims
+		HttpParser defaultParser = new HttpParser();
+		e = assertThrows(HttpParsingException.class, () -> defaultParser.parse(ByteBuffer.wrap(
+				("PUT /upload.txt HTTP/1.1\r\nContent-Length: " + (HttpParser.DEFAULT_MAX_BODY_SIZE + 1) + "\r\n\r\n").getBytes())));
+		assertEquals(e.getCode(), HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+		defaultParser.reset();
+		e = assertThrows(HttpParsingException.class, () -> defaultParser.parse(ByteBuffer.wrap(
+				"PUT /upload.txt HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nfffffffffffffff\r\n".getBytes())));
+		assertEquals(e.getCode(), HttpStatusCode.SC_PAYLOAD_TOO_LARGE);
+	}
+
+	@org.junit.jupiter.api.Test
+	void parseExpectContinue() throws HttpParsingException {
+		HttpParser parser = new HttpParser();
+		ByteBuffer buffer = ByteBuffer.allocate(HttpParser.BUFFER_SIZE);
+		buffer.put("PUT /upload.txt HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\n".getBytes());
+		buffer.flip();
+		assertNull(parser.parse(buffer));
+		// Asked once, when the head is complete and the body not sent yet
+		assertTrue(parser.takeContinue());
+		assertFalse(parser.takeContinue());
+		buffer.compact();
+		buffer.put("aa".getBytes());
+		buffer.flip();
+		assertEquals(bodyOf(parser.parse(buffer)), "aa");
+		assertFalse(parser.takeContinue());
+	}
+
+	private static String bodyOf(HttpRequest request) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = request.getBody().getInputStream()) {
+			byte[] bytes = new byte[1024];
+			int read;
+			while ((read = in.read(bytes)) > 0) {
+				out.write(bytes, 0, read);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new String(out.toByteArray());
+	}
+}
@@ -0,0 +1,94 @@
+package com.webserver.http;
+
+import com.webserver.exceptions.HttpExecutionException;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class HttpResponseTest {
+
+	@org.junit.jupiter.api.Test
+	void respondFramedByCrlf() throws HttpExecutionException {
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_OK);
+		response.setContentType("text/plain");
+		response.setHeader("X-Custom", "value");
+		response.setBody(ByteBuffer.wrap("hello".getBytes(StandardCharsets.ISO_8859_1)));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.respond(outputStream);
+
+		String message = new String(outputStream.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertEquals(response.getBytesWritten(), outputStream.size());
+		assertTrue(message.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(message.endsWith("\r\n\r\nhello"));
+		String head = message.substring(0, message.indexOf("\r\n\r\n"));
+		// No bare LF: every line ends with CRLF
+		assertEquals(head.replace("\r\n", "").indexOf('\n'), -1);
+		assertTrue(head.contains("\r\nContent-Type: text/plain"));
+		assertTrue(head.contains("\r\nContent-Length: 5"));
+		assertTrue(head.contains("\r\nX-Custom: value"));
+		assertTrue(head.contains("\r\nServer: "));
+		String date = head.substring(head.indexOf("\r\nDate: ") + 8);
+		date = date.substring(0, date.indexOf("\r\n") < 0 ? date.length() : date.indexOf("\r\n"));
+		assertTrue(Math.abs(HttpDate.parse(date) - System.currentTimeMillis()) < 2000);
+	}
+
+	@org.junit.jupiter.api.Test
+	void respondOtherVersion() throws HttpExecutionException {
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_NOT_FOUND);
+		response.setHttpVersion("HTTP/1.0");
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.respond(outputStream);
+		assertTrue(new String(outputStream.toByteArray(), StandardCharsets.ISO_8859_1)
+				.startsWith("HTTP/1.0 404 Not Found\r\n"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void respondReset() throws HttpExecutionException {
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_OK);
+		response.setKeepAlive(true);
+		response.setHeader("X-Custom", "value");
+		response.setBody(ByteBuffer.wrap("hello".getBytes(StandardCharsets.ISO_8859_1)));
+		response.respond(new ByteArrayOutputStream());
+
+		response.reset();
+		response.setStatusCode(HttpStatusCode.SC_NOT_FOUND);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.respond(outputStream);
+		String message = new String(outputStream.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertEquals(response.getBytesWritten(), outputStream.size());
+		assertFalse(response.isKeepAlive());
+		assertNull(response.getBufferBody());
+		assertTrue(message.startsWith("HTTP/1.1 404 Not Found\r\n"));
+		assertTrue(message.endsWith("\r\n\r\n"));
+		assertFalse(message.contains("X-Custom"));
+		assertFalse(message.contains("Content-Length"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void respondClosesBodyWhenHeadFails() {
+		// The client went away: the head cannot be written, the body opened for it is closed anyway
+		OutputStream closed = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+		HttpResponse response = new HttpResponse(HttpStatusCode.SC_OK);
+		ReadableByteChannel body = Channels.newChannel(new ByteArrayInputStream(new byte[100]));
+		response.setBody(body, 100);
+		assertThrows(HttpExecutionException.class, () -> response.respond(closed));
+		assertFalse(body.isOpen());
+	}
+}
@@ -0,0 +1,99 @@
+package com.webserver.http2;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.exceptions.Http2Exception;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class HpackTest {
+
+	private static byte[] hex(String hex) {
+		hex = hex.replace(" ", "");
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	private static List<String> decode(HpackDecoder decoder, byte[] block, int length) {
+		List<String> fields = new ArrayList<>();
+		assertTrue(decoder.decode(block, 0, length, (name, value) -> fields.add(name + ": " + value)));
+		return fields;
+	}
+
+	@org.junit.jupiter.api.Test
+	void testHuffman() {
+		String s = "https://www.example.com/index.html?q=Hello%20World";
+		byte[] encoded = new byte[Huffman.encodedLength(s)];
+		assertEquals(Huffman.encode(s, encoded, 0), encoded.length);
+		assertEquals(Huffman.decode(encoded, 0, encoded.length), s);
+
+		// RFC-7541 Appendix C.4.1
+		assertEquals(Huffman.decode(hex("f1e3 c2e5 f23a 6ba0 ab90 f4ff"), 0, 12), "www.example.com");
+		// A padding longer than 7 bits
+		assertThrows(Http2Exception.class, () -> Huffman.decode(hex("f1e3 c2e5 f23a 6ba0 ab90 f4ff ff"), 0, 13));
+	}
+
+	/**
+	 * RFC-7541 Appendix C.4, requests with Huffman coding sharing a dynamic table.
+	 */
+	@org.junit.jupiter.api.Test
+	void testDecodeRequests() {
+		HpackDecoder decoder = new HpackDecoder(4096, 8192);
+		byte[] first = hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff");
+		assertEquals(decode(decoder, first, first.length).toString(),
+				"[:method: GET, :scheme: http, :path: /, :authority: www.example.com]");
+		byte[] second = hex("8286 84be 5886 a8eb 1064 9cbf");
+		assertEquals(decode(decoder, second, second.length).toString(),
+				"[:method: GET, :scheme: http, :path: /, :authority: www.example.com, cache-control: no-cache]");
+		byte[] third = hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf");
+		assertEquals(decode(decoder, third, third.length).toString(),
+				"[:method: GET, :scheme: https, :path: /index.html, :authority: www.example.com, custom-key: custom-value]");
+
+		// An index beyond the tables
+		byte[] invalid = hex("ff00");
+		assertThrows(Http2Exception.class, () -> decoder.decode(invalid, 0, invalid.length, (name, value) -> { }));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testEncodeDecode() {
+		HpackEncoder encoder = new HpackEncoder(4096);
+		HpackDecoder decoder = new HpackDecoder(4096, 8192);
+		for (int i = 0; i < 2; i++) {
+			encoder.reset();
+			encoder.encode(":status", "200");
+			encoder.encode("server", "SimpleWebServer");
+			encoder.encode("content-type", "text/html");
+			encoder.encode("content-length", Integer.toString(1000 + i));
+			List<String> fields = decode(decoder, encoder.getBlock(), encoder.getLength());
+			assertEquals(fields.toString(), "[:status: 200, server: SimpleWebServer, content-type: text/html, content-length: "
+					+ (1000 + i) + "]");
+			if (i == 1) {
+				// The repeated fields are indexed, the content length is a literal of an indexed name
+				assertEquals(encoder.getLength(), 1 + 1 + 1 + 2 + 1 + 3);
+			}
+		}
+
+		// A smaller table set by the peer is signaled first
+		encoder.setMaxTableSize(0);
+		encoder.reset();
+		encoder.encode("server", "SimpleWebServer");
+		assertEquals(encoder.getBlock()[0], (byte) 0x20);
+		assertEquals(decode(decoder, encoder.getBlock(), encoder.getLength()).toString(), "[server: SimpleWebServer]");
+	}
+
+	@org.junit.jupiter.api.Test
+	void testHeaderListSize() {
+		HpackEncoder encoder = new HpackEncoder(4096);
+		encoder.encode("x-large", new String(new byte[100], StandardCharsets.ISO_8859_1));
+		encoder.encode("x-next", "value");
+		HpackDecoder decoder = new HpackDecoder(4096, 64);
+		List<String> names = new ArrayList<>();
+		assertFalse(decoder.decode(encoder.getBlock(), 0, encoder.getLength(), (name, value) -> names.add(name)));
+		assertTrue(names.isEmpty());
+	}
+}
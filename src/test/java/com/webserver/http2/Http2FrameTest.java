@@ -0,0 +1,99 @@
+package com.webserver.http2;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.exceptions.Http2Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class Http2FrameTest {
+
+	private static Http2FrameReader reader(byte[] bytes, int bufferSize) {
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		buffer.flip();
+		return new Http2FrameReader(new ByteArrayInputStream(bytes), buffer, Http2Settings.DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testReadPreface() throws IOException {
+		byte[] preface = Http2FrameReader.PREFACE;
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.flip();
+		assertTrue(Http2FrameReader.readPreface(new ByteArrayInputStream(preface), buffer));
+		assertFalse(buffer.hasRemaining());
+
+		// An HTTP/1 request stays in the buffer for the parser
+		byte[] request = "GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+		buffer.clear().flip();
+		assertFalse(Http2FrameReader.readPreface(new ByteArrayInputStream(request), buffer));
+		assertEquals(buffer.remaining(), request.length);
+
+		// PRI * HTTP/2.0 without the rest of the preface
+		buffer.clear().flip();
+		assertFalse(Http2FrameReader.readPreface(new ByteArrayInputStream(preface, 0, 18), buffer));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testWriteRead() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Http2FrameWriter writer = new Http2FrameWriter(out);
+		writer.writeSettings(Http2Settings.MAX_CONCURRENT_STREAMS, 100, Http2Settings.INITIAL_WINDOW_SIZE, 1 << 20);
+		writer.writeWindowUpdate(3, 1000);
+		byte[] block = new byte[40];
+		writer.writeHeaders(1, block, block.length, false, 16);
+		byte[] body = new byte[20000];
+		writer.writeData(1, ByteBuffer.wrap(body, 0, 10000), true);
+		writer.flush();
+		assertEquals(writer.getBytesWritten(), out.size());
+
+		// A buffer smaller than the frames, the payloads are read from the stream
+		Http2FrameReader reader = reader(out.toByteArray(), 16);
+		Http2Frame frame = new Http2Frame(Http2Settings.DEFAULT_MAX_FRAME_SIZE);
+		reader.read(frame);
+		assertEquals(frame.getType(), Http2Frame.SETTINGS);
+		Http2Settings settings = new Http2Settings();
+		settings.apply(frame.getPayload(), 0, frame.getLength());
+		assertEquals(settings.getMaxConcurrentStreams(), 100);
+		assertEquals(settings.getInitialWindowSize(), 1 << 20);
+
+		reader.read(frame);
+		assertEquals(frame.getType(), Http2Frame.WINDOW_UPDATE);
+		assertEquals(frame.getStreamId(), 3);
+		assertEquals(frame.getInt31(0), 1000);
+
+		// 40 bytes in frames of 16: HEADERS and two CONTINUATION
+		int[] types = {Http2Frame.HEADERS, Http2Frame.CONTINUATION, Http2Frame.CONTINUATION};
+		for (int i = 0; i < types.length; i++) {
+			reader.read(frame);
+			assertEquals(frame.getType(), types[i]);
+			assertEquals(frame.getStreamId(), 1);
+			assertEquals(frame.hasFlag(Http2Frame.FLAG_END_HEADERS), i == types.length - 1);
+		}
+
+		reader.read(frame);
+		assertEquals(frame.getType(), Http2Frame.DATA);
+		assertEquals(frame.getLength(), 10000);
+		assertTrue(frame.hasFlag(Http2Frame.FLAG_END_STREAM));
+		assertThrows(EOFException.class, () -> reader.read(frame));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testInvalidFrames() {
+		// A frame larger than SETTINGS_MAX_FRAME_SIZE
+		byte[] oversize = {0x00, 0x40, 0x01, Http2Frame.DATA, 0, 0, 0, 0, 1};
+		Http2Exception e = assertThrows(Http2Exception.class,
+				() -> reader(oversize, 64).read(new Http2Frame(Http2Settings.DEFAULT_MAX_FRAME_SIZE)));
+		assertEquals(e.getErrorCode(), Http2ErrorCode.FRAME_SIZE_ERROR);
+
+		// SETTINGS_ENABLE_PUSH must be 0 or 1
+		byte[] settings = {0, Http2Settings.ENABLE_PUSH, 0, 0, 0, 2};
+		e = assertThrows(Http2Exception.class, () -> new Http2Settings().apply(settings, 0, settings.length));
+		assertEquals(e.getErrorCode(), Http2ErrorCode.PROTOCOL_ERROR);
+		assertThrows(Http2Exception.class, () -> new Http2Settings().apply(settings, 0, 5));
+	}
+}
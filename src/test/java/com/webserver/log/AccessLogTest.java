@@ -0,0 +1,85 @@
+package com.webserver.log;
+
+import com.webserver.config.AccessLogPolicy;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpStatusCode;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+class AccessLogTest {
+
+	private static HttpRequest request(String target) {
+		HttpRequest request = new HttpRequest();
+		request.setMethod(HttpMethod.GET);
+		request.setRawRequestTarget(target);
+		request.setHttpVersion("HTTP/1.1");
+		request.setHeader("User-Agent", "curl/7.81.0");
+		return request;
+	}
+
+	@org.junit.jupiter.api.Test
+	void formatRecords() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		AccessLog accessLog = new AccessLog(outputStream,
+				AccessLogFormat.compile("%h \"%r\" %>s %b %B \"%{Referer}i\" \"%{User-Agent}i\" 100%%"), 4,
+				AccessLogPolicy.BLOCK);
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		for (int i = 0; i < 10; i++) {
+			accessLog.log(address, request("/" + i + ".html"), HttpStatusCode.SC_OK.code, 100 + i, 1000);
+		}
+		accessLog.log(address, null, HttpStatusCode.SC_BAD_REQUEST.code, 0, 0);
+		accessLog.close();
+
+		String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		assertEquals(lines.length, 11);
+		assertEquals(lines[3], "127.0.0.1 \"GET /3.html HTTP/1.1\" 200 103 103 \"-\" \"curl/7.81.0\" 100%");
+		assertEquals(lines[10], "127.0.0.1 \"-\" 400 - 0 \"-\" \"-\" 100%");
+		assertEquals(accessLog.getDropped(), 0);
+	}
+
+	@org.junit.jupiter.api.Test
+	void dropWhenFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		// Holds the writer on its first batch, so the ring fills up
+		OutputStream outputStream = new OutputStream() {
+			@Override
+			public void write(int b) {
+				written.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				written.write(b, off, len);
+			}
+		};
+		AccessLog accessLog = new AccessLog(outputStream, AccessLogFormat.compile("common"), 8, AccessLogPolicy.DROP);
+		for (int i = 0; i < 100; i++) {
+			accessLog.log(null, request("/"), HttpStatusCode.SC_OK.code, 10, 0);
+		}
+		release.countDown();
+		accessLog.close();
+
+		long lines = new String(written.toByteArray(), StandardCharsets.UTF_8).split("\n").length;
+		assertTrue(accessLog.getDropped() > 0);
+		assertEquals(lines + accessLog.getDropped(), 100);
+	}
+
+	@org.junit.jupiter.api.Test
+	void unknownDirective() {
+		assertThrows(HttpConfigurationException.class, () -> AccessLogFormat.compile("%h %q"));
+		assertThrows(HttpConfigurationException.class, () -> AccessLogFormat.compile("%{Referer"));
+	}
+}
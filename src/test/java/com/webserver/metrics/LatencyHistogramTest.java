@@ -0,0 +1,35 @@
+package com.webserver.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+	@org.junit.jupiter.api.Test
+	void index() {
+		for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+			int index = LatencyHistogram.index(value);
+			assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+			// Within 1/16 of the value
+			assertTrue(LatencyHistogram.highestEquivalentValue(index) - value <= value / 16);
+			if (index > 0) {
+				assertTrue(LatencyHistogram.highestEquivalentValue(index - 1) < value);
+			}
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(histogram.getCount(), 1000);
+		assertEquals(histogram.getMax(), 1000000);
+		assertEquals(histogram.getMean(), 500500.0);
+		long p50 = histogram.getValueAtPercentile(50);
+		assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16, String.valueOf(p50));
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue(p99 >= 990000 && p99 <= 1000000, String.valueOf(p99));
+		assertEquals(histogram.getValueAtPercentile(100), 1000000);
+	}
+}
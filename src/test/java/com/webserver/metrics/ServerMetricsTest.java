@@ -0,0 +1,99 @@
+package com.webserver.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.http.HttpStatusCode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ServerMetricsTest {
+
+	private static Path properties;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		properties = Files.createTempFile("webserver", ".properties");
+		Files.write(properties, "access_log=\n".getBytes(StandardCharsets.ISO_8859_1));
+		ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		Files.delete(properties);
+	}
+
+	@org.junit.jupiter.api.Test
+	void counters() {
+		ServerMetrics metrics = ServerMetrics.getInstance();
+		for (int i = 0; i < 3; i++) {
+			metrics.recordResponse(HttpStatusCode.SC_OK);
+		}
+		metrics.recordResponse(HttpStatusCode.SC_NOT_FOUND);
+		metrics.recordBytesSent(1000);
+		metrics.recordBytesSent(500);
+		metrics.connectionAccepted();
+		metrics.connectionAccepted();
+		metrics.connectionAccepted();
+		metrics.connectionShed();
+		// Two connections served, one closed, the other waiting for its next request
+		metrics.connectionOpened();
+		metrics.connectionOpened();
+		metrics.connectionClosed();
+		metrics.connectionIdle();
+		metrics.connectionIdle();
+		metrics.connectionBusy();
+		metrics.recordHandle(2000000);
+		metrics.setPoolQueueDepth(() -> 7);
+
+		assertEquals(metrics.getResponses(HttpStatusCode.SC_OK), 3);
+		assertEquals(metrics.getResponses(HttpStatusCode.SC_NOT_FOUND), 1);
+		assertEquals(metrics.getResponses(HttpStatusCode.SC_BAD_REQUEST), 0);
+		assertEquals(metrics.getBytesSent(), 1500);
+		assertEquals(metrics.getShedConnections(), 1);
+		assertEquals(metrics.getActiveConnections(), 1);
+		assertEquals(metrics.getIdleConnections(), 1);
+		assertEquals(metrics.getHandleLatency().getCount(), 1);
+
+		String json = metrics.toJson();
+		assertTrue(json.startsWith("{\n  \"uptime_seconds\": "), json);
+		assertTrue(json.endsWith("\n}\n"), json);
+		assertTrue(json.contains("\"requests\": {\"count\": 4, "), json);
+		assertTrue(json.contains("\"200\": {\"count\": 3, "), json);
+		assertTrue(json.contains("\"404\": {\"count\": 1, "), json);
+		// Only the status codes sent are listed
+		assertFalse(json.contains("\"400\""), json);
+		assertTrue(json.contains("\"bytes_sent\": {\"count\": 1500, "), json);
+		assertTrue(json.contains("\"connections\": {\"accepted\": 3, \"shed\": 1, \"active\": 1, \"idle\": 1, "
+				+ "\"pool_queue_depth\": 7}"), json);
+		assertTrue(json.contains("\"handle\": {\"count\": 1, "), json);
+		assertTrue(json.contains("\"parse\": {\"count\": 0, "), json);
+		assertTrue(json.contains("\"cache\": {"), json);
+		assertFalse(json.contains("\"upstreams\""), json);
+
+		String text = metrics.toPrometheus();
+		assertTrue(text.contains("# TYPE webserver_requests_total counter\n"), text);
+		assertTrue(text.contains("\nwebserver_requests_total{code=\"200\"} 3\n"), text);
+		assertTrue(text.contains("\nwebserver_requests_total{code=\"404\"} 1\n"), text);
+		assertTrue(text.contains("\nwebserver_requests_total{code=\"400\"} 0\n"), text);
+		assertTrue(text.contains("\nwebserver_bytes_sent_total 1500\n"), text);
+		assertTrue(text.contains("\nwebserver_connections_accepted_total 3\n"), text);
+		assertTrue(text.contains("\nwebserver_connections_shed_total 1\n"), text);
+		assertTrue(text.contains("# TYPE webserver_connections_active gauge\nwebserver_connections_active 1\n"), text);
+		assertTrue(text.contains("\nwebserver_connections_idle 1\n"), text);
+		assertTrue(text.contains("\nwebserver_pool_queue_depth 7\n"), text);
+		// Latencies in seconds
+		assertTrue(text.contains("# TYPE webserver_handle_duration_seconds summary\n"), text);
+		assertTrue(text.contains("\nwebserver_handle_duration_seconds_sum 0.002\n"), text);
+		assertTrue(text.contains("\nwebserver_handle_duration_seconds_count 1\n"), text);
+		assertTrue(text.contains("\nwebserver_parse_duration_seconds_count 0\n"), text);
+		for (String line : text.split("\n")) {
+			assertTrue(line.startsWith("# ") || line.matches("[a-z_]+(\\{[^}]*})? [0-9.]+"), line);
+		}
+	}
+}
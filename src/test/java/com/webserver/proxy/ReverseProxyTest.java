@@ -0,0 +1,399 @@
+package com.webserver.proxy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.ConfigurationManager;
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.exceptions.HttpExecutionException;
+import com.webserver.exceptions.HttpParsingException;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpParser;
+import com.webserver.http.HttpRequest;
+import com.webserver.http.HttpResponse;
+import com.webserver.router.Handler;
+import com.webserver.router.Router;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class ReverseProxyTest {
+
+	/**
+	 * A stand-in upstream server, answering each request from its path.
+	 */
+	private ServerSocket backend;
+
+	private Thread acceptor;
+
+	private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The heads of the requests received by the backend.
+	 */
+	private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+	private ReverseProxy proxy;
+
+	private Router router;
+
+	@BeforeEach
+	void setup() throws IOException {
+		backend = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		acceptor = new Thread(() -> {
+			try {
+				while (true) {
+					Socket socket = backend.accept();
+					accepted.add(socket);
+					Thread connection = new Thread(() -> serve(socket));
+					connection.setDaemon(true);
+					connection.start();
+				}
+			} catch (IOException ignored) {
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		int port = backend.getLocalPort();
+		proxy = new ReverseProxy("/api=127.0.0.1:" + port + ", /api/v2=localhost:" + port, 4, 1000, 5000, 2, 30);
+		Router.Builder builder = Router.builder();
+		proxy.register(builder);
+		router = builder.build();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException, InterruptedException {
+		stopBackend();
+	}
+
+	private void stopBackend() throws IOException, InterruptedException {
+		backend.close();
+		// The listening socket is only released once the blocked accept returned
+		acceptor.join(5000);
+		for (Socket socket : accepted) {
+			socket.close();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+			OutputStream out = socket.getOutputStream();
+			String line;
+			boolean closeNext = false;
+			while ((line = in.readLine()) != null) {
+				StringBuilder head = new StringBuilder(line).append('\n');
+				int contentLength = 0;
+				while ((line = in.readLine()) != null && !line.isEmpty()) {
+					head.append(line).append('\n');
+					if (line.startsWith("Content-Length: ")) {
+						contentLength = Integer.parseInt(line.substring(16));
+					}
+				}
+				char[] body = new char[contentLength];
+				for (int n = 0; n < contentLength; ) {
+					n += in.read(body, n, contentLength - n);
+				}
+				received.add(head.toString());
+				if (closeNext) {
+					// Closed as an idle timeout would, the request sent meanwhile is lost
+					socket.close();
+					return;
+				}
+
+				String path = head.substring(head.indexOf(" ") + 1, head.indexOf(" ", head.indexOf(" ") + 1));
+				String response;
+				if (path.startsWith("/api/length")) {
+					response = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n"
+							+ "Connection: X-Hop\r\nX-Hop: secret\r\nKeep-Alive: timeout=5\r\nServer: backend\r\n\r\nhello";
+				} else if (path.equals("/api/chunked")) {
+					response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+							+ "5;ext=1\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: t\r\n\r\n";
+				} else if (path.equals("/api/echo")) {
+					response = "HTTP/1.1 201 Created\r\nContent-Length: " + contentLength + "\r\n\r\n" + new String(body);
+				} else if (path.equals("/api/teapot")) {
+					response = "HTTP/1.1 418 I'm a teapot\r\nContent-Length: 0\r\n\r\n";
+				} else if (path.equals("/api/custom")) {
+					response = "HTTP/1.1 299 All Good\r\nContent-Length: 2\r\n\r\nok";
+				} else if (path.equals("/api/cr")) {
+					response = "HTTP/1.1 200 OK\r\nX-Split: a\rSet-Cookie: evil=1\r\nContent-Length: 0\r\n\r\n";
+				} else if (path.equals("/api/nul")) {
+					response = "HTTP/1.1 200 OK\r\nX-Nul: a\0b\r\nContent-Length: 0\r\n\r\n";
+				} else if (path.equals("/api/last")) {
+					response = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nlast";
+					closeNext = true;
+				} else if (path.equals("/api/slow")) {
+					Thread.sleep(1000);
+					response = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nslow";
+				} else if (path.equals("/api/large")) {
+					StringBuilder large = new StringBuilder("HTTP/1.1 200 OK\r\nContent-Length: 100000\r\n\r\n");
+					for (int i = 0; i < 100000; i++) {
+						large.append('x');
+					}
+					response = large.toString();
+				} else if (path.equals("/api/cookies")) {
+					response = "HTTP/1.1 204 No Content\r\nSet-Cookie: a=1\r\nSet-Cookie: b=2\r\n\r\n";
+				} else {
+					response = "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+				}
+				out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+			}
+		} catch (IOException | InterruptedException ignored) {
+		}
+	}
+
+	/**
+	 * Replace the proxy of the backend by one with the given limits, not marking the backend down.
+	 */
+	private void reconfigure(int maxConnections, int connectTimeout, int readTimeout) {
+		proxy = new ReverseProxy("/api=127.0.0.1:" + backend.getLocalPort(), maxConnections, connectTimeout,
+				readTimeout, 0, 30);
+		Router.Builder builder = Router.builder();
+		proxy.register(builder);
+		router = builder.build();
+	}
+
+	/**
+	 * Forward a request as the server would and write the response the client would receive.
+	 */
+	private String forward(String text) throws HttpParsingException, HttpExecutionException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		handle(text).respond(out);
+		return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Forward a request as the server would.
+	 * @return the response, its body not read yet
+	 */
+	private HttpResponse handle(String text) throws HttpParsingException, IOException {
+		HttpRequest request = new HttpParser().parse(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+		request.setRemoteAddress(InetAddress.getLoopbackAddress());
+		HttpResponse response = new HttpResponse();
+		response.setChunkSize(1024);
+		try {
+			Handler handler = router.route(request.getMethod(), request.getRequestTarget());
+			assertNotNull(handler);
+			handler.handle(request, response);
+		} finally {
+			if (request.getBody() != null) {
+				request.getBody().close();
+			}
+		}
+		return response;
+	}
+
+	@org.junit.jupiter.api.Test
+	void testRoute() {
+		assertNotNull(router.route(HttpMethod.POST, "/api"));
+		assertNotNull(router.route(HttpMethod.GET, "/api/v2/users"));
+		assertNull(router.route(HttpMethod.GET, "/apis"));
+		assertNull(router.route(HttpMethod.GET, "/api/../secret.txt"));
+		assertEquals(ReverseProxy.originForm("http://example.com:8080/api/users?id=1"), "/api/users?id=1");
+		assertEquals(ReverseProxy.originForm("http://example.com?id=1"), "/?id=1");
+
+		assertThrows(HttpConfigurationException.class, () -> new ReverseProxy("/api=localhost", 1, 1, 1, 1, 1));
+		assertThrows(HttpConfigurationException.class, () -> new ReverseProxy("api=localhost:80", 1, 1, 1, 1, 1));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testNioEngine() throws IOException {
+		// The blocking exchanges would stall an event loop, the start fails
+		Path properties = Files.createTempFile("webserver", ".properties");
+		try {
+			Files.write(properties, ("engine=nio\nproxy_routes=/api=127.0.0.1:" + backend.getLocalPort() + "\n")
+					.getBytes(StandardCharsets.ISO_8859_1));
+			ConfigurationManager.getInstance().loadConfigFile(properties.toString());
+			assertThrows(HttpConfigurationException.class, ReverseProxy::getInstance);
+		} finally {
+			Files.delete(properties);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testForward() throws Exception {
+		String response = forward("GET /api/length?q=1 HTTP/1.1\r\nHost: example.com\r\n"
+				+ "Connection: keep-alive, X-Client\r\nX-Client: secret\r\nX-Forwarded-For: 10.0.0.1\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(response.contains("Content-Length: 5\r\n"));
+		assertTrue(response.endsWith("\r\n\r\nhello"));
+		// The hop-by-hop fields and the Server of the upstream are not forwarded
+		assertFalse(response.contains("X-Hop"));
+		assertFalse(response.contains("Keep-Alive"));
+		assertFalse(response.contains("backend"));
+
+		String head = received.poll(5, TimeUnit.SECONDS);
+		assertTrue(head.startsWith("GET /api/length?q=1 HTTP/1.1\n"));
+		assertTrue(head.contains("Host: example.com\n"));
+		assertTrue(head.contains("Via: 1.1 SimpleWebServer\n"));
+		assertTrue(head.contains("X-Forwarded-For: 10.0.0.1, 127.0.0.1\n"));
+		assertFalse(head.contains("X-Client"));
+		assertFalse(head.contains("Connection"));
+
+		// The chunks are decoded, then encoded again for the client, without the extensions and the trailer
+		response = forward("GET /api/chunked HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(response.endsWith("\r\n\r\n5\r\nhello\r\n7\r\n, world\r\n0\r\n\r\n"));
+
+		response = forward("POST /api/echo HTTP/1.1\r\nHost: example.com\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "4\r\nping\r\n0\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 201 Created\r\n"));
+		assertTrue(response.endsWith("\r\n\r\nping"));
+		received.poll(5, TimeUnit.SECONDS);
+		head = received.poll(5, TimeUnit.SECONDS);
+		assertTrue(head.contains("Content-Length: 4\n"));
+		assertFalse(head.contains("Transfer-Encoding"));
+
+		// Each Set-Cookie is kept as a field of its own
+		response = forward("GET /api/cookies HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 204 No Content\r\n"));
+		assertTrue(response.contains("Set-Cookie: a=1\r\nSet-Cookie: b=2\r\n"));
+
+		// The four requests went through one persistent connection
+		Upstream upstream = proxy.getUpstreams().get(0);
+		assertEquals(accepted.size(), 1);
+		assertEquals(upstream.getConnectionsOpened(), 1L);
+		assertEquals(upstream.getConnectionsReused(), 3L);
+		assertEquals(upstream.getIdleConnections(), 1);
+		assertEquals(upstream.getActiveConnections(), 0);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testStatus() throws Exception {
+		// An unrecognized status code is forwarded as received, with its reason phrase
+		assertTrue(forward("GET /api/teapot HTTP/1.1\r\nHost: example.com\r\n\r\n")
+				.startsWith("HTTP/1.1 418 I'm a teapot\r\n"));
+		String response = forward("GET /api/custom HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 299 All Good\r\n"));
+		assertTrue(response.endsWith("\r\n\r\nok"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testInvalidHeaderField() throws Exception {
+		// A bare CR could be read as the end of the line by the client: the response is invalid
+		String response = forward("GET /api/cr HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 502 Bad Gateway\r\n"));
+		assertFalse(response.contains("evil"));
+		assertTrue(forward("GET /api/nul HTTP/1.1\r\nHost: example.com\r\n\r\n").startsWith("HTTP/1.1 502 "));
+		assertEquals(proxy.getUpstreams().get(0).getActiveConnections(), 0);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testPoolExhausted() throws Exception {
+		reconfigure(1, 200, 5000);
+		Upstream upstream = proxy.getUpstreams().get(0);
+		// The connection is held until the body of the response is sent
+		HttpResponse pending = handle("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertEquals(upstream.getActiveConnections(), 1);
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n")
+				.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		pending.respond(out);
+		assertTrue(new String(out.toByteArray(), StandardCharsets.ISO_8859_1).endsWith("\r\n\r\nhello"));
+		assertEquals(upstream.getActiveConnections(), 0);
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n").startsWith("HTTP/1.1 200 OK\r\n"));
+		assertEquals(upstream.getConnectionsOpened(), 1L);
+		// Not a failure of the server
+		assertEquals(upstream.getFailures(), 0L);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testReadTimeout() throws Exception {
+		reconfigure(4, 1000, 200);
+		Upstream upstream = proxy.getUpstreams().get(0);
+		assertTrue(forward("GET /api/slow HTTP/1.1\r\nHost: example.com\r\n\r\n")
+				.startsWith("HTTP/1.1 504 Gateway Timeout\r\n"));
+		// Not retried, the connection is closed
+		assertEquals(received.size(), 1);
+		assertEquals(upstream.getFailures(), 1L);
+		assertEquals(upstream.getActiveConnections(), 0);
+		assertEquals(upstream.getIdleConnections(), 0);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testStaleConnectionRetried() throws Exception {
+		Upstream upstream = proxy.getUpstreams().get(0);
+		assertTrue(forward("GET /api/last HTTP/1.1\r\nHost: example.com\r\n\r\n").endsWith("\r\n\r\nlast"));
+		assertEquals(upstream.getIdleConnections(), 1);
+
+		// The pooled connection looks alive, the server closes it on the next request: sent again on a new one
+		String response = forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(response.endsWith("\r\n\r\nhello"));
+		assertEquals(accepted.size(), 2);
+		assertEquals(received.size(), 3);
+		assertEquals(upstream.getConnectionsOpened(), 2L);
+		assertEquals(upstream.getFailures(), 0L);
+		assertEquals(upstream.getActiveConnections(), 0);
+		assertEquals(upstream.getIdleConnections(), 1);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testBodyCutByClient() throws Exception {
+		Upstream upstream = proxy.getUpstreams().get(0);
+		HttpResponse response = handle("GET /api/large HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertEquals(upstream.getActiveConnections(), 1);
+		// The client goes away after a part of the body
+		OutputStream client = new OutputStream() {
+			private int written;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				written += len;
+				if (written > 10000) {
+					throw new IOException("Connection reset by peer");
+				}
+			}
+		};
+		assertThrows(HttpExecutionException.class, () -> response.respond(client));
+
+		// The rest of the body would be read as the next response: the connection is closed, its permit returned
+		assertEquals(upstream.getActiveConnections(), 0);
+		assertEquals(upstream.getIdleConnections(), 0);
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n").endsWith("\r\n\r\nhello"));
+		assertEquals(upstream.getConnectionsOpened(), 2L);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testUpstreamDown() throws Exception {
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n").startsWith("HTTP/1.1 200 OK\r\n"));
+		stopBackend();
+
+		// The pooled connection was closed by the server, a new one is refused
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n").startsWith("HTTP/1.1 502 "));
+		Upstream upstream = proxy.getUpstreams().get(0);
+		assertTrue(upstream.isAvailable());
+		assertTrue(forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n").startsWith("HTTP/1.1 502 "));
+
+		// Marked down after two consecutive failures, not tried for the fail timeout
+		assertFalse(upstream.isAvailable());
+		String response = forward("GET /api/length HTTP/1.1\r\nHost: example.com\r\n\r\n");
+		assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+		assertTrue(response.contains("Retry-After: 30\r\n"));
+		assertEquals(upstream.getFailures(), 2L);
+		assertEquals(upstream.getActiveConnections(), 0);
+	}
+}
@@ -0,0 +1,87 @@
+package com.webserver.router;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.exceptions.HttpConfigurationException;
+import com.webserver.http.HttpHeaderName;
+import com.webserver.http.HttpMethod;
+import com.webserver.http.HttpResponse;
+
+import java.io.IOException;
+
+class RouterTest {
+
+	private static Handler named(String name) {
+		return (request, response) -> response.setHeader("X-Handler", name);
+	}
+
+	/**
+	 * @return the name of the handler the request is dispatched to, or the status of the response
+	 */
+	private static String dispatch(Router router, HttpMethod method, String path) throws IOException {
+		Handler handler = router.route(method, path);
+		if (handler == null) {
+			return null;
+		}
+		HttpResponse response = new HttpResponse();
+		handler.handle(null, response);
+		String name = response.getHeaders().get("X-Handler");
+		return name != null ? name : response.getStatusCode().code + " " + response.getHeader(HttpHeaderName.ALLOW);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testRoute() throws IOException {
+		Router router = Router.builder()
+				.exact("/server-status", named("status"), HttpMethod.GET, HttpMethod.HEAD)
+				.prefix("/api", named("api"))
+				.prefix("/api/v2/", named("v2"))
+				.prefix("/", named("get"), HttpMethod.GET)
+				.prefix("/", named("head"), HttpMethod.HEAD)
+				.build();
+
+		assertEquals(dispatch(router, HttpMethod.GET, "/server-status"), "status");
+		assertEquals(dispatch(router, HttpMethod.POST, "/server-status"), "405 GET, HEAD");
+		// Not an exact match, the longest prefix wins
+		assertEquals(dispatch(router, HttpMethod.GET, "/server-status/x"), "get");
+		assertEquals(dispatch(router, HttpMethod.PUT, "/api"), "api");
+		assertEquals(dispatch(router, HttpMethod.GET, "/api/users"), "api");
+		assertEquals(dispatch(router, HttpMethod.GET, "/api/v2"), "v2");
+		assertEquals(dispatch(router, HttpMethod.POST, "/api/v2/users/1"), "v2");
+		assertEquals(dispatch(router, HttpMethod.GET, "/apis"), "get");
+		assertEquals(dispatch(router, HttpMethod.HEAD, "/index.html"), "head");
+		assertEquals(dispatch(router, HttpMethod.PUT, "/index.html"), "405 GET, HEAD");
+
+		// The dot-segments are removed before matching
+		assertEquals(dispatch(router, HttpMethod.POST, "/api/../index.html"), "405 GET, HEAD");
+		assertEquals(dispatch(router, HttpMethod.GET, "/x/./../api/v2/."), "v2");
+		assertEquals(dispatch(router, HttpMethod.GET, "/api/..foo"), "api");
+
+		assertNull(Router.builder().exact("/a", named("a")).build().route(HttpMethod.GET, "/b"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testManyRoutes() throws IOException {
+		Router.Builder builder = Router.builder();
+		for (int i = 0; i < 5000; i++) {
+			builder.prefix("/service" + i, named("service" + i));
+			builder.exact("/service" + i + "/health", named("health" + i), HttpMethod.GET);
+		}
+		Router router = builder.build();
+		for (int i = 0; i < 5000; i += 7) {
+			assertEquals(dispatch(router, HttpMethod.POST, "/service" + i + "/orders"), "service" + i);
+			assertEquals(dispatch(router, HttpMethod.GET, "/service" + i + "/health"), "health" + i);
+		}
+		assertNull(router.route(HttpMethod.GET, "/service5000"));
+	}
+
+	@org.junit.jupiter.api.Test
+	void testInvalidRoutes() {
+		assertThrows(HttpConfigurationException.class, () -> Router.builder()
+				.prefix("/api", named("a"), HttpMethod.GET).prefix("/api/", named("b"), HttpMethod.GET, HttpMethod.POST));
+		assertThrows(HttpConfigurationException.class, () -> Router.builder().exact("api", named("a")));
+		assertThrows(HttpConfigurationException.class, () -> Router.builder().prefix("/api/../x", named("a")));
+		// The same path may have an exact and a prefix route, and handlers for different methods
+		assertNotNull(Router.builder().exact("/api", named("a")).prefix("/api", named("b"))
+				.prefix("/x", named("c"), HttpMethod.GET).prefix("/x", named("d"), HttpMethod.PUT).build());
+	}
+}
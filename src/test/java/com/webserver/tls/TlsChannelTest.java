@@ -0,0 +1,200 @@
+package com.webserver.tls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.webserver.config.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class TlsChannelTest {
+
+	private static final String PASSWORD = "changeit";
+
+	private static Path keystore;
+
+	private static TlsContext tls;
+
+	private static ServerSocketChannel serverChannel;
+
+	/**
+	 * A self-signed certificate made by the keytool of the JDK running the tests.
+	 */
+	@BeforeAll
+	static void setup() throws IOException, InterruptedException {
+		keystore = Files.createTempFile("keystore", ".p12");
+		Files.delete(keystore);
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+				"-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore", keystore.toString(),
+				"-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+		assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+		assertEquals(process.exitValue(), 0);
+
+		Configuration configuration = new Configuration(8080, 1, "WebContent", 5);
+		configuration.setKeystore(keystore.toString());
+		configuration.setKeystorePassword(PASSWORD);
+		tls = new TlsContext(configuration);
+
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+	}
+
+	@AfterAll
+	static void tearDown() throws IOException {
+		serverChannel.close();
+		Files.deleteIfExists(keystore);
+	}
+
+	private static SSLContext clientContext(String protocol) throws Exception {
+		TrustManager trustAll = new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		};
+		SSLContext context = SSLContext.getInstance(protocol);
+		context.init(null, new TrustManager[] {trustAll}, null);
+		return context;
+	}
+
+	/**
+	 * The client sends a line and reads back a large response: the server side is blocking.
+	 * @return the ID of the session of the client
+	 */
+	private static byte[] exchange(SSLContext clientContext, byte[] response) throws Exception {
+		try (SSLSocket client = (SSLSocket) clientContext.getSocketFactory().createSocket()) {
+			client.connect(serverChannel.getLocalAddress(), 1000);
+			client.setSoTimeout(10000);
+			CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> {
+				try {
+					OutputStream out = client.getOutputStream();
+					out.write("ping\n".getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					byte[] bytes = new byte[response.length];
+					new DataInputStream(client.getInputStream()).readFully(bytes);
+					return bytes;
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+
+			try (SocketChannel channel = serverChannel.accept()) {
+				TlsChannel tlsChannel = new TlsChannel(channel, tls.createEngine());
+				InputStream in = tlsChannel.getInputStream();
+				byte[] line = new byte[5];
+				new DataInputStream(in).readFully(line);
+				assertEquals(new String(line, StandardCharsets.ISO_8859_1), "ping\n");
+
+				// A head and a body in one gathering write, larger than a record
+				ByteBuffer head = ByteBuffer.wrap(response, 0, 100);
+				ByteBuffer body = ByteBuffer.wrap(response, 100, response.length - 100);
+				assertEquals(tlsChannel.write(new ByteBuffer[] {head, body}), response.length);
+				assertFalse(tlsChannel.hasPendingOutput());
+				assertArrayEquals(received.get(10, TimeUnit.SECONDS), response);
+				tlsChannel.closeOutbound();
+			}
+			return client.getSession().getId();
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void testBlocking() throws Exception {
+		byte[] response = new byte[100_000];
+		for (int i = 0; i < response.length; i++) {
+			response[i] = (byte) i;
+		}
+		exchange(clientContext("TLSv1.3"), response);
+
+		// A returning TLS 1.2 client resumes its session, which keeps its ID
+		SSLContext clientContext = clientContext("TLSv1.2");
+		byte[] sessionId = exchange(clientContext, response);
+		assertArrayEquals(exchange(clientContext, response), sessionId);
+	}
+
+	@org.junit.jupiter.api.Test
+	void testNonBlocking() throws Exception {
+		try (SSLSocket client = (SSLSocket) clientContext("TLSv1.3").getSocketFactory().createSocket()) {
+			client.connect(serverChannel.getLocalAddress(), 1000);
+			client.setSoTimeout(10000);
+			SocketChannel channel = serverChannel.accept();
+			channel.configureBlocking(false);
+			TlsChannel tlsChannel = new TlsChannel(channel, tls.createEngine());
+			ByteBuffer buffer = ByteBuffer.allocate(1024);
+			// Nothing received yet: the read does not block
+			assertEquals(tlsChannel.read(buffer), 0);
+
+			CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+				try {
+					client.getOutputStream().write("ping\n".getBytes(StandardCharsets.ISO_8859_1));
+					client.getOutputStream().flush();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			try (Selector selector = Selector.open()) {
+				channel.register(selector, SelectionKey.OP_READ);
+				while (buffer.position() < 5) {
+					assertTrue(selector.select(10000) > 0 || tlsChannel.hasPendingOutput());
+					selector.selectedKeys().clear();
+					assertTrue(tlsChannel.read(buffer) >= 0);
+					while (!tlsChannel.flush()) {
+						Thread.sleep(1);
+					}
+				}
+			}
+			sent.get(10, TimeUnit.SECONDS);
+			assertEquals(new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1), "ping\n");
+
+			ByteBuffer pong = ByteBuffer.wrap("pong\n".getBytes(StandardCharsets.ISO_8859_1));
+			assertEquals(tlsChannel.write(pong), 5);
+			while (!tlsChannel.flush()) {
+				Thread.sleep(1);
+			}
+			byte[] line = new byte[5];
+			new DataInputStream(client.getInputStream()).readFully(line);
+			assertEquals(new String(line, StandardCharsets.ISO_8859_1), "pong\n");
+
+			// Two records received together: a read decrypts the first, the second is buffered, not selectable
+			client.getOutputStream().write('a');
+			client.getOutputStream().write('b');
+			client.getOutputStream().flush();
+			Thread.sleep(200);
+			buffer.clear();
+			assertEquals(tlsChannel.read(buffer), 1);
+			assertTrue(tlsChannel.hasBufferedInput());
+			assertEquals(tlsChannel.read(buffer), 1);
+			assertEquals(new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1), "ab");
+			tlsChannel.close();
+		}
+	}
+}